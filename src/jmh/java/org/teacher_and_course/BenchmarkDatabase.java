@@ -0,0 +1,84 @@
+package org.teacher_and_course;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Seeds a throwaway SQLite database of a given size and points {@link DatabaseManager} at it.
+ */
+public class BenchmarkDatabase {
+    private final Path directory;
+    private final List<Teacher> teachers = new ArrayList<>();
+    private final List<Course> courses = new ArrayList<>();
+    private final List<int[]> assignments = new ArrayList<>();
+
+    private BenchmarkDatabase(Path directory) {
+        this.directory = directory;
+    }
+
+    public static BenchmarkDatabase create(int teacherCount, int courseCount, int coursesPerTeacher) throws IOException, SQLException {
+        BenchmarkDatabase database = new BenchmarkDatabase(Files.createTempDirectory("school-bench"));
+        DatabaseManager.useDatabase("jdbc:sqlite:" + database.directory.resolve("school.db"), 4);
+        DatabaseManager.createTables();
+        database.seed(teacherCount, courseCount, coursesPerTeacher);
+        return database;
+    }
+
+    private void seed(int teacherCount, int courseCount, int coursesPerTeacher) throws SQLException {
+        for (int i = 0; i < teacherCount; i++) {
+            teachers.add(new Teacher("Teacher " + i, 25 + i % 40));
+        }
+        for (int i = 0; i < courseCount; i++) {
+            courses.add(new Course("Course " + i, 10 + i % 90));
+        }
+        BulkImporter.saveTeachers(teachers);
+        BulkImporter.saveCourses(courses);
+
+        Random random = new Random(42);
+        for (Teacher teacher : teachers) {
+            for (int i = 0; i < coursesPerTeacher && i < courses.size(); i++) {
+                Course course = courses.get(random.nextInt(courses.size()));
+                assignments.add(new int[]{teacher.getId(), course.getId()});
+                teacher.addCourse(course);
+            }
+        }
+        try (PooledConnection connection = DatabaseManager.acquireWriter()) {
+            connection.getConnection().setAutoCommit(false);
+            PreparedStatement statement = connection.prepare("INSERT OR IGNORE INTO teacher_course (teacher_id, course_id) VALUES (?, ?)");
+            for (int[] assignment : assignments) {
+                statement.setInt(1, assignment[0]);
+                statement.setInt(2, assignment[1]);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+            connection.getConnection().commit();
+        }
+    }
+
+    public List<Teacher> getTeachers() {
+        return teachers;
+    }
+
+    public List<Course> getCourses() {
+        return courses;
+    }
+
+    public List<int[]> getAssignments() {
+        return assignments;
+    }
+
+    public void close() throws IOException {
+        DatabaseManager.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package org.teacher_and_course;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Multi-process write stress test. Starts several JVMs against one database file, each running
+ * several threads that save a teacher and assign it to a shared course, then checks that every
+ * write reported as successful is in the database. Run with:
+ * <pre>
+ * mvn -P benchmarks compile exec:exec -Dbenchmarks.main=org.teacher_and_course.ConcurrencyStress \
+ *     -Dbenchmarks.args="--processes 4 --threads 8 --writes 500"
+ * </pre>
+ * {@code --busy-timeout <ms>} overrides the workers' SQLite busy timeout, so that contention is
+ * left to the busy retries; {@code --no-retry} runs them with a zero busy timeout and no retries,
+ * to show what unprotected writers lose. Exits non-zero if any write failed or went missing.
+ */
+public class ConcurrencyStress {
+    private static final String RESULT_PREFIX = "RESULT ";
+
+    public static void main(String[] args) throws Exception {
+        int processes = intOption(args, "--processes", 4);
+        int threads = intOption(args, "--threads", 8);
+        int writes = intOption(args, "--writes", 500);
+        String worker = option(args, "--worker", null);
+        if (worker != null) {
+            runWorker(Integer.parseInt(worker), threads, writes, Integer.parseInt(option(args, "--course", "0")));
+            return;
+        }
+
+        Path database = Path.of(option(args, "--db", "target/stress.db")).toAbsolutePath();
+        for (String suffix : new String[]{"", "-wal", "-shm"}) {
+            Files.deleteIfExists(Path.of(database + suffix));
+        }
+        String url = "jdbc:sqlite:" + database;
+        DatabaseManager.useDatabase(url, 1);
+        DatabaseManager.createTables();
+        int courseId = DatabaseManager.saveCourse(new Course("stress-course", 1));
+        DatabaseManager.close();
+
+        boolean noRetry = List.of(args).contains("--no-retry");
+        String busyTimeout = option(args, "--busy-timeout", null);
+        List<Process> children = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int p = 0; p < processes; p++) {
+            List<String> command = new ArrayList<>(List.of(
+                    Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                    "-cp", System.getProperty("java.class.path"),
+                    "-Dschool.db.url=" + url));
+            if (noRetry) {
+                command.add("-Dschool.db.busyTimeoutMillis=0");
+                command.add("-Dschool.db.busyRetries=1");
+            } else if (busyTimeout != null) {
+                command.add("-Dschool.db.busyTimeoutMillis=" + busyTimeout);
+            }
+            command.addAll(List.of(ConcurrencyStress.class.getName(), "--worker", String.valueOf(p),
+                    "--threads", String.valueOf(threads), "--writes", String.valueOf(writes),
+                    "--course", String.valueOf(courseId)));
+            children.add(new ProcessBuilder(command).redirectErrorStream(true).start());
+        }
+
+        long succeeded = 0;
+        long failed = 0;
+        for (Process child : children) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(child.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith(RESULT_PREFIX)) {
+                        String[] fields = line.substring(RESULT_PREFIX.length()).split(" ");
+                        succeeded += Long.parseLong(fields[0]);
+                        failed += Long.parseLong(fields[1]);
+                    }
+                    System.out.println(line);
+                }
+            }
+            child.waitFor();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long teachers;
+        long assignments;
+        try (Connection connection = DriverManager.getConnection(url);
+             Statement statement = connection.createStatement()) {
+            teachers = count(statement, "SELECT COUNT(*) FROM teachers WHERE full_name LIKE 'stress-%'");
+            assignments = count(statement, "SELECT COUNT(*) FROM teacher_course WHERE course_id = " + courseId);
+        }
+        long attempted = (long) processes * threads * writes;
+        long lost = Math.max(0, succeeded - Math.min(teachers, assignments));
+        System.out.printf("processes=%d threads=%d attempted=%d succeeded=%d failed=%d lost=%d%n",
+                processes, threads, attempted, succeeded, failed, lost);
+        System.out.printf("teachers=%d assignments=%d elapsed=%.2fs throughput=%.0f writes/s%n",
+                teachers, assignments, seconds, 2 * succeeded / seconds);
+        if (failed > 0 || lost > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void runWorker(int process, int threads, int writes, int courseId) throws InterruptedException {
+        AtomicLong succeeded = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        AtomicLong reported = new AtomicLong();
+        DatabaseManager.setFailureListener((operation, error) -> {
+            if (reported.incrementAndGet() <= 5) {
+                FailureListener.STDERR.onFailure(operation, error);
+            }
+        });
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < writes; i++) {
+                    int teacherId = DatabaseManager.saveTeacher(new Teacher("stress-" + process + "-" + thread + "-" + i, 30));
+                    if (teacherId > 0 && DatabaseManager.saveTeacherCourse(teacherId, courseId)) {
+                        succeeded.incrementAndGet();
+                    } else {
+                        failed.incrementAndGet();
+                    }
+                }
+                done.countDown();
+            });
+        }
+        done.await();
+        DatabaseManager.close();
+        System.out.println("worker " + process + ": retries=" + BusyRetry.getRetries() +
+                ", retriesExhausted=" + BusyRetry.getExhausted() + ", " + DatabaseManager.getWriterStats());
+        System.out.println(RESULT_PREFIX + succeeded.get() + " " + failed.get());
+    }
+
+    private static long count(Statement statement, String sql) throws SQLException {
+        try (ResultSet resultSet = statement.executeQuery(sql)) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    private static String option(String[] args, String name, String defaultValue) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(name)) {
+                return args[i + 1];
+            }
+        }
+        return defaultValue;
+    }
+
+    private static int intOption(String[] args, String name, int defaultValue) {
+        String value = option(args, name, null);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+}
@@ -0,0 +1,113 @@
+package org.teacher_and_course;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DatabaseManagerBenchmark {
+    @Param({"1000", "10000"})
+    public int teachers;
+
+    @Param({"3"})
+    public int coursesPerTeacher;
+
+    private BenchmarkDatabase database;
+    private SplittableRandom random;
+    private List<Teacher> seededTeachers;
+    private List<Course> seededCourses;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        database = BenchmarkDatabase.create(teachers, Math.max(1, teachers / 10), coursesPerTeacher);
+        seededTeachers = database.getTeachers();
+        seededCourses = database.getCourses();
+        random = new SplittableRandom(7);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        database.close();
+    }
+
+    private Teacher randomTeacher() {
+        return seededTeachers.get(random.nextInt(seededTeachers.size()));
+    }
+
+    @Benchmark
+    public int saveTeacher() {
+        return DatabaseManager.saveTeacher(new Teacher("Benchmark Teacher", 40));
+    }
+
+    @Benchmark
+    public boolean saveTeacherCourse() {
+        Course course = seededCourses.get(random.nextInt(seededCourses.size()));
+        return DatabaseManager.saveTeacherCourse(randomTeacher().getId(), course.getId());
+    }
+
+    @Benchmark
+    public Teacher findTeacherByName() {
+        return DatabaseManager.findTeacherByName(randomTeacher().getFullName());
+    }
+
+    @Benchmark
+    public Course findCourseByName() {
+        Teacher teacher = randomTeacher();
+        List<Course> courses = teacher.getCourses();
+        String name = courses.isEmpty() ? "missing" : courses.get(random.nextInt(courses.size())).getName();
+        return DatabaseManager.findCourseByName(teacher, name);
+    }
+
+    @Benchmark
+    public List<Teacher> loadAllTeachers() {
+        return DatabaseManager.loadAllTeachers();
+    }
+
+    @Benchmark
+    public List<Course> loadTeacherCourses() {
+        return DatabaseManager.loadTeacherCourses(randomTeacher());
+    }
+
+    /**
+     * The original "Show All Teachers" assembly: one listing query plus one course query per teacher.
+     */
+    @Benchmark
+    public void showAllTeachersPerTeacherQueries(Blackhole blackhole) {
+        for (Teacher teacher : DatabaseManager.loadAllTeachers()) {
+            blackhole.consume(DatabaseManager.loadTeacherCourses(teacher));
+        }
+    }
+
+    @Benchmark
+    public List<Teacher> showAllTeachersJoined() {
+        return DatabaseManager.loadAllTeachersWithCourses();
+    }
+
+    /**
+     * What the paged teachers view fetches to render its first screen.
+     */
+    @Benchmark
+    public List<Object[]> showAllTeachersFirstPage() throws Exception {
+        return DatabaseManager.loadPage(PageQuery.teachers(), null, 200);
+    }
+}
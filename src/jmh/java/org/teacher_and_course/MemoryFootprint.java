@@ -0,0 +1,138 @@
+package org.teacher_and_course;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Measures the heap retained by each way of holding the whole dataset, at a fixed size. Seeds a
+ * database whose teacher names repeat, as real rosters do, then for each form loads everything,
+ * forces garbage collection and reports the growth of the used heap. The first row rebuilds the
+ * per-row objects the loaders produced before {@link Roster}: a {@code String} per row and a
+ * course list for every teacher. Run with:
+ * <pre>
+ * mvn -P benchmarks compile exec:exec -Dbenchmarks.main=org.teacher_and_course.MemoryFootprint \
+ *     -Dbenchmarks.args="--teachers 200000 --courses 5000 --per-teacher 4"
+ * </pre>
+ */
+public class MemoryFootprint {
+    private static final String[] FIRST_NAMES = {"Ann", "Bob", "Cleo", "Dan", "Eve", "Finn", "Gus", "Hana", "Ivan", "Jo",
+            "Kim", "Lena", "Max", "Nora", "Otto", "Pia", "Quinn", "Rosa", "Sam", "Tara"};
+    private static final int REPEATS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int teacherCount = intOption(args, "--teachers", 200_000);
+        int courseCount = intOption(args, "--courses", 5_000);
+        int perTeacher = intOption(args, "--per-teacher", 4);
+        Path directory = Files.createDirectories(Path.of(option(args, "--dir", "target/footprint")));
+        Path database = directory.resolve("school.db").toAbsolutePath();
+        for (String suffix : new String[]{"", "-wal", "-shm"}) {
+            Files.deleteIfExists(Path.of(database + suffix));
+        }
+        DatabaseManager.useDatabase("jdbc:sqlite:" + database, 4);
+        DatabaseManager.createTables();
+        seed(teacherCount, courseCount, perTeacher);
+        System.out.printf(Locale.ROOT, "%d teachers, %d courses, %d assignments%n",
+                teacherCount, courseCount, DatabaseManager.loadAssignments().length);
+
+        measure("per-row objects (before)", MemoryFootprint::perRowObjects, teacherCount);
+        measure("loadAllTeachers", DatabaseManager::loadAllTeachers, teacherCount);
+        measure("loadAllTeachersWithCourses", DatabaseManager::loadAllTeachersWithCourses, teacherCount);
+        measure("loadRoster", DatabaseManager::loadRoster, teacherCount);
+        measure("warm cache", () -> {
+            SchoolManagementSystem system = new SchoolManagementSystem(Integer.MAX_VALUE, Integer.MAX_VALUE);
+            system.warmUp();
+            return system;
+        }, teacherCount);
+        DatabaseManager.close();
+    }
+
+    private static void seed(int teacherCount, int courseCount, int perTeacher) throws Exception {
+        Random random = new Random(42);
+        List<Teacher> teachers = new ArrayList<>(teacherCount);
+        for (int i = 0; i < teacherCount; i++) {
+            teachers.add(new Teacher(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " " + (char) ('A' + random.nextInt(26))
+                    + "-" + random.nextInt(40), 25 + random.nextInt(40)));
+        }
+        List<Course> courses = new ArrayList<>(courseCount);
+        for (int i = 0; i < courseCount; i++) {
+            courses.add(new Course("Course " + i, 1 + random.nextInt(8)));
+        }
+        BulkImporter.saveTeachers(teachers);
+        BulkImporter.saveCourses(courses);
+        try (PooledConnection connection = DatabaseManager.acquireWriter()) {
+            connection.getConnection().setAutoCommit(false);
+            PreparedStatement statement = connection.prepare("INSERT OR IGNORE INTO teacher_course (teacher_id, course_id) VALUES (?, ?)");
+            for (Teacher teacher : teachers) {
+                for (int i = 0; i < perTeacher; i++) {
+                    statement.setInt(1, teacher.getId());
+                    statement.setInt(2, courses.get(random.nextInt(courses.size())).getId());
+                    statement.addBatch();
+                }
+            }
+            statement.executeBatch();
+            connection.getConnection().commit();
+            connection.getConnection().setAutoCommit(true);
+        }
+    }
+
+    // The loaders' output before names were shared and course lists were created on demand.
+    private static List<Teacher> perRowObjects() {
+        List<Teacher> teachers = DatabaseManager.loadAllTeachersWithCourses();
+        List<Teacher> copies = new ArrayList<>(teachers.size());
+        for (Teacher teacher : teachers) {
+            Teacher copy = new Teacher(new String(teacher.getFullName()), teacher.getAge());
+            copy.setId(teacher.getId());
+            copy.setCourses(new ArrayList<>());
+            for (Course course : teacher.getCourses()) {
+                copy.addCourse(course);
+            }
+            copies.add(copy);
+        }
+        return copies;
+    }
+
+    private static void measure(String name, Supplier<?> load, int teacherCount) throws InterruptedException {
+        long[] bytes = new long[REPEATS];
+        for (int i = 0; i < REPEATS; i++) {
+            long before = usedHeapAfterGc();
+            Object loaded = load.get();
+            bytes[i] = usedHeapAfterGc() - before;
+            Reference.reachabilityFence(loaded);
+        }
+        Arrays.sort(bytes);
+        long median = bytes[REPEATS / 2];
+        System.out.printf(Locale.ROOT, "%-28s %8.1f MiB %6.1f bytes/teacher%n",
+                name, median / 1048576.0, (double) median / teacherCount);
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static String option(String[] args, String name, String defaultValue) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(name)) {
+                return args[i + 1];
+            }
+        }
+        return defaultValue;
+    }
+
+    private static int intOption(String[] args, String name, int defaultValue) {
+        String value = option(args, name, null);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+}
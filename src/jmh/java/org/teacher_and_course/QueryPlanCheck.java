@@ -0,0 +1,215 @@
+package org.teacher_and_course;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Plan regression check for the queries in {@link DatabaseManager}. Seeds a database, runs every
+ * operation with the {@link QueryLog} reporting all statements, and checks each captured
+ * {@code EXPLAIN QUERY PLAN}: a table with at least {@code --large} rows may only be read without
+ * an index by a statement that asks for the whole of it, as the outer loop, and never through an
+ * automatic index or from an inner loop. Run with:
+ * <pre>
+ * mvn -P benchmarks compile exec:exec -Dbenchmarks.main=org.teacher_and_course.QueryPlanCheck \
+ *     -Dbenchmarks.args="--teachers 20000 --courses 2000 --per-teacher 3 --large 1000"
+ * </pre>
+ * Prints every plan with {@code --verbose}. Exits non-zero if any statement failed the check.
+ */
+public class QueryPlanCheck {
+    private interface Operation {
+        void run() throws Exception;
+    }
+
+    private static final Map<String, Captured> STATEMENTS = new LinkedHashMap<>();
+    private static String currentOperation;
+
+    private static final class Captured {
+        final String operation;
+        final QueryLog.SlowQuery query;
+
+        Captured(String operation, QueryLog.SlowQuery query) {
+            this.operation = operation;
+            this.query = query;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int teacherCount = intOption(args, "--teachers", 20_000);
+        int courseCount = intOption(args, "--courses", 2_000);
+        int perTeacher = intOption(args, "--per-teacher", 3);
+        int large = intOption(args, "--large", 1000);
+        boolean verbose = List.of(args).contains("--verbose");
+
+        BenchmarkDatabase database = BenchmarkDatabase.create(teacherCount, courseCount, perTeacher);
+        Map<String, Long> rowCounts = rowCounts();
+        QueryLog.setListener(query -> STATEMENTS.putIfAbsent(query.getSql(), new Captured(currentOperation, query)));
+        QueryLog.setThresholdMillis(0);
+
+        Teacher teacher = database.getTeachers().get(teacherCount / 2);
+        Course course = teacher.getCourses().get(0);
+        Teacher other = database.getTeachers().get(teacherCount / 3);
+        Map<String, Operation> operations = new LinkedHashMap<>();
+        operations.put("saveTeacher", () -> DatabaseManager.saveTeacher(new Teacher("Plan Check", 40)));
+        operations.put("saveCourse", () -> DatabaseManager.saveCourse(new Course("Plan Check", 3)));
+        operations.put("saveTeacherCourse", () -> DatabaseManager.saveTeacherCourse(other.getId(), course.getId()));
+        operations.put("loadAllTeachers", DatabaseManager::loadAllTeachers);
+        operations.put("loadAllTeachersWithCourses", DatabaseManager::loadAllTeachersWithCourses);
+        operations.put("countTeachers", DatabaseManager::countTeachers);
+        operations.put("loadTeachersAfter", () -> DatabaseManager.loadTeachersAfter(teacher.getId(), 50));
+        operations.put("loadCoursesAfter", () -> DatabaseManager.loadCoursesAfter(course.getId(), 50));
+        operations.put("loadAssignments", DatabaseManager::loadAssignments);
+        operations.put("loadRoster", DatabaseManager::loadRoster);
+        operations.put("loadAllCourses", DatabaseManager::loadAllCourses);
+        operations.put("findTeacherByName", () -> DatabaseManager.findTeacherByName(teacher.getFullName()));
+        operations.put("findTeacherById", () -> DatabaseManager.findTeacherById(teacher.getId()));
+        operations.put("findCourseById", () -> DatabaseManager.findCourseById(course.getId()));
+        operations.put("findCourseByName", () -> DatabaseManager.findCourseByName(course.getName()));
+        operations.put("findTeacherCourseByName", () -> DatabaseManager.findCourseByName(teacher, course.getName()));
+        operations.put("loadTeacherCourses", () -> DatabaseManager.loadTeacherCourses(teacher));
+        operations.put("paging", QueryPlanCheck::paging);
+        operations.put("updateTeacher", () -> DatabaseManager.updateTeacher(teacher));
+        operations.put("updateCourse", () -> DatabaseManager.updateCourse(course));
+        operations.put("applyReassignments", () -> DatabaseManager.applyReassignments(
+                List.of(new LoadBalancer.Move(course.getId(), course.getHours(), other.getId(), teacher.getId()))));
+        operations.put("removeTeacherCourse", () -> DatabaseManager.removeTeacherCourse(teacher, course));
+        operations.put("removeTeacher", () -> DatabaseManager.removeTeacher(other));
+        operations.put("removeCourse", () -> DatabaseManager.removeCourse(course));
+        for (Map.Entry<String, Operation> operation : operations.entrySet()) {
+            currentOperation = operation.getKey();
+            operation.getValue().run();
+        }
+        QueryLog.setThresholdMillis(-1);
+
+        int failures = 0;
+        for (Map.Entry<String, Captured> statement : STATEMENTS.entrySet()) {
+            List<String> problems = problems(statement.getKey(), statement.getValue().query.getPlan(), rowCounts, large);
+            if (!problems.isEmpty()) {
+                failures++;
+            }
+            System.out.printf(Locale.ROOT, "%s %-26s %s%n", problems.isEmpty() ? "PASS" : "FAIL",
+                    statement.getValue().operation, statement.getKey());
+            for (String problem : problems) {
+                System.out.println("     " + problem);
+            }
+            if (verbose) {
+                for (String step : statement.getValue().query.getPlan()) {
+                    System.out.println("       | " + step);
+                }
+            }
+        }
+        database.close();
+        System.out.println(failures == 0 ? "All " + STATEMENTS.size() + " statements use an index."
+                : failures + " of " + STATEMENTS.size() + " statements failed.");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    private static void paging() throws Exception {
+        for (PageQuery listing : List.of(PageQuery.teachers(), PageQuery.courses())) {
+            for (int column = 0; listing.isSortable(column); column++) {
+                for (boolean descending : new boolean[]{false, true}) {
+                    for (String prefix : new String[]{null, "Teacher 1", "Course 1"}) {
+                        PageQuery query = listing.withSort(column, descending).withNamePrefix(prefix);
+                        int count = DatabaseManager.countPage(query);
+                        List<Object[]> page = DatabaseManager.loadPage(query, null, 50);
+                        if (!page.isEmpty()) {
+                            DatabaseManager.loadPage(query, query.keyOf(page.get(page.size() - 1)), 50);
+                        }
+                        DatabaseManager.pageKeyAt(query, 100);
+                        // Seeks that run out on one side of the NULL sort values and cross over.
+                        DatabaseManager.loadPage(query, new Object[]{null, 0}, 50);
+                        if (count > 0) {
+                            DatabaseManager.loadPage(query, DatabaseManager.pageKeyAt(query, count - 1), 50);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * What is wrong with the plan, or nothing if every large table is read through an index.
+     */
+    private static List<String> problems(String sql, List<String> plan, Map<String, Long> rowCounts, int large) {
+        List<String> problems = new ArrayList<>();
+        boolean outerLoop = true;
+        for (String line : plan) {
+            String step = line.strip();
+            boolean nested = line.startsWith(" ");
+            if (!step.startsWith("SCAN ") && !step.startsWith("SEARCH ")) {
+                continue;
+            }
+            String[] words = step.split(" ");
+            String table = words[1].equals("TABLE") ? words[2] : words[1];
+            boolean isLarge = rowCounts.getOrDefault(table, 0L) >= large;
+            if (isLarge && step.contains("AUTOMATIC")) {
+                problems.add("builds an automatic index: " + step);
+            } else if (isLarge && step.startsWith("SCAN ")) {
+                if (nested || !outerLoop) {
+                    problems.add("scans a large table in an inner loop: " + step);
+                } else if (!step.contains(" USING ") && hasOuterWhere(sql)) {
+                    problems.add("scans a large table to filter it: " + step);
+                }
+            }
+            if (!nested) {
+                outerLoop = false;
+            }
+        }
+        return problems;
+    }
+
+    // Whether the outermost SELECT, UPDATE or DELETE has a WHERE clause of its own.
+    private static boolean hasOuterWhere(String sql) {
+        String upper = sql.toUpperCase(Locale.ROOT);
+        int depth = 0;
+        for (int i = 0; i < upper.length(); i++) {
+            char c = upper.charAt(i);
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (depth == 0 && upper.startsWith("WHERE", i) && (i == 0 || upper.charAt(i - 1) == ' ')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Map<String, Long> rowCounts() throws Exception {
+        Map<String, Long> counts = new HashMap<>();
+        List<String> tables = new ArrayList<>();
+        try (PooledConnection connection = DatabaseManager.acquire()) {
+            try (ResultSet resultSet = connection.prepare("SELECT name FROM sqlite_master WHERE type = 'table'").executeQuery()) {
+                while (resultSet.next()) {
+                    tables.add(resultSet.getString(1));
+                }
+            }
+            for (String table : tables) {
+                PreparedStatement statement = connection.prepare("SELECT COUNT(*) FROM \"" + table + "\"");
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    counts.put(table, resultSet.next() ? resultSet.getLong(1) : 0);
+                }
+            }
+        }
+        return counts;
+    }
+
+    private static String option(String[] args, String name, String defaultValue) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(name)) {
+                return args[i + 1];
+            }
+        }
+        return defaultValue;
+    }
+
+    private static int intOption(String[] args, String name, int defaultValue) {
+        String value = option(args, name, null);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+}
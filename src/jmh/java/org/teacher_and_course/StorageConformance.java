@@ -0,0 +1,782 @@
+package org.teacher_and_course;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+
+/**
+ * Conformance suite for {@link StorageEngine} implementations. Every check runs against a fresh
+ * instance of each engine: the SQLite database, the in-memory engine, and the in-memory engine with
+ * a journal, which is also closed and replayed. A seeded random workload is then run against every
+ * engine and the resulting data compared between them. Run with:
+ * <pre>
+ * mvn -P benchmarks compile exec:exec -Dbenchmarks.main=org.teacher_and_course.StorageConformance \
+ *     -Dbenchmarks.args="--engines sqlite,memory,journal --ops 3000 --threads 8"
+ * </pre>
+ * Exits non-zero if any check failed.
+ */
+public class StorageConformance {
+    private static final String[] FIRST_NAMES = {"Ann", "Bob", "Cleo", "Dan", "Eve", "Finn", "Gus", "Hana"};
+    private static final String[] COURSE_NAMES = {"Algebra", "Biology", "Chemistry", "Drawing", "Economics", "French"};
+
+    private interface Check {
+        void run(StorageEngine engine) throws Exception;
+    }
+
+    private static Path workDirectory;
+    private static int failures;
+
+    public static void main(String[] args) throws Exception {
+        List<String> engines = List.of(option(args, "--engines", "sqlite,memory,journal").split(","));
+        int ops = intOption(args, "--ops", 3000);
+        int threads = intOption(args, "--threads", 8);
+        long seed = Long.parseLong(option(args, "--seed", "42"));
+        workDirectory = Files.createDirectories(Path.of(option(args, "--dir", "target/conformance")));
+        DatabaseManager.setFailureListener((operation, error) -> { });
+
+        Map<String, Check> checks = new LinkedHashMap<>();
+        checks.put("teachers", StorageConformance::teachers);
+        checks.put("courseCatalog", StorageConformance::courseCatalog);
+        checks.put("assignments", StorageConformance::assignments);
+        checks.put("updates", StorageConformance::updates);
+        checks.put("removals", StorageConformance::removals);
+        checks.put("replacements", StorageConformance::replacements);
+        checks.put("reassignments", StorageConformance::reassignments);
+        checks.put("nullNames", StorageConformance::nullNames);
+        checks.put("listings", StorageConformance::listings);
+        checks.put("paging", StorageConformance::paging);
+        checks.put("httpPaging", StorageConformance::httpPaging);
+        checks.put("search", StorageConformance::search);
+        checks.put("concurrency", engine -> concurrency(engine, threads, ops / threads + 1, seed));
+
+        for (String engineName : engines) {
+            for (Map.Entry<String, Check> check : checks.entrySet()) {
+                run(engineName, check.getKey(), check.getValue());
+            }
+            if (engineName.equals("journal")) {
+                run(engineName, "journalReplay", engine -> journalReplay(ops, seed));
+            }
+        }
+
+        Map<String, String> fingerprints = new LinkedHashMap<>();
+        for (String engineName : engines) {
+            run(engineName, "workload", engine -> fingerprints.put(engineName, workload(engine, ops, seed)));
+        }
+        String reference = fingerprints.values().stream().findFirst().orElse(null);
+        boolean same = fingerprints.values().stream().allMatch(fingerprint -> fingerprint.equals(reference));
+        report("all", "sameResults", same ? null : "engines ended the workload with different data");
+
+        System.out.println(failures == 0 ? "All checks passed." : failures + " checks failed.");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    private static void run(String engineName, String checkName, Check check) {
+        StorageEngine engine = null;
+        String failure = null;
+        try {
+            engine = open(engineName, checkName, true);
+            check.run(engine);
+        } catch (Exception | AssertionError e) {
+            failure = e.toString();
+        } finally {
+            if (engine != null) {
+                engine.close();
+            }
+        }
+        report(engineName, checkName, failure);
+    }
+
+    private static void report(String engineName, String checkName, String failure) {
+        if (failure == null) {
+            System.out.printf("PASS %-8s %s%n", engineName, checkName);
+        } else {
+            failures++;
+            System.out.printf("FAIL %-8s %s: %s%n", engineName, checkName, failure);
+        }
+    }
+
+    private static StorageEngine open(String engineName, String checkName, boolean fresh) throws IOException {
+        switch (engineName) {
+            case "sqlite":
+                Path database = workDirectory.resolve(checkName + ".db").toAbsolutePath();
+                if (fresh) {
+                    for (String suffix : new String[]{"", "-wal", "-shm"}) {
+                        Files.deleteIfExists(Path.of(database + suffix));
+                    }
+                }
+                DatabaseManager.useDatabase("jdbc:sqlite:" + database, 4);
+                StorageEngine.sqlite().createTables();
+                return StorageEngine.sqlite();
+            case "memory":
+                return new InMemoryStorageEngine();
+            case "journal":
+                Path journal = workDirectory.resolve(checkName + ".journal");
+                if (fresh) {
+                    Files.deleteIfExists(journal);
+                }
+                return new InMemoryStorageEngine(journal, false);
+            default:
+                throw new IllegalArgumentException("Unknown engine " + engineName + "; expected sqlite, memory or journal");
+        }
+    }
+
+    private static void teachers(StorageEngine engine) {
+        Teacher first = new Teacher("Ann Lee", 40);
+        Teacher namesake = new Teacher("Ann Lee", 50);
+        Teacher other = new Teacher("Bob Stone", 30);
+        int firstId = engine.saveTeacher(first);
+        int namesakeId = engine.saveTeacher(namesake);
+        int otherId = engine.saveTeacher(other);
+        check(firstId > 0 && namesakeId > 0 && otherId > 0, "saveTeacher returned ids " + firstId + ", " + namesakeId + ", " + otherId);
+        check(first.getId() == firstId, "saveTeacher did not set the id");
+        check(firstId != namesakeId && namesakeId != otherId && firstId != otherId, "saveTeacher reused an id");
+        Teacher found = engine.findTeacherById(otherId);
+        check(found != null && found.getFullName().equals("Bob Stone") && found.getAge() == 30, "findTeacherById returned " + describe(found));
+        Teacher byName = engine.findTeacherByName("Ann Lee");
+        check(byName != null && byName.getId() == Math.min(firstId, namesakeId), "findTeacherByName did not return the lowest id");
+        check(engine.findTeacherById(Math.max(otherId, namesakeId) + 1000) == null, "findTeacherById found a missing id");
+        check(engine.findTeacherByName("Nobody") == null, "findTeacherByName found a missing name");
+        check(engine.countTeachers() == 3, "countTeachers returned " + engine.countTeachers());
+    }
+
+    private static void courseCatalog(StorageEngine engine) {
+        int math = engine.saveCourse(new Course("Math", 3));
+        Course again = new Course("Math", 3);
+        int mathAgain = engine.saveCourse(again);
+        int longMath = engine.saveCourse(new Course("Math", 4));
+        check(math > 0 && longMath > 0, "saveCourse returned ids " + math + ", " + longMath);
+        check(mathAgain == math && again.getId() == math, "saving an existing course did not return its id");
+        check(longMath != math, "courses with different hours share an id");
+        check(engine.loadAllCourses().size() == 2, "the catalog holds " + engine.loadAllCourses().size() + " courses");
+        Course byName = engine.findCourseByName("Math");
+        check(byName != null && byName.getId() == Math.min(math, longMath), "findCourseByName did not return the lowest id");
+        Course byId = engine.findCourseById(longMath);
+        check(byId != null && byId.getName().equals("Math") && byId.getHours() == 4, "findCourseById returned " + describe(byId));
+        check(engine.findCourseById(longMath + 1000) == null, "findCourseById found a missing id");
+    }
+
+    private static void assignments(StorageEngine engine) {
+        Teacher teacher = new Teacher("Cleo", 35);
+        engine.saveTeacher(teacher);
+        Course biology = new Course("Biology", 2);
+        Course algebra = new Course("Algebra", 5);
+        engine.saveCourse(biology);
+        engine.saveCourse(algebra);
+        check(engine.saveTeacherCourse(teacher.getId(), algebra.getId()), "saveTeacherCourse failed");
+        check(engine.saveTeacherCourse(teacher.getId(), biology.getId()), "saveTeacherCourse failed");
+        check(engine.saveTeacherCourse(teacher.getId(), biology.getId()), "repeating an assignment failed");
+        check(!engine.saveTeacherCourse(teacher.getId() + 1000, biology.getId()), "assigned a course to a missing teacher");
+        check(!engine.saveTeacherCourse(teacher.getId(), algebra.getId() + 1000), "assigned a missing course");
+        List<Integer> courseIds = ids(engine.loadTeacherCourses(teacher));
+        List<Integer> expected = new ArrayList<>(List.of(biology.getId(), algebra.getId()));
+        expected.sort(null);
+        check(courseIds.equals(expected), "loadTeacherCourses returned " + courseIds + ", expected " + expected);
+        Course found = engine.findCourseByName(teacher, "Algebra");
+        check(found != null && found.getId() == algebra.getId(), "findCourseByName(teacher) returned " + describe(found));
+        check(engine.findCourseByName(teacher, "Chemistry") == null, "findCourseByName(teacher) found an unassigned course");
+        long[] pairs = engine.loadAssignments();
+        long[] expectedPairs = {pair(teacher.getId(), expected.get(0)), pair(teacher.getId(), expected.get(1))};
+        check(Arrays.equals(pairs, expectedPairs), "loadAssignments returned " + Arrays.toString(pairs));
+    }
+
+    private static void updates(StorageEngine engine) {
+        Teacher teacher = new Teacher("Dan", 28);
+        engine.saveTeacher(teacher);
+        teacher.setFullName("Daniel");
+        teacher.setAge(29);
+        check(engine.updateTeacher(teacher), "updateTeacher failed");
+        Teacher found = engine.findTeacherById(teacher.getId());
+        check(found.getFullName().equals("Daniel") && found.getAge() == 29, "updateTeacher left " + describe(found));
+        check(engine.findTeacherByName("Dan") == null, "the old name still finds the teacher");
+        check(engine.findTeacherByName("Daniel") != null, "the new name does not find the teacher");
+        Teacher missing = new Teacher("Nobody", 1);
+        missing.setId(teacher.getId() + 1000);
+        check(!engine.updateTeacher(missing), "updateTeacher changed a missing teacher");
+
+        Course drawing = new Course("Drawing", 2);
+        Course french = new Course("French", 3);
+        engine.saveCourse(drawing);
+        engine.saveCourse(french);
+        drawing.setName("Painting");
+        check(engine.updateCourse(drawing), "updateCourse failed");
+        check(engine.findCourseByName("Painting") != null && engine.findCourseByName("Drawing") == null, "updateCourse did not rename");
+        Course clash = new Course("French", 3);
+        clash.setId(drawing.getId());
+        check(!engine.updateCourse(clash), "updateCourse allowed two courses with the same name and hours");
+        check(engine.findCourseById(drawing.getId()).getName().equals("Painting"), "a rejected updateCourse changed the course");
+        check(engine.saveCourse(new Course("Drawing", 2)) != drawing.getId(), "a renamed course still answers to its old name");
+        Course missingCourse = new Course("Nothing", 1);
+        missingCourse.setId(french.getId() + 1000);
+        check(!engine.updateCourse(missingCourse), "updateCourse changed a missing course");
+    }
+
+    private static void removals(StorageEngine engine) {
+        Teacher eve = new Teacher("Eve", 45);
+        Teacher finn = new Teacher("Finn", 33);
+        engine.saveTeacher(eve);
+        engine.saveTeacher(finn);
+        Course chemistry = new Course("Chemistry", 4);
+        Course economics = new Course("Economics", 2);
+        engine.saveCourse(chemistry);
+        engine.saveCourse(economics);
+        for (Teacher teacher : List.of(eve, finn)) {
+            engine.saveTeacherCourse(teacher.getId(), chemistry.getId());
+            engine.saveTeacherCourse(teacher.getId(), economics.getId());
+        }
+        check(engine.removeTeacherCourse(eve, economics), "removeTeacherCourse failed");
+        check(!engine.removeTeacherCourse(eve, economics), "removeTeacherCourse removed an assignment twice");
+        check(ids(engine.loadTeacherCourses(eve)).equals(List.of(chemistry.getId())), "removeTeacherCourse left " + ids(engine.loadTeacherCourses(eve)));
+
+        check(engine.removeCourse(chemistry), "removeCourse failed");
+        check(!engine.removeCourse(chemistry), "removeCourse removed a course twice");
+        check(engine.findCourseById(chemistry.getId()) == null, "a removed course is still found");
+        check(engine.loadTeacherCourses(eve).isEmpty(), "removing a course left it assigned");
+        check(ids(engine.loadTeacherCourses(finn)).equals(List.of(economics.getId())), "removing a course changed other assignments");
+
+        check(engine.removeTeacher(finn), "removeTeacher failed");
+        check(!engine.removeTeacher(finn), "removeTeacher removed a teacher twice");
+        check(engine.findTeacherById(finn.getId()) == null && engine.findTeacherByName("Finn") == null, "a removed teacher is still found");
+        check(engine.loadAssignments().length == 0, "removing a teacher left assignments " + Arrays.toString(engine.loadAssignments()));
+        check(engine.countTeachers() == 1, "countTeachers returned " + engine.countTeachers());
+    }
+
+    private static void replacements(StorageEngine engine) {
+        Teacher gus = new Teacher("Gus", 50);
+        engine.saveTeacher(gus);
+        Course french = new Course("French", 3);
+        engine.saveCourse(french);
+        engine.saveTeacherCourse(gus.getId(), french.getId());
+        Course longFrench = new Course("French", 4);
+        check(engine.replaceTeacherCourse(gus, french, longFrench), "replaceTeacherCourse failed");
+        check(longFrench.getId() > 0 && longFrench.getId() != french.getId(), "replaceTeacherCourse did not save the new course");
+        check(ids(engine.loadTeacherCourses(gus)).equals(List.of(longFrench.getId())), "replaceTeacherCourse left " + ids(engine.loadTeacherCourses(gus)));
+        check(engine.findCourseById(french.getId()) != null, "replaceTeacherCourse removed the old course from the catalog");
+
+        check(!engine.replaceTeacherCourse(gus, french, new Course("German", 3)), "replaced a course the teacher does not have");
+        check(engine.findCourseByName("German") == null, "a failed replacement saved its course");
+        Teacher missing = new Teacher("Nobody", 1);
+        missing.setId(gus.getId() + 1000);
+        check(!engine.replaceTeacherCourse(missing, longFrench, new Course("German", 3)), "replaced a course of a missing teacher");
+
+        Course same = new Course("French", 4);
+        check(engine.replaceTeacherCourse(gus, longFrench, same) && same.getId() == longFrench.getId(), "replacing a course with itself failed");
+        check(ids(engine.loadTeacherCourses(gus)).equals(List.of(longFrench.getId())), "replacing a course with itself left " + ids(engine.loadTeacherCourses(gus)));
+    }
+
+    private static void reassignments(StorageEngine engine) {
+        List<Teacher> teachers = new ArrayList<>();
+        for (String name : List.of("Hana", "Ivo", "Jan")) {
+            Teacher teacher = new Teacher(name, 40);
+            engine.saveTeacher(teacher);
+            teachers.add(teacher);
+        }
+        Course history = new Course("History", 3);
+        Course music = new Course("Music", 2);
+        engine.saveCourse(history);
+        engine.saveCourse(music);
+        int hana = teachers.get(0).getId();
+        int ivo = teachers.get(1).getId();
+        int jan = teachers.get(2).getId();
+        engine.saveTeacherCourse(hana, history.getId());
+        engine.saveTeacherCourse(ivo, music.getId());
+        long[] before = engine.loadAssignments();
+
+        check(!engine.applyReassignments(List.of(new LoadBalancer.Move(history.getId(), 3, hana, jan),
+                new LoadBalancer.Move(music.getId(), 2, jan, hana))), "moved an assignment that does not exist");
+        check(!engine.applyReassignments(List.of(new LoadBalancer.Move(history.getId(), 3, hana, jan + 1000))), "moved an assignment to a missing teacher");
+        check(Arrays.equals(engine.loadAssignments(), before), "a rejected plan changed assignments " + Arrays.toString(engine.loadAssignments()));
+
+        // Hana's course goes to Ivo while Ivo's goes on to Jan.
+        check(engine.applyReassignments(List.of(new LoadBalancer.Move(history.getId(), 3, hana, ivo),
+                new LoadBalancer.Move(music.getId(), 2, ivo, jan))), "applyReassignments failed");
+        long[] expected = {(long) ivo << 32 | history.getId(), (long) jan << 32 | music.getId()};
+        check(Arrays.equals(engine.loadAssignments(), expected), "applyReassignments left " + Arrays.toString(engine.loadAssignments()));
+        check(!engine.applyReassignments(List.of(new LoadBalancer.Move(music.getId(), 2, jan, ivo),
+                new LoadBalancer.Move(history.getId(), 3, jan, ivo))), "a plan with a stale move was applied");
+        check(Arrays.equals(engine.loadAssignments(), expected), "a rejected plan changed assignments " + Arrays.toString(engine.loadAssignments()));
+    }
+
+    private static void nullNames(StorageEngine engine) {
+        Teacher nameless = new Teacher(null, 40);
+        check(engine.saveTeacher(nameless) > 0, "saveTeacher failed without a name");
+        Teacher found = engine.findTeacherById(nameless.getId());
+        check(found != null && found.getFullName() == null, "findTeacherById returned " + describe(found));
+        check(engine.findTeacherByName(null) == null, "findTeacherByName found a null name");
+        nameless.setFullName("Named");
+        check(engine.updateTeacher(nameless) && engine.findTeacherByName("Named") != null, "naming a nameless teacher failed");
+        nameless.setFullName(null);
+        check(engine.updateTeacher(nameless) && engine.findTeacherByName("Named") == null, "unnaming a teacher left its name");
+
+        Course first = new Course(null, 2);
+        Course second = new Course(null, 2);
+        check(engine.saveCourse(first) > 0 && engine.saveCourse(second) > 0, "saveCourse failed without a name");
+        check(first.getId() != second.getId(), "courses without a name share an id");
+        check(engine.findCourseByName(null) == null, "findCourseByName found a null name");
+        check(engine.saveTeacherCourse(nameless.getId(), first.getId()), "assigning a nameless course failed");
+        check(engine.findCourseByName(nameless, null) == null, "findCourseByName(teacher) found a null name");
+        check(engine.searchTeachers("Nam", 10).isEmpty(), "search matched a teacher without a name");
+    }
+
+    private static void listings(StorageEngine engine) {
+        Random random = new Random(7);
+        List<Integer> courseIds = new ArrayList<>();
+        for (String name : COURSE_NAMES) {
+            courseIds.add(engine.saveCourse(new Course(name, 1 + random.nextInt(5))));
+        }
+        Map<Integer, List<Integer>> assigned = new LinkedHashMap<>();
+        for (int i = 0; i < 50; i++) {
+            Teacher teacher = new Teacher(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " " + i, 20 + random.nextInt(40));
+            engine.saveTeacher(teacher);
+            TreeSet<Integer> courses = new TreeSet<>();
+            for (int k = random.nextInt(4); k > 0; k--) {
+                int courseId = courseIds.get(random.nextInt(courseIds.size()));
+                engine.saveTeacherCourse(teacher.getId(), courseId);
+                courses.add(courseId);
+            }
+            assigned.put(teacher.getId(), new ArrayList<>(courses));
+        }
+        List<Teacher> all = engine.loadAllTeachers();
+        check(ids(all).equals(new ArrayList<>(assigned.keySet())), "loadAllTeachers is not in id order");
+        List<Integer> walked = new ArrayList<>();
+        for (List<Teacher> page = engine.loadTeachersAfter(0, 7); !page.isEmpty();
+             page = engine.loadTeachersAfter(page.get(page.size() - 1).getId(), 7)) {
+            check(page.size() <= 7, "loadTeachersAfter returned more than the limit");
+            walked.addAll(ids(page));
+        }
+        check(walked.equals(ids(all)), "loadTeachersAfter pages differ from loadAllTeachers");
+        List<Integer> walkedCourses = ids(engine.loadCoursesAfter(courseIds.get(1), 100));
+        check(walkedCourses.equals(ids(engine.loadAllCourses()).subList(2, courseIds.size())), "loadCoursesAfter returned " + walkedCourses);
+
+        long[] lastProgress = new long[2];
+        List<Teacher> withCourses = engine.loadAllTeachersWithCourses((done, total) -> {
+            lastProgress[0] = done;
+            lastProgress[1] = total;
+        });
+        check(lastProgress[0] == 50 && lastProgress[1] == 50, "progress ended at " + lastProgress[0] + "/" + lastProgress[1]);
+        for (Teacher teacher : withCourses) {
+            List<Integer> courses = ids(teacher.getCourses());
+            courses.sort(null);
+            check(courses.equals(assigned.get(teacher.getId())), "loadAllTeachersWithCourses gave teacher " + teacher.getId() + " courses " + courses);
+        }
+    }
+
+    private static void paging(StorageEngine engine) throws Exception {
+        Random random = new Random(11);
+        List<Object[]> teacherRows = new ArrayList<>();
+        Map<Integer, TreeSet<String>> courseNames = new LinkedHashMap<>();
+        List<Course> courses = new ArrayList<>();
+        List<Object[]> courseRows = new ArrayList<>();
+        for (String name : COURSE_NAMES) {
+            Course course = new Course(name, 1 + random.nextInt(3));
+            engine.saveCourse(course);
+            courses.add(course);
+            courseRows.add(new Object[]{course.getId(), course.getName(), course.getHours()});
+        }
+        for (int i = 0; i < 120; i++) {
+            Teacher teacher = new Teacher(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " " + random.nextInt(30), 20 + random.nextInt(10));
+            engine.saveTeacher(teacher);
+            teacherRows.add(new Object[]{teacher.getId(), teacher.getFullName(), teacher.getAge()});
+            TreeSet<String> names = new TreeSet<>();
+            for (int k = random.nextInt(3); k > 0; k--) {
+                Course course = courses.get(random.nextInt(courses.size()));
+                engine.saveTeacherCourse(teacher.getId(), course.getId());
+                names.add(course.getName());
+            }
+            courseNames.put(teacher.getId(), names);
+        }
+        for (PageQuery base : List.of(PageQuery.teachers(), PageQuery.courses())) {
+            List<Object[]> rows = base.listsTeachers() ? teacherRows : courseRows;
+            for (int column = 0; column < 3; column++) {
+                for (boolean descending : new boolean[]{false, true}) {
+                    for (String prefix : new String[]{null, "B", "Dan 1"}) {
+                        PageQuery query = base.withSort(column, descending).withNamePrefix(prefix);
+                        String label = (base.listsTeachers() ? "teachers" : "courses") + " by " + column
+                                + (descending ? " desc" : "") + (prefix == null ? "" : " prefix " + prefix);
+                        List<Object[]> expected = new ArrayList<>();
+                        for (Object[] row : rows) {
+                            if (prefix == null || ((String) row[1]).startsWith(prefix)) {
+                                expected.add(row);
+                            }
+                        }
+                        expected.sort(Comparator.comparing(query::keyOf, query.keyOrder()));
+                        check(engine.countPage(query) == expected.size(), label + ": countPage returned " + engine.countPage(query));
+
+                        List<Object[]> walked = new ArrayList<>();
+                        Object[] after = null;
+                        for (List<Object[]> page = engine.loadPage(query, null, 9); !page.isEmpty();
+                             page = engine.loadPage(query, after, 9)) {
+                            walked.addAll(page);
+                            after = query.keyOf(page.get(page.size() - 1));
+                        }
+                        check(walked.size() == expected.size(), label + ": pages held " + walked.size() + " rows, expected " + expected.size());
+                        for (int i = 0; i < expected.size(); i++) {
+                            Object[] row = walked.get(i);
+                            check(Arrays.equals(Arrays.copyOf(row, 3), expected.get(i)), label + ": row " + i + " is " + Arrays.toString(row)
+                                    + ", expected " + Arrays.toString(expected.get(i)));
+                            if (base.listsTeachers()) {
+                                TreeSet<String> names = new TreeSet<>();
+                                if (row[3] != null) {
+                                    names.addAll(List.of(((String) row[3]).split(", ")));
+                                }
+                                check(names.equals(courseNames.get((Integer) row[0])), label + ": row " + i + " lists courses " + row[3]);
+                            }
+                        }
+                        if (!expected.isEmpty()) {
+                            int offset = expected.size() / 2;
+                            Object[] key = engine.pageKeyAt(query, offset);
+                            check(Arrays.equals(key, query.keyOf(expected.get(offset))), label + ": pageKeyAt returned " + Arrays.toString(key));
+                        }
+                        check(engine.pageKeyAt(query, expected.size()) == null, label + ": pageKeyAt past the end returned a key");
+                    }
+                }
+            }
+        }
+    }
+
+    // Walks listings through the HTTP server by following each "next", across NULL names and, in
+    // SQLite, NULL ages, which the API itself cannot write.
+    private static void httpPaging(StorageEngine engine) throws Exception {
+        Random random = new Random(13);
+        for (int i = 0; i < 40; i++) {
+            String name = i % 4 == 0 ? null : FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " " + i;
+            engine.saveTeacher(new Teacher(name, 20 + random.nextInt(5)));
+        }
+        if (engine == StorageEngine.sqlite()) {
+            DatabaseManager.write(connection -> connection.prepare("UPDATE teachers SET age = NULL WHERE id % 3 = 0").executeUpdate());
+        }
+        HttpClient client = HttpClient.newHttpClient();
+        try (SchoolHttpServer server = new SchoolHttpServer(new SchoolManagementSystem(engine), 0, 4)) {
+            server.start();
+            for (int column = 0; column < 3; column++) {
+                for (boolean descending : new boolean[]{false, true}) {
+                    PageQuery query = PageQuery.teachers().withoutExtraColumn().withSort(column, descending);
+                    String label = "teachers by " + column + (descending ? " desc" : "");
+                    List<Integer> expected = new ArrayList<>();
+                    Object[] after = null;
+                    for (List<Object[]> page = engine.loadPage(query, null, 1000); !page.isEmpty();
+                         page = engine.loadPage(query, after, 1000)) {
+                        for (Object[] row : page) {
+                            expected.add((Integer) row[0]);
+                        }
+                        after = query.keyOf(page.get(page.size() - 1));
+                    }
+                    check(expected.size() == 40, label + ": loadPage listed " + expected.size() + " teachers");
+
+                    List<Integer> walked = new ArrayList<>();
+                    String parameters = "";
+                    for (int pages = 0; parameters != null; pages++) {
+                        check(pages <= expected.size(), label + ": paging did not end");
+                        String uri = "http://localhost:" + server.getPort() + "/teachers?limit=3&sort="
+                                + List.of("id", "fullName", "age").get(column) + "&desc=" + descending + parameters;
+                        HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(uri)).build(),
+                                HttpResponse.BodyHandlers.ofString());
+                        check(response.statusCode() == 200, label + ": " + uri + " returned " + response.statusCode() + " " + response.body());
+                        String body = response.body();
+                        int next = body.lastIndexOf("],\"next\":");
+                        for (String item : jsonObjects(body.substring("{\"items\":[".length(), next))) {
+                            walked.add(((Long) Json.parseObject(item).get("id")).intValue());
+                        }
+                        String cursor = body.substring(next + "],\"next\":".length(), body.length() - 1);
+                        parameters = cursor.equals("null") ? null : query(Json.parseObject(cursor));
+                    }
+                    check(walked.equals(expected), label + ": HTTP pages listed " + walked + ", expected " + expected);
+                }
+            }
+        }
+    }
+
+    // Splits a run of comma-separated flat JSON objects, as the listing writes its items.
+    private static List<String> jsonObjects(String text) {
+        List<String> objects = new ArrayList<>();
+        boolean quoted = false;
+        int start = -1;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quoted) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == '{') {
+                start = i;
+            } else if (c == '}') {
+                objects.add(text.substring(start, i + 1));
+            }
+        }
+        return objects;
+    }
+
+    private static String query(Map<String, Object> cursor) {
+        StringBuilder query = new StringBuilder();
+        for (Map.Entry<String, Object> field : cursor.entrySet()) {
+            query.append('&').append(field.getKey()).append('=')
+                    .append(URLEncoder.encode(String.valueOf(field.getValue()), StandardCharsets.UTF_8));
+        }
+        return query.toString();
+    }
+
+    private static void search(StorageEngine engine) {
+        for (String name : new String[]{"Joanne Park", "Bob Annerson", "Annabel Smith", "Ann Lee", "Ann Lee", "Zed"}) {
+            engine.saveTeacher(new Teacher(name, 30));
+        }
+        engine.saveCourse(new Course("Annual Review", 1));
+        engine.saveCourse(new Course("Planning", 1));
+        List<String> names = new ArrayList<>();
+        for (Teacher teacher : engine.searchTeachers("ann", 10)) {
+            names.add(teacher.getFullName());
+        }
+        List<String> expected = List.of("Ann Lee", "Ann Lee", "Annabel Smith", "Bob Annerson", "Joanne Park");
+        check(names.equals(expected), "searchTeachers ranked " + names);
+        List<String> suggestions = engine.suggestTeacherNames("ann", 10);
+        check(suggestions.equals(List.of("Ann Lee", "Annabel Smith", "Bob Annerson", "Joanne Park")), "suggestTeacherNames returned " + suggestions);
+        check(engine.searchTeachers("ann", 2).size() == 2, "searchTeachers ignored the limit");
+        List<String> courseNames = new ArrayList<>();
+        for (Course course : engine.searchCourses("ann", 10)) {
+            courseNames.add(course.getName());
+        }
+        check(courseNames.equals(List.of("Annual Review", "Planning")), "searchCourses ranked " + courseNames);
+        check(engine.suggestCourseNames("", 10).isEmpty(), "an empty query matched");
+    }
+
+    // Threads mix every kind of write on shared teachers and courses; afterwards the data must
+    // still be consistent: assignments only between existing rows, listings agreeing with lookups,
+    // and no two courses with the same name and hours.
+    private static void concurrency(StorageEngine engine, int threads, int opsPerThread, long seed) throws Exception {
+        List<Integer> courseIds = new ArrayList<>();
+        for (String name : COURSE_NAMES) {
+            courseIds.add(engine.saveCourse(new Course(name, 2)));
+        }
+        ConcurrentLinkedQueue<Teacher> teachers = new ConcurrentLinkedQueue<>();
+        List<Thread> workers = new ArrayList<>();
+        ConcurrentLinkedQueue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        for (int t = 0; t < threads; t++) {
+            Random random = new Random(seed + t);
+            workers.add(Thread.ofPlatform().start(() -> {
+                try {
+                    for (int i = 0; i < opsPerThread; i++) {
+                        int op = random.nextInt(100);
+                        Teacher some = teachers.peek();
+                        if (op < 30 || some == null) {
+                            Teacher teacher = new Teacher(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)], random.nextInt(60));
+                            if (engine.saveTeacher(teacher) > 0) {
+                                teachers.add(teacher);
+                            }
+                        } else if (op < 65) {
+                            engine.saveTeacherCourse(some.getId(), courseIds.get(random.nextInt(courseIds.size())));
+                        } else if (op < 75) {
+                            Course course = new Course(COURSE_NAMES[random.nextInt(COURSE_NAMES.length)], 1 + random.nextInt(3));
+                            engine.saveCourse(course);
+                            engine.saveTeacherCourse(some.getId(), course.getId());
+                        } else if (op < 85) {
+                            Course course = new Course("", 0);
+                            course.setId(courseIds.get(random.nextInt(courseIds.size())));
+                            engine.removeTeacherCourse(some, course);
+                        } else if (op < 93) {
+                            some.setAge(random.nextInt(60));
+                            engine.updateTeacher(some);
+                        } else if (op < 98) {
+                            Teacher removed = teachers.poll();
+                            if (removed != null) {
+                                engine.removeTeacher(removed);
+                            }
+                        } else {
+                            Course course = engine.findCourseByName(COURSE_NAMES[random.nextInt(COURSE_NAMES.length)]);
+                            if (course != null && course.getHours() != 2) {
+                                engine.removeCourse(course);
+                            }
+                        }
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            }));
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        check(errors.isEmpty(), "a worker threw " + errors.peek());
+
+        List<Teacher> all = engine.loadAllTeachersWithCourses(ProgressListener.NONE);
+        check(engine.countTeachers() == all.size(), "countTeachers returned " + engine.countTeachers() + " for " + all.size() + " teachers");
+        TreeSet<Integer> teacherIds = new TreeSet<>(ids(all));
+        TreeSet<Integer> catalog = new TreeSet<>(ids(engine.loadAllCourses()));
+        TreeSet<String> identities = new TreeSet<>();
+        for (Course course : engine.loadAllCourses()) {
+            check(identities.add(course.getName() + "/" + course.getHours()), "two courses named " + course.getName() + " with " + course.getHours() + " hours");
+        }
+        List<Long> expectedPairs = new ArrayList<>();
+        for (Teacher teacher : all) {
+            for (Course course : teacher.getCourses()) {
+                expectedPairs.add(pair(teacher.getId(), course.getId()));
+            }
+        }
+        expectedPairs.sort(null);
+        List<Long> pairs = new ArrayList<>();
+        for (long pair : engine.loadAssignments()) {
+            pairs.add(pair);
+            check(teacherIds.contains((int) (pair >>> 32)) && catalog.contains((int) pair), "assignment " + (pair >>> 32) + "/" + (int) pair + " refers to a missing row");
+        }
+        check(pairs.equals(expectedPairs), "loadAssignments disagrees with loadAllTeachersWithCourses");
+    }
+
+    // Runs the workload against a journaled engine, then reopens the journal: as written, with a
+    // torn record appended, and after compaction. Each time the data must come back unchanged.
+    private static void journalReplay(int ops, long seed) throws Exception {
+        Path journal = workDirectory.resolve("journalReplay.journal");
+        Files.deleteIfExists(journal);
+        String expected;
+        try (InMemoryStorageEngine engine = new InMemoryStorageEngine(journal, true)) {
+            workload(engine, ops, seed);
+            expected = fingerprint(engine) + ids(engine.loadAllTeachers());
+        }
+        try (InMemoryStorageEngine engine = new InMemoryStorageEngine(journal, false)) {
+            check(expected.equals(fingerprint(engine) + ids(engine.loadAllTeachers())), "replaying the journal changed the data");
+        }
+        Files.write(journal, "T\t999999\t1\tTorn".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        try (InMemoryStorageEngine engine = new InMemoryStorageEngine(journal, false)) {
+            check(expected.equals(fingerprint(engine) + ids(engine.loadAllTeachers())), "a torn record was replayed");
+            engine.compact();
+        }
+        long compacted = Files.size(journal);
+        try (InMemoryStorageEngine engine = new InMemoryStorageEngine(journal, false)) {
+            check(expected.equals(fingerprint(engine) + ids(engine.loadAllTeachers())), "compaction changed the data");
+            Teacher added = new Teacher("After compaction", 1);
+            check(engine.saveTeacher(added) > 0, "saveTeacher failed after compaction");
+            check(engine.saveTeacher(new Teacher(null, 2)) > 0, "saveTeacher failed without a name");
+        }
+        try (InMemoryStorageEngine engine = new InMemoryStorageEngine(journal, false)) {
+            check(engine.findTeacherByName("After compaction") != null, "a write after compaction was lost");
+            check(engine.loadAllTeachers().stream().anyMatch(teacher -> teacher.getFullName() == null), "a teacher without a name was lost");
+        }
+        check(compacted > 0, "the compacted journal is empty");
+    }
+
+    /**
+     * A seeded single-threaded mix of every operation. Rows are picked by their position in the
+     * order they were created, not by id, so the same calls are made whatever ids an engine
+     * assigns. Returns the call results followed by a fingerprint of the final data.
+     */
+    private static String workload(StorageEngine engine, int ops, long seed) {
+        Random random = new Random(seed);
+        List<Teacher> teachers = new ArrayList<>();
+        List<Course> courses = new ArrayList<>();
+        StringBuilder results = new StringBuilder();
+        for (int i = 0; i < ops; i++) {
+            int op = random.nextInt(100);
+            if (op < 20 || teachers.isEmpty()) {
+                Teacher teacher = new Teacher(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " " + random.nextInt(50), random.nextInt(60));
+                results.append(engine.saveTeacher(teacher) > 0 ? 'T' : 't');
+                teachers.add(teacher);
+            } else if (op < 30 || courses.isEmpty()) {
+                Course course = new Course(COURSE_NAMES[random.nextInt(COURSE_NAMES.length)], 1 + random.nextInt(4));
+                results.append(engine.saveCourse(course) > 0 ? 'C' : 'c');
+                courses.add(course);
+            } else if (op < 60) {
+                Teacher teacher = teachers.get(random.nextInt(teachers.size()));
+                Course course = courses.get(random.nextInt(courses.size()));
+                results.append(engine.saveTeacherCourse(teacher.getId(), course.getId()) ? 'A' : 'a');
+            } else if (op < 70) {
+                Teacher teacher = teachers.get(random.nextInt(teachers.size()));
+                Course course = courses.get(random.nextInt(courses.size()));
+                results.append(engine.removeTeacherCourse(teacher, course) ? 'U' : 'u');
+            } else if (op < 80) {
+                Teacher teacher = teachers.get(random.nextInt(teachers.size()));
+                Teacher update = new Teacher(teacher.getFullName() + "'", random.nextInt(60));
+                update.setId(teacher.getId());
+                boolean updated = engine.updateTeacher(update);
+                if (updated) {
+                    teacher.setFullName(update.getFullName());
+                }
+                results.append(updated ? 'E' : 'e');
+            } else if (op < 85) {
+                Course course = courses.get(random.nextInt(courses.size()));
+                Course update = new Course(COURSE_NAMES[random.nextInt(COURSE_NAMES.length)], 1 + random.nextInt(4));
+                update.setId(course.getId());
+                results.append(engine.updateCourse(update) ? 'F' : 'f');
+            } else if (op < 95) {
+                results.append(engine.removeTeacher(teachers.get(random.nextInt(teachers.size()))) ? 'R' : 'r');
+            } else {
+                results.append(engine.removeCourse(courses.get(random.nextInt(courses.size()))) ? 'D' : 'd');
+            }
+        }
+        return results + "\n" + fingerprint(engine);
+    }
+
+    // The data without ids, which engines may assign differently.
+    private static String fingerprint(StorageEngine engine) {
+        TreeSet<String> lines = new TreeSet<>();
+        for (Teacher teacher : engine.loadAllTeachersWithCourses(ProgressListener.NONE)) {
+            TreeSet<String> courses = new TreeSet<>();
+            for (Course course : teacher.getCourses()) {
+                courses.add(course.getName() + "/" + course.getHours());
+            }
+            lines.add("teacher " + teacher.getFullName() + "/" + teacher.getAge() + " " + courses);
+        }
+        for (Course course : engine.loadAllCourses()) {
+            lines.add("course " + course.getName() + "/" + course.getHours());
+        }
+        return lines.size() + " rows\n" + String.join("\n", lines);
+    }
+
+    private static long pair(int teacherId, int courseId) {
+        return (long) teacherId << 32 | courseId;
+    }
+
+    private static List<Integer> ids(List<?> rows) {
+        List<Integer> ids = new ArrayList<>();
+        for (Object row : rows) {
+            ids.add(row instanceof Teacher teacher ? teacher.getId() : ((Course) row).getId());
+        }
+        return ids;
+    }
+
+    private static String describe(Object row) {
+        if (row instanceof Teacher teacher) {
+            return teacher.getId() + " " + teacher.getFullName() + "/" + teacher.getAge();
+        }
+        if (row instanceof Course course) {
+            return course.getId() + " " + course.getName() + "/" + course.getHours();
+        }
+        return String.valueOf(row);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    private static String option(String[] args, String name, String defaultValue) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(name)) {
+                return args[i + 1];
+            }
+        }
+        return defaultValue;
+    }
+
+    private static int intOption(String[] args, String name, int defaultValue) {
+        String value = option(args, name, null);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+}
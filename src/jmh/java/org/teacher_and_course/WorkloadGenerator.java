@@ -0,0 +1,350 @@
+package org.teacher_and_course;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+/**
+ * Fills a database with a synthetic school and then replays a read/write mix against it from many
+ * threads for a fixed time, reporting throughput and latency percentiles per operation. Courses
+ * are drawn with Zipf-distributed popularity, so a few are taught by many teachers, and the
+ * replayed operations pick teachers and courses with the same skew. Run with:
+ * <pre>
+ * mvn -P benchmarks compile exec:exec -Dbenchmarks.main=org.teacher_and_course.WorkloadGenerator \
+ *     -Dbenchmarks.args="--teachers 100000 --courses 2000 --threads 16 --duration 60"
+ * </pre>
+ * Options: {@code --db} (default target/workload.db), {@code --teachers}, {@code --courses},
+ * {@code --courses-per-teacher} (mean), {@code --zipf} (exponent), {@code --threads},
+ * {@code --warmup} and {@code --duration} (seconds), {@code --seed}, {@code --mix} with relative
+ * weights such as {@code lookup=60,list=20,edit=10,churn=10}, and {@code --reuse} to replay against
+ * a database generated earlier instead of regenerating it.
+ */
+public class WorkloadGenerator {
+    private static final int CHUNK_SIZE = 10_000;
+    private static final int PAGE_SIZE = 50;
+    private static final String[] FIRST_NAMES = {"Olivia", "Liam", "Emma", "Noah", "Amelia", "Oliver", "Ava", "Elijah",
+            "Sophia", "Lucas", "Mia", "Levi", "Isabella", "Mateo", "Evelyn", "Ezra", "Harper", "Asher", "Luna", "James"};
+    private static final String[] LAST_NAMES = {"Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller",
+            "Davis", "Rodriguez", "Martinez", "Hernandez", "Lopez", "Gonzalez", "Wilson", "Anderson", "Thomas"};
+    private static final String[] SUBJECTS = {"Algebra", "Biology", "Chemistry", "Drawing", "Economics", "French",
+            "Geography", "History", "Informatics", "Literature", "Music", "Physics", "Spanish", "Statistics"};
+
+    private enum Operation {LOOKUP, LIST, EDIT, CHURN}
+
+    private final SplittableRandom random;
+    private final double zipfExponent;
+    private int[] teacherIds;
+    private String[] teacherNames;
+    private int[] courseIds;
+    private ZipfSampler teacherPopularity;
+    private ZipfSampler coursePopularity;
+
+    private WorkloadGenerator(long seed, double zipfExponent) {
+        this.random = new SplittableRandom(seed);
+        this.zipfExponent = zipfExponent;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path database = Path.of(option(args, "--db", "target/workload.db")).toAbsolutePath();
+        int teachers = Integer.parseInt(option(args, "--teachers", "100000"));
+        int courses = Integer.parseInt(option(args, "--courses", "2000"));
+        int coursesPerTeacher = Integer.parseInt(option(args, "--courses-per-teacher", "3"));
+        double zipf = Double.parseDouble(option(args, "--zipf", "1.1"));
+        int threads = Integer.parseInt(option(args, "--threads", "8"));
+        int warmup = Integer.parseInt(option(args, "--warmup", "5"));
+        int duration = Integer.parseInt(option(args, "--duration", "30"));
+        long seed = Long.parseLong(option(args, "--seed", "42"));
+        Map<Operation, Integer> mix = parseMix(option(args, "--mix", "lookup=60,list=20,edit=10,churn=10"));
+        boolean reuse = Arrays.asList(args).contains("--reuse");
+
+        if (!reuse) {
+            for (String suffix : new String[]{"", "-wal", "-shm"}) {
+                Files.deleteIfExists(Path.of(database + suffix));
+            }
+        }
+        DatabaseManager.useDatabase("jdbc:sqlite:" + database, Math.max(4, threads));
+        DatabaseManager.createTables();
+        LongAdder failures = new LongAdder();
+        DatabaseManager.setFailureListener((operation, error) -> failures.increment());
+
+        WorkloadGenerator generator = new WorkloadGenerator(seed, zipf);
+        long start = System.nanoTime();
+        if (reuse) {
+            generator.loadIds();
+            System.out.printf("Reusing %s: %d teachers, %d courses%n", database, generator.teacherIds.length, generator.courseIds.length);
+        } else {
+            long assignments = generator.generate(teachers, courses, coursesPerTeacher);
+            System.out.printf("Generated %d teachers, %d courses and %d assignments in %.1fs%n",
+                    teachers, courses, assignments, (System.nanoTime() - start) / 1e9);
+        }
+        if (generator.teacherIds.length == 0 || generator.courseIds.length == 0) {
+            System.err.println("Nothing to replay against.");
+            System.exit(1);
+        }
+        generator.teacherPopularity = new ZipfSampler(generator.teacherIds.length, zipf);
+        generator.coursePopularity = new ZipfSampler(generator.courseIds.length, zipf);
+
+        Map<Operation, LatencyHistogram> latencies = new LinkedHashMap<>();
+        Map<Operation, LongAdder> errors = new LinkedHashMap<>();
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new LatencyHistogram());
+            errors.put(operation, new LongAdder());
+        }
+        if (warmup > 0) {
+            generator.replay(threads, warmup, mix, latencies, errors);
+            latencies.values().forEach(LatencyHistogram::reset);
+            errors.values().forEach(LongAdder::reset);
+            failures.reset();
+        }
+        double seconds = generator.replay(threads, duration, mix, latencies, errors);
+        report(threads, seconds, latencies, errors, failures.sum());
+        DatabaseManager.close();
+    }
+
+    /**
+     * Inserts the teachers and courses in chunks and then assigns each teacher a random number of
+     * distinct courses drawn by popularity. Returns the number of assignments.
+     */
+    private long generate(int teacherCount, int courseCount, int coursesPerTeacher) throws SQLException {
+        courseIds = new int[courseCount];
+        List<Course> courses = new ArrayList<>(Math.min(courseCount, CHUNK_SIZE));
+        for (int i = 0; i < courseCount; i++) {
+            courses.add(new Course(SUBJECTS[i % SUBJECTS.length] + " " + (i / SUBJECTS.length + 1), 10 + random.nextInt(90)));
+            if (courses.size() == CHUNK_SIZE || i == courseCount - 1) {
+                BulkImporter.saveCourses(courses);
+                for (int j = 0; j < courses.size(); j++) {
+                    courseIds[i - courses.size() + 1 + j] = courses.get(j).getId();
+                }
+                courses.clear();
+            }
+        }
+
+        teacherIds = new int[teacherCount];
+        teacherNames = new String[teacherCount];
+        List<Teacher> teachers = new ArrayList<>(Math.min(teacherCount, CHUNK_SIZE));
+        for (int i = 0; i < teacherCount; i++) {
+            String name = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " " + LAST_NAMES[random.nextInt(LAST_NAMES.length)] + " " + i;
+            teachers.add(new Teacher(name, 23 + random.nextInt(45)));
+            if (teachers.size() == CHUNK_SIZE || i == teacherCount - 1) {
+                BulkImporter.saveTeachers(teachers);
+                for (int j = 0; j < teachers.size(); j++) {
+                    int index = i - teachers.size() + 1 + j;
+                    teacherIds[index] = teachers.get(j).getId();
+                    teacherNames[index] = teachers.get(j).getFullName();
+                }
+                teachers.clear();
+            }
+        }
+
+        ZipfSampler popularity = new ZipfSampler(courseCount, zipfExponent);
+        int maxPerTeacher = Math.min(courseCount, Math.max(1, 2 * coursesPerTeacher - 1));
+        long assignments = 0;
+        for (int from = 0; from < teacherCount; from += CHUNK_SIZE) {
+            int to = Math.min(teacherCount, from + CHUNK_SIZE);
+            int first = from;
+            assignments += DatabaseManager.write(connection -> {
+                PreparedStatement insert = connection.prepare("INSERT OR IGNORE INTO teacher_course (teacher_id, course_id) VALUES (?, ?)");
+                connection.getConnection().setAutoCommit(false);
+                int count = 0;
+                for (int teacher = first; teacher < to; teacher++) {
+                    int wanted = 1 + random.nextInt(maxPerTeacher);
+                    for (int attempt = 0; attempt < 4 * wanted && wanted > 0; attempt++) {
+                        insert.setInt(1, teacherIds[teacher]);
+                        insert.setInt(2, courseIds[popularity.sample(random)]);
+                        if (insert.executeUpdate() > 0) {
+                            wanted--;
+                            count++;
+                        }
+                    }
+                }
+                connection.getConnection().commit();
+                connection.getConnection().setAutoCommit(true);
+                return count;
+            });
+        }
+        return assignments;
+    }
+
+    /**
+     * Reads the ids and names of an existing database, in id order so that popularity ranks are
+     * stable between runs.
+     */
+    private void loadIds() throws SQLException {
+        IntStream.Builder teachers = IntStream.builder();
+        IntStream.Builder courses = IntStream.builder();
+        List<String> names = new ArrayList<>();
+        try (PooledConnection connection = DatabaseManager.acquire()) {
+            try (ResultSet resultSet = connection.prepare("SELECT id, full_name FROM teachers ORDER BY id").executeQuery()) {
+                while (resultSet.next()) {
+                    teachers.add(resultSet.getInt(1));
+                    names.add(resultSet.getString(2));
+                }
+            }
+            try (ResultSet resultSet = connection.prepare("SELECT id FROM courses ORDER BY id").executeQuery()) {
+                while (resultSet.next()) {
+                    courses.add(resultSet.getInt(1));
+                }
+            }
+        }
+        teacherIds = teachers.build().toArray();
+        teacherNames = names.toArray(new String[0]);
+        courseIds = courses.build().toArray();
+    }
+
+    /**
+     * Runs {@code threads} callers for {@code seconds}, each picking operations by weight, and
+     * returns the elapsed time.
+     */
+    private double replay(int threads, int seconds, Map<Operation, Integer> mix,
+                          Map<Operation, LatencyHistogram> latencies, Map<Operation, LongAdder> errors) throws InterruptedException {
+        Operation[] choices = mix.entrySet().stream()
+                .flatMap(entry -> Collections.nCopies(entry.getValue(), entry.getKey()).stream())
+                .toArray(Operation[]::new);
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        AtomicLong editCounter = new AtomicLong();
+        List<Thread> callers = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            SplittableRandom callerRandom = random.split();
+            callers.add(Thread.ofPlatform().name("workload-" + t).start(() -> {
+                while (System.nanoTime() < deadline) {
+                    Operation operation = choices[callerRandom.nextInt(choices.length)];
+                    long begin = System.nanoTime();
+                    boolean ok = run(operation, callerRandom, editCounter);
+                    latencies.get(operation).record(System.nanoTime() - begin);
+                    if (!ok) {
+                        errors.get(operation).increment();
+                    }
+                }
+            }));
+        }
+        for (Thread caller : callers) {
+            caller.join();
+        }
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    private boolean run(Operation operation, SplittableRandom random, AtomicLong editCounter) {
+        int teacher = teacherPopularity.sample(random);
+        switch (operation) {
+            case LOOKUP -> {
+                return DatabaseManager.findTeacherByName(teacherNames[teacher]) != null;
+            }
+            case LIST -> {
+                PageQuery query = (random.nextBoolean() ? PageQuery.teachers() : PageQuery.courses())
+                        .withSort(random.nextInt(3), random.nextBoolean());
+                if (random.nextInt(4) == 0) {
+                    query = query.withNamePrefix(String.valueOf((char) ('A' + random.nextInt(26))));
+                }
+                try {
+                    Object[] after = random.nextBoolean() ? null : DatabaseManager.pageKeyAt(query, random.nextInt(1000));
+                    DatabaseManager.loadPage(query, after, PAGE_SIZE);
+                    return true;
+                } catch (SQLException e) {
+                    return false;
+                }
+            }
+            case EDIT -> {
+                Teacher edited = new Teacher(teacherNames[teacher], 23 + (int) (editCounter.incrementAndGet() % 45));
+                edited.setId(teacherIds[teacher]);
+                return DatabaseManager.updateTeacher(edited);
+            }
+            case CHURN -> {
+                Teacher assigned = new Teacher(teacherNames[teacher], 0);
+                assigned.setId(teacherIds[teacher]);
+                Course course = new Course("", 0);
+                course.setId(courseIds[coursePopularity.sample(random)]);
+                // Removing an assignment that is not there is a normal outcome of churn, not a failure.
+                if (random.nextBoolean()) {
+                    return DatabaseManager.saveTeacherCourse(assigned.getId(), course.getId());
+                }
+                DatabaseManager.removeTeacherCourse(assigned, course);
+                return true;
+            }
+            default -> throw new IllegalStateException(operation.toString());
+        }
+    }
+
+    private static void report(int threads, double seconds, Map<Operation, LatencyHistogram> latencies,
+                               Map<Operation, LongAdder> errors, long failures) {
+        System.out.printf("%d threads for %.1fs%n", threads, seconds);
+        System.out.printf("%-8s %10s %10s %9s %9s %9s %9s %9s %9s %7s%n",
+                "op", "count", "ops/s", "mean ms", "p50 ms", "p95 ms", "p99 ms", "p99.9 ms", "max ms", "errors");
+        long total = 0;
+        for (Map.Entry<Operation, LatencyHistogram> entry : latencies.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            total += histogram.getCount();
+            System.out.printf("%-8s %10d %10.0f %9.3f %9.3f %9.3f %9.3f %9.3f %9.3f %7d%n",
+                    entry.getKey().toString().toLowerCase(), histogram.getCount(), histogram.getCount() / seconds,
+                    histogram.getMeanNanos() / 1e6, histogram.getPercentileNanos(50) / 1e6,
+                    histogram.getPercentileNanos(95) / 1e6, histogram.getPercentileNanos(99) / 1e6,
+                    histogram.getPercentileNanos(99.9) / 1e6, histogram.getMaxNanos() / 1e6,
+                    errors.get(entry.getKey()).sum());
+        }
+        System.out.printf("total %d ops, %.0f ops/s, %d database failures%n", total, total / seconds, failures);
+    }
+
+    private static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new LinkedHashMap<>();
+        for (String part : mix.split(",")) {
+            String[] pair = part.trim().split("=");
+            int weight = Integer.parseInt(pair[1].trim());
+            if (weight > 0) {
+                weights.put(Operation.valueOf(pair[0].trim().toUpperCase()), weight);
+            }
+        }
+        if (weights.isEmpty()) {
+            throw new IllegalArgumentException("Empty operation mix: " + mix);
+        }
+        return weights;
+    }
+
+    private static String option(String[] args, String name, String defaultValue) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(name)) {
+                return args[i + 1];
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Draws ranks in [0, n) with probability proportional to 1 / (rank + 1)^exponent, by binary
+     * search over the cumulative distribution.
+     */
+    private static final class ZipfSampler {
+        private final double[] cumulative;
+
+        private ZipfSampler(int n, double exponent) {
+            cumulative = new double[n];
+            double sum = 0;
+            for (int rank = 0; rank < n; rank++) {
+                sum += 1 / Math.pow(rank + 1, exponent);
+                cumulative[rank] = sum;
+            }
+            for (int rank = 0; rank < n; rank++) {
+                cumulative[rank] /= sum;
+            }
+        }
+
+        private int sample(SplittableRandom random) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble());
+            return Math.min(cumulative.length - 1, index >= 0 ? index : -index - 1);
+        }
+    }
+}
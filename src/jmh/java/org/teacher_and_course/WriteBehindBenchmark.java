@@ -0,0 +1,95 @@
+package org.teacher_and_course;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sustained write throughput of many concurrent callers, each waiting for its own write, through
+ * the per-call autocommit path and through {@link WriteBehindQueue} group commits.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(32)
+@Fork(1)
+public class WriteBehindBenchmark {
+    @Param({"0"})
+    public int maxDelayMillis;
+
+    private BenchmarkDatabase database;
+    private List<Teacher> teachers;
+    private List<Course> courses;
+    private WriteBehindQueue queue;
+
+    @State(Scope.Thread)
+    public static class Caller {
+        private final SplittableRandom random = new SplittableRandom(Thread.currentThread().getId());
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        database = BenchmarkDatabase.create(1000, 100, 3);
+        teachers = database.getTeachers();
+        courses = database.getCourses();
+        queue = new WriteBehindQueue(10_000, 500, maxDelayMillis);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        queue.close();
+        database.close();
+    }
+
+    @Benchmark
+    public boolean updateCoursePerCall(Caller caller) {
+        return DatabaseManager.updateCourse(randomCourseUpdate(caller.random));
+    }
+
+    @Benchmark
+    public boolean updateCourseWriteBehind(Caller caller) {
+        return queue.updateCourse(randomCourseUpdate(caller.random)).join();
+    }
+
+    @Benchmark
+    public boolean saveTeacherCoursePerCall(Caller caller) {
+        return DatabaseManager.saveTeacherCourse(randomTeacherId(caller.random), randomCourseId(caller.random));
+    }
+
+    @Benchmark
+    public boolean saveTeacherCourseWriteBehind(Caller caller) {
+        return queue.saveTeacherCourse(randomTeacherId(caller.random), randomCourseId(caller.random)).join();
+    }
+
+    private Course randomCourseUpdate(SplittableRandom random) {
+        Course course = courses.get(random.nextInt(courses.size()));
+        Course update = new Course(course.getName(), 10 + random.nextInt(90));
+        update.setId(course.getId());
+        return update;
+    }
+
+    private int randomTeacherId(SplittableRandom random) {
+        return teachers.get(random.nextInt(teachers.size())).getId();
+    }
+
+    private int randomCourseId(SplittableRandom random) {
+        return courses.get(random.nextInt(courses.size())).getId();
+    }
+}
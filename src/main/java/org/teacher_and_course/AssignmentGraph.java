@@ -0,0 +1,449 @@
+package org.teacher_and_course;
+
+import java.util.Arrays;
+
+/**
+ * In-memory index of the {@code teacher_course} relation in both directions, held in primitive
+ * arrays: an open-addressed map from each id to a sorted {@code int[]} of its neighbours. Adjacency,
+ * degree and co-teacher queries never touch the database.
+ * <p>
+ * The graph is filled by {@link #load()} or from a {@link Snapshot}, and then kept current by
+ * {@link SchoolManagementSystem} as its mutation methods succeed. Writes made around it arrive
+ * through the {@link ChangeFeed}: rows changed in this process are applied one by one, and a bulk
+ * import, a restore or another process's write reloads the graph.
+ */
+public class AssignmentGraph {
+    private static final int LOAD_ATTEMPTS = 3;
+    private static final int[] NONE = new int[0];
+
+    private final Adjacency coursesByTeacher = new Adjacency(16);
+    private final Adjacency teachersByCourse = new Adjacency(16);
+    private boolean loaded;
+    private long modifications;
+    private int assignments;
+
+    /**
+     * Replaces the graph with the current contents of {@code teacher_course}. Returns false when
+     * the table could not be read, or kept changing through this graph while it was being read.
+     */
+    public boolean load() {
+        return load(StorageEngine.sqlite());
+    }
+
+    /**
+     * Like {@link #load()}, reading the assignments from {@code storage}.
+     */
+    public boolean load(StorageEngine storage) {
+        for (int attempt = 0; attempt < LOAD_ATTEMPTS; attempt++) {
+            long seen;
+            synchronized (this) {
+                seen = modifications;
+            }
+            long[] pairs = storage.loadAssignments();
+            if (pairs == null) {
+                return false;
+            }
+            synchronized (this) {
+                if (modifications == seen) {
+                    build(pairs);
+                    loaded = true;
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Replaces the graph with the assignments of a roster.
+     */
+    public void load(Roster roster) {
+        long[] pairs = roster.getAssignments();
+        synchronized (this) {
+            modifications++;
+            build(pairs);
+            loaded = true;
+        }
+    }
+
+    /**
+     * Replaces the graph with the assignments of a snapshot.
+     */
+    public void load(Snapshot snapshot) {
+        long[] pairs = new long[snapshot.getAssignmentCount()];
+        for (int i = 0; i < pairs.length; i++) {
+            pairs[i] = (long) snapshot.getAssignmentTeacherId(i) << 32 | snapshot.getAssignmentCourseId(i);
+        }
+        synchronized (this) {
+            modifications++;
+            build(pairs);
+            loaded = true;
+        }
+    }
+
+    public synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    public synchronized void clear() {
+        modifications++;
+        coursesByTeacher.clear();
+        teachersByCourse.clear();
+        assignments = 0;
+        loaded = false;
+    }
+
+    public synchronized int getAssignmentCount() {
+        return assignments;
+    }
+
+    public synchronized int getTeacherCount() {
+        return coursesByTeacher.size();
+    }
+
+    public synchronized int getCourseCount() {
+        return teachersByCourse.size();
+    }
+
+    /**
+     * Ids of the courses taught by the teacher, in ascending order.
+     */
+    public synchronized int[] coursesOf(int teacherId) {
+        return coursesByTeacher.get(teacherId);
+    }
+
+    /**
+     * Ids of the teachers of the course, in ascending order.
+     */
+    public synchronized int[] teachersOf(int courseId) {
+        return teachersByCourse.get(courseId);
+    }
+
+    public synchronized int courseDegree(int teacherId) {
+        return coursesByTeacher.degree(teacherId);
+    }
+
+    public synchronized int teacherDegree(int courseId) {
+        return teachersByCourse.degree(courseId);
+    }
+
+    public synchronized boolean isAssigned(int teacherId, int courseId) {
+        return coursesByTeacher.contains(teacherId, courseId);
+    }
+
+    /**
+     * Ids of the other teachers who share at least one course with the teacher, in ascending order.
+     */
+    public synchronized int[] coTeachersOf(int teacherId) {
+        int slot = coursesByTeacher.slotOf(teacherId);
+        if (slot < 0) {
+            return NONE;
+        }
+        int[] courseIds = coursesByTeacher.values[slot];
+        int courseCount = coursesByTeacher.sizes[slot];
+        int total = 0;
+        for (int i = 0; i < courseCount; i++) {
+            total += teachersByCourse.degree(courseIds[i]);
+        }
+        int[] buffer = new int[total];
+        int length = 0;
+        for (int i = 0; i < courseCount; i++) {
+            int courseSlot = teachersByCourse.slotOf(courseIds[i]);
+            if (courseSlot >= 0) {
+                int size = teachersByCourse.sizes[courseSlot];
+                System.arraycopy(teachersByCourse.values[courseSlot], 0, buffer, length, size);
+                length += size;
+            }
+        }
+        Arrays.sort(buffer, 0, length);
+        int unique = 0;
+        for (int i = 0; i < length; i++) {
+            int id = buffer[i];
+            if (id != teacherId && (unique == 0 || buffer[unique - 1] != id)) {
+                buffer[unique++] = id;
+            }
+        }
+        return Arrays.copyOf(buffer, unique);
+    }
+
+    synchronized void assign(int teacherId, int courseId) {
+        modifications++;
+        if (loaded && coursesByTeacher.add(teacherId, courseId)) {
+            teachersByCourse.add(courseId, teacherId);
+            assignments++;
+        }
+    }
+
+    synchronized void unassign(int teacherId, int courseId) {
+        modifications++;
+        if (loaded && coursesByTeacher.remove(teacherId, courseId)) {
+            teachersByCourse.remove(courseId, teacherId);
+            assignments--;
+        }
+    }
+
+    synchronized void removeTeacher(int teacherId) {
+        modifications++;
+        if (loaded) {
+            assignments -= detach(coursesByTeacher, teachersByCourse, teacherId);
+        }
+    }
+
+    synchronized void removeCourse(int courseId) {
+        modifications++;
+        if (loaded) {
+            assignments -= detach(teachersByCourse, coursesByTeacher, courseId);
+        }
+    }
+
+    /**
+     * {@code ids}, a sorted array or null, with {@code id} added; {@code ids} itself if it is already there.
+     */
+    static int[] with(int[] ids, int id) {
+        if (ids == null) {
+            return new int[]{id};
+        }
+        int index = Arrays.binarySearch(ids, id);
+        if (index >= 0) {
+            return ids;
+        }
+        int insertAt = -index - 1;
+        int[] result = new int[ids.length + 1];
+        System.arraycopy(ids, 0, result, 0, insertAt);
+        result[insertAt] = id;
+        System.arraycopy(ids, insertAt, result, insertAt + 1, ids.length - insertAt);
+        return result;
+    }
+
+    /**
+     * {@code ids} without {@code id}, or null if nothing is left.
+     */
+    static int[] without(int[] ids, int id) {
+        int index = ids == null ? -1 : Arrays.binarySearch(ids, id);
+        if (index < 0) {
+            return ids;
+        }
+        if (ids.length == 1) {
+            return null;
+        }
+        int[] result = new int[ids.length - 1];
+        System.arraycopy(ids, 0, result, 0, index);
+        System.arraycopy(ids, index + 1, result, index, ids.length - index - 1);
+        return result;
+    }
+
+    private static int detach(Adjacency from, Adjacency reverse, int id) {
+        int slot = from.slotOf(id);
+        if (slot < 0) {
+            return 0;
+        }
+        int[] neighbours = from.values[slot];
+        int count = from.sizes[slot];
+        for (int i = 0; i < count; i++) {
+            reverse.remove(neighbours[i], id);
+        }
+        from.removeKey(id);
+        return count;
+    }
+
+    private void build(long[] pairs) {
+        coursesByTeacher.clear();
+        teachersByCourse.clear();
+        fill(coursesByTeacher, pairs);
+        for (int i = 0; i < pairs.length; i++) {
+            pairs[i] = pairs[i] << 32 | pairs[i] >>> 32;
+        }
+        Arrays.sort(pairs);
+        fill(teachersByCourse, pairs);
+        assignments = pairs.length;
+    }
+
+    /**
+     * Fills an adjacency from sorted {@code key << 32 | value} pairs, giving every key an array of
+     * exactly its degree.
+     */
+    private static void fill(Adjacency adjacency, long[] pairs) {
+        int from = 0;
+        while (from < pairs.length) {
+            int key = (int) (pairs[from] >>> 32);
+            int to = from + 1;
+            while (to < pairs.length && (int) (pairs[to] >>> 32) == key) {
+                to++;
+            }
+            int[] values = new int[to - from];
+            for (int i = from; i < to; i++) {
+                values[i - from] = (int) pairs[i];
+            }
+            adjacency.put(key, values);
+            from = to;
+        }
+    }
+
+    /**
+     * Open-addressed (linear probing) map from a positive id to a sorted set of ids. Id 0 marks an
+     * empty slot, which is safe because SQLite assigns AUTOINCREMENT ids from 1.
+     */
+    private static final class Adjacency {
+        private int[] keys;
+        private int[][] values;
+        private int[] sizes;
+        private int size;
+
+        Adjacency(int capacity) {
+            allocate(capacity);
+        }
+
+        int size() {
+            return size;
+        }
+
+        void clear() {
+            allocate(16);
+            size = 0;
+        }
+
+        int slotOf(int key) {
+            int mask = keys.length - 1;
+            for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return slot;
+                }
+                if (keys[slot] == 0) {
+                    return -1;
+                }
+            }
+        }
+
+        int[] get(int key) {
+            int slot = slotOf(key);
+            return slot < 0 ? NONE : Arrays.copyOf(values[slot], sizes[slot]);
+        }
+
+        int degree(int key) {
+            int slot = slotOf(key);
+            return slot < 0 ? 0 : sizes[slot];
+        }
+
+        boolean contains(int key, int value) {
+            int slot = slotOf(key);
+            return slot >= 0 && Arrays.binarySearch(values[slot], 0, sizes[slot], value) >= 0;
+        }
+
+        void put(int key, int[] sortedValues) {
+            int slot = insertionSlot(key);
+            values[slot] = sortedValues;
+            sizes[slot] = sortedValues.length;
+        }
+
+        boolean add(int key, int value) {
+            int slot = insertionSlot(key);
+            int[] set = values[slot];
+            int count = sizes[slot];
+            int index = Arrays.binarySearch(set, 0, count, value);
+            if (index >= 0) {
+                return false;
+            }
+            index = -index - 1;
+            if (count == set.length) {
+                set = Arrays.copyOf(set, Math.max(4, count + (count >> 1) + 1));
+                values[slot] = set;
+            }
+            System.arraycopy(set, index, set, index + 1, count - index);
+            set[index] = value;
+            sizes[slot] = count + 1;
+            return true;
+        }
+
+        boolean remove(int key, int value) {
+            int slot = slotOf(key);
+            if (slot < 0) {
+                return false;
+            }
+            int[] set = values[slot];
+            int count = sizes[slot];
+            int index = Arrays.binarySearch(set, 0, count, value);
+            if (index < 0) {
+                return false;
+            }
+            if (count == 1) {
+                removeKey(key);
+                return true;
+            }
+            System.arraycopy(set, index + 1, set, index, count - index - 1);
+            sizes[slot] = count - 1;
+            if (set.length > 16 && count - 1 < set.length / 4) {
+                values[slot] = Arrays.copyOf(set, set.length / 2);
+            }
+            return true;
+        }
+
+        void removeKey(int key) {
+            int slot = slotOf(key);
+            if (slot < 0) {
+                return;
+            }
+            int mask = keys.length - 1;
+            size--;
+            // Backward-shift deletion keeps every remaining key reachable from its home slot.
+            for (int next = (slot + 1) & mask; keys[next] != 0; next = (next + 1) & mask) {
+                int home = hash(keys[next]) & mask;
+                if (((next - home) & mask) >= ((next - slot) & mask)) {
+                    keys[slot] = keys[next];
+                    values[slot] = values[next];
+                    sizes[slot] = sizes[next];
+                    slot = next;
+                }
+            }
+            keys[slot] = 0;
+            values[slot] = null;
+            sizes[slot] = 0;
+        }
+
+        private int insertionSlot(int key) {
+            if ((size + 1) * 4 > keys.length * 3) {
+                rehash(keys.length * 2);
+            }
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+            while (keys[slot] != 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] == 0) {
+                keys[slot] = key;
+                values[slot] = NONE;
+                size++;
+            }
+            return slot;
+        }
+
+        private void rehash(int capacity) {
+            int[] oldKeys = keys;
+            int[][] oldValues = values;
+            int[] oldSizes = sizes;
+            allocate(capacity);
+            int mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    int slot = hash(oldKeys[i]) & mask;
+                    while (keys[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                    sizes[slot] = oldSizes[i];
+                }
+            }
+        }
+
+        private void allocate(int capacity) {
+            keys = new int[capacity];
+            values = new int[capacity][];
+            sizes = new int[capacity];
+        }
+
+        private static int hash(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
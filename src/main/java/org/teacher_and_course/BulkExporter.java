@@ -0,0 +1,401 @@
+package org.teacher_and_course;
+
+import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams every teacher, course and assignment out of the database without holding them in
+ * memory: rows are read through forward-only cursors in one read transaction and written as they
+ * arrive. CSV and JSON lines use the records {@link BulkImporter} reads, with the row ids added
+ * as trailing fields, so an export can be imported again:
+ * <pre>
+ * teacher,Jane Doe,41,7
+ * course,Algebra,36,3
+ * assignment,Jane Doe,Algebra,7,3
+ * </pre>
+ * Nested JSON is one document holding the course catalog and every teacher with their courses,
+ * for other tools; it cannot be imported:
+ * <pre>
+ * {"courses":[{"id":3,"name":"Algebra","hours":36}],
+ *  "teachers":[{"id":7,"full_name":"Jane Doe","age":41,"courses":[{"id":3,"name":"Algebra","hours":36}]}]}
+ * </pre>
+ * Output is optionally gzip-compressed. An export holds one read connection until it finishes.
+ */
+public class BulkExporter {
+    public enum Format {
+        CSV, JSONL, JSON;
+
+        /**
+         * The format named by the file extension, ignoring a trailing {@code .gz}; CSV if unknown.
+         * As for the importer, {@code .json} and {@code .jsonl} both mean JSON lines, so that an
+         * export can be imported again; nested JSON is only written when asked for.
+         */
+        public static Format fromPath(Path path) {
+            String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+            if (name.endsWith(".gz")) {
+                name = name.substring(0, name.length() - 3);
+            }
+            return name.endsWith(".jsonl") || name.endsWith(".json") ? JSONL : CSV;
+        }
+    }
+
+    // How a nested JSON export starts, which BulkImporter recognizes in order to reject it.
+    static final String NESTED_JSON_START = "{\"courses\":[";
+
+    /**
+     * Whether the file name ends in {@code .gz} in any case, which compresses an export and is
+     * decompressed on import.
+     */
+    static boolean isGzip(Path path) {
+        return path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".gz");
+    }
+
+    private static final OperationMetrics EXPORT_METRICS = PersistenceMetrics.operation("bulkExport");
+    private static final int DEFAULT_FETCH_SIZE = 1000;
+    private static final int PROGRESS_INTERVAL = 100_000;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final int fetchSize;
+    private final Consumer<Report> progressListener;
+
+    public BulkExporter() {
+        this(DEFAULT_FETCH_SIZE, null);
+    }
+
+    /**
+     * @param fetchSize rows the driver fetches at a time, which is also how often a cancelled
+     *                  export notices that its thread was interrupted
+     */
+    public BulkExporter(int fetchSize, Consumer<Report> progressListener) {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("Fetch size must be at least 1");
+        }
+        this.fetchSize = fetchSize;
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Exports in the format named by the file extension, compressed if it ends in {@code .gz}.
+     */
+    public Report exportFile(Path path) throws IOException, SQLException {
+        return exportFile(path, Format.fromPath(path), isGzip(path));
+    }
+
+    /**
+     * Writes the export next to {@code path} and moves it into place once complete, so a failed or
+     * cancelled export leaves any earlier file untouched.
+     */
+    public Report exportFile(Path path, Format format, boolean gzip) throws IOException, SQLException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            Report report;
+            try (OutputStream out = Files.newOutputStream(temporary)) {
+                report = exportTo(out, format, gzip);
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return report;
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    public Report exportTo(WritableByteChannel channel, Format format, boolean gzip) throws IOException, SQLException {
+        return exportTo(Channels.newOutputStream(channel), format, gzip);
+    }
+
+    /**
+     * Writes the export to {@code out}, which is flushed but left open.
+     */
+    public Report exportTo(OutputStream out, Format format, boolean gzip) throws IOException, SQLException {
+        OutputStream target = new UnclosedOutputStream(out);
+        if (gzip) {
+            target = new GZIPOutputStream(target, BUFFER_SIZE);
+        }
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(target, StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            return export(writer, format);
+        }
+    }
+
+    private Report export(Writer writer, Format format) throws IOException, SQLException {
+        long start = System.nanoTime();
+        Report report = new Report(format);
+        try (PooledConnection connection = DatabaseManager.acquire()) {
+            // One read transaction, so the tables are written as of the same moment.
+            connection.getConnection().setAutoCommit(false);
+            try {
+                if (format == Format.JSON) {
+                    writeNested(connection, writer, report);
+                } else {
+                    writeRecords(connection, writer, format, report);
+                }
+            } finally {
+                connection.getConnection().commit();
+                connection.getConnection().setAutoCommit(true);
+            }
+            report.finished = true;
+            report(report);
+            EXPORT_METRICS.addRowsRead(report.teachers + report.courses + report.assignments);
+            return report;
+        } catch (SQLException | IOException e) {
+            EXPORT_METRICS.recordError();
+            throw e;
+        } finally {
+            EXPORT_METRICS.record(start);
+        }
+    }
+
+    private void writeRecords(PooledConnection connection, Writer writer, Format format, Report report)
+            throws IOException, SQLException {
+        StringBuilder line = new StringBuilder(256);
+        boolean csv = format == Format.CSV;
+        try (ResultSet resultSet = query(connection, "SELECT id, full_name, age FROM teachers ORDER BY id")) {
+            while (resultSet.next()) {
+                line.setLength(0);
+                if (csv) {
+                    line.append("teacher,");
+                    appendCsv(line, resultSet.getString(2));
+                    line.append(',').append(resultSet.getInt(3)).append(',').append(resultSet.getInt(1));
+                } else {
+                    line.append("{\"type\":\"teacher\",\"full_name\":");
+                    Json.appendQuoted(line, resultSet.getString(2));
+                    line.append(",\"age\":").append(resultSet.getInt(3)).append(",\"id\":").append(resultSet.getInt(1)).append('}');
+                }
+                writer.append(line).append('\n');
+                rowWritten(report, ++report.teachers);
+            }
+        }
+        try (ResultSet resultSet = query(connection, "SELECT id, name, hours FROM courses ORDER BY id")) {
+            while (resultSet.next()) {
+                line.setLength(0);
+                if (csv) {
+                    line.append("course,");
+                    appendCsv(line, resultSet.getString(2));
+                    line.append(',').append(resultSet.getInt(3)).append(',').append(resultSet.getInt(1));
+                } else {
+                    line.append("{\"type\":\"course\",\"name\":");
+                    Json.appendQuoted(line, resultSet.getString(2));
+                    line.append(",\"hours\":").append(resultSet.getInt(3)).append(",\"id\":").append(resultSet.getInt(1)).append('}');
+                }
+                writer.append(line).append('\n');
+                rowWritten(report, ++report.courses);
+            }
+        }
+        try (ResultSet resultSet = query(connection,
+                "SELECT teacher_course.teacher_id, teacher_course.course_id, teachers.full_name, courses.name " +
+                        "FROM teacher_course " +
+                        "JOIN teachers ON teachers.id = teacher_course.teacher_id " +
+                        "JOIN courses ON courses.id = teacher_course.course_id " +
+                        "ORDER BY teacher_course.teacher_id, teacher_course.course_id")) {
+            while (resultSet.next()) {
+                line.setLength(0);
+                if (csv) {
+                    line.append("assignment,");
+                    appendCsv(line, resultSet.getString(3));
+                    line.append(',');
+                    appendCsv(line, resultSet.getString(4));
+                    line.append(',').append(resultSet.getInt(1)).append(',').append(resultSet.getInt(2));
+                } else {
+                    line.append("{\"type\":\"assignment\",\"teacher\":");
+                    Json.appendQuoted(line, resultSet.getString(3));
+                    line.append(",\"course\":");
+                    Json.appendQuoted(line, resultSet.getString(4));
+                    line.append(",\"teacher_id\":").append(resultSet.getInt(1))
+                            .append(",\"course_id\":").append(resultSet.getInt(2)).append('}');
+                }
+                writer.append(line).append('\n');
+                rowWritten(report, ++report.assignments);
+            }
+        }
+    }
+
+    private void writeNested(PooledConnection connection, Writer writer, Report report) throws IOException, SQLException {
+        StringBuilder line = new StringBuilder(256);
+        writer.write(NESTED_JSON_START);
+        try (ResultSet resultSet = query(connection, "SELECT id, name, hours FROM courses ORDER BY id")) {
+            while (resultSet.next()) {
+                line.setLength(0);
+                line.append(report.courses == 0 ? "\n" : ",\n");
+                appendCourse(line, resultSet.getInt(1), resultSet.getString(2), resultSet.getInt(3));
+                writer.append(line);
+                rowWritten(report, ++report.courses);
+            }
+        }
+        writer.write("],\n\"teachers\":[");
+        try (ResultSet resultSet = query(connection,
+                "SELECT teachers.id, teachers.full_name, teachers.age, courses.id, courses.name, courses.hours " +
+                        "FROM teachers " +
+                        "LEFT JOIN teacher_course ON teacher_course.teacher_id = teachers.id " +
+                        "LEFT JOIN courses ON courses.id = teacher_course.course_id " +
+                        "ORDER BY teachers.id")) {
+            int current = 0;
+            boolean firstCourse = true;
+            while (resultSet.next()) {
+                line.setLength(0);
+                int teacherId = resultSet.getInt(1);
+                if (report.teachers == 0 || teacherId != current) {
+                    if (report.teachers > 0) {
+                        line.append("]},");
+                    }
+                    line.append("\n{\"id\":").append(teacherId).append(",\"full_name\":");
+                    Json.appendQuoted(line, resultSet.getString(2));
+                    line.append(",\"age\":").append(resultSet.getInt(3)).append(",\"courses\":[");
+                    current = teacherId;
+                    firstCourse = true;
+                    rowWritten(report, ++report.teachers);
+                }
+                int courseId = resultSet.getInt(4);
+                if (!resultSet.wasNull()) {
+                    if (!firstCourse) {
+                        line.append(',');
+                    }
+                    appendCourse(line, courseId, resultSet.getString(5), resultSet.getInt(6));
+                    firstCourse = false;
+                    report.assignments++;
+                }
+                writer.append(line);
+            }
+            if (report.teachers > 0) {
+                writer.write("]}");
+            }
+        }
+        writer.write("]}\n");
+    }
+
+    private ResultSet query(PooledConnection connection, String sql) throws SQLException {
+        PreparedStatement statement = connection.prepare(sql);
+        statement.setFetchSize(fetchSize);
+        return statement.executeQuery();
+    }
+
+    private void rowWritten(Report report, long rows) throws InterruptedIOException {
+        if (rows % fetchSize == 0 && Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Export cancelled");
+        }
+        if (rows % PROGRESS_INTERVAL == 0) {
+            report(report);
+        }
+    }
+
+    private void report(Report report) {
+        if (progressListener != null) {
+            progressListener.accept(report);
+        }
+    }
+
+    private static void appendCourse(StringBuilder line, int id, String name, int hours) {
+        line.append("{\"id\":").append(id).append(",\"name\":");
+        Json.appendQuoted(line, name);
+        line.append(",\"hours\":").append(hours).append('}');
+    }
+
+    // Quoted only when needed, as BulkImporter.parseCsvLine reads it back.
+    private static void appendCsv(StringBuilder line, String value) {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            line.append(value);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        line.append('"');
+    }
+
+    /**
+     * Closing the writer chain finishes the gzip trailer but leaves the caller's stream open.
+     */
+    private static final class UnclosedOutputStream extends FilterOutputStream {
+        UnclosedOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    public static class Report {
+        private final long startNanos = System.nanoTime();
+        private final Format format;
+        private long teachers;
+        private long courses;
+        private long assignments;
+        private boolean finished;
+
+        Report(Format format) {
+            this.format = format;
+        }
+
+        public Format getFormat() {
+            return format;
+        }
+
+        public long getTeachers() {
+            return teachers;
+        }
+
+        public long getCourses() {
+            return courses;
+        }
+
+        public long getAssignments() {
+            return assignments;
+        }
+
+        public boolean isFinished() {
+            return finished;
+        }
+
+        public long getElapsedMillis() {
+            return (System.nanoTime() - startNanos) / 1_000_000;
+        }
+
+        public double getRowsPerSecond() {
+            long elapsed = Math.max(1, getElapsedMillis());
+            return (teachers + courses + assignments) * 1000.0 / elapsed;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "%s: %d teachers, %d courses, %d assignments as %s in %d ms (%.0f rows/s)",
+                    finished ? "Export finished" : "Exporting", teachers, courses, assignments, format,
+                    getElapsedMillis(), getRowsPerSecond());
+        }
+    }
+}
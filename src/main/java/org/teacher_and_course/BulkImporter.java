@@ -0,0 +1,465 @@
+package org.teacher_and_course;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streams teachers, courses and teacher/course assignments into the database in chunked
+ * transactions. Input is either CSV, where the first column names the record type:
+ * <pre>
+ * teacher,Jane Doe,41
+ * course,Algebra,36
+ * assignment,Jane Doe,Algebra
+ * </pre>
+ * or JSON lines with the same records:
+ * <pre>
+ * {"type":"teacher","full_name":"Jane Doe","age":41}
+ * {"type":"course","name":"Algebra","hours":36}
+ * {"type":"assignment","teacher":"Jane Doe","course":"Algebra"}
+ * </pre>
+ * Files ending in {@code .gz} are decompressed, so a compressed export imports as it is.
+ * A nested JSON export of {@link BulkExporter} is one document rather than records and is
+ * rejected. Assignment rows are staged and resolved by name in a single pass once every teacher and
+ * course has been written; names that match several rows resolve to the lowest id. An import
+ * holds this process's writer connection until it finishes.
+ */
+public class BulkImporter {
+    public enum Format {
+        CSV, JSONL;
+
+        /**
+         * JSON lines for {@code .jsonl} and {@code .json}, ignoring a trailing {@code .gz}, as
+         * {@link BulkExporter.Format#fromPath} decides; CSV otherwise.
+         */
+        public static Format fromPath(Path path) {
+            String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+            if (name.endsWith(".gz")) {
+                name = name.substring(0, name.length() - 3);
+            }
+            return name.endsWith(".jsonl") || name.endsWith(".json") ? JSONL : CSV;
+        }
+    }
+
+    private static final int DEFAULT_CHUNK_SIZE = 10_000;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final int chunkSize;
+    private final Consumer<Report> progressListener;
+
+    public BulkImporter() {
+        this(DEFAULT_CHUNK_SIZE, null);
+    }
+
+    public BulkImporter(int chunkSize, Consumer<Report> progressListener) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be at least 1");
+        }
+        this.chunkSize = chunkSize;
+        this.progressListener = progressListener;
+    }
+
+    public Report importFile(Path path) throws IOException, SQLException {
+        return importFile(path, Format.fromPath(path));
+    }
+
+    /**
+     * Reads the file, decompressing it first if its name ends in {@code .gz}.
+     */
+    public Report importFile(Path path, Format format) throws IOException, SQLException {
+        try (InputStream file = Files.newInputStream(path);
+             InputStream in = BulkExporter.isGzip(path) ? new GZIPInputStream(file, BUFFER_SIZE) : file;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            return importFrom(reader, format);
+        }
+    }
+
+    public Report importFrom(BufferedReader reader, Format format) throws IOException, SQLException {
+        Report report = new Report();
+        List<Teacher> teachers = new ArrayList<>(chunkSize);
+        List<Course> courses = new ArrayList<>(chunkSize);
+        List<String[]> assignments = new ArrayList<>(chunkSize);
+
+        try (PooledConnection connection = DatabaseManager.acquireWriter()) {
+            createStagingTable(connection.getConnection());
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    report.lines++;
+                    if (line.isBlank() || (format == Format.CSV && report.lines == 1 && isCsvHeader(line))) {
+                        continue;
+                    }
+                    if (format == Format.JSONL && report.lines == 1 && line.strip().startsWith(BulkExporter.NESTED_JSON_START)) {
+                        throw new IOException("Input is a nested JSON export, not JSON lines; export it as jsonl to import it");
+                    }
+                    if (!parseRecord(line, format, teachers, courses, assignments)) {
+                        report.skipped++;
+                        continue;
+                    }
+                    if (teachers.size() >= chunkSize) {
+                        report.teachers += insertTeachers(connection, teachers);
+                        teachers.clear();
+                        report(report);
+                    }
+                    if (courses.size() >= chunkSize) {
+                        report.courses += insertCourses(connection, courses, null);
+                        courses.clear();
+                        report(report);
+                    }
+                    if (assignments.size() >= chunkSize) {
+                        report.stagedAssignments += stageAssignments(connection, assignments);
+                        assignments.clear();
+                        report(report);
+                    }
+                }
+                report.teachers += insertTeachers(connection, teachers);
+                report.courses += insertCourses(connection, courses, null);
+                report.stagedAssignments += stageAssignments(connection, assignments);
+                report.assignments = resolveAssignments(connection.getConnection());
+                report.finished = true;
+                report(report);
+            } finally {
+                dropStagingTables(connection.getConnection());
+                // Chunks commit as they go, so even a failed import may have changed the data.
+                ChangeFeed.publish(ChangeEvent.reloaded());
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Inserts the given teachers in one transaction and assigns each its generated id.
+     */
+    public static int saveTeachers(List<Teacher> teachers) throws SQLException {
+        int saved;
+        try (PooledConnection connection = DatabaseManager.acquireWriter()) {
+            saved = insertTeachers(connection, teachers);
+        }
+        List<ChangeEvent> changes = new ArrayList<>(teachers.size());
+        for (Teacher teacher : teachers) {
+            changes.add(ChangeEvent.teacherAdded(teacher));
+        }
+        ChangeFeed.publish(changes);
+        return saved;
+    }
+
+    /**
+     * Saves the given courses to the catalog in one transaction and assigns each its id, which is
+     * that of the existing course for courses already in the catalog. Returns how many were new.
+     */
+    public static int saveCourses(List<Course> courses) throws SQLException {
+        List<Course> added = new ArrayList<>();
+        try (PooledConnection connection = DatabaseManager.acquireWriter()) {
+            insertCourses(connection, courses, added);
+        }
+        List<ChangeEvent> changes = new ArrayList<>(added.size());
+        for (Course course : added) {
+            changes.add(ChangeEvent.courseAdded(course));
+        }
+        ChangeFeed.publish(changes);
+        return added.size();
+    }
+
+    private void report(Report report) {
+        if (progressListener != null) {
+            progressListener.accept(report);
+        }
+    }
+
+    private static boolean isCsvHeader(String line) {
+        String first = parseCsvLine(line).get(0).trim().toLowerCase(Locale.ROOT);
+        return first.equals("type") || first.equals("record_type");
+    }
+
+    private static boolean parseRecord(String line, Format format, List<Teacher> teachers,
+                                       List<Course> courses, List<String[]> assignments) {
+        try {
+            if (format == Format.CSV) {
+                List<String> fields = parseCsvLine(line);
+                if (fields.size() < 3) {
+                    return false;
+                }
+                switch (fields.get(0).trim().toLowerCase(Locale.ROOT)) {
+                    case "teacher" -> teachers.add(new Teacher(fields.get(1), Integer.parseInt(fields.get(2).trim())));
+                    case "course" -> courses.add(new Course(fields.get(1), Integer.parseInt(fields.get(2).trim())));
+                    case "assignment" -> assignments.add(new String[]{fields.get(1), fields.get(2)});
+                    default -> {
+                        return false;
+                    }
+                }
+            } else {
+                Map<String, Object> record = Json.parseObject(line);
+                Object type = record.get("type");
+                if (!(type instanceof String)) {
+                    return false;
+                }
+                switch ((String) type) {
+                    case "teacher" -> teachers.add(new Teacher(requireString(record, "full_name"), requireInt(record, "age")));
+                    case "course" -> courses.add(new Course(requireString(record, "name"), requireInt(record, "hours")));
+                    case "assignment" -> assignments.add(new String[]{requireString(record, "teacher"), requireString(record, "course")});
+                    default -> {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static String requireString(Map<String, Object> record, String key) {
+        Object value = record.get(key);
+        if (!(value instanceof String)) {
+            throw new IllegalArgumentException("Missing string field " + key);
+        }
+        return (String) value;
+    }
+
+    private static int requireInt(Map<String, Object> record, String key) {
+        Object value = record.get(key);
+        if (!(value instanceof Number)) {
+            throw new IllegalArgumentException("Missing numeric field " + key);
+        }
+        return ((Number) value).intValue();
+    }
+
+    static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static int insertTeachers(PooledConnection connection, List<Teacher> teachers) throws SQLException {
+        if (teachers.isEmpty()) {
+            return 0;
+        }
+        return inTransaction(connection.getConnection(), () -> {
+            PreparedStatement statement = connection.prepare("INSERT INTO teachers (full_name, age) VALUES (?, ?)");
+            for (Teacher teacher : teachers) {
+                statement.setString(1, teacher.getFullName());
+                statement.setInt(2, teacher.getAge());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+            int firstId = lastInsertId(connection) - teachers.size() + 1;
+            for (int i = 0; i < teachers.size(); i++) {
+                teachers.get(i).setId(firstId + i);
+            }
+            return teachers.size();
+        });
+    }
+
+    /**
+     * Interns the courses one by one, since ids of courses already in the catalog cannot come from
+     * a batch insert, and returns how many were new. Those are also collected in {@code added}
+     * unless it is null.
+     */
+    private static int insertCourses(PooledConnection connection, List<Course> courses, List<Course> added) throws SQLException {
+        if (courses.isEmpty()) {
+            return 0;
+        }
+        return inTransaction(connection.getConnection(), () -> {
+            int inserted = 0;
+            if (added != null) {
+                added.clear();
+            }
+            for (Course course : courses) {
+                if (DatabaseManager.internCourse(connection, course)) {
+                    inserted++;
+                    if (added != null) {
+                        added.add(course);
+                    }
+                }
+            }
+            return inserted;
+        });
+    }
+
+    // Rows inserted by one transaction get consecutive ids because the write lock is held from
+    // the first insert until commit, so the last rowid identifies the whole batch.
+    private static int lastInsertId(PooledConnection connection) throws SQLException {
+        try (ResultSet resultSet = connection.prepare("SELECT last_insert_rowid()").executeQuery()) {
+            if (!resultSet.next()) {
+                throw new SQLException("Bulk insert failed, no ID obtained.");
+            }
+            return resultSet.getInt(1);
+        }
+    }
+
+    private static void createStagingTable(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DROP TABLE IF EXISTS temp.import_assignments");
+            statement.executeUpdate("CREATE TEMP TABLE import_assignments (teacher_name TEXT, course_name TEXT)");
+        }
+    }
+
+    private static void dropStagingTables(Connection connection) {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DROP TABLE IF EXISTS temp.import_assignments");
+            statement.executeUpdate("DROP TABLE IF EXISTS temp.import_teacher_ids");
+            statement.executeUpdate("DROP TABLE IF EXISTS temp.import_course_ids");
+        } catch (SQLException e) {
+            DatabaseManager.reportFailure("dropStagingTables", e);
+        }
+    }
+
+    private static int stageAssignments(PooledConnection connection, List<String[]> assignments) throws SQLException {
+        if (assignments.isEmpty()) {
+            return 0;
+        }
+        return inTransaction(connection.getConnection(), () -> {
+            PreparedStatement statement = connection.prepare(
+                    "INSERT INTO temp.import_assignments (teacher_name, course_name) VALUES (?, ?)");
+            for (String[] assignment : assignments) {
+                statement.setString(1, assignment[0]);
+                statement.setString(2, assignment[1]);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+            return assignments.size();
+        });
+    }
+
+    private static int resolveAssignments(Connection connection) throws SQLException {
+        return inTransaction(connection, () -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("CREATE TEMP TABLE import_teacher_ids AS " +
+                        "SELECT full_name, MIN(id) AS id FROM teachers " +
+                        "WHERE full_name IN (SELECT teacher_name FROM temp.import_assignments) GROUP BY full_name");
+                statement.executeUpdate("CREATE UNIQUE INDEX temp.import_teacher_ids_name ON import_teacher_ids (full_name)");
+                statement.executeUpdate("CREATE TEMP TABLE import_course_ids AS " +
+                        "SELECT name, MIN(id) AS id FROM courses " +
+                        "WHERE name IN (SELECT course_name FROM temp.import_assignments) GROUP BY name");
+                statement.executeUpdate("CREATE UNIQUE INDEX temp.import_course_ids_name ON import_course_ids (name)");
+                statement.executeUpdate("INSERT OR IGNORE INTO teacher_course (teacher_id, course_id) " +
+                        "SELECT t.id, c.id FROM temp.import_assignments a " +
+                        "JOIN temp.import_teacher_ids t ON t.full_name = a.teacher_name " +
+                        "JOIN temp.import_course_ids c ON c.name = a.course_name");
+                // The driver's update count includes the rows changed by the teaching-load triggers.
+                try (ResultSet resultSet = statement.executeQuery("SELECT changes()")) {
+                    return resultSet.next() ? resultSet.getInt(1) : 0;
+                }
+            }
+        });
+    }
+
+    private interface SqlWork {
+        int run() throws SQLException;
+    }
+
+    private static int inTransaction(Connection connection, SqlWork work) throws SQLException {
+        return BusyRetry.run(() -> {
+            connection.setAutoCommit(false);
+            try {
+                int result = work.run();
+                connection.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        });
+    }
+
+    public static class Report {
+        private final long startNanos = System.nanoTime();
+        private long lines;
+        private long skipped;
+        private long teachers;
+        private long courses;
+        private long stagedAssignments;
+        private long assignments;
+        private boolean finished;
+
+        public long getLines() {
+            return lines;
+        }
+
+        public long getSkipped() {
+            return skipped;
+        }
+
+        public long getTeachers() {
+            return teachers;
+        }
+
+        public long getCourses() {
+            return courses;
+        }
+
+        public long getStagedAssignments() {
+            return stagedAssignments;
+        }
+
+        public long getAssignments() {
+            return assignments;
+        }
+
+        public long getUnresolvedAssignments() {
+            return finished ? stagedAssignments - assignments : 0;
+        }
+
+        public boolean isFinished() {
+            return finished;
+        }
+
+        public long getElapsedMillis() {
+            return (System.nanoTime() - startNanos) / 1_000_000;
+        }
+
+        public double getRowsPerSecond() {
+            long elapsed = Math.max(1, getElapsedMillis());
+            return (teachers + courses + stagedAssignments) * 1000.0 / elapsed;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "%s: %d lines, %d teachers, %d courses, %d assignments staged, %d linked, %d unresolved, %d skipped in %d ms (%.0f rows/s)",
+                    finished ? "Import finished" : "Importing", lines, teachers, courses, stagedAssignments,
+                    assignments, getUnresolvedAssignments(), skipped, getElapsedMillis(), getRowsPerSecond());
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.teacher_and_course;
+
+import org.sqlite.SQLiteErrorCode;
+import org.sqlite.SQLiteException;
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Retries a unit of database work that failed because another connection or process held the
+ * database lock past the busy timeout. Waits grow exponentially up to a cap and are fully
+ * jittered, so writers that collided once do not wake up together and collide again. The work
+ * must be safe to run again, which holds for anything that runs in its own transaction.
+ */
+public class BusyRetry {
+    private static final int MAX_ATTEMPTS = Integer.getInteger("school.db.busyRetries", 5);
+    private static final long BASE_DELAY_MILLIS = Long.getLong("school.db.busyRetryBaseMillis", 10L);
+    private static final long MAX_DELAY_MILLIS = Long.getLong("school.db.busyRetryMaxMillis", 1000L);
+
+    private static final LongAdder retries = new LongAdder();
+    private static final LongAdder exhausted = new LongAdder();
+
+    private BusyRetry() {
+    }
+
+    public interface SqlWork<T> {
+        T run() throws SQLException;
+    }
+
+    public static <T> T run(SqlWork<T> work) throws SQLException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return work.run();
+            } catch (SQLException e) {
+                if (!isBusy(e)) {
+                    throw e;
+                }
+                if (attempt >= MAX_ATTEMPTS) {
+                    exhausted.increment();
+                    throw e;
+                }
+                retries.increment();
+                sleep(attempt, e);
+            }
+        }
+    }
+
+    /**
+     * True for SQLITE_BUSY and SQLITE_LOCKED in any of their extended forms.
+     */
+    public static boolean isBusy(SQLException e) {
+        int code = e instanceof SQLiteException sqlite ? sqlite.getResultCode().code : e.getErrorCode();
+        int primary = code & 0xff;
+        return primary == SQLiteErrorCode.SQLITE_BUSY.code || primary == SQLiteErrorCode.SQLITE_LOCKED.code;
+    }
+
+    public static long getRetries() {
+        return retries.sum();
+    }
+
+    public static long getExhausted() {
+        return exhausted.sum();
+    }
+
+    private static void sleep(int attempt, SQLException cause) throws SQLException {
+        long ceiling = Math.min(MAX_DELAY_MILLIS, BASE_DELAY_MILLIS << Math.min(attempt - 1, 20));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            SQLException interrupted = new SQLException("Interrupted while retrying a busy database", e);
+            interrupted.addSuppressed(cause);
+            throw interrupted;
+        }
+    }
+}
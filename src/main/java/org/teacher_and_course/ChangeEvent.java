@@ -0,0 +1,140 @@
+package org.teacher_and_course;
+
+/**
+ * One committed change to the school data, as published on the {@link ChangeFeed}. Added and
+ * updated rows carry a copy of the new values; removals and assignments carry only ids. Removing a
+ * teacher or course also removes its assignments without separate events. {@link Type#RELOADED}
+ * stands for changes that were not described row by row, such as a bulk import or a write by
+ * another process, after which subscribers should re-read whatever they show.
+ */
+public final class ChangeEvent {
+    public enum Type {
+        TEACHER_ADDED, TEACHER_UPDATED, TEACHER_REMOVED,
+        COURSE_ADDED, COURSE_UPDATED, COURSE_REMOVED,
+        ASSIGNMENT_ADDED, ASSIGNMENT_REMOVED,
+        RELOADED
+    }
+
+    private static final ChangeEvent RELOADED = new ChangeEvent(Type.RELOADED, 0, 0, null, null);
+
+    private final Type type;
+    private final int teacherId;
+    private final int courseId;
+    private final Teacher teacher;
+    private final Course course;
+
+    private ChangeEvent(Type type, int teacherId, int courseId, Teacher teacher, Course course) {
+        this.type = type;
+        this.teacherId = teacherId;
+        this.courseId = courseId;
+        this.teacher = teacher;
+        this.course = course;
+    }
+
+    public static ChangeEvent teacherAdded(Teacher teacher) {
+        return new ChangeEvent(Type.TEACHER_ADDED, teacher.getId(), 0, copyOf(teacher), null);
+    }
+
+    public static ChangeEvent teacherUpdated(Teacher teacher) {
+        return new ChangeEvent(Type.TEACHER_UPDATED, teacher.getId(), 0, copyOf(teacher), null);
+    }
+
+    public static ChangeEvent teacherRemoved(int teacherId) {
+        return new ChangeEvent(Type.TEACHER_REMOVED, teacherId, 0, null, null);
+    }
+
+    public static ChangeEvent courseAdded(Course course) {
+        return new ChangeEvent(Type.COURSE_ADDED, 0, course.getId(), null, copyOf(course));
+    }
+
+    public static ChangeEvent courseUpdated(Course course) {
+        return new ChangeEvent(Type.COURSE_UPDATED, 0, course.getId(), null, copyOf(course));
+    }
+
+    public static ChangeEvent courseRemoved(int courseId) {
+        return new ChangeEvent(Type.COURSE_REMOVED, 0, courseId, null, null);
+    }
+
+    public static ChangeEvent assignmentAdded(int teacherId, int courseId) {
+        return new ChangeEvent(Type.ASSIGNMENT_ADDED, teacherId, courseId, null, null);
+    }
+
+    public static ChangeEvent assignmentRemoved(int teacherId, int courseId) {
+        return new ChangeEvent(Type.ASSIGNMENT_REMOVED, teacherId, courseId, null, null);
+    }
+
+    public static ChangeEvent reloaded() {
+        return RELOADED;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getTeacherId() {
+        return teacherId;
+    }
+
+    public int getCourseId() {
+        return courseId;
+    }
+
+    /**
+     * The teacher's new values for added and updated teachers, otherwise {@code null}. Shared by
+     * every subscriber, so it must not be modified.
+     */
+    public Teacher getTeacher() {
+        return teacher;
+    }
+
+    /**
+     * The course's new values for added and updated courses, otherwise {@code null}. Shared by
+     * every subscriber, so it must not be modified.
+     */
+    public Course getCourse() {
+        return course;
+    }
+
+    /**
+     * The row this event is about; events with the same key can be coalesced.
+     */
+    String key() {
+        return switch (type) {
+            case TEACHER_ADDED, TEACHER_UPDATED, TEACHER_REMOVED -> "teacher:" + teacherId;
+            case COURSE_ADDED, COURSE_UPDATED, COURSE_REMOVED -> "course:" + courseId;
+            case ASSIGNMENT_ADDED, ASSIGNMENT_REMOVED -> "assignment:" + teacherId + ":" + courseId;
+            case RELOADED -> "reloaded";
+        };
+    }
+
+    /**
+     * This event with the row values of a later update to the same row.
+     */
+    ChangeEvent withValuesOf(ChangeEvent update) {
+        return new ChangeEvent(type, teacherId, courseId, update.teacher, update.course);
+    }
+
+    @Override
+    public String toString() {
+        return switch (type) {
+            case TEACHER_ADDED, TEACHER_UPDATED -> type + "(" + teacherId + ", " + teacher.getFullName() + ", " + teacher.getAge() + ")";
+            case COURSE_ADDED, COURSE_UPDATED -> type + "(" + courseId + ", " + course.getName() + ", " + course.getHours() + ")";
+            case TEACHER_REMOVED -> type + "(" + teacherId + ")";
+            case COURSE_REMOVED -> type + "(" + courseId + ")";
+            case ASSIGNMENT_ADDED, ASSIGNMENT_REMOVED -> type + "(" + teacherId + ", " + courseId + ")";
+            case RELOADED -> type.toString();
+        };
+    }
+
+    private static Teacher copyOf(Teacher teacher) {
+        Teacher copy = new Teacher(teacher.getFullName(), teacher.getAge());
+        copy.setId(teacher.getId());
+        return copy;
+    }
+
+    private static Course copyOf(Course course) {
+        Course copy = new Course(course.getName(), course.getHours());
+        copy.setId(course.getId());
+        return copy;
+    }
+}
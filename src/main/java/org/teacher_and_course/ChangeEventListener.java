@@ -0,0 +1,11 @@
+package org.teacher_and_course;
+
+import java.util.List;
+
+/**
+ * Subscriber to the {@link ChangeFeed}. Called on the event dispatch thread with the coalesced
+ * changes committed since the previous call, in commit order.
+ */
+public interface ChangeEventListener {
+    void onChanges(List<ChangeEvent> changes);
+}
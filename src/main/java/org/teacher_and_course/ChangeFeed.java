@@ -0,0 +1,226 @@
+package org.teacher_and_course;
+
+import javax.swing.Timer;
+import java.awt.GraphicsEnvironment;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stream of the changes committed through this process, so that caches, table models and reports
+ * can apply them instead of reloading. Writers publish a {@link ChangeEvent} once its change has
+ * committed. Events published within {@code school.changes.delayMillis} of each other are delivered
+ * together on the event dispatch thread, or on a feed thread of their own when there is no screen
+ * or after {@link #deliverOffEventThread()}, coalesced per row: an update folds into an earlier add or
+ * update of the same row, a removal replaces them, and an assignment that is added and removed
+ * again disappears. More than {@code school.changes.maxPending} undelivered events collapse into
+ * one {@link ChangeEvent.Type#RELOADED}.
+ *
+ * <p>Writes by other processes cannot be described row by row. While anyone is subscribed, the
+ * feed polls SQLite's {@code data_version} every {@code school.changes.pollMillis} through a read
+ * connection of its own. Only when that has moved does it look at the writer connection, whose
+ * {@code data_version} ignores this process's commits, and only if the writer is free; it publishes
+ * {@code RELOADED} when that has moved too.
+ */
+public final class ChangeFeed {
+    private static final int DELAY_MILLIS = Integer.getInteger("school.changes.delayMillis", 50);
+    private static final int MAX_PENDING = Integer.getInteger("school.changes.maxPending", 10_000);
+    private static final long POLL_MILLIS = Long.getLong("school.changes.pollMillis", 1000L);
+
+    private static final List<ChangeEventListener> listeners = new CopyOnWriteArrayList<>();
+    private static final Object lock = new Object();
+    private static List<ChangeEvent> pending = new ArrayList<>();
+    private static final Map<String, Integer> positions = new HashMap<>();
+    private static boolean reloadPending;
+    private static boolean scheduled;
+    private static ScheduledExecutorService poller;
+    private static ScheduledExecutorService deliverer;
+    private static boolean pollingDisabled;
+    private static volatile boolean onEventThread = !GraphicsEnvironment.isHeadless();
+    private static volatile long readDataVersion = -1;
+    private static volatile long dataVersion = -1;
+
+    private ChangeFeed() {
+    }
+
+    public static void subscribe(ChangeEventListener listener) {
+        listeners.add(listener);
+        startPolling();
+    }
+
+    public static void unsubscribe(ChangeEventListener listener) {
+        listeners.remove(listener);
+    }
+
+    public static void publish(ChangeEvent change) {
+        publish(List.of(change));
+    }
+
+    /**
+     * Queues {@code changes} for delivery. Without subscribers they are dropped.
+     */
+    public static void publish(List<ChangeEvent> changes) {
+        if (listeners.isEmpty() || changes.isEmpty()) {
+            return;
+        }
+        synchronized (lock) {
+            for (ChangeEvent change : changes) {
+                add(change);
+            }
+            if (!scheduled) {
+                scheduled = true;
+                if (onEventThread) {
+                    Timer timer = new Timer(DELAY_MILLIS, e -> deliver());
+                    timer.setRepeats(false);
+                    timer.start();
+                } else {
+                    deliverer().schedule(ChangeFeed::deliver, DELAY_MILLIS, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+    }
+
+    /**
+     * Delivers changes on a feed thread from now on instead of the event dispatch thread, for
+     * processes without a GUI, whose listeners must then be thread-safe.
+     */
+    public static void deliverOffEventThread() {
+        onEventThread = false;
+    }
+
+    // Called holding the lock.
+    private static ScheduledExecutorService deliverer() {
+        if (deliverer == null) {
+            deliverer = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "change-feed");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return deliverer;
+    }
+
+    private static void add(ChangeEvent change) {
+        if (reloadPending) {
+            return;
+        }
+        if (change.getType() == ChangeEvent.Type.RELOADED || pending.size() >= MAX_PENDING) {
+            pending.clear();
+            positions.clear();
+            pending.add(ChangeEvent.reloaded());
+            reloadPending = true;
+            return;
+        }
+        String key = change.key();
+        Integer position = positions.get(key);
+        if (position != null) {
+            ChangeEvent previous = pending.get(position);
+            switch (change.getType()) {
+                case TEACHER_UPDATED, COURSE_UPDATED -> {
+                    // Keeps the place, and so the order relative to assignments, of the first event.
+                    pending.set(position, previous.withValuesOf(change));
+                    return;
+                }
+                case TEACHER_REMOVED, COURSE_REMOVED -> pending.set(position, null);
+                case ASSIGNMENT_ADDED, ASSIGNMENT_REMOVED -> {
+                    if (previous.getType() != change.getType()) {
+                        pending.set(position, null);
+                        positions.remove(key);
+                    }
+                    return;
+                }
+                default -> {
+                    // Added again after a removal, when SQLite reuses a row id: both events stay.
+                }
+            }
+        }
+        positions.put(key, pending.size());
+        pending.add(change);
+    }
+
+    private static void deliver() {
+        List<ChangeEvent> batch;
+        synchronized (lock) {
+            batch = pending;
+            pending = new ArrayList<>();
+            positions.clear();
+            reloadPending = false;
+            scheduled = false;
+        }
+        batch.removeIf(change -> change == null);
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<ChangeEvent> changes = List.copyOf(batch);
+        for (ChangeEventListener listener : listeners) {
+            try {
+                listener.onChanges(changes);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Stops polling {@code data_version}, for storage engines other than SQLite, which have no
+     * database file that another process could write.
+     */
+    public static synchronized void disablePolling() {
+        pollingDisabled = true;
+        if (poller != null) {
+            poller.shutdownNow();
+            poller = null;
+        }
+    }
+
+    private static synchronized void startPolling() {
+        if (poller != null || pollingDisabled || POLL_MILLIS <= 0) {
+            return;
+        }
+        poller = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "change-feed-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(ChangeFeed::poll, 0, POLL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private static void poll() {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        try {
+            long seen = DatabaseManager.readDataVersion();
+            if (seen == readDataVersion) {
+                return;
+            }
+            long current = DatabaseManager.writerDataVersion();
+            if (current == -1) {
+                // The writer is busy; the read version has still moved at the next poll.
+                return;
+            }
+            readDataVersion = seen;
+            long previous = dataVersion;
+            dataVersion = current;
+            if (previous != -1 && previous != current) {
+                publish(ChangeEvent.reloaded());
+            }
+        } catch (SQLException e) {
+            // The database is unavailable; the next poll tries again.
+        }
+    }
+
+    /**
+     * Forgets the last seen {@code data_version}s, which belong to one pair of connections.
+     */
+    static void resetDataVersion() {
+        readDataVersion = -1;
+        dataVersion = -1;
+    }
+}
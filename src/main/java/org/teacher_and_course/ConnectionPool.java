@@ -0,0 +1,263 @@
+package org.teacher_and_course;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-size pool of SQLite connections in WAL mode. A pool is either for readers, whose
+ * connections are {@code query_only}, or for writers, whose transactions begin {@code IMMEDIATE}
+ * so that the write lock is taken up front instead of failing on upgrade from a read.
+ */
+public class ConnectionPool implements AutoCloseable {
+    private final String url;
+    private final boolean writer;
+    private final int maxSize;
+    private final int statementCacheSize;
+    private final long acquireTimeoutMillis;
+    private final int busyTimeoutMillis;
+    private final Semaphore permits;
+    private final BlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+
+    private final AtomicInteger open = new AtomicInteger();
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final AtomicInteger peakInUse = new AtomicInteger();
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder statementHits = new LongAdder();
+    private final LongAdder statementMisses = new LongAdder();
+    private volatile boolean closed;
+
+    public ConnectionPool(String url, int maxSize, int statementCacheSize, long acquireTimeoutMillis, int busyTimeoutMillis) {
+        this(url, maxSize, statementCacheSize, acquireTimeoutMillis, busyTimeoutMillis, true);
+    }
+
+    public ConnectionPool(String url, int maxSize, int statementCacheSize, long acquireTimeoutMillis, int busyTimeoutMillis,
+                          boolean writer) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1");
+        }
+        this.url = url;
+        this.writer = writer;
+        this.maxSize = maxSize;
+        this.statementCacheSize = statementCacheSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.busyTimeoutMillis = busyTimeoutMillis;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public boolean isWriter() {
+        return writer;
+    }
+
+    public PooledConnection acquire() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        acquisitions.increment();
+        if (!permits.tryAcquire()) {
+            waits.increment();
+            long start = System.nanoTime();
+            try {
+                if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                    throw new SQLException("Timed out after " + acquireTimeoutMillis + " ms waiting for a database connection");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a database connection", e);
+            } finally {
+                waitNanos.add(System.nanoTime() - start);
+            }
+        }
+
+        return take();
+    }
+
+    /**
+     * A connection if one is free right now, or null instead of waiting for one.
+     */
+    public PooledConnection tryAcquire() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        if (!permits.tryAcquire()) {
+            return null;
+        }
+        acquisitions.increment();
+        return take();
+    }
+
+    // Called holding a permit, which is released again if no connection can be opened.
+    private PooledConnection take() throws SQLException {
+        PooledConnection connection = idle.pollFirst();
+        if (connection == null) {
+            try {
+                connection = new PooledConnection(this, openConnection(), statementCacheSize);
+            } catch (SQLException e) {
+                permits.release();
+                throw e;
+            }
+        }
+        connection.markAcquired();
+        int current = inUse.incrementAndGet();
+        peakInUse.accumulateAndGet(current, Math::max);
+        return connection;
+    }
+
+    void release(PooledConnection connection) {
+        inUse.decrementAndGet();
+        boolean healthy = connection.reset();
+        if (healthy && !closed) {
+            idle.offerFirst(connection);
+        } else {
+            connection.closePhysical();
+            open.decrementAndGet();
+        }
+        permits.release();
+    }
+
+    void recordStatementLookup(boolean hit) {
+        if (hit) {
+            statementHits.increment();
+        } else {
+            statementMisses.increment();
+        }
+    }
+
+    private Connection openConnection() throws SQLException {
+        Properties properties = new Properties();
+        if (writer) {
+            properties.setProperty("transaction_mode", "IMMEDIATE");
+        }
+        Connection connection = DriverManager.getConnection(url, properties);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA busy_timeout=" + busyTimeoutMillis);
+            // Only takes effect on a new, empty file, and only before the switch to WAL; existing
+            // files are converted by DatabaseMaintenance.enableIncrementalVacuum().
+            statement.execute("PRAGMA auto_vacuum=INCREMENTAL");
+            statement.execute("PRAGMA journal_mode=WAL");
+            statement.execute("PRAGMA synchronous=NORMAL");
+            statement.execute("PRAGMA foreign_keys=ON");
+            if (!writer) {
+                statement.execute("PRAGMA query_only=ON");
+            }
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        open.incrementAndGet();
+        created.increment();
+        return connection;
+    }
+
+    public Stats getStats() {
+        return new Stats(maxSize, open.get(), inUse.get(), idle.size(), peakInUse.get(),
+                acquisitions.sum(), waits.sum(), TimeUnit.NANOSECONDS.toMillis(waitNanos.sum()),
+                created.sum(), statementHits.sum(), statementMisses.sum());
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        PooledConnection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            connection.closePhysical();
+            open.decrementAndGet();
+        }
+    }
+
+    public static class Stats {
+        private final int maxSize;
+        private final int open;
+        private final int inUse;
+        private final int idle;
+        private final int peakInUse;
+        private final long acquisitions;
+        private final long waits;
+        private final long waitMillis;
+        private final long created;
+        private final long statementHits;
+        private final long statementMisses;
+
+        Stats(int maxSize, int open, int inUse, int idle, int peakInUse, long acquisitions, long waits,
+              long waitMillis, long created, long statementHits, long statementMisses) {
+            this.maxSize = maxSize;
+            this.open = open;
+            this.inUse = inUse;
+            this.idle = idle;
+            this.peakInUse = peakInUse;
+            this.acquisitions = acquisitions;
+            this.waits = waits;
+            this.waitMillis = waitMillis;
+            this.created = created;
+            this.statementHits = statementHits;
+            this.statementMisses = statementMisses;
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public int getOpen() {
+            return open;
+        }
+
+        public int getInUse() {
+            return inUse;
+        }
+
+        public int getIdle() {
+            return idle;
+        }
+
+        public int getPeakInUse() {
+            return peakInUse;
+        }
+
+        public long getAcquisitions() {
+            return acquisitions;
+        }
+
+        public long getWaits() {
+            return waits;
+        }
+
+        public long getWaitMillis() {
+            return waitMillis;
+        }
+
+        public long getCreated() {
+            return created;
+        }
+
+        public long getStatementHits() {
+            return statementHits;
+        }
+
+        public long getStatementMisses() {
+            return statementMisses;
+        }
+
+        @Override
+        public String toString() {
+            return "Pool: max=" + maxSize + ", open=" + open + ", inUse=" + inUse + ", idle=" + idle +
+                    ", peakInUse=" + peakInUse + ", acquisitions=" + acquisitions + ", waits=" + waits +
+                    ", waitMillis=" + waitMillis + ", created=" + created +
+                    ", statementHits=" + statementHits + ", statementMisses=" + statementMisses;
+        }
+    }
+}
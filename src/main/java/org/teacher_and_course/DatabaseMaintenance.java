@@ -0,0 +1,395 @@
+package org.teacher_and_course;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background upkeep of the database file. Each pass sweeps orphaned {@code teacher_course} rows
+ * (assignments whose teacher or course is gone, left behind by databases written before foreign
+ * keys were enforced or by other tools), returns free pages to the file system with
+ * {@code PRAGMA incremental_vacuum} and lets SQLite refresh its planner statistics with
+ * {@code PRAGMA optimize}. The work is split into small writer transactions, and before each one
+ * the pass waits until no other database operation has run for {@code idleMillis}, so it never
+ * competes with interactive traffic.
+ *
+ * <p>New databases are created with {@code auto_vacuum=INCREMENTAL}. An older database keeps
+ * its free pages until it is converted once with {@link #enableIncrementalVacuum()}, which
+ * rewrites the whole file.
+ */
+public class DatabaseMaintenance implements AutoCloseable {
+    private static final OperationMetrics SWEEP_METRICS = PersistenceMetrics.operation("DatabaseMaintenance", "sweepOrphans");
+    private static final OperationMetrics VACUUM_METRICS = PersistenceMetrics.operation("DatabaseMaintenance", "incrementalVacuum");
+    private static final OperationMetrics OPTIMIZE_METRICS = PersistenceMetrics.operation("DatabaseMaintenance", "optimize");
+    private static final Set<OperationMetrics> OWN_METRICS = Set.of(SWEEP_METRICS, VACUUM_METRICS, OPTIMIZE_METRICS);
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    // A window of assignments in key order with a flag for the orphaned ones; the last row of the
+    // window is where the next one starts.
+    private static final String SCAN_WINDOW =
+            "SELECT w.teacher_id, w.course_id, t.id IS NULL OR c.id IS NULL FROM (" +
+                    "SELECT teacher_id, course_id FROM teacher_course " +
+                    "WHERE teacher_id > ? OR (teacher_id = ? AND course_id > ?) " +
+                    "ORDER BY teacher_id, course_id LIMIT ?) w " +
+                    "LEFT JOIN teachers t ON t.id = w.teacher_id " +
+                    "LEFT JOIN courses c ON c.id = w.course_id " +
+                    "ORDER BY w.teacher_id, w.course_id";
+    private static final String DELETE_ORPHAN =
+            "DELETE FROM teacher_course WHERE teacher_id = ? AND course_id = ? " +
+                    "AND (NOT EXISTS (SELECT 1 FROM teachers WHERE id = ?) " +
+                    "OR NOT EXISTS (SELECT 1 FROM courses WHERE id = ?))";
+
+    private final int batchSize;
+    private final int vacuumPages;
+    private final long idleMillis;
+    private ScheduledExecutorService scheduler;
+    private volatile boolean closed;
+    private volatile Report lastReport;
+    private long seenActivity = -1;
+    private long quietSince;
+
+    /**
+     * @param batchSize   assignments examined per sweep transaction
+     * @param vacuumPages free pages released per {@code incremental_vacuum} step
+     * @param idleMillis  quiet time required before each step; 0 runs without pausing
+     */
+    public DatabaseMaintenance(int batchSize, int vacuumPages, long idleMillis) {
+        if (batchSize < 1 || vacuumPages < 1) {
+            throw new IllegalArgumentException("Batch size and vacuum pages must be at least 1");
+        }
+        this.batchSize = batchSize;
+        this.vacuumPages = vacuumPages;
+        this.idleMillis = idleMillis;
+    }
+
+    /**
+     * Runs a pass every {@code intervalMillis} on a daemon thread, the first one after the same delay.
+     */
+    public synchronized void start(long intervalMillis) {
+        if (scheduler != null || closed) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "database-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            Report report = runOnce();
+            if (report.orphansRemoved > 0 || report.pagesReclaimed > 0) {
+                System.out.println(report);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public Report getLastReport() {
+        return lastReport;
+    }
+
+    /**
+     * Runs one complete pass on the calling thread. Failures are reported to the
+     * {@link FailureListener} and end the step they occurred in.
+     */
+    public Report runOnce() {
+        Report report = new Report();
+        try {
+            report.pageSize = pragma("page_size");
+            report.pagesBefore = pragma("page_count");
+            report.incremental = pragma("auto_vacuum") == AUTO_VACUUM_INCREMENTAL;
+            sweepOrphans(report);
+            if (report.incremental) {
+                vacuum(report);
+            }
+            optimize(report);
+            report.pagesAfter = pragma("page_count");
+            report.freePages = pragma("freelist_count");
+        } catch (SQLException e) {
+            DatabaseManager.reportFailure("maintenance", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        report.finish();
+        lastReport = report;
+        return report;
+    }
+
+    private void sweepOrphans(Report report) throws InterruptedException {
+        long lastTeacherId = Long.MIN_VALUE;
+        long lastCourseId = Long.MIN_VALUE;
+        while (!closed) {
+            report.pausedNanos += awaitIdle();
+            long start = System.nanoTime();
+            List<long[]> orphans = new ArrayList<>();
+            int scanned = 0;
+            try {
+                try (PooledConnection connection = DatabaseManager.acquire()) {
+                    PreparedStatement statement = connection.prepare(SCAN_WINDOW);
+                    statement.setLong(1, lastTeacherId);
+                    statement.setLong(2, lastTeacherId);
+                    statement.setLong(3, lastCourseId);
+                    statement.setInt(4, batchSize);
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            lastTeacherId = resultSet.getLong(1);
+                            lastCourseId = resultSet.getLong(2);
+                            scanned++;
+                            if (resultSet.getBoolean(3)) {
+                                orphans.add(new long[]{lastTeacherId, lastCourseId});
+                            }
+                        }
+                    }
+                }
+                SWEEP_METRICS.addRowsRead(scanned);
+                report.assignmentsScanned += scanned;
+                if (!orphans.isEmpty()) {
+                    int removed = DatabaseManager.write(connection -> deleteOrphans(connection, orphans));
+                    SWEEP_METRICS.addRowsWritten(removed);
+                    report.orphansRemoved += removed;
+                }
+            } catch (SQLException e) {
+                SWEEP_METRICS.recordError();
+                DatabaseManager.reportFailure(SWEEP_METRICS.getOperation(), e);
+                return;
+            } finally {
+                SWEEP_METRICS.record(start);
+            }
+            if (scanned < batchSize) {
+                return;
+            }
+        }
+    }
+
+    // The orphan test is repeated in the delete: a row whose teacher id has been reused since the
+    // scan belongs to someone again. Each removed row is published, so that caches and assignment
+    // graphs drop the edge as well.
+    private static int deleteOrphans(PooledConnection connection, List<long[]> orphans) throws SQLException {
+        connection.getConnection().setAutoCommit(false);
+        try {
+            PreparedStatement statement = connection.prepare(DELETE_ORPHAN);
+            List<ChangeEvent> removed = new ArrayList<>();
+            for (long[] orphan : orphans) {
+                statement.setLong(1, orphan[0]);
+                statement.setLong(2, orphan[1]);
+                statement.setLong(3, orphan[0]);
+                statement.setLong(4, orphan[1]);
+                if (statement.executeUpdate() > 0) {
+                    removed.add(ChangeEvent.assignmentRemoved((int) orphan[0], (int) orphan[1]));
+                }
+            }
+            connection.getConnection().commit();
+            ChangeFeed.publish(removed);
+            return removed.size();
+        } catch (SQLException e) {
+            connection.getConnection().rollback();
+            throw e;
+        } finally {
+            connection.getConnection().setAutoCommit(true);
+        }
+    }
+
+    private void vacuum(Report report) throws SQLException, InterruptedException {
+        while (!closed) {
+            report.pausedNanos += awaitIdle();
+            long start = System.nanoTime();
+            try {
+                long released = DatabaseManager.write(connection -> {
+                    long before = pragma(connection, "freelist_count");
+                    if (before == 0) {
+                        return 0L;
+                    }
+                    // The driver rejects this pragma as a prepared statement, and execute() would
+                    // step it once, releasing a single page; executeUpdate() runs it to completion.
+                    try (Statement statement = connection.getConnection().createStatement()) {
+                        statement.executeUpdate("PRAGMA incremental_vacuum(" + vacuumPages + ")");
+                    }
+                    return before - pragma(connection, "freelist_count");
+                });
+                VACUUM_METRICS.addRowsWritten(released);
+                report.pagesReclaimed += released;
+                if (released == 0) {
+                    return;
+                }
+            } catch (SQLException e) {
+                VACUUM_METRICS.recordError();
+                throw e;
+            } finally {
+                VACUUM_METRICS.record(start);
+            }
+        }
+    }
+
+    private void optimize(Report report) throws SQLException, InterruptedException {
+        if (closed) {
+            return;
+        }
+        report.pausedNanos += awaitIdle();
+        long start = System.nanoTime();
+        try {
+            DatabaseManager.write(connection -> connection.prepare("PRAGMA optimize").execute());
+            report.optimized = true;
+        } catch (SQLException e) {
+            OPTIMIZE_METRICS.recordError();
+            throw e;
+        } finally {
+            OPTIMIZE_METRICS.record(start);
+        }
+    }
+
+    /**
+     * Switches the database to {@code auto_vacuum=INCREMENTAL} if it is not already, which takes a
+     * full {@code VACUUM}. Writers are blocked while it runs. Returns false if it failed.
+     */
+    public static boolean enableIncrementalVacuum() {
+        try {
+            return DatabaseManager.write(connection -> {
+                if (pragma(connection, "auto_vacuum") == AUTO_VACUUM_INCREMENTAL) {
+                    return true;
+                }
+                try (Statement statement = connection.getConnection().createStatement()) {
+                    statement.execute("PRAGMA auto_vacuum=INCREMENTAL");
+                    statement.execute("VACUUM");
+                }
+                return pragma(connection, "auto_vacuum") == AUTO_VACUUM_INCREMENTAL;
+            });
+        } catch (SQLException e) {
+            DatabaseManager.reportFailure("enableIncrementalVacuum", e);
+            return false;
+        }
+    }
+
+    // Waits until no database operation other than maintenance has completed for idleMillis and no
+    // read is in flight, and returns the time spent waiting. Quiet time carries over from the
+    // previous step, so an idle database is not waited on again between steps.
+    private long awaitIdle() throws InterruptedException {
+        if (idleMillis <= 0) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        while (!closed) {
+            long current = activity();
+            if (current != seenActivity || DatabaseManager.getPoolStats().getInUse() > 0) {
+                seenActivity = current;
+                quietSince = System.nanoTime();
+            } else if (System.nanoTime() - quietSince >= TimeUnit.MILLISECONDS.toNanos(idleMillis)) {
+                break;
+            }
+            Thread.sleep(IDLE_POLL_MILLIS);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long activity() {
+        long calls = 0;
+        for (OperationMetrics metrics : PersistenceMetrics.operations()) {
+            if (!OWN_METRICS.contains(metrics)) {
+                calls += metrics.getCalls();
+            }
+        }
+        return calls;
+    }
+
+    private static long pragma(String name) throws SQLException {
+        try (PooledConnection connection = DatabaseManager.acquire()) {
+            return pragma(connection, name);
+        }
+    }
+
+    private static long pragma(PooledConnection connection, String name) throws SQLException {
+        try (ResultSet resultSet = connection.prepare("PRAGMA " + name).executeQuery()) {
+            return resultSet.next() ? resultSet.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * Stops the scheduled passes; a pass in progress ends after its current step.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler = null;
+        }
+    }
+
+    public static class Report {
+        private final long startNanos = System.nanoTime();
+        private long elapsedNanos;
+        private long pausedNanos;
+        private long pageSize;
+        private long pagesBefore;
+        private long pagesAfter;
+        private long freePages;
+        private boolean incremental;
+        private boolean optimized;
+        private long assignmentsScanned;
+        private long orphansRemoved;
+        private long pagesReclaimed;
+
+        private void finish() {
+            elapsedNanos = System.nanoTime() - startNanos;
+        }
+
+        public long getOrphansRemoved() {
+            return orphansRemoved;
+        }
+
+        public long getAssignmentsScanned() {
+            return assignmentsScanned;
+        }
+
+        public long getBytesReclaimed() {
+            return pagesReclaimed * pageSize;
+        }
+
+        /**
+         * Free space still inside the file; without incremental vacuum it is only reused, never returned.
+         */
+        public long getFreeBytes() {
+            return freePages * pageSize;
+        }
+
+        public long getFileBytesBefore() {
+            return pagesBefore * pageSize;
+        }
+
+        public long getFileBytesAfter() {
+            return pagesAfter * pageSize;
+        }
+
+        public boolean isIncremental() {
+            return incremental;
+        }
+
+        public boolean isOptimized() {
+            return optimized;
+        }
+
+        public long getElapsedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        }
+
+        public long getPausedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(pausedNanos);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "Maintenance: %d assignments scanned, %d orphans removed, %d KiB reclaimed%s, file %d -> %d KiB, %d KiB free, %s in %d ms (%d ms paused)",
+                    assignmentsScanned, orphansRemoved, getBytesReclaimed() / 1024,
+                    incremental ? "" : " (auto_vacuum is not incremental)", getFileBytesBefore() / 1024,
+                    getFileBytesAfter() / 1024, getFreeBytes() / 1024, optimized ? "optimized" : "not optimized",
+                    getElapsedMillis(), getPausedMillis());
+        }
+    }
+}
@@ -2,12 +2,170 @@ package org.teacher_and_course;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class DatabaseManager {
-    private static final String URL = "jdbc:sqlite:school.db";
+    private static final String URL = System.getProperty("school.db.url", "jdbc:sqlite:school.db");
+    private static final int POOL_SIZE = Integer.getInteger("school.db.poolSize", 4);
+    private static final int STATEMENT_CACHE_SIZE = Integer.getInteger("school.db.statementCacheSize", 32);
+    private static final long ACQUIRE_TIMEOUT_MILLIS = Long.getLong("school.db.acquireTimeoutMillis", 30000L);
+    private static final int BUSY_TIMEOUT_MILLIS = Integer.getInteger("school.db.busyTimeoutMillis", 5000);
+    private static final int PROGRESS_INTERVAL = 1000;
+
+    private static volatile ConnectionPool pool = newPool(URL, POOL_SIZE, false);
+    private static volatile ConnectionPool writer = newPool(URL, 1, true);
+    // One read connection of its own for ChangeFeed polls, so they never wait behind reads or writes.
+    private static volatile ConnectionPool watcher = newPool(URL, 1, false);
+    private static volatile FailureListener failureListener = FailureListener.STDERR;
+
+    private static final OperationMetrics CREATE_TABLES_METRICS = PersistenceMetrics.operation("createTables");
+    private static final OperationMetrics SAVE_TEACHER_METRICS = PersistenceMetrics.operation("saveTeacher");
+    private static final OperationMetrics SAVE_COURSE_METRICS = PersistenceMetrics.operation("saveCourse");
+    private static final OperationMetrics SAVE_TEACHER_COURSE_METRICS = PersistenceMetrics.operation("saveTeacherCourse");
+    private static final OperationMetrics LOAD_ALL_TEACHERS_METRICS = PersistenceMetrics.operation("loadAllTeachers");
+    private static final OperationMetrics LOAD_ALL_TEACHERS_WITH_COURSES_METRICS = PersistenceMetrics.operation("loadAllTeachersWithCourses");
+    private static final OperationMetrics COUNT_TEACHERS_METRICS = PersistenceMetrics.operation("countTeachers");
+    private static final OperationMetrics LOAD_TEACHERS_AFTER_METRICS = PersistenceMetrics.operation("loadTeachersAfter");
+    private static final OperationMetrics LOAD_COURSES_AFTER_METRICS = PersistenceMetrics.operation("loadCoursesAfter");
+    private static final OperationMetrics COUNT_PAGE_METRICS = PersistenceMetrics.operation("countPage");
+    private static final OperationMetrics LOAD_PAGE_METRICS = PersistenceMetrics.operation("loadPage");
+    private static final OperationMetrics PAGE_KEY_AT_METRICS = PersistenceMetrics.operation("pageKeyAt");
+    private static final OperationMetrics LOAD_ALL_COURSES_METRICS = PersistenceMetrics.operation("loadAllCourses");
+    private static final OperationMetrics FIND_TEACHER_BY_NAME_METRICS = PersistenceMetrics.operation("findTeacherByName");
+    private static final OperationMetrics FIND_TEACHER_BY_ID_METRICS = PersistenceMetrics.operation("findTeacherById");
+    private static final OperationMetrics FIND_COURSE_BY_ID_METRICS = PersistenceMetrics.operation("findCourseById");
+    private static final OperationMetrics FIND_COURSE_BY_NAME_METRICS = PersistenceMetrics.operation("findCourseByName");
+    private static final OperationMetrics FIND_TEACHER_COURSE_BY_NAME_METRICS = PersistenceMetrics.operation("findTeacherCourseByName");
+    private static final OperationMetrics REMOVE_TEACHER_METRICS = PersistenceMetrics.operation("removeTeacher");
+    private static final OperationMetrics REMOVE_COURSE_METRICS = PersistenceMetrics.operation("removeCourse");
+    private static final OperationMetrics LOAD_TEACHER_COURSES_METRICS = PersistenceMetrics.operation("loadTeacherCourses");
+    private static final OperationMetrics UPDATE_TEACHER_METRICS = PersistenceMetrics.operation("updateTeacher");
+    private static final OperationMetrics UPDATE_COURSE_METRICS = PersistenceMetrics.operation("updateCourse");
+    private static final OperationMetrics REMOVE_TEACHER_COURSE_METRICS = PersistenceMetrics.operation("removeTeacherCourse");
+    private static final OperationMetrics REPLACE_TEACHER_COURSE_METRICS = PersistenceMetrics.operation("replaceTeacherCourse");
+    private static final OperationMetrics LOAD_ASSIGNMENTS_METRICS = PersistenceMetrics.operation("loadAssignments");
+    private static final OperationMetrics LOAD_ROSTER_METRICS = PersistenceMetrics.operation("loadRoster");
+    private static final OperationMetrics APPLY_REASSIGNMENTS_METRICS = PersistenceMetrics.operation("applyReassignments");
+
+    /**
+     * Work done on the writer connection; see {@link #write(Work)}.
+     */
+    interface Work<T> {
+        T run(PooledConnection connection) throws SQLException;
+    }
+
+    private static ConnectionPool newPool(String url, int poolSize, boolean writer) {
+        return new ConnectionPool(url, poolSize, STATEMENT_CACHE_SIZE, ACQUIRE_TIMEOUT_MILLIS, BUSY_TIMEOUT_MILLIS, writer);
+    }
+
+    /**
+     * Switches to another database. Reads go through {@code poolSize} read-only connections and
+     * all writes in this process through one writer connection.
+     */
+    public static synchronized void useDatabase(String url, int poolSize) {
+        ConnectionPool previousPool = pool;
+        ConnectionPool previousWriter = writer;
+        ConnectionPool previousWatcher = watcher;
+        pool = newPool(url, poolSize, false);
+        writer = newPool(url, 1, true);
+        watcher = newPool(url, 1, false);
+        previousPool.close();
+        previousWriter.close();
+        previousWatcher.close();
+        ChangeFeed.resetDataVersion();
+        ChangeFeed.publish(ChangeEvent.reloaded());
+    }
+
+    public static ConnectionPool.Stats getPoolStats() {
+        return pool.getStats();
+    }
+
+    public static ConnectionPool.Stats getWriterStats() {
+        return writer.getStats();
+    }
+
+    /**
+     * Replaces the listener told about failed operations, which by default prints them to stderr.
+     */
+    public static void setFailureListener(FailureListener listener) {
+        failureListener = listener == null ? FailureListener.STDERR : listener;
+    }
+
+    /**
+     * A read-only connection; writes through it fail.
+     */
+    static PooledConnection acquire() throws SQLException {
+        return pool.acquire();
+    }
+
+    /**
+     * The writer connection, held exclusively until closed. Transactions on it begin immediate.
+     * Callers that do not go through {@link #write(Work)} handle busy retries themselves.
+     */
+    static PooledConnection acquireWriter() throws SQLException {
+        return writer.acquire();
+    }
+
+    /**
+     * Runs {@code work} on the writer connection, retrying it with backoff while the database is
+     * busy. Writers in this process queue for the connection; other processes are waited out by the
+     * busy timeout and then the retries.
+     */
+    static <T> T write(Work<T> work) throws SQLException {
+        return BusyRetry.run(() -> {
+            try (PooledConnection connection = writer.acquire()) {
+                return work.run(connection);
+            }
+        });
+    }
+
+    /**
+     * SQLite's {@code data_version} as seen by a read connection kept for this. It moves whenever
+     * any other connection commits, the writer of this process included, and reading it never
+     * waits for the writer.
+     */
+    static long readDataVersion() throws SQLException {
+        try (PooledConnection connection = watcher.acquire();
+             ResultSet resultSet = connection.prepare("PRAGMA data_version").executeQuery()) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    /**
+     * SQLite's {@code data_version} as seen by the writer connection, or -1 if the writer is in use.
+     * It moves only when another connection commits, and every write in this process goes through
+     * the writer, so a change means that another process has written.
+     */
+    static long writerDataVersion() throws SQLException {
+        PooledConnection connection = writer.tryAcquire();
+        if (connection == null) {
+            return -1;
+        }
+        try (connection; ResultSet resultSet = connection.prepare("PRAGMA data_version").executeQuery()) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    static void reportFailure(String operation, Exception error) {
+        try {
+            failureListener.onFailure(operation, error);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void failed(OperationMetrics metrics, SQLException error) {
+        metrics.recordError();
+        reportFailure(metrics.getOperation(), error);
+    }
 
     public static void createTables() {
+        long start = System.nanoTime();
         try {
             Class.forName("org.sqlite.JDBC");
         } catch (ClassNotFoundException e) {
@@ -15,246 +173,651 @@ public class DatabaseManager {
             System.err.println("SQLite JDBC driver not found");
             return;
         }
-        try (Connection connection = DriverManager.getConnection(URL);
-             Statement statement = connection.createStatement()) {
-            String createTeacherTable = "CREATE TABLE IF NOT EXISTS teachers (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                    "full_name TEXT," +
-                    "age INTEGER);";
-            statement.executeUpdate(createTeacherTable);
-
-            String createCourseTable = "CREATE TABLE IF NOT EXISTS courses (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                    "name TEXT," +
-                    "hours INTEGER);";
-            statement.executeUpdate(createCourseTable);
-
-            String createTeacherCourseTable = "CREATE TABLE IF NOT EXISTS teacher_course (" +
-                    "teacher_id INTEGER," +
-                    "course_id INTEGER," +
-                    "FOREIGN KEY (teacher_id) REFERENCES teachers (id) ON DELETE CASCADE," +
-                    "FOREIGN KEY (course_id) REFERENCES courses (id) ON DELETE CASCADE);";
-            statement.executeUpdate(createTeacherCourseTable);
+        try {
+            write(connection -> SchemaMigrator.migrate(connection.getConnection()));
         } catch (SQLException e) {
-            e.printStackTrace();
-            System.err.println("Error creating tables: " + e.getMessage());
+            failed(CREATE_TABLES_METRICS, e);
+        } finally {
+            CREATE_TABLES_METRICS.record(start);
         }
     }
 
     public static int saveTeacher(Teacher teacher) {
-        try (Connection connection = DriverManager.getConnection(URL);
-             PreparedStatement statement = connection.prepareStatement("INSERT INTO teachers (full_name, age) VALUES (?, ?)")) {
-            statement.setString(1, teacher.getFullName());
-            statement.setInt(2, teacher.getAge());
+        long start = System.nanoTime();
+        try {
+            return write(connection -> {
+                PreparedStatement statement = connection.prepare("INSERT INTO teachers (full_name, age) VALUES (?, ?)");
+                statement.setString(1, teacher.getFullName());
+                statement.setInt(2, teacher.getAge());
 
-            int affectedRows = statement.executeUpdate();
+                int affectedRows = statement.executeUpdate();
 
-            if (affectedRows == 0) {
-                throw new SQLException("Creating teacher failed, no rows affected.");
-            }
+                if (affectedRows == 0) {
+                    throw new SQLException("Creating teacher failed, no rows affected.");
+                }
+                SAVE_TEACHER_METRICS.addRowsWritten(affectedRows);
 
-            try (Statement idStatement = connection.createStatement()) {
-                try (ResultSet resultSet = idStatement.executeQuery("SELECT last_insert_rowid()")) {
+                try (ResultSet resultSet = connection.prepare("SELECT last_insert_rowid()").executeQuery()) {
                     if (resultSet.next()) {
                         int teacherId = resultSet.getInt(1);
                         teacher.setId(teacherId);
+                        ChangeFeed.publish(ChangeEvent.teacherAdded(teacher));
                         return teacherId;
                     } else {
                         throw new SQLException("Creating teacher failed, no ID obtained.");
                     }
                 }
-            }
+            });
         } catch (SQLException e) {
-            e.printStackTrace();
+            failed(SAVE_TEACHER_METRICS, e);
             return -1;
+        } finally {
+            SAVE_TEACHER_METRICS.record(start);
         }
     }
 
+    /**
+     * Saves a course to the catalog and returns its id. Courses are identified by name and hours,
+     * so saving one that already exists returns the id of the existing row instead of adding one.
+     */
     public static int saveCourse(Course course) {
-        try (Connection connection = DriverManager.getConnection(URL);
-             PreparedStatement statement = connection.prepareStatement("INSERT INTO courses (name, hours) VALUES (?, ?)")) {
-            statement.setString(1, course.getName());
-            statement.setInt(2, course.getHours());
+        long start = System.nanoTime();
+        try {
+            return write(connection -> {
+                if (internCourse(connection, course)) {
+                    SAVE_COURSE_METRICS.addRowsWritten(1);
+                    ChangeFeed.publish(ChangeEvent.courseAdded(course));
+                }
+                return course.getId();
+            });
+        } catch (SQLException e) {
+            failed(SAVE_COURSE_METRICS, e);
+            return -1;
+        } finally {
+            SAVE_COURSE_METRICS.record(start);
+        }
+    }
 
-            int affectedRows = statement.executeUpdate();
+    /**
+     * Sets the id of the catalog course with the same name and hours on {@code course}, inserting
+     * the course first if there is none. Returns true if it was inserted.
+     */
+    static boolean internCourse(PooledConnection connection, Course course) throws SQLException {
+        PreparedStatement insert = connection.prepare(
+                "INSERT INTO courses (name, hours) VALUES (?, ?) ON CONFLICT (name, hours) DO NOTHING RETURNING id");
+        insert.setString(1, course.getName());
+        insert.setInt(2, course.getHours());
+        try (ResultSet resultSet = insert.executeQuery()) {
+            if (resultSet.next()) {
+                course.setId(resultSet.getInt(1));
+                return true;
+            }
+        }
+        PreparedStatement select = connection.prepare("SELECT id FROM courses WHERE name = ? AND hours = ?");
+        select.setString(1, course.getName());
+        select.setInt(2, course.getHours());
+        try (ResultSet resultSet = select.executeQuery()) {
+            if (!resultSet.next()) {
+                throw new SQLException("Saving course failed, no ID obtained.");
+            }
+            course.setId(resultSet.getInt(1));
+            return false;
+        }
+    }
+
+    public static boolean saveTeacherCourse(int teacherId, int courseId) {
+        long start = System.nanoTime();
+        try {
+            return write(connection -> {
+                PreparedStatement statement = connection.prepare(
+                        "INSERT OR IGNORE INTO teacher_course (teacher_id, course_id) VALUES (?, ?)");
+
+                if (!teacherExists(connection, teacherId)) {
+                    SAVE_TEACHER_COURSE_METRICS.recordError();
+                    return false;
+                }
+
+                if (!courseExists(connection, courseId)) {
+                    SAVE_TEACHER_COURSE_METRICS.recordError();
+                    return false;
+                }
+
+                statement.setInt(1, teacherId);
+                statement.setInt(2, courseId);
+                int affectedRows = statement.executeUpdate();
+                SAVE_TEACHER_COURSE_METRICS.addRowsWritten(affectedRows);
+                if (affectedRows > 0) {
+                    ChangeFeed.publish(ChangeEvent.assignmentAdded(teacherId, courseId));
+                }
+                return true;
+            });
+        } catch (SQLException e) {
+            failed(SAVE_TEACHER_COURSE_METRICS, e);
+            return false;
+        } finally {
+            SAVE_TEACHER_COURSE_METRICS.record(start);
+        }
+    }
 
-            if (affectedRows == 0) {
-                throw new SQLException("Creating course failed, no rows affected.");
+
+    private static boolean teacherExists(PooledConnection connection, int teacherId) throws SQLException {
+        PreparedStatement statement = connection.prepare("SELECT id FROM teachers WHERE id = ?");
+        statement.setInt(1, teacherId);
+        try (ResultSet resultSet = statement.executeQuery()) {
+            return resultSet.next();
+        }
+    }
+
+    private static boolean courseExists(PooledConnection connection, int courseId) throws SQLException {
+        PreparedStatement statement = connection.prepare("SELECT id FROM courses WHERE id = ?");
+        statement.setInt(1, courseId);
+        try (ResultSet resultSet = statement.executeQuery()) {
+            return resultSet.next();
+        }
+    }
+
+    public static List<Teacher> loadAllTeachers() {
+        long start = System.nanoTime();
+        List<Teacher> teachers = new ArrayList<>();
+        Map<String, String> names = new HashMap<>();
+
+        try (PooledConnection connection = pool.acquire()) {
+            PreparedStatement statement = connection.prepare("SELECT * FROM teachers");
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    Teacher teacher = new Teacher(shared(names, resultSet.getString("full_name")), resultSet.getInt("age"));
+                    teacher.setId(resultSet.getInt("id"));
+                    teachers.add(teacher);
+                }
             }
+            LOAD_ALL_TEACHERS_METRICS.addRowsRead(teachers.size());
+        } catch (SQLException e) {
+            failed(LOAD_ALL_TEACHERS_METRICS, e);
+        } finally {
+            LOAD_ALL_TEACHERS_METRICS.record(start);
+        }
 
-            try (Statement idStatement = connection.createStatement()) {
-                try (ResultSet resultSet = idStatement.executeQuery("SELECT last_insert_rowid()")) {
-                    if (resultSet.next()) {
-                        int courseId = resultSet.getInt(1);
+        return teachers;
+    }
+
+    public static List<Teacher> loadAllTeachersWithCourses() {
+        return loadAllTeachersWithCourses(ProgressListener.NONE);
+    }
+
+    /**
+     * Every teacher with their courses, by id. Returns null if the thread is interrupted before the
+     * load finishes, so a cancelled load is never taken for the whole table.
+     */
+    public static List<Teacher> loadAllTeachersWithCourses(ProgressListener progress) {
+        long start = System.nanoTime();
+        List<Teacher> teachers = new ArrayList<>();
+        Map<Integer, Course> coursesById = new HashMap<>();
+        Map<String, String> names = new HashMap<>();
+
+        try (PooledConnection connection = pool.acquire()) {
+            long total = progress == ProgressListener.NONE ? -1 : countTeachers(connection);
+            PreparedStatement statement = connection.prepare(
+                    "SELECT teachers.id, teachers.full_name, teachers.age, " +
+                            "courses.id AS course_id, courses.name AS course_name, courses.hours " +
+                            "FROM teachers " +
+                            "LEFT JOIN teacher_course ON teacher_course.teacher_id = teachers.id " +
+                            "LEFT JOIN courses ON courses.id = teacher_course.course_id " +
+                            "ORDER BY teachers.id");
+            try (ResultSet resultSet = statement.executeQuery()) {
+                Teacher current = null;
+                while (resultSet.next()) {
+                    int teacherId = resultSet.getInt("id");
+                    if (current == null || current.getId() != teacherId) {
+                        if (teachers.size() % PROGRESS_INTERVAL == 0) {
+                            if (Thread.currentThread().isInterrupted()) {
+                                return null;
+                            }
+                            progress.onProgress(teachers.size(), total);
+                        }
+                        current = new Teacher(shared(names, resultSet.getString("full_name")), resultSet.getInt("age"));
+                        current.setId(teacherId);
+                        teachers.add(current);
+                    }
+
+                    int courseId = resultSet.getInt("course_id");
+                    if (resultSet.wasNull()) {
+                        continue;
+                    }
+                    Course course = coursesById.get(courseId);
+                    if (course == null) {
+                        course = new Course(resultSet.getString("course_name"), resultSet.getInt("hours"));
                         course.setId(courseId);
-                        return courseId;
-                    } else {
-                        throw new SQLException("Creating course failed, no ID obtained.");
+                        coursesById.put(courseId, course);
                     }
+                    current.addCourse(course);
                 }
             }
+            progress.onProgress(teachers.size(), total);
+            LOAD_ALL_TEACHERS_WITH_COURSES_METRICS.addRowsRead(teachers.size() + coursesById.size());
         } catch (SQLException e) {
-            e.printStackTrace();
+            failed(LOAD_ALL_TEACHERS_WITH_COURSES_METRICS, e);
+        } finally {
+            LOAD_ALL_TEACHERS_WITH_COURSES_METRICS.record(start);
+        }
+
+        return teachers;
+    }
+
+    public static int countTeachers() {
+        long start = System.nanoTime();
+        try (PooledConnection connection = pool.acquire()) {
+            return countTeachers(connection);
+        } catch (SQLException e) {
+            failed(COUNT_TEACHERS_METRICS, e);
             return -1;
+        } finally {
+            COUNT_TEACHERS_METRICS.record(start);
         }
     }
 
-    public static void saveTeacherCourse(int teacherId, int courseId) {
-        try (Connection connection = DriverManager.getConnection(URL);
-             PreparedStatement statement = connection.prepareStatement(
-                     "INSERT INTO teacher_course (teacher_id, course_id) VALUES (?, ?)")) {
+    private static int countTeachers(PooledConnection connection) throws SQLException {
+        try (ResultSet resultSet = connection.prepare("SELECT COUNT(*) FROM teachers").executeQuery()) {
+            return resultSet.next() ? resultSet.getInt(1) : 0;
+        }
+    }
 
-            if (!teacherExists(connection, teacherId)) {
-                System.err.println("Teacher with ID " + teacherId + " does not exist.");
-                return;
-            }
+    public static List<Teacher> loadTeachersAfter(int afterId, int limit) {
+        long start = System.nanoTime();
+        List<Teacher> teachers = new ArrayList<>();
 
-            if (!courseExists(connection, courseId)) {
-                System.err.println("Course with ID " + courseId + " does not exist.");
-                return;
+        try (PooledConnection connection = pool.acquire()) {
+            PreparedStatement statement = connection.prepare("SELECT * FROM teachers WHERE id > ? ORDER BY id LIMIT ?");
+            statement.setInt(1, afterId);
+            statement.setInt(2, limit);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    Teacher teacher = new Teacher(resultSet.getString("full_name"), resultSet.getInt("age"));
+                    teacher.setId(resultSet.getInt("id"));
+                    teachers.add(teacher);
+                }
             }
-
-            statement.setInt(1, teacherId);
-            statement.setInt(2, courseId);
-            statement.executeUpdate();
+            LOAD_TEACHERS_AFTER_METRICS.addRowsRead(teachers.size());
         } catch (SQLException e) {
-            e.printStackTrace();
+            failed(LOAD_TEACHERS_AFTER_METRICS, e);
+        } finally {
+            LOAD_TEACHERS_AFTER_METRICS.record(start);
         }
+
+        return teachers;
     }
 
+    public static List<Course> loadCoursesAfter(int afterId, int limit) {
+        long start = System.nanoTime();
+        List<Course> courses = new ArrayList<>();
 
-    private static boolean teacherExists(Connection connection, int teacherId) {
-        try (PreparedStatement statement = connection.prepareStatement(
-                "SELECT id FROM teachers WHERE id = ?")) {
-            statement.setInt(1, teacherId);
+        try (PooledConnection connection = pool.acquire()) {
+            PreparedStatement statement = connection.prepare("SELECT * FROM courses WHERE id > ? ORDER BY id LIMIT ?");
+            statement.setInt(1, afterId);
+            statement.setInt(2, limit);
             try (ResultSet resultSet = statement.executeQuery()) {
-                return resultSet.next();
+                while (resultSet.next()) {
+                    Course course = new Course(resultSet.getString("name"), resultSet.getInt("hours"));
+                    course.setId(resultSet.getInt("id"));
+                    courses.add(course);
+                }
             }
+            LOAD_COURSES_AFTER_METRICS.addRowsRead(courses.size());
         } catch (SQLException e) {
-            e.printStackTrace();
-            return false;
+            failed(LOAD_COURSES_AFTER_METRICS, e);
+        } finally {
+            LOAD_COURSES_AFTER_METRICS.record(start);
         }
+
+        return courses;
     }
 
-    private static boolean courseExists(Connection connection, int courseId) {
-        try (PreparedStatement statement = connection.prepareStatement(
-                "SELECT id FROM courses WHERE id = ?")) {
-            statement.setInt(1, courseId);
+    /**
+     * Reads every assignment as {@code teacherId << 32 | courseId}, in ascending order.
+     */
+    public static long[] loadAssignments() {
+        long start = System.nanoTime();
+        try (PooledConnection connection = pool.acquire()) {
+            PreparedStatement statement = connection.prepare(
+                    "SELECT teacher_id, course_id FROM teacher_course ORDER BY teacher_id, course_id");
+            long[] pairs = new long[1024];
+            int count = 0;
             try (ResultSet resultSet = statement.executeQuery()) {
-                return resultSet.next();
+                while (resultSet.next()) {
+                    if (count == pairs.length) {
+                        pairs = Arrays.copyOf(pairs, count * 2);
+                    }
+                    pairs[count++] = (long) resultSet.getInt(1) << 32 | resultSet.getInt(2);
+                }
             }
+            LOAD_ASSIGNMENTS_METRICS.addRowsRead(count);
+            return Arrays.copyOf(pairs, count);
         } catch (SQLException e) {
-            e.printStackTrace();
-            return false;
+            failed(LOAD_ASSIGNMENTS_METRICS, e);
+            return null;
+        } finally {
+            LOAD_ASSIGNMENTS_METRICS.record(start);
         }
     }
 
-    public static List<Teacher> loadAllTeachers() {
-        List<Teacher> teachers = new ArrayList<>();
+    /**
+     * Reads every teacher, course and assignment into a {@link Roster}, all as of the same moment.
+     * Returns null if they could not be read.
+     */
+    public static Roster loadRoster() {
+        long start = System.nanoTime();
+        Roster.Builder builder = new Roster.Builder();
+        int rows = 0;
+        try (PooledConnection connection = pool.acquire()) {
+            connection.getConnection().setAutoCommit(false);
+            try {
+                try (ResultSet resultSet = connection.prepare("SELECT id, full_name, age FROM teachers ORDER BY id").executeQuery()) {
+                    for (; resultSet.next(); rows++) {
+                        builder.addTeacher(resultSet.getInt(1), resultSet.getString(2), resultSet.getInt(3));
+                    }
+                }
+                try (ResultSet resultSet = connection.prepare("SELECT id, name, hours FROM courses ORDER BY id").executeQuery()) {
+                    for (; resultSet.next(); rows++) {
+                        builder.addCourse(resultSet.getInt(1), resultSet.getString(2), resultSet.getInt(3));
+                    }
+                }
+                try (ResultSet resultSet = connection.prepare(
+                        "SELECT teacher_id, course_id FROM teacher_course ORDER BY teacher_id, course_id").executeQuery()) {
+                    for (; resultSet.next(); rows++) {
+                        builder.addAssignment(resultSet.getInt(1), resultSet.getInt(2));
+                    }
+                }
+            } finally {
+                connection.getConnection().commit();
+                connection.getConnection().setAutoCommit(true);
+            }
+            LOAD_ROSTER_METRICS.addRowsRead(rows);
+            return builder.build();
+        } catch (SQLException e) {
+            failed(LOAD_ROSTER_METRICS, e);
+            return null;
+        } finally {
+            LOAD_ROSTER_METRICS.record(start);
+        }
+    }
 
-        try (Connection connection = DriverManager.getConnection(URL);
-             Statement statement = connection.createStatement()) {
-            String query = "SELECT * FROM teachers";
-            try (ResultSet resultSet = statement.executeQuery(query)) {
-                while (resultSet.next()) {
-                    Teacher teacher = new Teacher(resultSet.getString("full_name"), resultSet.getInt("age"));
-                    teacher.setId(resultSet.getInt("id"));
-                    teachers.add(teacher);
+    /**
+     * The first instance of {@code name} seen through {@code names}, so that equal names read from
+     * many rows are kept once.
+     */
+    static String shared(Map<String, String> names, String name) {
+        if (name == null) {
+            return null;
+        }
+        String existing = names.putIfAbsent(name, name);
+        return existing == null ? name : existing;
+    }
+
+    public static int countPage(PageQuery query) throws SQLException {
+        long start = System.nanoTime();
+        try (PooledConnection connection = pool.acquire()) {
+            PreparedStatement statement = connection.prepare(query.countSql());
+            bind(statement, query.parameters(null));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getInt(1) : 0;
+            }
+        } catch (SQLException e) {
+            COUNT_PAGE_METRICS.recordError();
+            throw e;
+        } finally {
+            COUNT_PAGE_METRICS.record(start);
+        }
+    }
+
+    public static List<Object[]> loadPage(PageQuery query, Object[] afterKey, int limit) throws SQLException {
+        long start = System.nanoTime();
+        List<Object[]> rows = new ArrayList<>(limit);
+
+        try (PooledConnection connection = pool.acquire()) {
+            readPage(connection.prepare(query.pageSql(afterKey)), query.parameters(afterKey), limit, rows);
+            if (rows.size() < limit && query.crossesNulls(afterKey)) {
+                readPage(connection.prepare(query.crossingSql()), query.parameters(null), limit - rows.size(), rows);
+            }
+            LOAD_PAGE_METRICS.addRowsRead(rows.size());
+        } catch (SQLException e) {
+            LOAD_PAGE_METRICS.recordError();
+            throw e;
+        } finally {
+            LOAD_PAGE_METRICS.record(start);
+        }
+
+        return rows;
+    }
+
+    private static void readPage(PreparedStatement statement, Object[] parameters, int limit, List<Object[]> rows)
+            throws SQLException {
+        bind(statement, parameters);
+        statement.setInt(parameters.length + 1, limit);
+        try (ResultSet resultSet = statement.executeQuery()) {
+            int columnCount = resultSet.getMetaData().getColumnCount();
+            while (resultSet.next()) {
+                Object[] row = new Object[columnCount];
+                for (int i = 0; i < columnCount; i++) {
+                    row[i] = resultSet.getObject(i + 1);
                 }
+                rows.add(row);
+            }
+        }
+    }
+
+    /**
+     * Returns the seek key of the row at {@code offset}, used to jump into the middle of a listing
+     * before any preceding page has been read.
+     */
+    public static Object[] pageKeyAt(PageQuery query, int offset) throws SQLException {
+        long start = System.nanoTime();
+        try (PooledConnection connection = pool.acquire()) {
+            PreparedStatement statement = connection.prepare(query.keyAtSql());
+            Object[] parameters = query.parameters(null);
+            bind(statement, parameters);
+            statement.setInt(parameters.length + 1, offset);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? new Object[]{resultSet.getObject(1), resultSet.getObject(2)} : null;
             }
         } catch (SQLException e) {
-            e.printStackTrace();
+            PAGE_KEY_AT_METRICS.recordError();
+            throw e;
+        } finally {
+            PAGE_KEY_AT_METRICS.record(start);
         }
+    }
 
-        return teachers;
+    private static void bind(PreparedStatement statement, Object[] parameters) throws SQLException {
+        for (int i = 0; i < parameters.length; i++) {
+            statement.setObject(i + 1, parameters[i]);
+        }
     }
 
     public static List<Course> loadAllCourses() {
+        long start = System.nanoTime();
         List<Course> courses = new ArrayList<>();
 
-        try (Connection connection = DriverManager.getConnection(URL);
-             Statement statement = connection.createStatement()) {
-            String query = "SELECT * FROM courses";
-            try (ResultSet resultSet = statement.executeQuery(query)) {
+        try (PooledConnection connection = pool.acquire()) {
+            PreparedStatement statement = connection.prepare("SELECT * FROM courses");
+            try (ResultSet resultSet = statement.executeQuery()) {
                 while (resultSet.next()) {
                     Course course = new Course(resultSet.getString("name"), resultSet.getInt("hours"));
                     course.setId(resultSet.getInt("id"));
                     courses.add(course);
                 }
             }
+            LOAD_ALL_COURSES_METRICS.addRowsRead(courses.size());
         } catch (SQLException e) {
-            e.printStackTrace();
+            failed(LOAD_ALL_COURSES_METRICS, e);
+        } finally {
+            LOAD_ALL_COURSES_METRICS.record(start);
         }
 
         return courses;
     }
 
     public static Teacher findTeacherByName(String name) {
-        try (Connection connection = DriverManager.getConnection(URL);
-             PreparedStatement statement = connection.prepareStatement("SELECT * FROM teachers WHERE full_name = ?")) {
+        long start = System.nanoTime();
+        try (PooledConnection connection = pool.acquire()) {
+            PreparedStatement statement = connection.prepare("SELECT * FROM teachers WHERE full_name = ? ORDER BY id LIMIT 1");
             statement.setString(1, name);
             try (ResultSet resultSet = statement.executeQuery()) {
                 if (resultSet.next()) {
+                    FIND_TEACHER_BY_NAME_METRICS.addRowsRead(1);
                     Teacher teacher = new Teacher(resultSet.getString("full_name"), resultSet.getInt("age"));
                     teacher.setId(resultSet.getInt("id"));
                     return teacher;
                 }
             }
         } catch (SQLException e) {
-            e.printStackTrace();
+            failed(FIND_TEACHER_BY_NAME_METRICS, e);
+        } finally {
+            FIND_TEACHER_BY_NAME_METRICS.record(start);
+        }
+
+        return null;
+    }
+
+    public static Teacher findTeacherById(int id) {
+        long start = System.nanoTime();
+        try (PooledConnection connection = pool.acquire()) {
+            PreparedStatement statement = connection.prepare("SELECT * FROM teachers WHERE id = ?");
+            statement.setInt(1, id);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next()) {
+                    FIND_TEACHER_BY_ID_METRICS.addRowsRead(1);
+                    Teacher teacher = new Teacher(resultSet.getString("full_name"), resultSet.getInt("age"));
+                    teacher.setId(resultSet.getInt("id"));
+                    return teacher;
+                }
+            }
+        } catch (SQLException e) {
+            failed(FIND_TEACHER_BY_ID_METRICS, e);
+        } finally {
+            FIND_TEACHER_BY_ID_METRICS.record(start);
+        }
+
+        return null;
+    }
+
+    public static Course findCourseById(int id) {
+        long start = System.nanoTime();
+        try (PooledConnection connection = pool.acquire()) {
+            PreparedStatement statement = connection.prepare("SELECT * FROM courses WHERE id = ?");
+            statement.setInt(1, id);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next()) {
+                    FIND_COURSE_BY_ID_METRICS.addRowsRead(1);
+                    Course course = new Course(resultSet.getString("name"), resultSet.getInt("hours"));
+                    course.setId(resultSet.getInt("id"));
+                    return course;
+                }
+            }
+        } catch (SQLException e) {
+            failed(FIND_COURSE_BY_ID_METRICS, e);
+        } finally {
+            FIND_COURSE_BY_ID_METRICS.record(start);
+        }
+
+        return null;
+    }
+
+    public static Course findCourseByName(String name) {
+        long start = System.nanoTime();
+        try (PooledConnection connection = pool.acquire()) {
+            PreparedStatement statement = connection.prepare("SELECT * FROM courses WHERE name = ? ORDER BY id LIMIT 1");
+            statement.setString(1, name);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next()) {
+                    FIND_COURSE_BY_NAME_METRICS.addRowsRead(1);
+                    Course course = new Course(resultSet.getString("name"), resultSet.getInt("hours"));
+                    course.setId(resultSet.getInt("id"));
+                    return course;
+                }
+            }
+        } catch (SQLException e) {
+            failed(FIND_COURSE_BY_NAME_METRICS, e);
+        } finally {
+            FIND_COURSE_BY_NAME_METRICS.record(start);
         }
 
         return null;
     }
 
     public static Course findCourseByName(Teacher teacher, String name) {
-        try (Connection connection = DriverManager.getConnection(URL);
-             PreparedStatement statement = connection.prepareStatement(
-                     "SELECT courses.id, courses.name, courses.hours FROM courses " +
-                             "JOIN teacher_course ON courses.id = teacher_course.course_id " +
-                             "WHERE teacher_course.teacher_id = ? AND courses.name = ?")) {
+        long start = System.nanoTime();
+        try (PooledConnection connection = pool.acquire()) {
+            PreparedStatement statement = connection.prepare(
+                    "SELECT courses.id, courses.name, courses.hours FROM courses " +
+                            "JOIN teacher_course ON courses.id = teacher_course.course_id " +
+                            "WHERE teacher_course.teacher_id = ? AND courses.name = ?");
             statement.setInt(1, teacher.getId());
             statement.setString(2, name);
             try (ResultSet resultSet = statement.executeQuery()) {
                 if (resultSet.next()) {
+                    FIND_TEACHER_COURSE_BY_NAME_METRICS.addRowsRead(1);
                     Course course = new Course(resultSet.getString("name"), resultSet.getInt("hours"));
                     course.setId(resultSet.getInt("id"));
                     return course;
                 }
             }
         } catch (SQLException e) {
-            e.printStackTrace();
+            failed(FIND_TEACHER_COURSE_BY_NAME_METRICS, e);
+        } finally {
+            FIND_TEACHER_COURSE_BY_NAME_METRICS.record(start);
         }
 
         return null;
     }
 
-    public static void removeTeacher(Teacher teacher) {
-        try (Connection connection = DriverManager.getConnection(URL);
-             PreparedStatement statement = connection.prepareStatement("DELETE FROM teachers WHERE id = ?")) {
-            statement.setInt(1, teacher.getId());
-            statement.executeUpdate();
+    public static boolean removeTeacher(Teacher teacher) {
+        long start = System.nanoTime();
+        try {
+            return write(connection -> {
+                PreparedStatement statement = connection.prepare("DELETE FROM teachers WHERE id = ?");
+                statement.setInt(1, teacher.getId());
+                int affectedRows = statement.executeUpdate();
+                REMOVE_TEACHER_METRICS.addRowsWritten(affectedRows);
+                if (affectedRows > 0) {
+                    ChangeFeed.publish(ChangeEvent.teacherRemoved(teacher.getId()));
+                }
+                return affectedRows > 0;
+            });
         } catch (SQLException e) {
-            e.printStackTrace();
+            failed(REMOVE_TEACHER_METRICS, e);
+            return false;
+        } finally {
+            REMOVE_TEACHER_METRICS.record(start);
         }
     }
-    public static void removeCourse(Course course) {
-        try (Connection connection = DriverManager.getConnection(URL);
-             PreparedStatement statement = connection.prepareStatement("DELETE FROM courses WHERE id = ?")) {
-            statement.setInt(1, course.getId());
-            statement.executeUpdate();
+    public static boolean removeCourse(Course course) {
+        long start = System.nanoTime();
+        try {
+            return write(connection -> {
+                PreparedStatement statement = connection.prepare("DELETE FROM courses WHERE id = ?");
+                statement.setInt(1, course.getId());
+                int affectedRows = statement.executeUpdate();
+                REMOVE_COURSE_METRICS.addRowsWritten(affectedRows);
+                if (affectedRows > 0) {
+                    ChangeFeed.publish(ChangeEvent.courseRemoved(course.getId()));
+                }
+                return affectedRows > 0;
+            });
         } catch (SQLException e) {
-            e.printStackTrace();
+            failed(REMOVE_COURSE_METRICS, e);
+            return false;
+        } finally {
+            REMOVE_COURSE_METRICS.record(start);
         }
     }
     public static List<Course> loadTeacherCourses(Teacher teacher) {
+        long start = System.nanoTime();
         List<Course> courses = new ArrayList<>();
 
-        try (Connection connection = DriverManager.getConnection(URL);
-             PreparedStatement statement = connection.prepareStatement(
-                     "SELECT courses.id, courses.name, courses.hours FROM courses " +
-                             "JOIN teacher_course ON courses.id = teacher_course.course_id " +
-                             "WHERE teacher_course.teacher_id = ?")) {
+        try (PooledConnection connection = pool.acquire()) {
+            PreparedStatement statement = connection.prepare(
+                    "SELECT courses.id, courses.name, courses.hours FROM courses " +
+                            "JOIN teacher_course ON courses.id = teacher_course.course_id " +
+                            "WHERE teacher_course.teacher_id = ?");
             statement.setInt(1, teacher.getId());
             try (ResultSet resultSet = statement.executeQuery()) {
                 while (resultSet.next()) {
@@ -263,50 +826,209 @@ public class DatabaseManager {
                     courses.add(course);
                 }
             }
+            LOAD_TEACHER_COURSES_METRICS.addRowsRead(courses.size());
         } catch (SQLException e) {
-            e.printStackTrace();
+            failed(LOAD_TEACHER_COURSES_METRICS, e);
+        } finally {
+            LOAD_TEACHER_COURSES_METRICS.record(start);
         }
 
         return courses;
     }
-    public static void updateTeacher(Teacher teacher) {
-        try (Connection connection = DriverManager.getConnection(URL);
-             PreparedStatement statement = connection.prepareStatement("UPDATE teachers SET full_name = ?, age = ? WHERE id = ?")) {
-            statement.setString(1, teacher.getFullName());
-            statement.setInt(2, teacher.getAge());
-            statement.setInt(3, teacher.getId());
-            statement.executeUpdate();
+    public static boolean updateTeacher(Teacher teacher) {
+        long start = System.nanoTime();
+        try {
+            return write(connection -> {
+                PreparedStatement statement = connection.prepare("UPDATE teachers SET full_name = ?, age = ? WHERE id = ?");
+                statement.setString(1, teacher.getFullName());
+                statement.setInt(2, teacher.getAge());
+                statement.setInt(3, teacher.getId());
+                int affectedRows = statement.executeUpdate();
+                UPDATE_TEACHER_METRICS.addRowsWritten(affectedRows);
+                if (affectedRows > 0) {
+                    ChangeFeed.publish(ChangeEvent.teacherUpdated(teacher));
+                }
+                return affectedRows > 0;
+            });
         } catch (SQLException e) {
-            e.printStackTrace();
+            failed(UPDATE_TEACHER_METRICS, e);
+            return false;
+        } finally {
+            UPDATE_TEACHER_METRICS.record(start);
         }
     }
-    public static void updateCourse(Course course) {
-        try (Connection connection = DriverManager.getConnection(URL);
-             PreparedStatement statement = connection.prepareStatement("UPDATE courses SET name = ?, hours = ? WHERE id = ?")) {
-            statement.setString(1, course.getName());
-            statement.setInt(2, course.getHours());
-            statement.setInt(3, course.getId());
-            statement.executeUpdate();
+    public static boolean updateCourse(Course course) {
+        long start = System.nanoTime();
+        try {
+            return write(connection -> {
+                PreparedStatement statement = connection.prepare("UPDATE courses SET name = ?, hours = ? WHERE id = ?");
+                statement.setString(1, course.getName());
+                statement.setInt(2, course.getHours());
+                statement.setInt(3, course.getId());
+                int affectedRows = statement.executeUpdate();
+                UPDATE_COURSE_METRICS.addRowsWritten(affectedRows);
+                if (affectedRows > 0) {
+                    ChangeFeed.publish(ChangeEvent.courseUpdated(course));
+                }
+                return affectedRows > 0;
+            });
         } catch (SQLException e) {
-            e.printStackTrace();
+            failed(UPDATE_COURSE_METRICS, e);
+            return false;
+        } finally {
+            UPDATE_COURSE_METRICS.record(start);
         }
     }
-    public static void removeTeacherCourse(Teacher teacher, Course course) {
-        try (Connection connection = DriverManager.getConnection(URL);
-             PreparedStatement statement = connection.prepareStatement(
-                     "DELETE FROM teacher_course WHERE teacher_id = ? AND course_id = ?")) {
-            statement.setInt(1, teacher.getId());
-            statement.setInt(2, course.getId());
-            statement.executeUpdate();
+    public static boolean removeTeacherCourse(Teacher teacher, Course course) {
+        long start = System.nanoTime();
+        try {
+            return write(connection -> {
+                PreparedStatement statement = connection.prepare(
+                        "DELETE FROM teacher_course WHERE teacher_id = ? AND course_id = ?");
+                statement.setInt(1, teacher.getId());
+                statement.setInt(2, course.getId());
+                int affectedRows = statement.executeUpdate();
+                REMOVE_TEACHER_COURSE_METRICS.addRowsWritten(affectedRows);
+                if (affectedRows > 0) {
+                    ChangeFeed.publish(ChangeEvent.assignmentRemoved(teacher.getId(), course.getId()));
+                }
+                return affectedRows > 0;
+            });
         } catch (SQLException e) {
-            e.printStackTrace();
+            failed(REMOVE_TEACHER_COURSE_METRICS, e);
+            return false;
+        } finally {
+            REMOVE_TEACHER_COURSE_METRICS.record(start);
         }
     }
-    public static void close() {
+    /**
+     * Moves {@code teacher} from {@code current} to the catalog course {@code replacement} in one
+     * transaction, adding the replacement to the catalog first if needed. Returns false, changing
+     * nothing, if the teacher is gone or no longer has {@code current}.
+     */
+    public static boolean replaceTeacherCourse(Teacher teacher, Course current, Course replacement) {
+        long start = System.nanoTime();
+        int previousId = replacement.getId();
         try {
-            DriverManager.getConnection(URL + ";shutdown=true");
-        } catch (SQLException ignored) {
+            return write(connection -> {
+                connection.getConnection().setAutoCommit(false);
+                try {
+                    if (!teacherExists(connection, teacher.getId())) {
+                        connection.getConnection().rollback();
+                        return false;
+                    }
+                    boolean inserted = internCourse(connection, replacement);
+                    PreparedStatement insert = connection.prepare(
+                            "INSERT OR IGNORE INTO teacher_course (teacher_id, course_id) VALUES (?, ?)");
+                    insert.setInt(1, teacher.getId());
+                    insert.setInt(2, replacement.getId());
+                    int added = insert.executeUpdate();
+                    int removed = 0;
+                    if (replacement.getId() != current.getId()) {
+                        PreparedStatement delete = connection.prepare(
+                                "DELETE FROM teacher_course WHERE teacher_id = ? AND course_id = ?");
+                        delete.setInt(1, teacher.getId());
+                        delete.setInt(2, current.getId());
+                        removed = delete.executeUpdate();
+                        if (removed == 0) {
+                            connection.getConnection().rollback();
+                            replacement.setId(previousId);
+                            return false;
+                        }
+                    }
+                    connection.getConnection().commit();
+                    REPLACE_TEACHER_COURSE_METRICS.addRowsWritten((inserted ? 1 : 0) + added + removed);
+                    List<ChangeEvent> changes = new ArrayList<>();
+                    if (inserted) {
+                        changes.add(ChangeEvent.courseAdded(replacement));
+                    }
+                    if (added > 0) {
+                        changes.add(ChangeEvent.assignmentAdded(teacher.getId(), replacement.getId()));
+                    }
+                    if (removed > 0) {
+                        changes.add(ChangeEvent.assignmentRemoved(teacher.getId(), current.getId()));
+                    }
+                    ChangeFeed.publish(changes);
+                    return true;
+                } catch (SQLException e) {
+                    connection.getConnection().rollback();
+                    replacement.setId(previousId);
+                    throw e;
+                } finally {
+                    connection.getConnection().setAutoCommit(true);
+                }
+            });
+        } catch (SQLException e) {
+            failed(REPLACE_TEACHER_COURSE_METRICS, e);
+            return false;
+        } finally {
+            REPLACE_TEACHER_COURSE_METRICS.record(start);
+        }
+    }
+
+    /**
+     * Moves each assignment in {@code moves} to its new teacher in one transaction. All of the old
+     * assignments are removed before any new one is added, so moves may hand a course on from one
+     * teacher to the next. Returns false, changing nothing, if an old assignment is gone or a new
+     * one already exists: the plan was made from data that has changed since.
+     */
+    public static boolean applyReassignments(List<LoadBalancer.Move> moves) {
+        long start = System.nanoTime();
+        try {
+            boolean applied = write(connection -> {
+                connection.getConnection().setAutoCommit(false);
+                try {
+                    PreparedStatement delete = connection.prepare(
+                            "DELETE FROM teacher_course WHERE teacher_id = ? AND course_id = ?");
+                    for (LoadBalancer.Move move : moves) {
+                        delete.setInt(1, move.getFromTeacherId());
+                        delete.setInt(2, move.getCourseId());
+                        if (delete.executeUpdate() == 0) {
+                            connection.getConnection().rollback();
+                            return false;
+                        }
+                    }
+                    PreparedStatement insert = connection.prepare(
+                            "INSERT OR IGNORE INTO teacher_course (teacher_id, course_id) " +
+                                    "SELECT ?, ? WHERE EXISTS (SELECT 1 FROM teachers WHERE id = ?)");
+                    for (LoadBalancer.Move move : moves) {
+                        insert.setInt(1, move.getToTeacherId());
+                        insert.setInt(2, move.getCourseId());
+                        insert.setInt(3, move.getToTeacherId());
+                        if (insert.executeUpdate() == 0) {
+                            connection.getConnection().rollback();
+                            return false;
+                        }
+                    }
+                    connection.getConnection().commit();
+                    APPLY_REASSIGNMENTS_METRICS.addRowsWritten(2L * moves.size());
+                    return true;
+                } catch (SQLException e) {
+                    connection.getConnection().rollback();
+                    throw e;
+                } finally {
+                    connection.getConnection().setAutoCommit(true);
+                }
+            });
+            if (applied) {
+                for (LoadBalancer.Move move : moves) {
+                    ChangeFeed.publish(ChangeEvent.assignmentRemoved(move.getFromTeacherId(), move.getCourseId()));
+                    ChangeFeed.publish(ChangeEvent.assignmentAdded(move.getToTeacherId(), move.getCourseId()));
+                }
+            }
+            return applied;
+        } catch (SQLException e) {
+            failed(APPLY_REASSIGNMENTS_METRICS, e);
+            return false;
+        } finally {
+            APPLY_REASSIGNMENTS_METRICS.record(start);
         }
     }
 
+    public static void close() {
+        pool.close();
+        writer.close();
+        watcher.close();
+    }
+
 }
@@ -0,0 +1,14 @@
+package org.teacher_and_course;
+
+/**
+ * Told about every database operation that failed for good, writes after any busy retries, so
+ * that the failure can be shown to the user instead of only being logged. Most failures are
+ * {@link java.sql.SQLException}s; errors around the database, such as an unexpected one in an
+ * HTTP handler, come through here as well.
+ */
+public interface FailureListener {
+    FailureListener STDERR = (operation, error) ->
+            System.err.println("Database operation failed in " + operation + ": " + error.getMessage());
+
+    void onFailure(String operation, Exception error);
+}
@@ -0,0 +1,1275 @@
+package org.teacher_and_course;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * {@link StorageEngine} that keeps everything in memory, for ephemeral and test workloads.
+ *
+ * <p>Rows live in open-addressed maps keyed by the primitive id, split over {@code stripes}
+ * shards that each have their own read-write lock, so operations on different ids do not contend.
+ * An assignment is kept in both its teacher's and its course's shard and is changed with both
+ * locks held, taken in shard order. Removing a teacher or a course takes every shard. Creating,
+ * renaming and removing courses is also serialized on one catalog lock, which keeps the
+ * (name, hours) identity unique as the SQLite schema does. As in SQLite, a null name is allowed but
+ * never matches: lookups by name do not find such rows, and each such course is a catalog entry
+ * of its own. Listings read shard by shard, so they
+ * see each row as of some point during the scan rather than one snapshot of the whole data set.
+ *
+ * <p>With a journal path, every mutation is appended to that file as one line before it is
+ * applied, and the file is replayed when the engine is created; a line cut short by a crash is
+ * dropped. Appends reach the operating system at once and are forced to disk as well with
+ * {@code sync}. A journal holding more than twice as many records as the live data needs is
+ * rewritten on open.
+ */
+public class InMemoryStorageEngine implements StorageEngine {
+    private static final int DEFAULT_STRIPES = 64;
+    private static final int PROGRESS_INTERVAL = 1000;
+    private static final int MIN_RECORDS_TO_COMPACT = 1000;
+    private static final int[] NONE = new int[0];
+
+    private final Stripe[] stripes;
+    private final int mask;
+    private final ReentrantLock catalogLock = new ReentrantLock();
+    private final AtomicInteger lastTeacherId = new AtomicInteger();
+    private final AtomicInteger lastCourseId = new AtomicInteger();
+    private final AtomicLong modifications = new AtomicLong();
+    private final Map<String, int[]> teacherIdsByName = new ConcurrentHashMap<>();
+    private final Map<String, int[]> courseIdsByName = new ConcurrentHashMap<>();
+    private final Map<String, Integer> courseIdsByIdentity = new ConcurrentHashMap<>();
+    private final Journal journal;
+    private volatile Listing listing;
+
+    public InMemoryStorageEngine() {
+        this(null, false);
+    }
+
+    public InMemoryStorageEngine(Path journalPath, boolean sync) {
+        this(journalPath, sync, DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param journalPath file to journal to and restore from, or null to keep nothing
+     * @param stripes     number of lock shards, rounded up to a power of two
+     */
+    public InMemoryStorageEngine(Path journalPath, boolean sync, int stripes) {
+        int count = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        this.mask = count - 1;
+        if (journalPath == null) {
+            journal = null;
+            return;
+        }
+        try {
+            journal = new Journal(journalPath, sync);
+            int records = journal.replay(this);
+            int live = countRecords();
+            if (records >= MIN_RECORDS_TO_COMPACT && records > 2 * live) {
+                compact();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not open journal " + journalPath + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void createTables() {
+    }
+
+    @Override
+    public int saveTeacher(Teacher teacher) {
+        int id = lastTeacherId.incrementAndGet();
+        Stripe stripe = stripe(id);
+        stripe.lock.writeLock().lock();
+        try {
+            record('T', id, teacher.getAge(), teacher.getFullName());
+            applyTeacher(id, teacher.getFullName(), teacher.getAge());
+        } catch (SQLException e) {
+            DatabaseManager.reportFailure("saveTeacher", e);
+            return -1;
+        } finally {
+            stripe.lock.writeLock().unlock();
+        }
+        teacher.setId(id);
+        ChangeFeed.publish(ChangeEvent.teacherAdded(teacher));
+        return id;
+    }
+
+    @Override
+    public int saveCourse(Course course) {
+        int id;
+        catalogLock.lock();
+        try {
+            Integer existing = catalogId(course.getName(), course.getHours());
+            if (existing != null) {
+                course.setId(existing);
+                return existing;
+            }
+            id = lastCourseId.incrementAndGet();
+            Stripe stripe = stripe(id);
+            stripe.lock.writeLock().lock();
+            try {
+                record('C', id, course.getHours(), course.getName());
+                applyCourse(id, course.getName(), course.getHours());
+            } finally {
+                stripe.lock.writeLock().unlock();
+            }
+        } catch (SQLException e) {
+            DatabaseManager.reportFailure("saveCourse", e);
+            return -1;
+        } finally {
+            catalogLock.unlock();
+        }
+        course.setId(id);
+        ChangeFeed.publish(ChangeEvent.courseAdded(course));
+        return id;
+    }
+
+    @Override
+    public boolean saveTeacherCourse(int teacherId, int courseId) {
+        boolean added;
+        lockPair(teacherId, courseId);
+        try {
+            if (stripe(teacherId).teachers.get(teacherId) == null || stripe(courseId).courses.get(courseId) == null) {
+                return false;
+            }
+            if (contains(stripe(teacherId).coursesByTeacher.get(teacherId), courseId)) {
+                return true;
+            }
+            record('A', teacherId, courseId, null);
+            added = applyAssign(teacherId, courseId);
+        } catch (SQLException e) {
+            DatabaseManager.reportFailure("saveTeacherCourse", e);
+            return false;
+        } finally {
+            unlockPair(teacherId, courseId);
+        }
+        if (added) {
+            ChangeFeed.publish(ChangeEvent.assignmentAdded(teacherId, courseId));
+        }
+        return true;
+    }
+
+    @Override
+    public boolean updateTeacher(Teacher teacher) {
+        Stripe stripe = stripe(teacher.getId());
+        stripe.lock.writeLock().lock();
+        try {
+            if (stripe.teachers.get(teacher.getId()) == null) {
+                return false;
+            }
+            record('T', teacher.getId(), teacher.getAge(), teacher.getFullName());
+            applyTeacher(teacher.getId(), teacher.getFullName(), teacher.getAge());
+        } catch (SQLException e) {
+            DatabaseManager.reportFailure("updateTeacher", e);
+            return false;
+        } finally {
+            stripe.lock.writeLock().unlock();
+        }
+        ChangeFeed.publish(ChangeEvent.teacherUpdated(teacher));
+        return true;
+    }
+
+    @Override
+    public boolean updateCourse(Course course) {
+        catalogLock.lock();
+        try {
+            Integer existing = catalogId(course.getName(), course.getHours());
+            if (existing != null && existing != course.getId()) {
+                throw new SQLException("A course named " + course.getName() + " with " + course.getHours() +
+                        " hours already exists");
+            }
+            Stripe stripe = stripe(course.getId());
+            stripe.lock.writeLock().lock();
+            try {
+                if (stripe.courses.get(course.getId()) == null) {
+                    return false;
+                }
+                record('C', course.getId(), course.getHours(), course.getName());
+                applyCourse(course.getId(), course.getName(), course.getHours());
+            } finally {
+                stripe.lock.writeLock().unlock();
+            }
+        } catch (SQLException e) {
+            DatabaseManager.reportFailure("updateCourse", e);
+            return false;
+        } finally {
+            catalogLock.unlock();
+        }
+        ChangeFeed.publish(ChangeEvent.courseUpdated(course));
+        return true;
+    }
+
+    @Override
+    public boolean removeTeacher(Teacher teacher) {
+        lockAll();
+        try {
+            if (stripe(teacher.getId()).teachers.get(teacher.getId()) == null) {
+                return false;
+            }
+            record('R', teacher.getId(), 0, null);
+            applyRemoveTeacher(teacher.getId());
+        } catch (SQLException e) {
+            DatabaseManager.reportFailure("removeTeacher", e);
+            return false;
+        } finally {
+            unlockAll();
+        }
+        ChangeFeed.publish(ChangeEvent.teacherRemoved(teacher.getId()));
+        return true;
+    }
+
+    @Override
+    public boolean removeCourse(Course course) {
+        catalogLock.lock();
+        lockAll();
+        try {
+            if (stripe(course.getId()).courses.get(course.getId()) == null) {
+                return false;
+            }
+            record('D', course.getId(), 0, null);
+            applyRemoveCourse(course.getId());
+        } catch (SQLException e) {
+            DatabaseManager.reportFailure("removeCourse", e);
+            return false;
+        } finally {
+            unlockAll();
+            catalogLock.unlock();
+        }
+        ChangeFeed.publish(ChangeEvent.courseRemoved(course.getId()));
+        return true;
+    }
+
+    @Override
+    public boolean removeTeacherCourse(Teacher teacher, Course course) {
+        int teacherId = teacher.getId();
+        int courseId = course.getId();
+        lockPair(teacherId, courseId);
+        try {
+            if (!contains(stripe(teacherId).coursesByTeacher.get(teacherId), courseId)) {
+                return false;
+            }
+            record('U', teacherId, courseId, null);
+            applyUnassign(teacherId, courseId);
+        } catch (SQLException e) {
+            DatabaseManager.reportFailure("removeTeacherCourse", e);
+            return false;
+        } finally {
+            unlockPair(teacherId, courseId);
+        }
+        ChangeFeed.publish(ChangeEvent.assignmentRemoved(teacherId, courseId));
+        return true;
+    }
+
+    @Override
+    public boolean replaceTeacherCourse(Teacher teacher, Course current, Course replacement) {
+        int teacherId = teacher.getId();
+        int courseId;
+        boolean courseAdded = false;
+        boolean assignmentAdded = false;
+        boolean moved;
+        catalogLock.lock();
+        lockAll();
+        try {
+            if (stripe(teacherId).teachers.get(teacherId) == null) {
+                return false;
+            }
+            Integer existing = catalogId(replacement.getName(), replacement.getHours());
+            moved = existing == null || existing != current.getId();
+            int[] courseIds = stripe(teacherId).coursesByTeacher.get(teacherId);
+            if (moved && !contains(courseIds, current.getId())) {
+                return false;
+            }
+            // The assignment is journaled before the unassignment, so a crash between the two
+            // leaves the teacher with both courses rather than neither.
+            if (existing == null) {
+                courseId = lastCourseId.incrementAndGet();
+                record('C', courseId, replacement.getHours(), replacement.getName());
+                applyCourse(courseId, replacement.getName(), replacement.getHours());
+                courseAdded = true;
+            } else {
+                courseId = existing;
+            }
+            if (!contains(courseIds, courseId)) {
+                record('A', teacherId, courseId, null);
+                assignmentAdded = applyAssign(teacherId, courseId);
+            }
+            if (moved) {
+                record('U', teacherId, current.getId(), null);
+                applyUnassign(teacherId, current.getId());
+            }
+        } catch (SQLException e) {
+            DatabaseManager.reportFailure("replaceTeacherCourse", e);
+            return false;
+        } finally {
+            unlockAll();
+            catalogLock.unlock();
+        }
+        replacement.setId(courseId);
+        List<ChangeEvent> changes = new ArrayList<>();
+        if (courseAdded) {
+            changes.add(ChangeEvent.courseAdded(replacement));
+        }
+        if (assignmentAdded) {
+            changes.add(ChangeEvent.assignmentAdded(teacherId, courseId));
+        }
+        if (moved) {
+            changes.add(ChangeEvent.assignmentRemoved(teacherId, current.getId()));
+        }
+        ChangeFeed.publish(changes);
+        return true;
+    }
+
+    @Override
+    public boolean applyReassignments(List<LoadBalancer.Move> moves) {
+        lockAll();
+        try {
+            // Checked against the data as it will be after the removals, as SQLite sees it.
+            Map<Integer, int[]> coursesAfter = new HashMap<>();
+            for (LoadBalancer.Move move : moves) {
+                int[] courseIds = coursesAfter.computeIfAbsent(move.getFromTeacherId(), this::lockedCourseIds);
+                if (!contains(courseIds, move.getCourseId())) {
+                    return false;
+                }
+                coursesAfter.put(move.getFromTeacherId(), AssignmentGraph.without(courseIds, move.getCourseId()));
+            }
+            for (LoadBalancer.Move move : moves) {
+                int[] courseIds = coursesAfter.computeIfAbsent(move.getToTeacherId(), this::lockedCourseIds);
+                if (stripe(move.getToTeacherId()).teachers.get(move.getToTeacherId()) == null
+                        || contains(courseIds, move.getCourseId())) {
+                    return false;
+                }
+                coursesAfter.put(move.getToTeacherId(), AssignmentGraph.with(courseIds, move.getCourseId()));
+            }
+            for (LoadBalancer.Move move : moves) {
+                record('U', move.getFromTeacherId(), move.getCourseId(), null);
+                applyUnassign(move.getFromTeacherId(), move.getCourseId());
+            }
+            for (LoadBalancer.Move move : moves) {
+                record('A', move.getToTeacherId(), move.getCourseId(), null);
+                applyAssign(move.getToTeacherId(), move.getCourseId());
+            }
+        } catch (SQLException e) {
+            DatabaseManager.reportFailure("applyReassignments", e);
+            return false;
+        } finally {
+            unlockAll();
+        }
+        List<ChangeEvent> changes = new ArrayList<>();
+        for (LoadBalancer.Move move : moves) {
+            changes.add(ChangeEvent.assignmentRemoved(move.getFromTeacherId(), move.getCourseId()));
+            changes.add(ChangeEvent.assignmentAdded(move.getToTeacherId(), move.getCourseId()));
+        }
+        ChangeFeed.publish(changes);
+        return true;
+    }
+
+    @Override
+    public Teacher findTeacherByName(String name) {
+        if (name == null) {
+            return null;
+        }
+        for (int id : teacherIdsByName.getOrDefault(name, NONE)) {
+            Teacher teacher = findTeacherById(id);
+            if (teacher != null && name.equals(teacher.getFullName())) {
+                return teacher;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Teacher findTeacherById(int id) {
+        Stripe stripe = stripe(id);
+        stripe.lock.readLock().lock();
+        try {
+            TeacherRow row = stripe.teachers.get(id);
+            return row == null ? null : row.toTeacher();
+        } finally {
+            stripe.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Course findCourseById(int id) {
+        Stripe stripe = stripe(id);
+        stripe.lock.readLock().lock();
+        try {
+            CourseRow row = stripe.courses.get(id);
+            return row == null ? null : row.toCourse();
+        } finally {
+            stripe.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Course findCourseByName(String name) {
+        if (name == null) {
+            return null;
+        }
+        for (int id : courseIdsByName.getOrDefault(name, NONE)) {
+            Course course = findCourseById(id);
+            if (course != null && name.equals(course.getName())) {
+                return course;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Course findCourseByName(Teacher teacher, String name) {
+        for (Course course : loadTeacherCourses(teacher)) {
+            if (name != null && name.equals(course.getName())) {
+                return course;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public List<Course> loadTeacherCourses(Teacher teacher) {
+        List<Course> courses = new ArrayList<>();
+        for (int courseId : courseIdsOf(teacher.getId())) {
+            Course course = findCourseById(courseId);
+            if (course != null) {
+                courses.add(course);
+            }
+        }
+        return courses;
+    }
+
+    @Override
+    public List<Teacher> loadAllTeachers() {
+        List<Teacher> teachers = new ArrayList<>();
+        for (TeacherRow row : teacherRows()) {
+            teachers.add(row.toTeacher());
+        }
+        return teachers;
+    }
+
+    @Override
+    public List<Teacher> loadAllTeachersWithCourses(ProgressListener progress) {
+        List<TeacherRow> rows = teacherRows();
+        List<Teacher> teachers = new ArrayList<>(rows.size());
+        Map<Integer, Course> coursesById = new HashMap<>();
+        for (TeacherRow row : rows) {
+            if (teachers.size() % PROGRESS_INTERVAL == 0) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return null;
+                }
+                progress.onProgress(teachers.size(), rows.size());
+            }
+            Teacher teacher = row.toTeacher();
+            for (int courseId : courseIdsOf(row.id)) {
+                Course course = coursesById.get(courseId);
+                if (course == null) {
+                    course = findCourseById(courseId);
+                    if (course == null) {
+                        continue;
+                    }
+                    coursesById.put(courseId, course);
+                }
+                teacher.addCourse(course);
+            }
+            teachers.add(teacher);
+        }
+        progress.onProgress(teachers.size(), rows.size());
+        return teachers;
+    }
+
+    @Override
+    public List<Course> loadAllCourses() {
+        List<Course> courses = new ArrayList<>();
+        for (CourseRow row : courseRows()) {
+            courses.add(row.toCourse());
+        }
+        return courses;
+    }
+
+    @Override
+    public int countTeachers() {
+        int count = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.readLock().lock();
+            try {
+                count += stripe.teachers.size();
+            } finally {
+                stripe.lock.readLock().unlock();
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public List<Teacher> loadTeachersAfter(int afterId, int limit) {
+        List<Teacher> teachers = new ArrayList<>();
+        for (TeacherRow row : teacherRows()) {
+            if (teachers.size() == limit) {
+                break;
+            }
+            if (row.id > afterId) {
+                teachers.add(row.toTeacher());
+            }
+        }
+        return teachers;
+    }
+
+    @Override
+    public List<Course> loadCoursesAfter(int afterId, int limit) {
+        List<Course> courses = new ArrayList<>();
+        for (CourseRow row : courseRows()) {
+            if (courses.size() == limit) {
+                break;
+            }
+            if (row.id > afterId) {
+                courses.add(row.toCourse());
+            }
+        }
+        return courses;
+    }
+
+    @Override
+    public long[] loadAssignments() {
+        long[] pairs = new long[1024];
+        int count = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.readLock().lock();
+            try {
+                for (int slot = 0; slot < stripe.coursesByTeacher.capacity(); slot++) {
+                    int teacherId = stripe.coursesByTeacher.keyAt(slot);
+                    if (teacherId == 0) {
+                        continue;
+                    }
+                    for (int courseId : stripe.coursesByTeacher.valueAt(slot)) {
+                        if (count == pairs.length) {
+                            pairs = Arrays.copyOf(pairs, count * 2);
+                        }
+                        pairs[count++] = (long) teacherId << 32 | courseId;
+                    }
+                }
+            } finally {
+                stripe.lock.readLock().unlock();
+            }
+        }
+        pairs = Arrays.copyOf(pairs, count);
+        Arrays.sort(pairs);
+        return pairs;
+    }
+
+    /**
+     * Read stripe by stripe, like the other full loads, so a concurrent write may be seen in one
+     * column and not in another; assignments of rows that are missing are left out.
+     */
+    @Override
+    public Roster loadRoster() {
+        Roster.Builder builder = new Roster.Builder();
+        for (TeacherRow row : teacherRows()) {
+            builder.addTeacher(row.id, row.fullName, row.age);
+        }
+        for (CourseRow row : courseRows()) {
+            builder.addCourse(row.id, row.name, row.hours);
+        }
+        for (long pair : loadAssignments()) {
+            builder.addAssignment((int) (pair >>> 32), (int) pair);
+        }
+        return builder.build();
+    }
+
+    @Override
+    public int countPage(PageQuery query) {
+        return listing(query).rows.size();
+    }
+
+    @Override
+    public List<Object[]> loadPage(PageQuery query, Object[] afterKey, int limit) {
+        List<Object[]> rows = listing(query).rows;
+        Comparator<Object[]> order = query.keyOrder();
+        int from = 0;
+        if (afterKey != null) {
+            int low = 0;
+            int high = rows.size();
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (order.compare(query.keyOf(rows.get(middle)), afterKey) <= 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            from = low;
+        }
+        List<Object[]> page = new ArrayList<>(Math.min(limit, rows.size() - from));
+        for (int i = from; i < rows.size() && page.size() < limit; i++) {
+            Object[] row = rows.get(i);
+            if (query.hasExtraColumn()) {
+                row = Arrays.copyOf(row, row.length + 1);
+                row[row.length - 1] = courseNames((Integer) row[0]);
+            }
+            page.add(row);
+        }
+        return page;
+    }
+
+    @Override
+    public Object[] pageKeyAt(PageQuery query, int offset) {
+        List<Object[]> rows = listing(query).rows;
+        return offset >= 0 && offset < rows.size() ? query.keyOf(rows.get(offset)) : null;
+    }
+
+    @Override
+    public List<Teacher> searchTeachers(String query, int limit) {
+        return NameSearch.search(loadAllTeachers(), Teacher::getFullName, query, limit);
+    }
+
+    @Override
+    public List<Course> searchCourses(String query, int limit) {
+        return NameSearch.search(loadAllCourses(), Course::getName, query, limit);
+    }
+
+    @Override
+    public List<String> suggestTeacherNames(String query, int limit) {
+        return NameSearch.search(new ArrayList<>(teacherIdsByName.keySet()), name -> name, query, limit);
+    }
+
+    @Override
+    public List<String> suggestCourseNames(String query, int limit) {
+        return NameSearch.search(new ArrayList<>(courseIdsByName.keySet()), name -> name, query, limit);
+    }
+
+    /**
+     * Rewrites the journal to hold just the current data, one record per row and assignment.
+     */
+    public void compact() throws IOException {
+        if (journal == null) {
+            return;
+        }
+        catalogLock.lock();
+        lockAll();
+        try {
+            List<String> records = new ArrayList<>();
+            for (TeacherRow row : teacherRows()) {
+                records.add(Journal.format('T', row.id, row.age, row.fullName));
+            }
+            for (CourseRow row : courseRows()) {
+                records.add(Journal.format('C', row.id, row.hours, row.name));
+            }
+            for (long pair : loadAssignments()) {
+                records.add(Journal.format('A', (int) (pair >>> 32), (int) pair, null));
+            }
+            journal.rewrite(records);
+        } finally {
+            unlockAll();
+            catalogLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return journal == null ? "memory" : "memory (journal " + journal.path + ")";
+    }
+
+    // Appends a record; the caller holds the locks of everything it changes, so records of
+    // conflicting changes are written in the order they are applied.
+    private void record(char type, int id, int value, String name) throws SQLException {
+        if (journal != null) {
+            journal.append(type, id, value, name);
+        }
+    }
+
+    // The apply methods change the maps without locking, journaling or publishing; callers hold
+    // the locks, or are replaying the journal before the engine is shared.
+
+    void apply(char type, int id, int value, String name) {
+        switch (type) {
+            case 'T' -> applyTeacher(id, name, value);
+            case 'R' -> applyRemoveTeacher(id);
+            case 'C' -> applyCourse(id, name, value);
+            case 'D' -> applyRemoveCourse(id);
+            case 'A' -> applyAssign(id, value);
+            case 'U' -> applyUnassign(id, value);
+            default -> throw new IllegalArgumentException("Unknown journal record type " + type);
+        }
+    }
+
+    private void applyTeacher(int id, String fullName, int age) {
+        TeacherRow previous = stripe(id).teachers.put(id, new TeacherRow(id, fullName, age));
+        if (previous != null) {
+            unindex(teacherIdsByName, previous.fullName, id);
+        }
+        index(teacherIdsByName, fullName, id);
+        lastTeacherId.accumulateAndGet(id, Math::max);
+        modifications.incrementAndGet();
+    }
+
+    private void applyRemoveTeacher(int id) {
+        TeacherRow previous = stripe(id).teachers.remove(id);
+        if (previous != null) {
+            unindex(teacherIdsByName, previous.fullName, id);
+        }
+        int[] courseIds = stripe(id).coursesByTeacher.remove(id);
+        for (int courseId : courseIds == null ? NONE : courseIds) {
+            Stripe courseStripe = stripe(courseId);
+            updateSet(courseStripe.teachersByCourse, courseId, AssignmentGraph.without(courseStripe.teachersByCourse.get(courseId), id));
+        }
+        modifications.incrementAndGet();
+    }
+
+    private void applyCourse(int id, String name, int hours) {
+        CourseRow previous = stripe(id).courses.put(id, new CourseRow(id, name, hours));
+        if (previous != null) {
+            unindex(courseIdsByName, previous.name, id);
+            if (previous.name != null) {
+                courseIdsByIdentity.remove(identity(previous.name, previous.hours), id);
+            }
+        }
+        index(courseIdsByName, name, id);
+        if (name != null) {
+            courseIdsByIdentity.put(identity(name, hours), id);
+        }
+        lastCourseId.accumulateAndGet(id, Math::max);
+        modifications.incrementAndGet();
+    }
+
+    private void applyRemoveCourse(int id) {
+        CourseRow previous = stripe(id).courses.remove(id);
+        if (previous != null) {
+            unindex(courseIdsByName, previous.name, id);
+            if (previous.name != null) {
+                courseIdsByIdentity.remove(identity(previous.name, previous.hours), id);
+            }
+        }
+        int[] teacherIds = stripe(id).teachersByCourse.remove(id);
+        for (int teacherId : teacherIds == null ? NONE : teacherIds) {
+            Stripe teacherStripe = stripe(teacherId);
+            updateSet(teacherStripe.coursesByTeacher, teacherId, AssignmentGraph.without(teacherStripe.coursesByTeacher.get(teacherId), id));
+        }
+        modifications.incrementAndGet();
+    }
+
+    private boolean applyAssign(int teacherId, int courseId) {
+        IntMap<int[]> coursesByTeacher = stripe(teacherId).coursesByTeacher;
+        int[] courseIds = coursesByTeacher.get(teacherId);
+        if (contains(courseIds, courseId)) {
+            return false;
+        }
+        coursesByTeacher.put(teacherId, AssignmentGraph.with(courseIds, courseId));
+        IntMap<int[]> teachersByCourse = stripe(courseId).teachersByCourse;
+        teachersByCourse.put(courseId, AssignmentGraph.with(teachersByCourse.get(courseId), teacherId));
+        return true;
+    }
+
+    private void applyUnassign(int teacherId, int courseId) {
+        IntMap<int[]> coursesByTeacher = stripe(teacherId).coursesByTeacher;
+        updateSet(coursesByTeacher, teacherId, AssignmentGraph.without(coursesByTeacher.get(teacherId), courseId));
+        IntMap<int[]> teachersByCourse = stripe(courseId).teachersByCourse;
+        updateSet(teachersByCourse, courseId, AssignmentGraph.without(teachersByCourse.get(courseId), teacherId));
+    }
+
+    private static void updateSet(IntMap<int[]> map, int key, int[] ids) {
+        if (ids == null) {
+            map.remove(key);
+        } else {
+            map.put(key, ids);
+        }
+    }
+
+    private Stripe stripe(int id) {
+        return stripes[id & mask];
+    }
+
+    private void lockPair(int teacherId, int courseId) {
+        int first = Math.min(teacherId & mask, courseId & mask);
+        int second = Math.max(teacherId & mask, courseId & mask);
+        stripes[first].lock.writeLock().lock();
+        if (second != first) {
+            stripes[second].lock.writeLock().lock();
+        }
+    }
+
+    private void unlockPair(int teacherId, int courseId) {
+        int first = Math.min(teacherId & mask, courseId & mask);
+        int second = Math.max(teacherId & mask, courseId & mask);
+        if (second != first) {
+            stripes[second].lock.writeLock().unlock();
+        }
+        stripes[first].lock.writeLock().unlock();
+    }
+
+    private void lockAll() {
+        for (Stripe stripe : stripes) {
+            stripe.lock.writeLock().lock();
+        }
+    }
+
+    private void unlockAll() {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            stripes[i].lock.writeLock().unlock();
+        }
+    }
+
+    // The courses of a teacher, with the locks already held.
+    private int[] lockedCourseIds(int teacherId) {
+        int[] courseIds = stripe(teacherId).coursesByTeacher.get(teacherId);
+        return courseIds == null ? NONE : courseIds;
+    }
+
+    private int[] courseIdsOf(int teacherId) {
+        Stripe stripe = stripe(teacherId);
+        stripe.lock.readLock().lock();
+        try {
+            int[] courseIds = stripe.coursesByTeacher.get(teacherId);
+            return courseIds == null ? NONE : courseIds;
+        } finally {
+            stripe.lock.readLock().unlock();
+        }
+    }
+
+    private String courseNames(int teacherId) {
+        StringBuilder names = new StringBuilder();
+        for (int courseId : courseIdsOf(teacherId)) {
+            Course course = findCourseById(courseId);
+            if (course != null && course.getName() != null) {
+                names.append(names.length() == 0 ? "" : ", ").append(course.getName());
+            }
+        }
+        return names.length() == 0 ? null : names.toString();
+    }
+
+    private List<TeacherRow> teacherRows() {
+        List<TeacherRow> rows = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            stripe.lock.readLock().lock();
+            try {
+                stripe.teachers.valuesInto(rows);
+            } finally {
+                stripe.lock.readLock().unlock();
+            }
+        }
+        rows.sort(Comparator.comparingInt(row -> row.id));
+        return rows;
+    }
+
+    private List<CourseRow> courseRows() {
+        List<CourseRow> rows = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            stripe.lock.readLock().lock();
+            try {
+                stripe.courses.valuesInto(rows);
+            } finally {
+                stripe.lock.readLock().unlock();
+            }
+        }
+        rows.sort(Comparator.comparingInt(row -> row.id));
+        return rows;
+    }
+
+    private int countRecords() {
+        int count = 0;
+        for (Stripe stripe : stripes) {
+            count += stripe.teachers.size() + stripe.courses.size();
+            for (int slot = 0; slot < stripe.coursesByTeacher.capacity(); slot++) {
+                if (stripe.coursesByTeacher.keyAt(slot) != 0) {
+                    count += stripe.coursesByTeacher.valueAt(slot).length;
+                }
+            }
+        }
+        return count;
+    }
+
+    // The sorted rows of a listing, without the computed column, cached until a teacher or course
+    // changes so that paging through a listing sorts it once.
+    private Listing listing(PageQuery query) {
+        long version = modifications.get();
+        Listing cached = listing;
+        if (cached != null && cached.matches(query, version)) {
+            return cached;
+        }
+        List<Object[]> rows = new ArrayList<>();
+        if (query.listsTeachers()) {
+            for (TeacherRow row : teacherRows()) {
+                if (query.matchesPrefix(row.fullName)) {
+                    rows.add(new Object[]{row.id, row.fullName, row.age});
+                }
+            }
+        } else {
+            for (CourseRow row : courseRows()) {
+                if (query.matchesPrefix(row.name)) {
+                    rows.add(new Object[]{row.id, row.name, row.hours});
+                }
+            }
+        }
+        rows.sort(Comparator.comparing(query::keyOf, query.keyOrder()));
+        Listing built = new Listing(query, version, rows);
+        listing = built;
+        return built;
+    }
+
+    // The name indexes are concurrent maps, which take no null keys; rows without a name are left out.
+    private static void index(Map<String, int[]> index, String name, int id) {
+        if (name != null) {
+            index.merge(name, new int[]{id}, (ids, added) -> AssignmentGraph.with(ids, id));
+        }
+    }
+
+    private static void unindex(Map<String, int[]> index, String name, int id) {
+        if (name != null) {
+            index.computeIfPresent(name, (key, ids) -> AssignmentGraph.without(ids, id));
+        }
+    }
+
+    // The catalog course with this name and hours, or null if there is none or the name is null.
+    private Integer catalogId(String name, int hours) {
+        return name == null ? null : courseIdsByIdentity.get(identity(name, hours));
+    }
+
+    private static String identity(String name, int hours) {
+        return hours + ":" + name;
+    }
+
+    private static boolean contains(int[] ids, int id) {
+        return ids != null && Arrays.binarySearch(ids, id) >= 0;
+    }
+
+    // Sorted id arrays are replaced rather than changed in place, so a reader holding one never
+    // sees it change. Both return null for an empty set.
+    private static final class TeacherRow {
+        private final int id;
+        private final String fullName;
+        private final int age;
+
+        private TeacherRow(int id, String fullName, int age) {
+            this.id = id;
+            this.fullName = fullName;
+            this.age = age;
+        }
+
+        private Teacher toTeacher() {
+            Teacher teacher = new Teacher(fullName, age);
+            teacher.setId(id);
+            return teacher;
+        }
+    }
+
+    private static final class CourseRow {
+        private final int id;
+        private final String name;
+        private final int hours;
+
+        private CourseRow(int id, String name, int hours) {
+            this.id = id;
+            this.name = name;
+            this.hours = hours;
+        }
+
+        private Course toCourse() {
+            Course course = new Course(name, hours);
+            course.setId(id);
+            return course;
+        }
+    }
+
+    private static final class Stripe {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final IntMap<TeacherRow> teachers = new IntMap<>();
+        private final IntMap<CourseRow> courses = new IntMap<>();
+        private final IntMap<int[]> coursesByTeacher = new IntMap<>();
+        private final IntMap<int[]> teachersByCourse = new IntMap<>();
+    }
+
+    private static final class Listing {
+        private final boolean teachers;
+        private final int sortColumn;
+        private final boolean descending;
+        private final String namePrefix;
+        private final long version;
+        private final List<Object[]> rows;
+
+        private Listing(PageQuery query, long version, List<Object[]> rows) {
+            this.teachers = query.listsTeachers();
+            this.sortColumn = query.getSortColumn();
+            this.descending = query.isDescending();
+            this.namePrefix = query.getNamePrefix();
+            this.version = version;
+            this.rows = rows;
+        }
+
+        private boolean matches(PageQuery query, long currentVersion) {
+            return version == currentVersion && teachers == query.listsTeachers() && sortColumn == query.getSortColumn()
+                    && descending == query.isDescending() && Objects.equals(namePrefix, query.getNamePrefix());
+        }
+    }
+
+    /**
+     * Open-addressed (linear probing) map from a positive id to a value, deleting by shifting
+     * later entries back so that no tombstones build up. Id 0 marks an empty slot.
+     */
+    private static final class IntMap<V> {
+        private int[] keys = new int[16];
+        private Object[] values = new Object[16];
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        int capacity() {
+            return keys.length;
+        }
+
+        int keyAt(int slot) {
+            return keys[slot];
+        }
+
+        @SuppressWarnings("unchecked")
+        V valueAt(int slot) {
+            return (V) values[slot];
+        }
+
+        V get(int key) {
+            int slot = find(key);
+            return slot < 0 ? null : valueAt(slot);
+        }
+
+        V put(int key, V value) {
+            if ((size + 1) * 4 > keys.length * 3) {
+                resize(keys.length * 2);
+            }
+            int slotMask = keys.length - 1;
+            int slot = hash(key) & slotMask;
+            while (keys[slot] != 0) {
+                if (keys[slot] == key) {
+                    V previous = valueAt(slot);
+                    values[slot] = value;
+                    return previous;
+                }
+                slot = (slot + 1) & slotMask;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            size++;
+            return null;
+        }
+
+        V remove(int key) {
+            int slot = find(key);
+            if (slot < 0) {
+                return null;
+            }
+            V previous = valueAt(slot);
+            int slotMask = keys.length - 1;
+            int hole = slot;
+            int next = (hole + 1) & slotMask;
+            while (keys[next] != 0) {
+                int home = hash(keys[next]) & slotMask;
+                if (((next - home) & slotMask) >= ((next - hole) & slotMask)) {
+                    keys[hole] = keys[next];
+                    values[hole] = values[next];
+                    hole = next;
+                }
+                next = (next + 1) & slotMask;
+            }
+            keys[hole] = 0;
+            values[hole] = null;
+            size--;
+            return previous;
+        }
+
+        void valuesInto(List<? super V> into) {
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != 0) {
+                    into.add(valueAt(slot));
+                }
+            }
+        }
+
+        private int find(int key) {
+            int slotMask = keys.length - 1;
+            int slot = hash(key) & slotMask;
+            while (keys[slot] != 0) {
+                if (keys[slot] == key) {
+                    return slot;
+                }
+                slot = (slot + 1) & slotMask;
+            }
+            return -1;
+        }
+
+        private void resize(int capacity) {
+            int[] oldKeys = keys;
+            Object[] oldValues = values;
+            keys = new int[capacity];
+            values = new Object[capacity];
+            size = 0;
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                if (oldKeys[slot] != 0) {
+                    @SuppressWarnings("unchecked")
+                    V value = (V) oldValues[slot];
+                    put(oldKeys[slot], value);
+                }
+            }
+        }
+
+        private static int hash(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    /**
+     * Append-only log of mutations, one tab-separated line each: a type letter, two numbers and,
+     * for teachers and courses, the name with backslash, tab and line breaks escaped.
+     */
+    private static final class Journal {
+        private final Path path;
+        private final boolean sync;
+        private FileChannel channel;
+
+        private Journal(Path path, boolean sync) throws IOException {
+            this.path = path;
+            this.sync = sync;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        /**
+         * Applies every complete record to {@code engine}, cuts off a trailing partial one and
+         * returns the number applied.
+         */
+        private int replay(InMemoryStorageEngine engine) throws IOException {
+            byte[] content = Files.readAllBytes(path);
+            int records = 0;
+            int lineStart = 0;
+            for (int i = 0; i < content.length; i++) {
+                if (content[i] != '\n') {
+                    continue;
+                }
+                String line = new String(content, lineStart, i - lineStart, StandardCharsets.UTF_8);
+                String[] fields = line.split("\t", 4);
+                try {
+                    engine.apply(fields[0].charAt(0), Integer.parseInt(fields[1]), Integer.parseInt(fields[2]),
+                            fields.length > 3 ? unescape(fields[3]) : null);
+                } catch (RuntimeException e) {
+                    throw new IOException("Corrupt journal record at byte " + lineStart + ": " + line, e);
+                }
+                records++;
+                lineStart = i + 1;
+            }
+            channel.truncate(lineStart);
+            channel.position(lineStart);
+            return records;
+        }
+
+        private synchronized void append(char type, int id, int value, String name) throws SQLException {
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(format(type, id, value, name).getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                if (sync) {
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                throw new SQLException("Could not append to journal " + path + ": " + e.getMessage(), e);
+            }
+        }
+
+        private synchronized void rewrite(List<String> records) throws IOException {
+            Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+            try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                StringBuilder chunk = new StringBuilder();
+                for (String record : records) {
+                    chunk.append(record);
+                    if (chunk.length() >= 1 << 16) {
+                        write(out, chunk);
+                    }
+                }
+                write(out, chunk);
+                out.force(true);
+            }
+            channel.close();
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.position(channel.size());
+        }
+
+        private synchronized void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Could not close journal " + path + ": " + e.getMessage());
+            }
+        }
+
+        private static void write(FileChannel out, StringBuilder chunk) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(chunk.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            chunk.setLength(0);
+        }
+
+        private static String format(char type, int id, int value, String name) {
+            StringBuilder line = new StringBuilder().append(type).append('\t').append(id).append('\t').append(value);
+            if (name != null) {
+                line.append('\t');
+                for (int i = 0; i < name.length(); i++) {
+                    char c = name.charAt(i);
+                    switch (c) {
+                        case '\\' -> line.append("\\\\");
+                        case '\t' -> line.append("\\t");
+                        case '\n' -> line.append("\\n");
+                        case '\r' -> line.append("\\r");
+                        default -> line.append(c);
+                    }
+                }
+            }
+            return line.append('\n').toString();
+        }
+
+        private static String unescape(String text) {
+            if (text.indexOf('\\') < 0) {
+                return text;
+            }
+            StringBuilder result = new StringBuilder(text.length());
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '\\' && i + 1 < text.length()) {
+                    char escaped = text.charAt(++i);
+                    result.append(escaped == 't' ? '\t' : escaped == 'n' ? '\n' : escaped == 'r' ? '\r' : escaped);
+                } else {
+                    result.append(c);
+                }
+            }
+            return result.toString();
+        }
+    }
+}
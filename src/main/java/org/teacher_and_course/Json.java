@@ -0,0 +1,201 @@
+package org.teacher_and_course;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class Json {
+
+    private Json() {
+    }
+
+    /**
+     * Parses a single flat JSON object such as one line of a JSON-lines file. Values may be
+     * strings, numbers, booleans or null; nested objects and arrays are rejected.
+     */
+    public static Map<String, Object> parseObject(String text) {
+        Parser parser = new Parser(text);
+        Map<String, Object> result = parser.readObject();
+        parser.skipWhitespace();
+        if (!parser.atEnd()) {
+            throw parser.error("Unexpected trailing content");
+        }
+        return result;
+    }
+
+    public static String quote(String value) {
+        StringBuilder builder = new StringBuilder(value.length() + 2);
+        appendQuoted(builder, value);
+        return builder.toString();
+    }
+
+    public static void appendQuoted(StringBuilder builder, String value) {
+        if (value == null) {
+            builder.append("null");
+            return;
+        }
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> builder.append("\\\"");
+                case '\\' -> builder.append("\\\\");
+                case '\n' -> builder.append("\\n");
+                case '\r' -> builder.append("\\r");
+                case '\t' -> builder.append("\\t");
+                case '\b' -> builder.append("\\b");
+                case '\f' -> builder.append("\\f");
+                default -> {
+                    if (c < 0x20) {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+                }
+            }
+        }
+        builder.append('"');
+    }
+
+    private static class Parser {
+        private final String text;
+        private int position;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        boolean atEnd() {
+            return position >= text.length();
+        }
+
+        void skipWhitespace() {
+            while (!atEnd() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + position + ": " + text);
+        }
+
+        void expect(char expected) {
+            skipWhitespace();
+            if (atEnd() || text.charAt(position) != expected) {
+                throw error("Expected '" + expected + "'");
+            }
+            position++;
+        }
+
+        Map<String, Object> readObject() {
+            Map<String, Object> result = new LinkedHashMap<>();
+            expect('{');
+            skipWhitespace();
+            if (!atEnd() && text.charAt(position) == '}') {
+                position++;
+                return result;
+            }
+            while (true) {
+                skipWhitespace();
+                String key = readString();
+                expect(':');
+                result.put(key, readValue());
+                skipWhitespace();
+                if (atEnd()) {
+                    throw error("Unterminated object");
+                }
+                char c = text.charAt(position++);
+                if (c == '}') {
+                    return result;
+                }
+                if (c != ',') {
+                    throw error("Expected ',' or '}'");
+                }
+            }
+        }
+
+        Object readValue() {
+            skipWhitespace();
+            if (atEnd()) {
+                throw error("Expected a value");
+            }
+            char c = text.charAt(position);
+            if (c == '"') {
+                return readString();
+            }
+            if (text.startsWith("true", position)) {
+                position += 4;
+                return Boolean.TRUE;
+            }
+            if (text.startsWith("false", position)) {
+                position += 5;
+                return Boolean.FALSE;
+            }
+            if (text.startsWith("null", position)) {
+                position += 4;
+                return null;
+            }
+            if (c == '-' || (c >= '0' && c <= '9')) {
+                return readNumber();
+            }
+            throw error("Unsupported value");
+        }
+
+        Number readNumber() {
+            int start = position;
+            boolean decimal = false;
+            while (!atEnd()) {
+                char c = text.charAt(position);
+                if (c == '.' || c == 'e' || c == 'E') {
+                    decimal = true;
+                } else if (!(c == '-' || c == '+' || (c >= '0' && c <= '9'))) {
+                    break;
+                }
+                position++;
+            }
+            String number = text.substring(start, position);
+            try {
+                return decimal ? (Number) Double.parseDouble(number) : (Number) Long.parseLong(number);
+            } catch (NumberFormatException e) {
+                throw error("Invalid number");
+            }
+        }
+
+        String readString() {
+            if (atEnd() || text.charAt(position) != '"') {
+                throw error("Expected a string");
+            }
+            position++;
+            StringBuilder builder = new StringBuilder();
+            while (!atEnd()) {
+                char c = text.charAt(position++);
+                if (c == '"') {
+                    return builder.toString();
+                }
+                if (c != '\\') {
+                    builder.append(c);
+                    continue;
+                }
+                if (atEnd()) {
+                    break;
+                }
+                char escaped = text.charAt(position++);
+                switch (escaped) {
+                    case 'n' -> builder.append('\n');
+                    case 'r' -> builder.append('\r');
+                    case 't' -> builder.append('\t');
+                    case 'b' -> builder.append('\b');
+                    case 'f' -> builder.append('\f');
+                    case 'u' -> {
+                        if (position + 4 > text.length()) {
+                            throw error("Invalid unicode escape");
+                        }
+                        builder.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        position += 4;
+                    }
+                    default -> builder.append(escaped);
+                }
+            }
+            throw error("Unterminated string");
+        }
+    }
+}
@@ -0,0 +1,556 @@
+package org.teacher_and_course;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Proposes moving assignments between teachers so that total hours are spread evenly. Every
+ * {@code teacher_course} row is a unit of {@link Course#getHours()} that may move to any teacher
+ * who does not already teach that course, except for pinned assignments, which stay where they
+ * are. The search first removes hours above {@code maxHours} and then minimises the sum of
+ * squared loads, which is the same as minimising their variance.
+ *
+ * <p>The search is a local search of single moves and swaps, run from several starting points in
+ * parallel on a fork/join pool: the first restart starts from the current assignments, the others
+ * from randomly perturbed copies. The best result comes back as a {@link Plan} whose moves
+ * {@link DatabaseManager#applyReassignments(List)} applies in one transaction.
+ */
+public class LoadBalancer {
+    private static final int MAX_PASSES = 200;
+    private static final int LIGHT_CANDIDATES = 16;
+    private static final int RANDOM_CANDIDATES = 8;
+    private static final int SWAP_CANDIDATES = 8;
+    private static final int PERTURBATION_PERCENT = 10;
+
+    private final int maxHours;
+    private final int restarts;
+    private final int parallelism;
+    private final long seed;
+    private final Set<Long> pinned = new HashSet<>();
+
+    /**
+     * @param maxHours    hours no teacher should exceed; 0 for no limit
+     * @param restarts    independent searches, of which the best is kept
+     * @param parallelism threads the searches run on
+     * @param seed        seed of the perturbations, so a plan can be reproduced
+     */
+    public LoadBalancer(int maxHours, int restarts, int parallelism, long seed) {
+        if (maxHours < 0 || restarts < 1 || parallelism < 1) {
+            throw new IllegalArgumentException("Max hours must not be negative, restarts and parallelism must be at least 1");
+        }
+        this.maxHours = maxHours;
+        this.restarts = restarts;
+        this.parallelism = parallelism;
+        this.seed = seed;
+    }
+
+    /**
+     * Keeps an assignment with its current teacher.
+     */
+    public void pin(int teacherId, int courseId) {
+        pinned.add(pair(teacherId, courseId));
+    }
+
+    /**
+     * Reads teachers, courses and assignments from {@code storage} in one {@link Roster} and plans
+     * a rebalancing. Returns null if they could not be read.
+     */
+    public Plan plan(StorageEngine storage) throws InterruptedException {
+        Roster roster = storage.loadRoster();
+        if (roster == null) {
+            return null;
+        }
+        int[] teacherIds = new int[roster.getTeacherCount()];
+        for (int i = 0; i < teacherIds.length; i++) {
+            teacherIds[i] = roster.getTeacherId(i);
+        }
+        Map<Integer, Integer> hoursByCourse = new HashMap<>();
+        for (int i = 0; i < roster.getCourseCount(); i++) {
+            hoursByCourse.put(roster.getCourseId(i), roster.getCourseHours(i));
+        }
+        return plan(teacherIds, hoursByCourse, roster.getAssignments());
+    }
+
+    /**
+     * Plans a rebalancing of {@code assignments}, given as {@code teacherId << 32 | courseId}.
+     * Assignments of teachers or courses that are not listed are left out.
+     */
+    public Plan plan(int[] teacherIds, Map<Integer, Integer> hoursByCourse, long[] assignments) throws InterruptedException {
+        long start = System.nanoTime();
+        Problem problem = new Problem(teacherIds, hoursByCourse, assignments);
+        List<Callable<Solution>> searches = new ArrayList<>();
+        for (int restart = 0; restart < restarts; restart++) {
+            long restartSeed = seed + restart;
+            boolean perturb = restart > 0;
+            searches.add(() -> problem.search(new SplittableRandom(restartSeed), perturb));
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        Solution best = null;
+        try {
+            for (Future<Solution> future : pool.invokeAll(searches)) {
+                Solution solution = future.get();
+                if (best == null || solution.isBetterThan(best)) {
+                    best = solution;
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Load balancing search failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return problem.toPlan(best, restarts, System.nanoTime() - start);
+    }
+
+    private static long pair(int teacherId, int courseId) {
+        return (long) teacherId << 32 | courseId;
+    }
+
+    private static long overflow(long load, int maxHours) {
+        return maxHours > 0 && load > maxHours ? load - maxHours : 0;
+    }
+
+    /**
+     * The assignments as units of work: unit {@code u} is course {@code unitCourse[u]} with
+     * {@code unitHours[u]} hours, taught at the start by the teacher at index {@code startOwner[u]}.
+     */
+    private final class Problem {
+        final int[] teacherIds;
+        final int[] unitCourse;
+        final int[] unitHours;
+        final int[] startOwner;
+        final int[] movable;
+        final int[][] courses;
+        final int[][] unitsOfCourse;
+
+        Problem(int[] teacherIds, Map<Integer, Integer> hoursByCourse, long[] assignments) {
+            this.teacherIds = teacherIds.clone();
+            Arrays.sort(this.teacherIds);
+            int units = 0;
+            for (long assignment : assignments) {
+                if (Arrays.binarySearch(this.teacherIds, (int) (assignment >>> 32)) >= 0 && hoursByCourse.containsKey((int) assignment)) {
+                    units++;
+                }
+            }
+            unitCourse = new int[units];
+            unitHours = new int[units];
+            startOwner = new int[units];
+            Map<Integer, List<Integer>> byCourse = new HashMap<>();
+            List<Integer> free = new ArrayList<>();
+            int u = 0;
+            for (long assignment : assignments) {
+                int teacher = Arrays.binarySearch(this.teacherIds, (int) (assignment >>> 32));
+                Integer hours = hoursByCourse.get((int) assignment);
+                if (teacher < 0 || hours == null) {
+                    continue;
+                }
+                unitCourse[u] = (int) assignment;
+                unitHours[u] = hours;
+                startOwner[u] = teacher;
+                byCourse.computeIfAbsent((int) assignment, id -> new ArrayList<>()).add(u);
+                if (!pinned.contains(assignment)) {
+                    free.add(u);
+                }
+                u++;
+            }
+            movable = free.stream().mapToInt(Integer::intValue).toArray();
+            courses = new int[byCourse.size()][];
+            unitsOfCourse = new int[units][];
+            int c = 0;
+            for (List<Integer> courseUnits : byCourse.values()) {
+                courses[c] = courseUnits.stream().mapToInt(Integer::intValue).toArray();
+                for (int unit : courses[c]) {
+                    unitsOfCourse[unit] = courses[c];
+                }
+                c++;
+            }
+        }
+
+        Solution search(SplittableRandom random, boolean perturb) {
+            Solution s = new Solution(this);
+            if (perturb) {
+                s.perturb(random);
+            }
+            int[] order = movable.clone();
+            int[] light = new int[Math.min(LIGHT_CANDIDATES, teacherIds.length)];
+            for (int pass = 0; pass < MAX_PASSES && !Thread.currentThread().isInterrupted(); pass++) {
+                shuffle(order, random);
+                s.lightest(light);
+                boolean improved = false;
+                for (int unit : order) {
+                    improved |= s.improve(unit, light, random);
+                }
+                if (!improved) {
+                    break;
+                }
+            }
+            return s;
+        }
+
+        Plan toPlan(Solution solution, int restarts, long elapsedNanos) {
+            // Compared as sets of pairs: units of one course that trade places cancel out.
+            List<Move> moves = new ArrayList<>();
+            for (int[] units : courses) {
+                Set<Integer> before = new HashSet<>();
+                Set<Integer> after = new HashSet<>();
+                for (int unit : units) {
+                    before.add(teacherIds[startOwner[unit]]);
+                    after.add(teacherIds[solution.owner[unit]]);
+                }
+                List<Integer> from = new ArrayList<>(before);
+                from.removeAll(after);
+                List<Integer> to = new ArrayList<>(after);
+                to.removeAll(before);
+                from.sort(null);
+                to.sort(null);
+                for (int i = 0; i < from.size(); i++) {
+                    moves.add(new Move(unitCourse[units[0]], unitHours[units[0]], from.get(i), to.get(i)));
+                }
+            }
+            moves.sort((a, b) -> a.courseId != b.courseId ? Integer.compare(a.courseId, b.courseId)
+                    : Integer.compare(a.fromTeacherId, b.fromTeacherId));
+            return new Plan(moves, new Loads(startLoads(), maxHours), new Loads(solution.load, maxHours),
+                    unitCourse.length, unitCourse.length - movable.length, restarts, elapsedNanos);
+        }
+
+        private long[] startLoads() {
+            long[] load = new long[teacherIds.length];
+            for (int unit = 0; unit < startOwner.length; unit++) {
+                load[startOwner[unit]] += unitHours[unit];
+            }
+            return load;
+        }
+    }
+
+    private static void shuffle(int[] array, SplittableRandom random) {
+        for (int i = array.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = array[i];
+            array[i] = array[j];
+            array[j] = swap;
+        }
+    }
+
+    /**
+     * One search's current assignment of units to teachers, with the running totals the moves are
+     * judged by: hours above the limit first, then the sum of squared loads.
+     */
+    private final class Solution {
+        final Problem problem;
+        final int[] owner;
+        final long[] load;
+        long overflow;
+        long sumOfSquares;
+
+        Solution(Problem problem) {
+            this.problem = problem;
+            owner = problem.startOwner.clone();
+            load = problem.startLoads();
+            for (long teacherLoad : load) {
+                overflow += overflow(teacherLoad, maxHours);
+                sumOfSquares += teacherLoad * teacherLoad;
+            }
+        }
+
+        boolean isBetterThan(Solution other) {
+            if (overflow != other.overflow) {
+                return overflow < other.overflow;
+            }
+            if (sumOfSquares != other.sumOfSquares) {
+                return sumOfSquares < other.sumOfSquares;
+            }
+            return changedUnits() < other.changedUnits();
+        }
+
+        private int changedUnits() {
+            int changed = 0;
+            for (int unit = 0; unit < owner.length; unit++) {
+                if (owner[unit] != problem.startOwner[unit]) {
+                    changed++;
+                }
+            }
+            return changed;
+        }
+
+        // Random moves that keep every teacher within the limit, so restarts explore elsewhere.
+        void perturb(SplittableRandom random) {
+            int teachers = problem.teacherIds.length;
+            int kicks = problem.movable.length * PERTURBATION_PERCENT / 100;
+            for (int i = 0; i < kicks && teachers > 1; i++) {
+                int unit = problem.movable[random.nextInt(problem.movable.length)];
+                int to = random.nextInt(teachers);
+                if (canTake(to, unit) && (maxHours == 0 || load[to] + problem.unitHours[unit] <= maxHours)) {
+                    move(unit, to);
+                }
+            }
+        }
+
+        void lightest(int[] light) {
+            Integer[] teachers = new Integer[load.length];
+            for (int i = 0; i < teachers.length; i++) {
+                teachers[i] = i;
+            }
+            Arrays.sort(teachers, (a, b) -> Long.compare(load[a], load[b]));
+            for (int i = 0; i < light.length; i++) {
+                light[i] = teachers[i];
+            }
+        }
+
+        /**
+         * Applies the best improving move of {@code unit} to one of the candidate teachers, or failing
+         * that the best improving swap with a unit of another teacher. Returns whether it changed anything.
+         */
+        boolean improve(int unit, int[] light, SplittableRandom random) {
+            int from = owner[unit];
+            int hours = problem.unitHours[unit];
+            int bestTo = -1;
+            long bestOverflow = 0;
+            long bestSquares = 0;
+            int teachers = problem.teacherIds.length;
+            for (int i = 0; i < light.length + RANDOM_CANDIDATES; i++) {
+                int to = i < light.length ? light[i] : random.nextInt(teachers);
+                if (to == from || !canTake(to, unit)) {
+                    continue;
+                }
+                long overflowDelta = overflow(load[from] - hours, maxHours) + overflow(load[to] + hours, maxHours)
+                        - overflow(load[from], maxHours) - overflow(load[to], maxHours);
+                long squaresDelta = 2L * hours * (hours + load[to] - load[from]);
+                if (improves(overflowDelta, squaresDelta, bestOverflow, bestSquares)) {
+                    bestTo = to;
+                    bestOverflow = overflowDelta;
+                    bestSquares = squaresDelta;
+                }
+            }
+            if (bestTo >= 0) {
+                move(unit, bestTo);
+                return true;
+            }
+
+            int bestOther = -1;
+            for (int i = 0; i < SWAP_CANDIDATES && problem.movable.length > 1; i++) {
+                int other = problem.movable[random.nextInt(problem.movable.length)];
+                int to = owner[other];
+                int difference = hours - problem.unitHours[other];
+                if (to == from || difference == 0 || !canTake(to, unit) || !canTake(from, other)) {
+                    continue;
+                }
+                long overflowDelta = overflow(load[from] - difference, maxHours) + overflow(load[to] + difference, maxHours)
+                        - overflow(load[from], maxHours) - overflow(load[to], maxHours);
+                long squaresDelta = 2L * difference * (difference + load[to] - load[from]);
+                if (improves(overflowDelta, squaresDelta, bestOverflow, bestSquares)) {
+                    bestOther = other;
+                    bestOverflow = overflowDelta;
+                    bestSquares = squaresDelta;
+                }
+            }
+            if (bestOther >= 0) {
+                int to = owner[bestOther];
+                move(bestOther, from);
+                move(unit, to);
+                return true;
+            }
+            return false;
+        }
+
+        private boolean improves(long overflowDelta, long squaresDelta, long bestOverflow, long bestSquares) {
+            return overflowDelta < bestOverflow || (overflowDelta == bestOverflow && squaresDelta < bestSquares);
+        }
+
+        // A teacher teaches a course at most once.
+        private boolean canTake(int teacher, int unit) {
+            for (int sibling : problem.unitsOfCourse[unit]) {
+                if (owner[sibling] == teacher) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void move(int unit, int to) {
+            int from = owner[unit];
+            int hours = problem.unitHours[unit];
+            overflow -= overflow(load[from], maxHours) + overflow(load[to], maxHours);
+            sumOfSquares -= load[from] * load[from] + load[to] * load[to];
+            load[from] -= hours;
+            load[to] += hours;
+            overflow += overflow(load[from], maxHours) + overflow(load[to], maxHours);
+            sumOfSquares += load[from] * load[from] + load[to] * load[to];
+            owner[unit] = to;
+        }
+    }
+
+    /**
+     * One assignment changing teacher.
+     */
+    public static class Move {
+        private final int courseId;
+        private final int hours;
+        private final int fromTeacherId;
+        private final int toTeacherId;
+
+        Move(int courseId, int hours, int fromTeacherId, int toTeacherId) {
+            this.courseId = courseId;
+            this.hours = hours;
+            this.fromTeacherId = fromTeacherId;
+            this.toTeacherId = toTeacherId;
+        }
+
+        public int getCourseId() {
+            return courseId;
+        }
+
+        public int getHours() {
+            return hours;
+        }
+
+        public int getFromTeacherId() {
+            return fromTeacherId;
+        }
+
+        public int getToTeacherId() {
+            return toTeacherId;
+        }
+
+        @Override
+        public String toString() {
+            return "course " + courseId + " (" + hours + "h): teacher " + fromTeacherId + " -> " + toTeacherId;
+        }
+    }
+
+    /**
+     * Summary of the teachers' total hours.
+     */
+    public static class Loads {
+        private final long min;
+        private final long max;
+        private final double mean;
+        private final double standardDeviation;
+        private final long hoursOverLimit;
+        private final int teachersOverLimit;
+
+        Loads(long[] loads, int maxHours) {
+            long min = loads.length == 0 ? 0 : Long.MAX_VALUE;
+            long max = 0;
+            long total = 0;
+            long over = 0;
+            int teachersOver = 0;
+            for (long load : loads) {
+                min = Math.min(min, load);
+                max = Math.max(max, load);
+                total += load;
+                over += overflow(load, maxHours);
+                teachersOver += overflow(load, maxHours) > 0 ? 1 : 0;
+            }
+            double mean = loads.length == 0 ? 0 : (double) total / loads.length;
+            double squares = 0;
+            for (long load : loads) {
+                squares += (load - mean) * (load - mean);
+            }
+            this.min = min;
+            this.max = max;
+            this.mean = mean;
+            this.standardDeviation = loads.length == 0 ? 0 : Math.sqrt(squares / loads.length);
+            this.hoursOverLimit = over;
+            this.teachersOverLimit = teachersOver;
+        }
+
+        public long getMin() {
+            return min;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public double getStandardDeviation() {
+            return standardDeviation;
+        }
+
+        public long getHoursOverLimit() {
+            return hoursOverLimit;
+        }
+
+        public int getTeachersOverLimit() {
+            return teachersOverLimit;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "min=%d max=%d mean=%.1f stddev=%.2f over limit: %d teachers, %d hours",
+                    min, max, mean, standardDeviation, teachersOverLimit, hoursOverLimit);
+        }
+    }
+
+    /**
+     * The proposed moves and the loads before and after them.
+     */
+    public static class Plan {
+        private final List<Move> moves;
+        private final Loads before;
+        private final Loads after;
+        private final int assignments;
+        private final int pinned;
+        private final int restarts;
+        private final long elapsedNanos;
+
+        Plan(List<Move> moves, Loads before, Loads after, int assignments, int pinned, int restarts, long elapsedNanos) {
+            this.moves = List.copyOf(moves);
+            this.before = before;
+            this.after = after;
+            this.assignments = assignments;
+            this.pinned = pinned;
+            this.restarts = restarts;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * The moves in course order. No teacher gains a course it already teaches, once all of the
+         * moves are applied.
+         */
+        public List<Move> getMoves() {
+            return moves;
+        }
+
+        public Loads getBefore() {
+            return before;
+        }
+
+        public Loads getAfter() {
+            return after;
+        }
+
+        public int getAssignments() {
+            return assignments;
+        }
+
+        public int getPinned() {
+            return pinned;
+        }
+
+        public long getElapsedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "Balanced %d assignments (%d pinned) with %d restarts in %d ms: %d moves%n  before: %s%n  after:  %s",
+                    assignments, pinned, restarts, getElapsedMillis(), moves.size(), before, after);
+        }
+    }
+}
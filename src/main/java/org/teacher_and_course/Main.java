@@ -1,10 +1,281 @@
 package org.teacher_and_course;
 
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
 public class Main {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
+        StorageEngine storage = StorageEngine.configured();
+        if (storage != StorageEngine.sqlite()) {
+            runWithoutDatabase(storage, args);
+            return;
+        }
         DatabaseManager.createTables();
-        SchoolManagementGUI schoolManagementGUI = new SchoolManagementGUI();
+        if (args.length >= 2 && args[0].equals("--import")) {
+            runImport(Path.of(args[1]));
+            return;
+        }
+        if (args.length >= 2 && args[0].equals("--export")) {
+            runExport(args);
+            return;
+        }
+        if (args.length >= 2 && args[0].equals("--export-snapshot")) {
+            runExportSnapshot(Path.of(args[1]));
+            return;
+        }
+        if (args.length >= 2 && args[0].equals("--restore-snapshot")) {
+            runRestoreSnapshot(Path.of(args[1]));
+            return;
+        }
+        if (args.length >= 1 && args[0].equals("--maintain")) {
+            runMaintenance();
+            return;
+        }
+        if (args.length >= 2 && args[0].equals("--balance")) {
+            runBalance(args);
+            return;
+        }
+        SchoolManagementSystem system = createSystem();
+        String snapshotPath = System.getProperty("school.cache.snapshot");
+        if (snapshotPath != null) {
+            warmUpFromSnapshot(system, Path.of(snapshotPath));
+        } else if (Boolean.getBoolean("school.cache.warmUp")) {
+            reportWarmUp(system.warmUp());
+        }
+        ChangeFeed.subscribe(system);
+        startMaintenance();
+        if (args.length >= 1 && args[0].equals("--serve")) {
+            int port = args.length >= 2 ? Integer.parseInt(args[1]) : Integer.getInteger("school.http.port", 8080);
+            runServer(system, port);
+            return;
+        }
+        SchoolManagementGUI schoolManagementGUI = new SchoolManagementGUI(system);
         schoolManagementGUI.showMainFrame();
     }
+
+    /**
+     * Serves the GUI or the HTTP API from another storage engine. Import, snapshots, maintenance,
+     * write-behind and cache warm-up all work on the SQLite database and are not available.
+     */
+    private static void runWithoutDatabase(StorageEngine storage, String[] args) throws Exception {
+        if (args.length >= 1 && !args[0].equals("--serve")) {
+            System.err.println(args[0] + " works on the SQLite database; run it with -Dschool.storage.engine=sqlite");
+            System.exit(2);
+        }
+        storage.createTables();
+        ChangeFeed.disablePolling();
+        SchoolManagementSystem system = new SchoolManagementSystem(storage);
+        ChangeFeed.subscribe(system);
+        if (args.length >= 1) {
+            int port = args.length >= 2 ? Integer.parseInt(args[1]) : Integer.getInteger("school.http.port", 8080);
+            runServer(system, port);
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(storage::close));
+        new SchoolManagementGUI(system).showMainFrame();
+    }
+
+    private static SchoolManagementSystem createSystem() {
+        if (!Boolean.getBoolean("school.writeBehind")) {
+            return new SchoolManagementSystem();
+        }
+        WriteBehindQueue writeBehind = new WriteBehindQueue(
+                Integer.getInteger("school.writeBehind.capacity", 10_000),
+                Integer.getInteger("school.writeBehind.maxBatchSize", 500),
+                Long.getLong("school.writeBehind.maxDelayMillis", 0));
+        Runtime.getRuntime().addShutdownHook(new Thread(writeBehind::close));
+        return new SchoolManagementSystem(writeBehind);
+    }
+
+    private static DatabaseMaintenance newMaintenance(long idleMillis) {
+        return new DatabaseMaintenance(
+                Integer.getInteger("school.maintenance.batchSize", 1000),
+                Integer.getInteger("school.maintenance.vacuumPages", 256),
+                idleMillis);
+    }
+
+    private static void startMaintenance() {
+        long intervalSeconds = Long.getLong("school.maintenance.intervalSeconds", 900);
+        if (intervalSeconds <= 0) {
+            return;
+        }
+        DatabaseMaintenance maintenance = newMaintenance(Long.getLong("school.maintenance.idleMillis", 2000));
+        Runtime.getRuntime().addShutdownHook(new Thread(maintenance::close));
+        maintenance.start(TimeUnit.SECONDS.toMillis(intervalSeconds));
+    }
+
+    private static void runMaintenance() {
+        DatabaseMaintenance.Report report = null;
+        try {
+            if (DatabaseMaintenance.enableIncrementalVacuum()) {
+                report = newMaintenance(0).runOnce();
+            }
+        } finally {
+            DatabaseManager.close();
+        }
+        if (report == null) {
+            System.exit(1);
+        }
+        System.out.println(report);
+    }
+
+    private static void runServer(SchoolManagementSystem system, int port) throws Exception {
+        ChangeFeed.deliverOffEventThread();
+        int maxConcurrentRequests = Integer.getInteger("school.http.maxConcurrentRequests", 64);
+        SchoolHttpServer server = new SchoolHttpServer(system, port, maxConcurrentRequests);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            system.getStorage().close();
+        }));
+        server.start();
+        System.out.println("Serving the school API on http://localhost:" + server.getPort() + "/");
+    }
+
+    private static void warmUpFromSnapshot(SchoolManagementSystem system, Path path) {
+        try {
+            Snapshot snapshot = Snapshot.open(path);
+            if (!snapshot.matchesDatabase()) {
+                System.err.println(path + " does not match the database, warming up from the database instead.");
+                reportWarmUp(system.warmUp());
+            } else {
+                reportWarmUp(system.warmUp(snapshot));
+            }
+        } catch (IOException e) {
+            System.err.println("Could not open snapshot " + path + ": " + e.getMessage());
+        }
+    }
+
+    private static void reportWarmUp(SchoolManagementSystem.WarmUpResult result) {
+        switch (result) {
+            case TOO_LARGE -> System.err.println("Dataset does not fit in the cache, serving reads through the database.");
+            case LOAD_FAILED -> System.err.println("Could not load the dataset into the cache, serving reads through the database.");
+            case CHANGED -> System.err.println("Data changed while the cache was warming up, serving reads through the database.");
+            case COMPLETE -> { }
+        }
+    }
+
+    private static void runExportSnapshot(Path path) {
+        boolean exported;
+        try {
+            exported = Snapshot.export(path);
+        } finally {
+            DatabaseManager.close();
+        }
+        if (!exported) {
+            System.exit(1);
+        }
+        try {
+            System.out.println(Snapshot.open(path));
+        } catch (IOException e) {
+            System.err.println("Could not read back snapshot " + path + ": " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void runRestoreSnapshot(Path path) {
+        boolean restored = false;
+        try {
+            Snapshot snapshot = Snapshot.open(path);
+            restored = snapshot.restore();
+            if (restored) {
+                System.out.println("Restored " + snapshot);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not open snapshot " + path + ": " + e.getMessage());
+        } finally {
+            DatabaseManager.close();
+        }
+        if (!restored) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * {@code --balance <maxHours> [--pin teacherId:courseId,...] [--apply]}: plans moving
+     * assignments so teachers' hours even out, prints the plan and, with {@code --apply}, applies it.
+     */
+    private static void runBalance(String[] args) throws InterruptedException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        LoadBalancer balancer = new LoadBalancer(Integer.parseInt(args[1]),
+                Integer.getInteger("school.balance.restarts", 2 * cores),
+                Integer.getInteger("school.balance.parallelism", cores),
+                Long.getLong("school.balance.seed", 1));
+        boolean apply = false;
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].equals("--apply")) {
+                apply = true;
+            } else if (args[i].equals("--pin") && i + 1 < args.length) {
+                for (String pin : args[++i].split(",")) {
+                    String[] ids = pin.split(":");
+                    balancer.pin(Integer.parseInt(ids[0].trim()), Integer.parseInt(ids[1].trim()));
+                }
+            }
+        }
+        boolean ok = false;
+        try {
+            SchoolManagementSystem system = new SchoolManagementSystem();
+            LoadBalancer.Plan plan = balancer.plan(system.getStorage());
+            if (plan == null) {
+                System.err.println("Could not read the assignments.");
+                return;
+            }
+            System.out.println(plan);
+            plan.getMoves().stream().limit(20).forEach(move -> System.out.println("  " + move));
+            if (plan.getMoves().size() > 20) {
+                System.out.println("  ... " + (plan.getMoves().size() - 20) + " more");
+            }
+            ok = !apply || system.applyReassignments(plan);
+            if (apply) {
+                System.out.println(ok ? "Applied " + plan.getMoves().size() + " moves."
+                        : "Not applied: the assignments changed while the plan was made.");
+            }
+        } finally {
+            DatabaseManager.close();
+            if (!ok) {
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * {@code --export <file> [csv|jsonl|json] [--gzip]}. The format and compression default to what
+     * the file name says, JSON lines for {@code .json}; nested JSON is only written when named. A
+     * file of {@code -} writes to standard output.
+     */
+    private static void runExport(String[] args) throws Exception {
+        Path path = args[1].equals("-") ? null : Path.of(args[1]);
+        BulkExporter.Format format = path == null ? BulkExporter.Format.CSV : BulkExporter.Format.fromPath(path);
+        boolean gzip = path != null && BulkExporter.isGzip(path);
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].equals("--gzip")) {
+                gzip = true;
+            } else {
+                format = BulkExporter.Format.valueOf(args[i].toUpperCase(Locale.ROOT));
+            }
+        }
+        // Progress goes to stderr so that an export to stdout stays clean.
+        BulkExporter exporter = new BulkExporter(Integer.getInteger("school.export.fetchSize", 1000),
+                report -> System.err.println(report));
+        try {
+            if (path == null) {
+                exporter.exportTo(System.out, format, gzip);
+            } else {
+                exporter.exportFile(path, format, gzip);
+            }
+        } finally {
+            DatabaseManager.close();
+        }
+    }
+
+    private static void runImport(Path path) throws Exception {
+        BulkImporter importer = new BulkImporter(10_000, report -> System.out.println(report));
+        try {
+            importer.importFile(path);
+        } finally {
+            DatabaseManager.close();
+        }
+    }
 }
@@ -0,0 +1,310 @@
+package org.teacher_and_course;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Ranked name lookup over teachers and courses. Prefix matches come from the NOCASE name indexes,
+ * substring and typo-tolerant matches from the trigram FTS5 tables created by schema migration 5,
+ * which triggers keep in sync with the base tables. Results are ordered exact, prefix, word prefix,
+ * substring, then fuzzy by edit distance.
+ */
+public class NameSearch {
+    public static final int DEFAULT_LIMIT = 10;
+    private static final int FUZZY_CANDIDATES = 64;
+
+    private static final OperationMetrics SEARCH_TEACHERS_METRICS = PersistenceMetrics.operation("searchTeachers");
+    private static final OperationMetrics SEARCH_COURSES_METRICS = PersistenceMetrics.operation("searchCourses");
+
+    private enum Target {
+        TEACHERS("teachers", "full_name", "age", "teachers_fts"),
+        COURSES("courses", "name", "hours", "courses_fts");
+
+        private final String prefixSql;
+        private final String matchSql;
+
+        Target(String table, String nameColumn, String valueColumn, String ftsTable) {
+            String select = "SELECT " + table + ".id, " + table + "." + nameColumn + ", " + table + "." + valueColumn;
+            this.prefixSql = select + " FROM " + table + " WHERE " + nameColumn + " LIKE ? ESCAPE '\\' " +
+                    "ORDER BY " + nameColumn + " COLLATE NOCASE, id LIMIT ?";
+            this.matchSql = select + " FROM " + ftsTable + " JOIN " + table + " ON " + table + ".id = " + ftsTable + ".rowid " +
+                    "WHERE " + ftsTable + " MATCH ? LIMIT ?";
+        }
+    }
+
+    private static final class Match {
+        private final int id;
+        private final String name;
+        private final int value;
+        private int tier;
+        private int distance;
+
+        private Match(int id, String name, int value) {
+            this.id = id;
+            this.name = name;
+            this.value = value;
+        }
+    }
+
+    public static List<Teacher> searchTeachers(String query, int limit) {
+        List<Teacher> teachers = new ArrayList<>();
+        for (Match match : search(Target.TEACHERS, SEARCH_TEACHERS_METRICS, query, limit)) {
+            Teacher teacher = new Teacher(match.name, match.value);
+            teacher.setId(match.id);
+            teachers.add(teacher);
+        }
+        return teachers;
+    }
+
+    public static List<Course> searchCourses(String query, int limit) {
+        List<Course> courses = new ArrayList<>();
+        for (Match match : search(Target.COURSES, SEARCH_COURSES_METRICS, query, limit)) {
+            Course course = new Course(match.name, match.value);
+            course.setId(match.id);
+            courses.add(course);
+        }
+        return courses;
+    }
+
+    /**
+     * Names of the best matches, without duplicates, for type-ahead suggestions.
+     */
+    public static List<String> suggestTeacherNames(String query, int limit) {
+        Set<String> names = new LinkedHashSet<>();
+        for (Match match : search(Target.TEACHERS, SEARCH_TEACHERS_METRICS, query, limit)) {
+            names.add(match.name);
+        }
+        return new ArrayList<>(names);
+    }
+
+    public static List<String> suggestCourseNames(String query, int limit) {
+        Set<String> names = new LinkedHashSet<>();
+        for (Match match : search(Target.COURSES, SEARCH_COURSES_METRICS, query, limit)) {
+            names.add(match.name);
+        }
+        return new ArrayList<>(names);
+    }
+
+    /**
+     * Ranks {@code items} by their names against the query the same way the database search does,
+     * scanning all of them; for engines without the search indexes.
+     */
+    static <T> List<T> search(List<T> items, Function<? super T, String> nameOf, String query, int limit) {
+        String needle = query == null ? "" : query.trim();
+        if (needle.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+        String lowerNeedle = needle.toLowerCase(Locale.ROOT);
+        int threshold = lowerNeedle.length() <= 5 ? 1 : 2;
+        List<Match> matches = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            String name = nameOf.apply(items.get(i));
+            if (name == null) {
+                continue;
+            }
+            String lowerName = name.toLowerCase(Locale.ROOT);
+            Match match = new Match(i, name, 0);
+            if (lowerName.contains(lowerNeedle)) {
+                match.tier = tierOf(lowerName, lowerNeedle);
+            } else if (lowerNeedle.length() >= 3) {
+                match.distance = bestDistance(lowerName, lowerNeedle);
+                if (match.distance > threshold) {
+                    continue;
+                }
+                match.tier = 4;
+            } else {
+                continue;
+            }
+            matches.add(match);
+        }
+        List<T> ranked = new ArrayList<>();
+        for (Match match : rank(matches, limit)) {
+            ranked.add(items.get(match.id));
+        }
+        return ranked;
+    }
+
+    private static List<Match> search(Target target, OperationMetrics metrics, String query, int limit) {
+        String needle = query == null ? "" : query.trim();
+        if (needle.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+        String lowerNeedle = needle.toLowerCase(Locale.ROOT);
+        Map<Integer, Match> matches = new LinkedHashMap<>();
+
+        long start = System.nanoTime();
+        try (PooledConnection connection = DatabaseManager.acquire()) {
+            collect(connection.prepare(target.prefixSql), escapeLike(needle) + "%", limit, matches);
+            if (lowerNeedle.length() >= 3 && matches.size() < limit) {
+                collect(connection.prepare(target.matchSql), phrase(needle), limit, matches);
+            }
+            for (Match match : matches.values()) {
+                match.tier = tierOf(match.name.toLowerCase(Locale.ROOT), lowerNeedle);
+            }
+            if (lowerNeedle.length() >= 3 && matches.size() < limit) {
+                Map<Integer, Match> candidates = new LinkedHashMap<>();
+                int threshold = lowerNeedle.length() <= 5 ? 1 : 2;
+                for (String probe : fuzzyProbes(lowerNeedle)) {
+                    collect(connection.prepare(target.matchSql), probe, FUZZY_CANDIDATES, candidates);
+                }
+                collect(connection.prepare(target.prefixSql), escapeLike(needle.substring(0, 2)) + "%",
+                        FUZZY_CANDIDATES, candidates);
+                for (Match candidate : candidates.values()) {
+                    if (matches.containsKey(candidate.id)) {
+                        continue;
+                    }
+                    candidate.distance = bestDistance(candidate.name.toLowerCase(Locale.ROOT), lowerNeedle);
+                    if (candidate.distance <= threshold) {
+                        candidate.tier = 4;
+                        matches.put(candidate.id, candidate);
+                    }
+                }
+            }
+            metrics.addRowsRead(matches.size());
+        } catch (SQLException e) {
+            metrics.recordError();
+            DatabaseManager.reportFailure(metrics.getOperation(), e);
+        } finally {
+            metrics.record(start);
+        }
+
+        return rank(new ArrayList<>(matches.values()), limit);
+    }
+
+    private static List<Match> rank(List<Match> ranked, int limit) {
+        ranked.sort(Comparator.<Match>comparingInt(match -> match.tier)
+                .thenComparingInt(match -> match.distance)
+                .thenComparingInt(match -> match.name.length())
+                .thenComparing(match -> match.name, String.CASE_INSENSITIVE_ORDER));
+        return ranked.size() > limit ? new ArrayList<>(ranked.subList(0, limit)) : ranked;
+    }
+
+    private static void collect(PreparedStatement statement, String pattern, int limit, Map<Integer, Match> matches)
+            throws SQLException {
+        statement.setString(1, pattern);
+        statement.setInt(2, limit);
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                String name = resultSet.getString(2);
+                if (name != null) {
+                    matches.putIfAbsent(resultSet.getInt(1), new Match(resultSet.getInt(1), name, resultSet.getInt(3)));
+                }
+            }
+        }
+    }
+
+    private static int tierOf(String name, String needle) {
+        if (name.equals(needle)) {
+            return 0;
+        }
+        if (name.startsWith(needle)) {
+            return 1;
+        }
+        for (String word : name.split("\\s+")) {
+            if (word.startsWith(needle)) {
+                return 2;
+            }
+        }
+        return 3;
+    }
+
+    /**
+     * Smallest edit distance between the query and the whole name, any single word of it, or the
+     * start of the name cut to the query's length, so that both full names and partial input match.
+     */
+    static int bestDistance(String name, String needle) {
+        int best = editDistance(name, needle);
+        if (name.length() > needle.length()) {
+            best = Math.min(best, editDistance(name.substring(0, needle.length()), needle));
+        }
+        for (String word : name.split("\\s+")) {
+            best = Math.min(best, editDistance(word, needle));
+            if (word.length() > needle.length()) {
+                best = Math.min(best, editDistance(word.substring(0, needle.length()), needle));
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Edit distance counting insertions, deletions, substitutions and swaps of adjacent characters.
+     */
+    static int editDistance(String a, String b) {
+        int[] beforePrevious = new int[b.length() + 1];
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    current[j] = Math.min(current[j], beforePrevious[j - 2] + 1);
+                }
+            }
+            int[] swap = beforePrevious;
+            beforePrevious = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    private static String escapeLike(String text) {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    private static String phrase(String text) {
+        return "\"" + text.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * Full-text queries for names likely to be within one edit of the query. The query is cut into
+     * pieces of at least three characters, the shortest the trigram index can match, and names
+     * containing all but one piece are the candidates; a second cut shifted by one character helps
+     * with swaps that straddle a cut. Probes are selective phrases or ANDs of phrases, which stay
+     * cheap where a ranked OR over all trigrams would score most of the table.
+     *
+     * <p>This is best effort: under seven characters the two pieces overlap, so an edit in the
+     * middle breaks both, and each probe reads at most {@value #FUZZY_CANDIDATES} unranked rows, so
+     * a piece common in a large table may not return the name that was meant.
+     */
+    private static Set<String> fuzzyProbes(String needle) {
+        int length = needle.length();
+        Set<String> probes = new LinkedHashSet<>();
+        if (length < 7) {
+            probes.add(phrase(needle.substring(0, 3)));
+            probes.add(phrase(needle.substring(length - 3)));
+        } else if (length < 10) {
+            for (int cut = length / 2; cut <= length / 2 + 1; cut++) {
+                probes.add(phrase(needle.substring(0, cut)));
+                probes.add(phrase(needle.substring(cut)));
+            }
+        } else {
+            for (int shift = 0; shift <= 1; shift++) {
+                int first = length / 3 + shift;
+                int second = 2 * length / 3 + shift;
+                String head = phrase(needle.substring(0, first));
+                String middle = phrase(needle.substring(first, second));
+                String tail = phrase(needle.substring(second));
+                probes.add(head + " AND " + middle);
+                probes.add(head + " AND " + tail);
+                probes.add(middle + " AND " + tail);
+            }
+        }
+        return probes;
+    }
+}
@@ -0,0 +1,109 @@
+package org.teacher_and_course;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+public class OperationMetrics implements OperationMetricsMXBean {
+    private final String type;
+    private final String operation;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rowsRead = new LongAdder();
+    private final LongAdder rowsWritten = new LongAdder();
+
+    OperationMetrics(String type, String operation) {
+        this.type = type;
+        this.operation = operation;
+    }
+
+    public void record(long startNanos) {
+        latency.record(System.nanoTime() - startNanos);
+    }
+
+    public void recordError() {
+        errors.increment();
+    }
+
+    public void addRowsRead(long rows) {
+        rowsRead.add(rows);
+    }
+
+    public void addRowsWritten(long rows) {
+        rowsWritten.add(rows);
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    @Override
+    public String getType() {
+        return type;
+    }
+
+    @Override
+    public String getOperation() {
+        return operation;
+    }
+
+    @Override
+    public long getCalls() {
+        return latency.getCount();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getRowsRead() {
+        return rowsRead.sum();
+    }
+
+    @Override
+    public long getRowsWritten() {
+        return rowsWritten.sum();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        return latency.getMeanNanos() / 1000.0;
+    }
+
+    @Override
+    public double getP50Micros() {
+        return latency.getPercentileNanos(50) / 1000.0;
+    }
+
+    @Override
+    public double getP99Micros() {
+        return latency.getPercentileNanos(99) / 1000.0;
+    }
+
+    @Override
+    public double getP999Micros() {
+        return latency.getPercentileNanos(99.9) / 1000.0;
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return latency.getMaxNanos() / 1000.0;
+    }
+
+    @Override
+    public void reset() {
+        latency.reset();
+        errors.reset();
+        rowsRead.reset();
+        rowsWritten.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+                "%-28s calls=%d errors=%d rowsRead=%d rowsWritten=%d mean=%.1fus p50=%.1fus p99=%.1fus p999=%.1fus max=%.1fus",
+                type.equals("DatabaseManager") ? operation : type + "." + operation, getCalls(), getErrors(), getRowsRead(), getRowsWritten(), getMeanMicros(),
+                getP50Micros(), getP99Micros(), getP999Micros(), getMaxMicros());
+    }
+}
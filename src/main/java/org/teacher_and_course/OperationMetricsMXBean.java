@@ -0,0 +1,27 @@
+package org.teacher_and_course;
+
+public interface OperationMetricsMXBean {
+    String getType();
+
+    String getOperation();
+
+    long getCalls();
+
+    long getErrors();
+
+    long getRowsRead();
+
+    long getRowsWritten();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    double getMaxMicros();
+
+    void reset();
+}
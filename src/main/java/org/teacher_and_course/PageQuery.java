@@ -0,0 +1,221 @@
+package org.teacher_and_course;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Describes one keyset-paginated listing: the table, the sort column and direction, and an optional
+ * name prefix filter. Rows are returned as cell arrays in {@link #getLabels()} order, with the row id
+ * always in the first cell so that (sort value, id) identifies a unique position to seek from.
+ * NULL sort values come first in ascending order and last in descending order, as SQLite sorts them.
+ */
+public class PageQuery {
+    private static final String MAX_CHAR = "\uDBFF\uDFFF";
+
+    private final String table;
+    private final String nameColumn;
+    private final List<String> columns;
+    private final List<String> labels;
+    private final String extraColumn;
+    private final int sortColumn;
+    private final boolean descending;
+    private final String namePrefix;
+
+    private PageQuery(String table, String nameColumn, List<String> columns, List<String> labels, String extraColumn,
+                      int sortColumn, boolean descending, String namePrefix) {
+        this.table = table;
+        this.nameColumn = nameColumn;
+        this.columns = columns;
+        this.labels = labels;
+        this.extraColumn = extraColumn;
+        this.sortColumn = sortColumn;
+        this.descending = descending;
+        this.namePrefix = namePrefix;
+    }
+
+    public static PageQuery teachers() {
+        return new PageQuery("teachers", "full_name", List.of("id", "full_name", "age"),
+                List.of("ID", "Name", "Age", "Courses"),
+                "(SELECT group_concat(courses.name, ', ') FROM teacher_course " +
+                        "JOIN courses ON courses.id = teacher_course.course_id " +
+                        "WHERE teacher_course.teacher_id = teachers.id)",
+                0, false, null);
+    }
+
+    public static PageQuery courses() {
+        return new PageQuery("courses", "name", List.of("id", "name", "hours"),
+                List.of("ID", "Name", "Hours"), null, 0, false, null);
+    }
+
+    public PageQuery withSort(int column, boolean descending) {
+        if (!isSortable(column)) {
+            throw new IllegalArgumentException("Column " + column + " is not sortable");
+        }
+        return new PageQuery(table, nameColumn, columns, labels, extraColumn, column, descending, namePrefix);
+    }
+
+    public PageQuery withNamePrefix(String prefix) {
+        String normalized = prefix == null || prefix.isEmpty() ? null : prefix;
+        return new PageQuery(table, nameColumn, columns, labels, extraColumn, sortColumn, descending, normalized);
+    }
+
+    /**
+     * The same listing without the computed column, for callers that only need the stored fields.
+     */
+    public PageQuery withoutExtraColumn() {
+        List<String> storedLabels = labels.subList(0, columns.size());
+        return new PageQuery(table, nameColumn, columns, storedLabels, null, sortColumn, descending, namePrefix);
+    }
+
+    public List<String> getLabels() {
+        return labels;
+    }
+
+    public boolean isSortable(int column) {
+        return column >= 0 && column < columns.size();
+    }
+
+    public int getSortColumn() {
+        return sortColumn;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    public String getNamePrefix() {
+        return namePrefix;
+    }
+
+    boolean listsTeachers() {
+        return table.equals("teachers");
+    }
+
+    Object[] keyOf(Object[] row) {
+        return new Object[]{row[sortColumn], row[0]};
+    }
+
+    boolean hasExtraColumn() {
+        return extraColumn != null;
+    }
+
+    /**
+     * Whether a row with this name passes the prefix filter, compared as the SQL condition does.
+     */
+    boolean matchesPrefix(String name) {
+        return namePrefix == null
+                || (name != null && name.compareTo(namePrefix) >= 0 && name.compareTo(namePrefix + MAX_CHAR) < 0);
+    }
+
+    /**
+     * The listing order over rows (or seek keys, which start with the same cells as {@link #keyOf}
+     * returns), for engines that sort in memory.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    Comparator<Object[]> keyOrder() {
+        Comparator<Object[]> order = Comparator.comparing(key -> (Comparable) key[0],
+                Comparator.nullsFirst(Comparator.naturalOrder()));
+        order = order.thenComparing(key -> (Comparable) key[1]);
+        return descending ? order.reversed() : order;
+    }
+
+    String countSql() {
+        return "SELECT COUNT(*) FROM " + table + (namePrefix == null ? "" : " WHERE " + prefixCondition());
+    }
+
+    /**
+     * The query for the page after {@code after}, or for the first page if it is null. A seek stays
+     * on its side of the NULL sort values; see {@link #crossesNulls}.
+     */
+    String pageSql(Object[] after) {
+        return selectSql(after == null ? null : seekCondition(after[0] == null));
+    }
+
+    /**
+     * Whether rows past the NULL sort values may follow {@code after}, which an index can only seek
+     * to with a query of their own: {@link #crossingSql()}, taking just the prefix parameters.
+     */
+    boolean crossesNulls(Object[] after) {
+        return after != null && sortColumn != 0 && (after[0] == null) != descending;
+    }
+
+    String crossingSql() {
+        return selectSql(columns.get(sortColumn) + (descending ? " IS NULL" : " IS NOT NULL"));
+    }
+
+    private String selectSql(String seekCondition) {
+        StringBuilder sql = new StringBuilder("SELECT ").append(String.join(", ", columns));
+        if (extraColumn != null) {
+            sql.append(", ").append(extraColumn);
+        }
+        sql.append(" FROM ").append(table);
+        appendWhere(sql, seekCondition);
+        appendOrder(sql);
+        return sql.append(" LIMIT ?").toString();
+    }
+
+    String keyAtSql() {
+        StringBuilder sql = new StringBuilder("SELECT ").append(columns.get(sortColumn)).append(", id FROM ").append(table);
+        appendWhere(sql, null);
+        appendOrder(sql);
+        return sql.append(" LIMIT 1 OFFSET ?").toString();
+    }
+
+    /**
+     * Parameters for the prefix filter, followed by the seek key when {@code after} is given.
+     */
+    Object[] parameters(Object[] after) {
+        int prefixCount = namePrefix == null ? 0 : 2;
+        int keyCount = after == null ? 0 : sortColumn == 0 || after[0] == null ? 1 : 2;
+        Object[] parameters = new Object[prefixCount + keyCount];
+        if (namePrefix != null) {
+            parameters[0] = namePrefix;
+            parameters[1] = namePrefix + MAX_CHAR;
+        }
+        if (after != null) {
+            if (keyCount == 1) {
+                parameters[prefixCount] = after[1];
+            } else {
+                parameters[prefixCount] = after[0];
+                parameters[prefixCount + 1] = after[1];
+            }
+        }
+        return parameters;
+    }
+
+    private String prefixCondition() {
+        return nameColumn + " >= ? AND " + nameColumn + " < ?";
+    }
+
+    private void appendWhere(StringBuilder sql, String seekCondition) {
+        if (namePrefix != null && seekCondition != null) {
+            sql.append(" WHERE ").append(prefixCondition()).append(" AND ").append(seekCondition);
+        } else if (namePrefix != null) {
+            sql.append(" WHERE ").append(prefixCondition());
+        } else if (seekCondition != null) {
+            sql.append(" WHERE ").append(seekCondition);
+        }
+    }
+
+    // A row value comparison is never true against NULL, so a NULL key seeks among the NULLs by id.
+    private String seekCondition(boolean nullKey) {
+        String comparison = descending ? "<" : ">";
+        if (sortColumn == 0) {
+            return "id " + comparison + " ?";
+        }
+        String column = columns.get(sortColumn);
+        if (nullKey) {
+            return column + " IS NULL AND id " + comparison + " ?";
+        }
+        return "(" + column + ", id) " + comparison + " (?, ?)";
+    }
+
+    private void appendOrder(StringBuilder sql) {
+        String direction = descending ? " DESC" : "";
+        sql.append(" ORDER BY ");
+        if (sortColumn != 0) {
+            sql.append(columns.get(sortColumn)).append(direction).append(", ");
+        }
+        sql.append("id").append(direction);
+    }
+}
@@ -0,0 +1,336 @@
+package org.teacher_and_course;
+
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Table model that fetches rows page by page as the table asks for them. Only a window of recently
+ * used pages stays in memory; cells of pages that are still loading read as {@code null} and are
+ * repainted once their page arrives. All state is confined to the event dispatch thread.
+ *
+ * <p>Subscribed to the {@link ChangeFeed}, the model patches edited rows in place when their
+ * position cannot have changed, reloads only the page of a teacher whose courses changed, and
+ * otherwise re-reads the row count and the pages in memory while still showing the old rows.
+ * A loading listener is told when the model starts and stops waiting for the database, and
+ * {@link #cancel()} abandons whatever it is waiting for.
+ */
+public class PagedTableModel extends AbstractTableModel implements ChangeEventListener {
+    private static final long serialVersionUID = 1L;
+    private static final int PAGE_SIZE = 200;
+    private static final int MAX_CACHED_PAGES = 16;
+
+    private final SchoolService service;
+    private final Consumer<Throwable> errorHandler;
+    private final Map<Integer, List<Object[]>> pages = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<Object[]>> eldest) {
+            if (size() > MAX_CACHED_PAGES) {
+                forgetRows(eldest.getKey(), eldest.getValue());
+                return true;
+            }
+            return false;
+        }
+    };
+    private final Map<Integer, Integer> rowIndexById = new HashMap<>();
+    private final Map<Integer, Object[]> pageStartKeys = new HashMap<>();
+    private final Set<Integer> loading = new HashSet<>();
+    private final Set<CompletableFuture<?>> pending = new HashSet<>();
+    private Consumer<Boolean> loadingListener = busy -> {
+    };
+    private PageQuery query;
+    private int rowCount;
+    private long generation;
+
+    public PagedTableModel(SchoolService service, PageQuery query, Consumer<Throwable> errorHandler) {
+        this.service = service;
+        this.errorHandler = errorHandler;
+        setQuery(query);
+    }
+
+    public PageQuery getQuery() {
+        return query;
+    }
+
+    public void setQuery(PageQuery query) {
+        this.query = query;
+        refresh();
+    }
+
+    /**
+     * Told {@code true} when the model starts waiting for the database and {@code false} once
+     * nothing is outstanding.
+     */
+    public void setLoadingListener(Consumer<Boolean> listener) {
+        loadingListener = listener;
+        listener.accept(!pending.isEmpty());
+    }
+
+    /**
+     * Cancels the count and page reads in flight. Rows already in memory stay; rows still
+     * loading are asked for again when the table next paints them.
+     */
+    public void cancel() {
+        generation++;
+        loading.clear();
+        List<CompletableFuture<?>> running = new ArrayList<>(pending);
+        pending.clear();
+        for (CompletableFuture<?> future : running) {
+            future.cancel(true);
+        }
+        loadingListener.accept(false);
+    }
+
+    public void refresh() {
+        long current = ++generation;
+        pages.clear();
+        rowIndexById.clear();
+        pageStartKeys.clear();
+        loading.clear();
+        PageQuery countQuery = query;
+        load(() -> service.getSystem().getStorage().countPage(countQuery), count -> {
+            if (current != generation) {
+                return;
+            }
+            rowCount = count;
+            fireTableStructureChanged();
+        }, errorHandler);
+    }
+
+    public void sortBy(int column) {
+        if (!query.isSortable(column)) {
+            return;
+        }
+        boolean descending = query.getSortColumn() == column && !query.isDescending();
+        setQuery(query.withSort(column, descending));
+    }
+
+    public void filterByName(String prefix) {
+        setQuery(query.withNamePrefix(prefix));
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return query.getLabels().size();
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        String label = query.getLabels().get(column);
+        if (column == query.getSortColumn()) {
+            return label + (query.isDescending() ? " ▼" : " ▲");
+        }
+        return label;
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        int page = rowIndex / PAGE_SIZE;
+        List<Object[]> rows = pages.get(page);
+        if (rows == null) {
+            requestPage(page);
+            requestPage(page + 1);
+            return null;
+        }
+        int offset = rowIndex % PAGE_SIZE;
+        return offset < rows.size() ? rows.get(offset)[columnIndex] : null;
+    }
+
+    @Override
+    public void onChanges(List<ChangeEvent> changes) {
+        boolean listsTeachers = query.listsTeachers();
+        boolean recount = false;
+        boolean reloadPages = false;
+        Set<Integer> stalePages = new HashSet<>();
+        for (ChangeEvent change : changes) {
+            switch (change.getType()) {
+                case RELOADED -> {
+                    refresh();
+                    return;
+                }
+                case TEACHER_ADDED -> recount |= listsTeachers && matchesFilter(change.getTeacher().getFullName());
+                case COURSE_ADDED -> recount |= !listsTeachers && matchesFilter(change.getCourse().getName());
+                case TEACHER_REMOVED -> recount |= listsTeachers;
+                case COURSE_REMOVED -> {
+                    // Removing a course also changes the course list of every teacher who taught it.
+                    recount |= !listsTeachers;
+                    reloadPages = true;
+                }
+                case TEACHER_UPDATED -> {
+                    if (listsTeachers) {
+                        Teacher teacher = change.getTeacher();
+                        recount |= !patch(teacher.getId(), teacher.getFullName(), teacher.getAge());
+                    }
+                }
+                case COURSE_UPDATED -> {
+                    if (listsTeachers) {
+                        reloadPages = true;
+                    } else {
+                        Course course = change.getCourse();
+                        recount |= !patch(course.getId(), course.getName(), course.getHours());
+                    }
+                }
+                case ASSIGNMENT_ADDED, ASSIGNMENT_REMOVED -> {
+                    Integer row = listsTeachers ? rowIndexById.get(change.getTeacherId()) : null;
+                    if (row != null) {
+                        stalePages.add(row / PAGE_SIZE);
+                    }
+                }
+            }
+        }
+        if (recount || reloadPages) {
+            revalidate(recount);
+        } else {
+            for (int page : stalePages) {
+                if (loading.add(page)) {
+                    fetchPage(page);
+                }
+            }
+        }
+    }
+
+    private boolean matchesFilter(String name) {
+        return query.matchesPrefix(name);
+    }
+
+    /**
+     * Writes new values into a row in memory. Returns false if the row may have moved, been
+     * filtered out or come into view, which only a reload can tell.
+     */
+    private boolean patch(int id, String name, int value) {
+        Integer row = rowIndexById.get(id);
+        if (row == null) {
+            return query.getSortColumn() == 0 && query.getNamePrefix() == null;
+        }
+        Object[] cells = pages.get(row / PAGE_SIZE).get(row % PAGE_SIZE);
+        Object[] values = {id, name, value};
+        if (!matchesFilter(name) || !Objects.equals(cells[query.getSortColumn()], values[query.getSortColumn()])) {
+            return false;
+        }
+        cells[1] = name;
+        cells[2] = value;
+        fireTableRowsUpdated(row, row);
+        return true;
+    }
+
+    /**
+     * Re-reads the pages in memory, and first the row count if {@code recount} is set. The old rows
+     * stay on screen until their replacements arrive.
+     */
+    private void revalidate(boolean recount) {
+        long current = ++generation;
+        loading.clear();
+        pageStartKeys.clear();
+        if (!recount) {
+            reload(new ArrayList<>(pages.keySet()));
+            return;
+        }
+        PageQuery countQuery = query;
+        load(() -> service.getSystem().getStorage().countPage(countQuery), count -> {
+            if (current != generation) {
+                return;
+            }
+            rowCount = count;
+            // Pages may have arrived while counting, so look at what is in memory now.
+            pages.entrySet().removeIf(entry -> {
+                if (entry.getKey() * PAGE_SIZE < count) {
+                    return false;
+                }
+                forgetRows(entry.getKey(), entry.getValue());
+                return true;
+            });
+            rowIndexById.values().removeIf(row -> row >= count);
+            fireTableDataChanged();
+            reload(new ArrayList<>(pages.keySet()));
+        }, errorHandler);
+    }
+
+    private void reload(List<Integer> cachedPages) {
+        for (int page : cachedPages) {
+            loading.add(page);
+            fetchPage(page);
+        }
+    }
+
+    private void requestPage(int page) {
+        if (page * PAGE_SIZE >= rowCount || pages.containsKey(page) || !loading.add(page)) {
+            return;
+        }
+        fetchPage(page);
+    }
+
+    private void fetchPage(int page) {
+        long current = generation;
+        PageQuery pageQuery = query;
+        Object[] knownStart = pageStartKeys.get(page);
+        load(() -> {
+            Object[] start = knownStart;
+            if (start == null && page > 0) {
+                start = service.getSystem().getStorage().pageKeyAt(pageQuery, page * PAGE_SIZE - 1);
+            }
+            return service.getSystem().getStorage().loadPage(pageQuery, start, PAGE_SIZE);
+        }, rows -> {
+            if (current != generation) {
+                return;
+            }
+            loading.remove(page);
+            List<Object[]> previous = pages.put(page, rows);
+            int shown = rows.size();
+            if (previous != null) {
+                forgetRows(page, previous);
+                shown = Math.max(shown, previous.size());
+            }
+            for (int i = 0; i < rows.size(); i++) {
+                rowIndexById.put(((Number) rows.get(i)[0]).intValue(), page * PAGE_SIZE + i);
+            }
+            if (!rows.isEmpty()) {
+                pageStartKeys.put(page + 1, pageQuery.keyOf(rows.get(rows.size() - 1)));
+            }
+            int first = page * PAGE_SIZE;
+            int last = Math.min(rowCount - 1, first + shown - 1);
+            if (last >= first) {
+                fireTableRowsUpdated(first, last);
+            }
+        }, error -> {
+            if (current == generation) {
+                loading.remove(page);
+            }
+            errorHandler.accept(error);
+        });
+    }
+
+    private <T> void load(Callable<T> read, Consumer<T> onSuccess, Consumer<Throwable> onError) {
+        CompletableFuture<T> future = service.submit(read);
+        if (pending.isEmpty()) {
+            loadingListener.accept(true);
+        }
+        pending.add(future);
+        future.whenCompleteAsync((result, error) -> {
+            if (pending.remove(future) && pending.isEmpty()) {
+                loadingListener.accept(false);
+            }
+        }, SwingUtilities::invokeLater);
+        SchoolService.onEdt(future, onSuccess, onError);
+    }
+
+    private void forgetRows(int page, List<Object[]> rows) {
+        for (int i = 0; i < rows.size(); i++) {
+            rowIndexById.remove(((Number) rows.get(i)[0]).intValue(), page * PAGE_SIZE + i);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.teacher_and_course;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registry of per-operation persistence metrics. Every operation is published as an MXBean under
+ * {@code org.teacher_and_course:type=DatabaseManager,operation=<name>}, or under another type for
+ * operations recorded outside the database layer; setting the
+ * {@code school.metrics.dumpSeconds} system property also prints a periodic text summary.
+ */
+public class PersistenceMetrics {
+    private static final String DOMAIN = "org.teacher_and_course";
+    private static final Map<String, OperationMetrics> OPERATIONS = new ConcurrentHashMap<>();
+    private static ScheduledExecutorService reporter;
+
+    static {
+        long dumpSeconds = Long.getLong("school.metrics.dumpSeconds", 0L);
+        if (dumpSeconds > 0) {
+            startReporter(dumpSeconds, TimeUnit.SECONDS, System.out);
+        }
+    }
+
+    private PersistenceMetrics() {
+    }
+
+    public static OperationMetrics operation(String name) {
+        return operation("DatabaseManager", name);
+    }
+
+    public static OperationMetrics operation(String type, String name) {
+        return OPERATIONS.computeIfAbsent(type + "," + name, key -> register(type, name));
+    }
+
+    public static Collection<OperationMetrics> operations() {
+        List<OperationMetrics> result = new ArrayList<>(OPERATIONS.values());
+        result.sort(Comparator.comparing(OperationMetrics::getType).thenComparing(OperationMetrics::getOperation));
+        return result;
+    }
+
+    public static void resetAll() {
+        for (OperationMetrics metrics : OPERATIONS.values()) {
+            metrics.reset();
+        }
+    }
+
+    public static String dump() {
+        StringBuilder builder = new StringBuilder("Persistence metrics:\n");
+        for (OperationMetrics metrics : operations()) {
+            if (metrics.getCalls() > 0) {
+                builder.append("  ").append(metrics).append('\n');
+            }
+        }
+        return builder.toString();
+    }
+
+    public static synchronized void startReporter(long period, TimeUnit unit, PrintStream out) {
+        stopReporter();
+        reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "persistence-metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> out.print(dump()), period, period, unit);
+    }
+
+    public static synchronized void stopReporter() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+    }
+
+    private static OperationMetrics register(String type, String name) {
+        OperationMetrics metrics = new OperationMetrics(type, name);
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type + ",operation=" + ObjectName.quote(name));
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(metrics, objectName);
+            }
+        } catch (JMException e) {
+            System.err.println("Could not register metrics MBean for " + name + ": " + e.getMessage());
+        }
+        return metrics;
+    }
+}
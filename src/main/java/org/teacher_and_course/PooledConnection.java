@@ -0,0 +1,96 @@
+package org.teacher_and_course;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class PooledConnection implements AutoCloseable {
+    private final ConnectionPool pool;
+    private final Connection connection;
+    private final Map<String, PreparedStatement> statements;
+    private boolean released;
+
+    PooledConnection(ConnectionPool pool, Connection connection, int statementCacheSize) {
+        this.pool = pool;
+        this.connection = connection;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > statementCacheSize) {
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Returns a cached statement for the given SQL. The statement belongs to this connection and
+     * must not be closed by the caller; result sets obtained from it still should be. While the
+     * {@link QueryLog} is on, the statement is wrapped to time it.
+     */
+    public PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement statement = statements.get(sql);
+        if (statement != null && !statement.isClosed()) {
+            pool.recordStatementLookup(true);
+            statement.clearParameters();
+        } else {
+            pool.recordStatementLookup(false);
+            statement = connection.prepareStatement(sql);
+            statements.put(sql, statement);
+        }
+        return QueryLog.isEnabled() ? QueryLog.watch(statement, sql, connection) : statement;
+    }
+
+    void markAcquired() {
+        released = false;
+    }
+
+    boolean reset() {
+        try {
+            if (connection.isClosed()) {
+                return false;
+            }
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    void closePhysical() {
+        for (PreparedStatement statement : statements.values()) {
+            closeQuietly(statement);
+        }
+        statements.clear();
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!released) {
+            released = true;
+            pool.release(this);
+        }
+    }
+}
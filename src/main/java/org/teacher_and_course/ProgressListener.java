@@ -0,0 +1,8 @@
+package org.teacher_and_course;
+
+public interface ProgressListener {
+    ProgressListener NONE = (done, total) -> {
+    };
+
+    void onProgress(long done, long total);
+}
@@ -0,0 +1,322 @@
+package org.teacher_and_course;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Slow-query diagnostics. When a threshold is set, through the {@code school.db.slowQueryMillis}
+ * system property or {@link #setThresholdMillis(long)}, statements prepared through a
+ * {@link PooledConnection} are timed, and each one that takes at least the threshold is passed to
+ * the {@link SlowQueryListener} with its bound parameters and SQLite's {@code EXPLAIN QUERY PLAN}.
+ * A query's time is spent executing it and stepping through its rows; the caller's own work
+ * between rows is not counted. With no threshold, the default, statements are not wrapped at all.
+ */
+public class QueryLog {
+    private static final OperationMetrics SLOW_QUERY_METRICS = PersistenceMetrics.operation("QueryLog", "slowQuery");
+
+    private static volatile long thresholdNanos = toNanos(Long.getLong("school.db.slowQueryMillis", -1L));
+    private static volatile SlowQueryListener listener = SlowQueryListener.STDERR;
+
+    private QueryLog() {
+    }
+
+    /**
+     * Reports statements taking at least {@code millis} from now on; zero reports every statement
+     * and a negative value turns the log off.
+     */
+    public static void setThresholdMillis(long millis) {
+        thresholdNanos = toNanos(millis);
+    }
+
+    public static long getThresholdMillis() {
+        return thresholdNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(thresholdNanos);
+    }
+
+    /**
+     * Replaces the listener told about slow statements, which by default prints them to stderr.
+     */
+    public static void setListener(SlowQueryListener slowQueryListener) {
+        listener = slowQueryListener == null ? SlowQueryListener.STDERR : slowQueryListener;
+    }
+
+    static boolean isEnabled() {
+        return thresholdNanos >= 0;
+    }
+
+    /**
+     * {@code statement}, timed and reported when it is slow. Plans are read through
+     * {@code connection}, which must be the statement's own.
+     */
+    static PreparedStatement watch(PreparedStatement statement, String sql, Connection connection) {
+        return (PreparedStatement) Proxy.newProxyInstance(QueryLog.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, new WatchedStatement(statement, sql, connection));
+    }
+
+    /**
+     * SQLite's plan for {@code sql} with the given parameters, one line per step, indented under
+     * the step it belongs to.
+     */
+    static List<String> explain(Connection connection, String sql, List<Object> parameters) throws SQLException {
+        List<String> plan = new ArrayList<>();
+        Map<Integer, Integer> depths = new HashMap<>();
+        try (PreparedStatement statement = connection.prepareStatement("EXPLAIN QUERY PLAN " + sql)) {
+            for (int i = 0; i < parameters.size(); i++) {
+                statement.setObject(i + 1, parameters.get(i));
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    int depth = depths.getOrDefault(resultSet.getInt("parent"), -1) + 1;
+                    depths.put(resultSet.getInt("id"), depth);
+                    plan.add("  ".repeat(depth) + resultSet.getString("detail"));
+                }
+            }
+        }
+        return plan;
+    }
+
+    private static long toNanos(long millis) {
+        return millis < 0 ? -1 : TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    private static void finished(Connection connection, String sql, List<Object> parameters, int batchSize,
+                                 long rows, long elapsedNanos) {
+        long threshold = thresholdNanos;
+        if (threshold < 0 || elapsedNanos < threshold) {
+            return;
+        }
+        SLOW_QUERY_METRICS.record(System.nanoTime() - elapsedNanos);
+        List<String> plan;
+        try {
+            plan = explain(connection, sql, parameters);
+        } catch (SQLException e) {
+            plan = List.of("(no plan: " + e.getMessage() + ")");
+        }
+        try {
+            listener.onSlowQuery(new SlowQuery(sql, parameters, batchSize, rows, elapsedNanos, plan));
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static Object call(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static final class WatchedStatement implements InvocationHandler {
+        private final PreparedStatement statement;
+        private final String sql;
+        private final Connection connection;
+        private final Map<Integer, Object> parameters = new TreeMap<>();
+        private int batchSize;
+
+        WatchedStatement(PreparedStatement statement, String sql, Connection connection) {
+            this.statement = statement;
+            this.sql = sql;
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (args != null && args.length >= 2 && args[0] instanceof Integer index && name.startsWith("set")) {
+                parameters.put(index, name.equals("setNull") ? null : args[1]);
+            } else if (args == null) {
+                switch (name) {
+                    case "clearParameters" -> parameters.clear();
+                    case "addBatch" -> batchSize++;
+                    case "clearBatch" -> batchSize = 0;
+                    case "executeQuery" -> {
+                        List<Object> bound = bound();
+                        long start = System.nanoTime();
+                        ResultSet resultSet = (ResultSet) call(statement, method, null);
+                        return watch(resultSet, bound, System.nanoTime() - start);
+                    }
+                    case "execute", "executeUpdate", "executeLargeUpdate", "executeBatch", "executeLargeBatch" -> {
+                        List<Object> bound = bound();
+                        int batch = batchSize;
+                        batchSize = 0;
+                        long start = System.nanoTime();
+                        Object result = call(statement, method, null);
+                        finished(connection, sql, bound, batch, rowsChanged(result), System.nanoTime() - start);
+                        return result;
+                    }
+                    default -> {
+                    }
+                }
+            }
+            return call(statement, method, args);
+        }
+
+        // The parameters by position; for a batch, those of its last row.
+        private List<Object> bound() {
+            List<Object> bound = new ArrayList<>();
+            for (Map.Entry<Integer, Object> parameter : parameters.entrySet()) {
+                while (bound.size() < parameter.getKey() - 1) {
+                    bound.add(null);
+                }
+                bound.add(parameter.getValue());
+            }
+            return Collections.unmodifiableList(bound);
+        }
+
+        private ResultSet watch(ResultSet resultSet, List<Object> bound, long executeNanos) {
+            return (ResultSet) Proxy.newProxyInstance(QueryLog.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                    new InvocationHandler() {
+                        private long nanos = executeNanos;
+                        private long rows;
+                        private boolean closed;
+
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                            if (args == null && method.getName().equals("next")) {
+                                long start = System.nanoTime();
+                                Object hasRow = call(resultSet, method, null);
+                                nanos += System.nanoTime() - start;
+                                if ((Boolean) hasRow) {
+                                    rows++;
+                                }
+                                return hasRow;
+                            }
+                            Object result = call(resultSet, method, args);
+                            if (args == null && method.getName().equals("close") && !closed) {
+                                closed = true;
+                                finished(connection, sql, bound, 0, rows, nanos);
+                            }
+                            return result;
+                        }
+                    });
+        }
+
+        private static long rowsChanged(Object result) {
+            if (result instanceof Number count) {
+                return count.longValue();
+            }
+            long rows = 0;
+            if (result instanceof int[] counts) {
+                for (int count : counts) {
+                    rows += Math.max(count, 0);
+                }
+            } else if (result instanceof long[] counts) {
+                for (long count : counts) {
+                    rows += Math.max(count, 0);
+                }
+            } else {
+                return -1;
+            }
+            return rows;
+        }
+    }
+
+    /**
+     * One statement that took at least the threshold.
+     */
+    public static final class SlowQuery {
+        private final String sql;
+        private final List<Object> parameters;
+        private final int batchSize;
+        private final long rows;
+        private final long elapsedNanos;
+        private final List<String> plan;
+
+        SlowQuery(String sql, List<Object> parameters, int batchSize, long rows, long elapsedNanos, List<String> plan) {
+            this.sql = sql;
+            this.parameters = parameters;
+            this.batchSize = batchSize;
+            this.rows = rows;
+            this.elapsedNanos = elapsedNanos;
+            this.plan = Collections.unmodifiableList(plan);
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        /**
+         * The bound parameters by position, starting with the first; for a batch, those of its
+         * last row.
+         */
+        public List<Object> getParameters() {
+            return parameters;
+        }
+
+        /**
+         * Number of rows in the batch, or 0 if the statement was run on its own.
+         */
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        /**
+         * Rows read by a query or changed by an update, or -1 if the driver did not say.
+         */
+        public long getRows() {
+            return rows;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * The {@code EXPLAIN QUERY PLAN} lines, empty for statements without a plan.
+         */
+        public List<String> getPlan() {
+            return plan;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder(String.format(Locale.ROOT, "Slow query, %.3f ms",
+                    elapsedNanos / 1_000_000.0));
+            if (batchSize > 0) {
+                builder.append(", batch of ").append(batchSize);
+            }
+            if (rows >= 0) {
+                builder.append(", ").append(rows).append(rows == 1 ? " row" : " rows");
+            }
+            builder.append(": ").append(sql).append('\n');
+            if (!parameters.isEmpty()) {
+                builder.append("  parameters: ");
+                for (int i = 0; i < parameters.size(); i++) {
+                    builder.append(i == 0 ? "" : ", ").append(format(parameters.get(i)));
+                }
+                builder.append('\n');
+            }
+            if (!plan.isEmpty()) {
+                builder.append("  plan:\n");
+                for (String step : plan) {
+                    builder.append("    ").append(step).append('\n');
+                }
+            }
+            return builder.toString();
+        }
+
+        private static String format(Object value) {
+            if (value instanceof String text) {
+                return "'" + text.replace("'", "''") + "'";
+            }
+            if (value instanceof byte[] bytes) {
+                return "<" + bytes.length + " bytes>";
+            }
+            return String.valueOf(value);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package org.teacher_and_course;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Every teacher, course and assignment held column by column in primitive arrays, for loading
+ * large datasets without an object per row. Equal names share one {@code String}, and each
+ * teacher's courses are a slice of one array of course indexes, sorted by course id. A roster is
+ * immutable; {@link #getTeacher(int)}, {@link #getCourse(int)} and {@link #asTeachersWithCourses()}
+ * create entities only when they are asked for.
+ *
+ * <p>Teachers and courses are in id order, as in a {@link Snapshot}.
+ */
+public final class Roster {
+    private final int[] teacherIds;
+    private final String[] teacherNames;
+    private final int[] teacherAges;
+    private final int[] courseIds;
+    private final String[] courseNames;
+    private final int[] courseHours;
+    // The courses of teacher i are assignedCourses[courseOffsets[i] .. courseOffsets[i + 1]).
+    private final int[] courseOffsets;
+    private final int[] assignedCourses;
+
+    private Roster(Builder builder) {
+        teacherIds = Arrays.copyOf(builder.teacherIds, builder.teachers);
+        teacherNames = Arrays.copyOf(builder.teacherNames, builder.teachers);
+        teacherAges = Arrays.copyOf(builder.teacherAges, builder.teachers);
+        courseIds = Arrays.copyOf(builder.courseIds, builder.courses);
+        courseNames = Arrays.copyOf(builder.courseNames, builder.courses);
+        courseHours = Arrays.copyOf(builder.courseHours, builder.courses);
+        courseOffsets = new int[teacherIds.length + 1];
+        int[] assigned = new int[builder.assignments];
+        int count = 0;
+        int teacher = 0;
+        for (int i = 0; i < builder.assignments; i++) {
+            long pair = builder.pairs[i];
+            int teacherId = (int) (pair >>> 32);
+            while (teacher < teacherIds.length && teacherIds[teacher] < teacherId) {
+                courseOffsets[++teacher] = count;
+            }
+            int course = Arrays.binarySearch(courseIds, (int) pair);
+            if (teacher < teacherIds.length && teacherIds[teacher] == teacherId && course >= 0) {
+                assigned[count++] = course;
+            }
+        }
+        while (teacher < teacherIds.length) {
+            courseOffsets[++teacher] = count;
+        }
+        assignedCourses = Arrays.copyOf(assigned, count);
+    }
+
+    /**
+     * A roster of the given entities. Assignments, as {@code teacherId << 32 | courseId}, that
+     * refer to a teacher or course not in the lists are left out.
+     */
+    public static Roster of(List<Teacher> teachers, List<Course> courses, long[] assignments) {
+        Builder builder = new Builder();
+        Teacher[] sortedTeachers = teachers.toArray(new Teacher[0]);
+        Arrays.sort(sortedTeachers, (a, b) -> Integer.compare(a.getId(), b.getId()));
+        for (Teacher teacher : sortedTeachers) {
+            builder.addTeacher(teacher.getId(), teacher.getFullName(), teacher.getAge());
+        }
+        Course[] sortedCourses = courses.toArray(new Course[0]);
+        Arrays.sort(sortedCourses, (a, b) -> Integer.compare(a.getId(), b.getId()));
+        for (Course course : sortedCourses) {
+            builder.addCourse(course.getId(), course.getName(), course.getHours());
+        }
+        long[] sortedAssignments = assignments.clone();
+        Arrays.sort(sortedAssignments);
+        for (long pair : sortedAssignments) {
+            builder.addAssignment((int) (pair >>> 32), (int) pair);
+        }
+        return builder.build();
+    }
+
+    public int getTeacherCount() {
+        return teacherIds.length;
+    }
+
+    public int getTeacherId(int index) {
+        return teacherIds[index];
+    }
+
+    public String getTeacherName(int index) {
+        return teacherNames[index];
+    }
+
+    public int getTeacherAge(int index) {
+        return teacherAges[index];
+    }
+
+    /**
+     * Index of the teacher with the given id, or a negative number if there is none.
+     */
+    public int indexOfTeacher(int id) {
+        return Arrays.binarySearch(teacherIds, id);
+    }
+
+    public Teacher getTeacher(int index) {
+        Teacher teacher = new Teacher(teacherNames[index], teacherAges[index]);
+        teacher.setId(teacherIds[index]);
+        return teacher;
+    }
+
+    public int getCourseCount() {
+        return courseIds.length;
+    }
+
+    public int getCourseId(int index) {
+        return courseIds[index];
+    }
+
+    public String getCourseName(int index) {
+        return courseNames[index];
+    }
+
+    public int getCourseHours(int index) {
+        return courseHours[index];
+    }
+
+    public int indexOfCourse(int id) {
+        return Arrays.binarySearch(courseIds, id);
+    }
+
+    public Course getCourse(int index) {
+        Course course = new Course(courseNames[index], courseHours[index]);
+        course.setId(courseIds[index]);
+        return course;
+    }
+
+    public int getAssignmentCount() {
+        return assignedCourses.length;
+    }
+
+    /**
+     * Number of courses the teacher at {@code teacherIndex} teaches.
+     */
+    public int getTeacherCourseCount(int teacherIndex) {
+        return courseOffsets[teacherIndex + 1] - courseOffsets[teacherIndex];
+    }
+
+    /**
+     * Index of the {@code n}th course, in id order, of the teacher at {@code teacherIndex}.
+     */
+    public int getTeacherCourse(int teacherIndex, int n) {
+        return assignedCourses[courseOffsets[teacherIndex] + n];
+    }
+
+    /**
+     * Every assignment as {@code teacherId << 32 | courseId}, in ascending order.
+     */
+    public long[] getAssignments() {
+        long[] pairs = new long[assignedCourses.length];
+        for (int teacher = 0; teacher < teacherIds.length; teacher++) {
+            for (int i = courseOffsets[teacher]; i < courseOffsets[teacher + 1]; i++) {
+                pairs[i] = (long) teacherIds[teacher] << 32 | courseIds[assignedCourses[i]];
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * The teachers with their courses, created as the list is read. Within one list each course is
+     * one {@link Course} shared by all of its teachers.
+     */
+    public List<Teacher> asTeachersWithCourses() {
+        Course[] shared = new Course[courseIds.length];
+        return new AbstractList<>() {
+            @Override
+            public Teacher get(int index) {
+                Teacher teacher = getTeacher(index);
+                for (int i = courseOffsets[index]; i < courseOffsets[index + 1]; i++) {
+                    int course = assignedCourses[i];
+                    if (shared[course] == null) {
+                        shared[course] = getCourse(course);
+                    }
+                    teacher.addCourse(shared[course]);
+                }
+                return teacher;
+            }
+
+            @Override
+            public int size() {
+                return teacherIds.length;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "Roster: " + teacherIds.length + " teachers, " + courseIds.length + " courses, "
+                + assignedCourses.length + " assignments";
+    }
+
+    /**
+     * Collects rows in id order: teachers and courses by ascending id, assignments by ascending
+     * teacher id and then course id.
+     */
+    static final class Builder {
+        private final Map<String, String> names = new HashMap<>();
+        private int[] teacherIds = new int[1024];
+        private String[] teacherNames = new String[1024];
+        private int[] teacherAges = new int[1024];
+        private int teachers;
+        private int[] courseIds = new int[1024];
+        private String[] courseNames = new String[1024];
+        private int[] courseHours = new int[1024];
+        private int courses;
+        private long[] pairs = new long[1024];
+        private int assignments;
+
+        void addTeacher(int id, String fullName, int age) {
+            if (teachers == teacherIds.length) {
+                teacherIds = Arrays.copyOf(teacherIds, teachers * 2);
+                teacherNames = Arrays.copyOf(teacherNames, teachers * 2);
+                teacherAges = Arrays.copyOf(teacherAges, teachers * 2);
+            }
+            teacherIds[teachers] = id;
+            teacherNames[teachers] = DatabaseManager.shared(names, fullName);
+            teacherAges[teachers] = age;
+            teachers++;
+        }
+
+        void addCourse(int id, String name, int hours) {
+            if (courses == courseIds.length) {
+                courseIds = Arrays.copyOf(courseIds, courses * 2);
+                courseNames = Arrays.copyOf(courseNames, courses * 2);
+                courseHours = Arrays.copyOf(courseHours, courses * 2);
+            }
+            courseIds[courses] = id;
+            courseNames[courses] = DatabaseManager.shared(names, name);
+            courseHours[courses] = hours;
+            courses++;
+        }
+
+        void addAssignment(int teacherId, int courseId) {
+            if (assignments == pairs.length) {
+                pairs = Arrays.copyOf(pairs, assignments * 2);
+            }
+            pairs[assignments++] = (long) teacherId << 32 | courseId;
+        }
+
+        Roster build() {
+            return new Roster(this);
+        }
+    }
+}
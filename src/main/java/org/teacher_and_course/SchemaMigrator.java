@@ -0,0 +1,265 @@
+package org.teacher_and_course;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Applies ordered schema migrations and records the applied version in {@code PRAGMA user_version}.
+ * Each migration runs in its own transaction, so a failed step leaves the database at the last
+ * good version.
+ */
+public class SchemaMigrator {
+    private static final List<Migration> MIGRATIONS = new ArrayList<>();
+
+    private static final String REBUILD_TEACHERS_FTS = "INSERT INTO teachers_fts (teachers_fts) VALUES ('rebuild')";
+    private static final String REBUILD_COURSES_FTS = "INSERT INTO courses_fts (courses_fts) VALUES ('rebuild')";
+    private static final String BACKFILL_COURSE_LOAD =
+            "INSERT INTO course_load (course_id, hours, teacher_count) " +
+                    "SELECT courses.id, COALESCE(courses.hours, 0), COUNT(teacher_course.teacher_id) FROM courses " +
+                    "LEFT JOIN teacher_course ON teacher_course.course_id = courses.id GROUP BY courses.id";
+    private static final String BACKFILL_TEACHER_LOAD =
+            "INSERT INTO teacher_load (teacher_id, total_hours, course_count) " +
+                    "SELECT teachers.id, COALESCE(SUM(courses.hours), 0), COUNT(courses.id) FROM teachers " +
+                    "LEFT JOIN teacher_course ON teacher_course.teacher_id = teachers.id " +
+                    "LEFT JOIN courses ON courses.id = teacher_course.course_id GROUP BY teachers.id";
+    private static final String BACKFILL_LOAD_HISTOGRAM =
+            "INSERT INTO load_histogram (bucket, teachers) " +
+                    "SELECT total_hours / " + TeachingLoad.BUCKET_HOURS + ", COUNT(*) FROM teacher_load GROUP BY 1";
+
+    static {
+        MIGRATIONS.add(new Migration(1, "Create base tables",
+                "CREATE TABLE IF NOT EXISTS teachers (" +
+                        "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                        "full_name TEXT," +
+                        "age INTEGER)",
+                "CREATE TABLE IF NOT EXISTS courses (" +
+                        "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                        "name TEXT," +
+                        "hours INTEGER)",
+                "CREATE TABLE IF NOT EXISTS teacher_course (" +
+                        "teacher_id INTEGER," +
+                        "course_id INTEGER," +
+                        "FOREIGN KEY (teacher_id) REFERENCES teachers (id) ON DELETE CASCADE," +
+                        "FOREIGN KEY (course_id) REFERENCES courses (id) ON DELETE CASCADE)"));
+        MIGRATIONS.add(new Migration(2, "Composite primary key on teacher_course",
+                "CREATE TABLE teacher_course_new (" +
+                        "teacher_id INTEGER NOT NULL," +
+                        "course_id INTEGER NOT NULL," +
+                        "PRIMARY KEY (teacher_id, course_id)," +
+                        "FOREIGN KEY (teacher_id) REFERENCES teachers (id) ON DELETE CASCADE," +
+                        "FOREIGN KEY (course_id) REFERENCES courses (id) ON DELETE CASCADE) WITHOUT ROWID",
+                "INSERT OR IGNORE INTO teacher_course_new (teacher_id, course_id) " +
+                        "SELECT teacher_id, course_id FROM teacher_course " +
+                        "WHERE teacher_id IS NOT NULL AND course_id IS NOT NULL",
+                "DROP TABLE teacher_course",
+                "ALTER TABLE teacher_course_new RENAME TO teacher_course"));
+        MIGRATIONS.add(new Migration(3, "Lookup indexes",
+                "CREATE INDEX IF NOT EXISTS idx_teacher_course_course ON teacher_course (course_id, teacher_id)",
+                "CREATE INDEX IF NOT EXISTS idx_teachers_full_name ON teachers (full_name)",
+                "CREATE INDEX IF NOT EXISTS idx_courses_name ON courses (name)"));
+        MIGRATIONS.add(new Migration(4, "Sort indexes for paged listings",
+                "CREATE INDEX IF NOT EXISTS idx_teachers_age ON teachers (age)",
+                "CREATE INDEX IF NOT EXISTS idx_courses_hours ON courses (hours)"));
+        MIGRATIONS.add(new Migration(5, "Name search indexes",
+                "CREATE INDEX IF NOT EXISTS idx_teachers_full_name_nocase ON teachers (full_name COLLATE NOCASE)",
+                "CREATE INDEX IF NOT EXISTS idx_courses_name_nocase ON courses (name COLLATE NOCASE)",
+                "CREATE VIRTUAL TABLE IF NOT EXISTS teachers_fts USING fts5(" +
+                        "full_name, content='teachers', content_rowid='id', tokenize='trigram')",
+                "CREATE TRIGGER IF NOT EXISTS teachers_fts_insert AFTER INSERT ON teachers BEGIN " +
+                        "INSERT INTO teachers_fts (rowid, full_name) VALUES (new.id, new.full_name); END",
+                "CREATE TRIGGER IF NOT EXISTS teachers_fts_delete AFTER DELETE ON teachers BEGIN " +
+                        "INSERT INTO teachers_fts (teachers_fts, rowid, full_name) VALUES ('delete', old.id, old.full_name); END",
+                "CREATE TRIGGER IF NOT EXISTS teachers_fts_update AFTER UPDATE OF full_name ON teachers BEGIN " +
+                        "INSERT INTO teachers_fts (teachers_fts, rowid, full_name) VALUES ('delete', old.id, old.full_name); " +
+                        "INSERT INTO teachers_fts (rowid, full_name) VALUES (new.id, new.full_name); END",
+                REBUILD_TEACHERS_FTS,
+                "CREATE VIRTUAL TABLE IF NOT EXISTS courses_fts USING fts5(" +
+                        "name, content='courses', content_rowid='id', tokenize='trigram')",
+                "CREATE TRIGGER IF NOT EXISTS courses_fts_insert AFTER INSERT ON courses BEGIN " +
+                        "INSERT INTO courses_fts (rowid, name) VALUES (new.id, new.name); END",
+                "CREATE TRIGGER IF NOT EXISTS courses_fts_delete AFTER DELETE ON courses BEGIN " +
+                        "INSERT INTO courses_fts (courses_fts, rowid, name) VALUES ('delete', old.id, old.name); END",
+                "CREATE TRIGGER IF NOT EXISTS courses_fts_update AFTER UPDATE OF name ON courses BEGIN " +
+                        "INSERT INTO courses_fts (courses_fts, rowid, name) VALUES ('delete', old.id, old.name); " +
+                        "INSERT INTO courses_fts (rowid, name) VALUES (new.id, new.name); END",
+                REBUILD_COURSES_FTS));
+        MIGRATIONS.add(new Migration(6, "Teaching load summary tables",
+                "CREATE TABLE teacher_load (" +
+                        "teacher_id INTEGER PRIMARY KEY," +
+                        "total_hours INTEGER NOT NULL DEFAULT 0," +
+                        "course_count INTEGER NOT NULL DEFAULT 0)",
+                "CREATE INDEX idx_teacher_load_hours ON teacher_load (total_hours, teacher_id)",
+                "CREATE TABLE course_load (" +
+                        "course_id INTEGER PRIMARY KEY," +
+                        "hours INTEGER NOT NULL DEFAULT 0," +
+                        "teacher_count INTEGER NOT NULL DEFAULT 0)",
+                "CREATE INDEX idx_course_load_teachers ON course_load (teacher_count, course_id)",
+                "CREATE TABLE load_histogram (" +
+                        "bucket INTEGER PRIMARY KEY," +
+                        "teachers INTEGER NOT NULL)",
+                BACKFILL_COURSE_LOAD,
+                BACKFILL_TEACHER_LOAD,
+                BACKFILL_LOAD_HISTOGRAM,
+                "CREATE TRIGGER teachers_load_insert AFTER INSERT ON teachers BEGIN " +
+                        "INSERT INTO teacher_load (teacher_id) VALUES (new.id); END",
+                "CREATE TRIGGER teachers_load_delete AFTER DELETE ON teachers BEGIN " +
+                        "DELETE FROM teacher_load WHERE teacher_id = old.id; END",
+                "CREATE TRIGGER courses_load_insert AFTER INSERT ON courses BEGIN " +
+                        "INSERT INTO course_load (course_id, hours) VALUES (new.id, COALESCE(new.hours, 0)); END",
+                "CREATE TRIGGER courses_load_update AFTER UPDATE OF hours ON courses " +
+                        "WHEN old.hours IS NOT new.hours BEGIN " +
+                        "UPDATE course_load SET hours = COALESCE(new.hours, 0) WHERE course_id = new.id; " +
+                        "UPDATE teacher_load SET total_hours = total_hours + COALESCE(new.hours, 0) - COALESCE(old.hours, 0) " +
+                        "WHERE teacher_id IN (SELECT teacher_id FROM teacher_course WHERE course_id = new.id); END",
+                "CREATE TRIGGER courses_load_delete AFTER DELETE ON courses BEGIN " +
+                        "DELETE FROM course_load WHERE course_id = old.id; END",
+                "CREATE TRIGGER teacher_course_load_insert AFTER INSERT ON teacher_course BEGIN " +
+                        "UPDATE teacher_load SET course_count = course_count + 1, total_hours = total_hours + " +
+                        "COALESCE((SELECT hours FROM course_load WHERE course_id = new.course_id), 0) " +
+                        "WHERE teacher_id = new.teacher_id; " +
+                        "UPDATE course_load SET teacher_count = teacher_count + 1 WHERE course_id = new.course_id; END",
+                "CREATE TRIGGER teacher_course_load_delete AFTER DELETE ON teacher_course BEGIN " +
+                        "UPDATE teacher_load SET course_count = course_count - 1, total_hours = total_hours - " +
+                        "COALESCE((SELECT hours FROM course_load WHERE course_id = old.course_id), 0) " +
+                        "WHERE teacher_id = old.teacher_id; " +
+                        "UPDATE course_load SET teacher_count = teacher_count - 1 WHERE course_id = old.course_id; END",
+                "CREATE TRIGGER teacher_load_histogram_insert AFTER INSERT ON teacher_load BEGIN " +
+                        "INSERT INTO load_histogram (bucket, teachers) VALUES (new.total_hours / " + TeachingLoad.BUCKET_HOURS + ", 1) " +
+                        "ON CONFLICT (bucket) DO UPDATE SET teachers = teachers + 1; END",
+                "CREATE TRIGGER teacher_load_histogram_update AFTER UPDATE OF total_hours ON teacher_load " +
+                        "WHEN old.total_hours / " + TeachingLoad.BUCKET_HOURS + " <> new.total_hours / " + TeachingLoad.BUCKET_HOURS + " BEGIN " +
+                        "UPDATE load_histogram SET teachers = teachers - 1 WHERE bucket = old.total_hours / " + TeachingLoad.BUCKET_HOURS + "; " +
+                        "INSERT INTO load_histogram (bucket, teachers) VALUES (new.total_hours / " + TeachingLoad.BUCKET_HOURS + ", 1) " +
+                        "ON CONFLICT (bucket) DO UPDATE SET teachers = teachers + 1; END",
+                "CREATE TRIGGER teacher_load_histogram_delete AFTER DELETE ON teacher_load BEGIN " +
+                        "UPDATE load_histogram SET teachers = teachers - 1 WHERE bucket = old.total_hours / " + TeachingLoad.BUCKET_HOURS + "; END"));
+        // Every course with the same name and hours is merged into the one with the lowest id. The
+        // maintaining triggers stay in place, so the summaries and the search index follow along.
+        MIGRATIONS.add(new Migration(7, "Course catalog: merge duplicate courses",
+                "CREATE TEMP TABLE course_duplicates AS " +
+                        "SELECT id, canonical_id FROM (SELECT id, MIN(id) OVER (PARTITION BY name, hours) AS canonical_id " +
+                        "FROM courses WHERE name IS NOT NULL AND hours IS NOT NULL) WHERE id <> canonical_id",
+                "INSERT OR IGNORE INTO teacher_course (teacher_id, course_id) " +
+                        "SELECT teacher_course.teacher_id, course_duplicates.canonical_id FROM teacher_course " +
+                        "JOIN course_duplicates ON course_duplicates.id = teacher_course.course_id",
+                "DELETE FROM teacher_course WHERE course_id IN (SELECT id FROM course_duplicates)",
+                "DELETE FROM courses WHERE id IN (SELECT id FROM course_duplicates)",
+                "DROP TABLE temp.course_duplicates",
+                "CREATE UNIQUE INDEX idx_courses_identity ON courses (name, hours)",
+                "DROP INDEX IF EXISTS idx_courses_name"));
+    }
+
+    private SchemaMigrator() {
+    }
+
+    public static int latestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+    }
+
+    public static List<Migration> migrations() {
+        return Collections.unmodifiableList(MIGRATIONS);
+    }
+
+    public static int currentVersion(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("PRAGMA user_version")) {
+            return resultSet.next() ? resultSet.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * Brings the database up to {@link #latestVersion()} and returns the number of migrations applied.
+     * Each migration checks the version again inside its own transaction, so when several processes
+     * start on the same file only the first applies it and the others skip it.
+     */
+    public static int migrate(Connection connection) throws SQLException {
+        int version = currentVersion(connection);
+        int applied = 0;
+        for (Migration migration : MIGRATIONS) {
+            if (migration.version <= version) {
+                continue;
+            }
+            if (apply(connection, migration)) {
+                applied++;
+            }
+            version = migration.version;
+        }
+        return applied;
+    }
+
+    /**
+     * Recomputes everything derived from {@code teachers}, {@code courses} and {@code teacher_course}
+     * (the name search indexes and the teaching-load summaries) in set-based passes. For bulk
+     * rewrites that run with the maintaining triggers dropped; must be called inside the rewrite's
+     * transaction, before the triggers are recreated.
+     */
+    static void rebuildDerivedData(Statement statement) throws SQLException {
+        statement.executeUpdate("DELETE FROM load_histogram");
+        statement.executeUpdate("DELETE FROM teacher_load");
+        statement.executeUpdate("DELETE FROM course_load");
+        statement.executeUpdate(BACKFILL_COURSE_LOAD);
+        statement.executeUpdate(BACKFILL_TEACHER_LOAD);
+        statement.executeUpdate(BACKFILL_LOAD_HISTOGRAM);
+        statement.executeUpdate(REBUILD_TEACHERS_FTS);
+        statement.executeUpdate(REBUILD_COURSES_FTS);
+    }
+
+    // Table rebuilds need foreign key enforcement off, and that pragma is ignored inside a
+    // transaction, so it is toggled around each migration rather than within it. Returns false if
+    // another connection applied the migration first.
+    private static boolean apply(Connection connection, Migration migration) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA foreign_keys=OFF");
+            connection.setAutoCommit(false);
+            try {
+                // The writer begins immediate, so this read already holds the write lock.
+                if (currentVersion(connection) >= migration.version) {
+                    connection.commit();
+                    return false;
+                }
+                for (String sql : migration.statements) {
+                    statement.executeUpdate(sql);
+                }
+                statement.execute("PRAGMA user_version=" + migration.version);
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw new SQLException("Migration " + migration.version + " (" + migration.description + ") failed: " + e.getMessage(), e);
+            } finally {
+                connection.setAutoCommit(true);
+                statement.execute("PRAGMA foreign_keys=ON");
+            }
+        }
+        System.err.println("Applied schema migration " + migration.version + ": " + migration.description);
+        return true;
+    }
+
+    public static class Migration {
+        private final int version;
+        private final String description;
+        private final List<String> statements;
+
+        public Migration(int version, String description, String... statements) {
+            this.version = version;
+            this.description = description;
+            this.statements = List.of(statements);
+        }
+
+        public int getVersion() {
+            return version;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public List<String> getStatements() {
+            return statements;
+        }
+    }
+}
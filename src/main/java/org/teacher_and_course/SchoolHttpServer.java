@@ -0,0 +1,555 @@
+package org.teacher_and_course;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Headless REST/JSON front end over {@link SchoolManagementSystem}, built on the JDK HTTP server.
+ * Every exchange runs on its own virtual thread; at most {@code maxConcurrentRequests} are served
+ * at once and the rest are turned away with 503. Listings are written while they are read, one
+ * keyset page at a time, so a whole table never has to sit in memory. Each route records its
+ * latency in {@link PersistenceMetrics} as {@code http <METHOD> <route>}.
+ *
+ * <pre>
+ * GET                /teachers?limit=&amp;sort=&amp;desc=&amp;prefix=&amp;after=&amp;afterNull=&amp;afterId=
+ * POST               /teachers                      {"fullName": "...", "age": 40}
+ * GET                /teachers/search?q=&amp;limit=
+ * GET, PUT, DELETE   /teachers/{id}
+ * GET                /teachers/{id}/courses
+ * PUT, DELETE        /teachers/{id}/courses/{courseId}
+ * GET, POST          /courses                       {"name": "...", "hours": 30}
+ * GET                /courses/search?q=&amp;limit=
+ * GET, PUT, DELETE   /courses/{id}
+ * GET                /metrics
+ * </pre>
+ *
+ * A listing returns {@code {"items": [...], "next": {...}}}; passing the fields of {@code next} as
+ * query parameters fetches the following page, and {@code limit=0} streams every remaining row.
+ * When the last row's sort value is NULL, {@code next} carries {@code "afterNull": true} in place
+ * of {@code after}.
+ */
+public class SchoolHttpServer implements AutoCloseable {
+    private static final String JSON = "application/json; charset=utf-8";
+    private static final int DEFAULT_PAGE_LIMIT = 100;
+    private static final int STREAM_PAGE_SIZE = 1000;
+    private static final List<String> TEACHER_FIELDS = List.of("id", "fullName", "age");
+    private static final List<String> COURSE_FIELDS = List.of("id", "name", "hours");
+    private static final List<String> METHODS = List.of("GET", "POST", "PUT", "DELETE");
+
+    private final SchoolManagementSystem system;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final boolean accessLog = Boolean.getBoolean("school.http.accessLog");
+
+    public SchoolHttpServer(SchoolManagementSystem system, int port, int maxConcurrentRequests) throws IOException {
+        this.system = system;
+        this.permits = new Semaphore(maxConcurrentRequests);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    private static final class Request {
+        private final HttpExchange exchange;
+        private final String method;
+        private final List<String> path = new ArrayList<>();
+        private final Map<String, String> query = new HashMap<>();
+        private String route = "unmatched";
+
+        private Request(HttpExchange exchange) {
+            this.exchange = exchange;
+            this.method = exchange.getRequestMethod();
+            for (String segment : exchange.getRequestURI().getPath().split("/")) {
+                if (!segment.isEmpty()) {
+                    path.add(URLDecoder.decode(segment, StandardCharsets.UTF_8));
+                }
+            }
+            String rawQuery = exchange.getRequestURI().getRawQuery();
+            if (rawQuery != null) {
+                for (String pair : rawQuery.split("&")) {
+                    int equals = pair.indexOf('=');
+                    String key = equals < 0 ? pair : pair.substring(0, equals);
+                    String value = equals < 0 ? "" : pair.substring(equals + 1);
+                    query.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+                }
+            }
+        }
+
+        private int intParameter(String name, int defaultValue) {
+            String value = query.get(name);
+            return value == null || value.isEmpty() ? defaultValue : Integer.parseInt(value);
+        }
+    }
+
+    private static final class HttpError extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        private HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+
+        private static HttpError notFound(String message) {
+            return new HttpError(404, message);
+        }
+    }
+
+    private void handle(HttpExchange exchange) {
+        long start = System.nanoTime();
+        Request request = null;
+        int status = 500;
+        if (!permits.tryAcquire()) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            status = sendError(exchange, 503, "Too many concurrent requests");
+            finish(exchange, exchange.getRequestMethod(), "rejected", status, start);
+            return;
+        }
+        try {
+            request = new Request(exchange);
+            status = dispatch(request);
+        } catch (HttpError e) {
+            status = sendError(exchange, e.status, e.getMessage());
+        } catch (IllegalArgumentException e) {
+            status = sendError(exchange, 400, e.getMessage() == null ? "Bad request" : e.getMessage());
+        } catch (SQLException e) {
+            DatabaseManager.reportFailure("http " + exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath(), e);
+            status = sendError(exchange, 500, "Database error");
+        } catch (IOException e) {
+            status = exchange.getResponseCode();
+        } catch (RuntimeException e) {
+            DatabaseManager.reportFailure("http " + exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath(), e);
+            status = sendError(exchange, 500, "Internal error");
+        } finally {
+            permits.release();
+        }
+        finish(exchange, exchange.getRequestMethod(), request == null ? "unmatched" : request.route, status, start);
+    }
+
+    private void finish(HttpExchange exchange, String method, String route, int status, long start) {
+        exchange.close();
+        String operation = "http " + (METHODS.contains(method) ? method : "OTHER") + " " + route;
+        OperationMetrics metrics = PersistenceMetrics.operation("HttpServer", operation);
+        if (status >= 500) {
+            metrics.recordError();
+        }
+        metrics.record(start);
+        if (accessLog) {
+            System.out.printf("%s %s %d %.2fms%n", method, exchange.getRequestURI(), status,
+                    (System.nanoTime() - start) / 1_000_000.0);
+        }
+    }
+
+    private int dispatch(Request request) throws IOException, SQLException, HttpError {
+        List<String> path = request.path;
+        if (path.size() == 1 && path.get(0).equals("metrics")) {
+            request.route = "/metrics";
+            requireMethod(request, "GET");
+            return send(request.exchange, 200, "text/plain; charset=utf-8", PersistenceMetrics.dump());
+        }
+        if (path.isEmpty() || !(path.get(0).equals("teachers") || path.get(0).equals("courses"))) {
+            throw HttpError.notFound("No such resource");
+        }
+        boolean teachers = path.get(0).equals("teachers");
+        String base = "/" + path.get(0);
+        if (path.size() == 1) {
+            request.route = base;
+            if (request.method.equals("POST")) {
+                return teachers ? createTeacher(request) : createCourse(request);
+            }
+            requireMethod(request, "GET");
+            PageQuery query = teachers ? PageQuery.teachers() : PageQuery.courses();
+            return streamListing(request, query.withoutExtraColumn(), teachers ? TEACHER_FIELDS : COURSE_FIELDS);
+        }
+        if (path.size() == 2 && path.get(1).equals("search")) {
+            request.route = base + "/search";
+            requireMethod(request, "GET");
+            return search(request, teachers);
+        }
+        int id = parseId(path.get(1));
+        if (path.size() == 2) {
+            request.route = base + "/{id}";
+            return switch (request.method) {
+                case "GET" -> teachers ? getTeacher(request, id) : getCourse(request, id);
+                case "PUT" -> teachers ? updateTeacher(request, id) : updateCourse(request, id);
+                case "DELETE" -> teachers ? deleteTeacher(request, id) : deleteCourse(request, id);
+                default -> methodNotAllowed(request);
+            };
+        }
+        if (teachers && path.size() == 3 && path.get(2).equals("courses")) {
+            request.route = "/teachers/{id}/courses";
+            requireMethod(request, "GET");
+            Teacher teacher = requireTeacher(id);
+            return sendJson(request.exchange, 200, courseArray(system.loadTeacherCourses(teacher)));
+        }
+        if (teachers && path.size() == 4 && path.get(2).equals("courses")) {
+            request.route = "/teachers/{id}/courses/{courseId}";
+            int courseId = parseId(path.get(3));
+            return switch (request.method) {
+                case "PUT" -> assign(request, id, courseId);
+                case "DELETE" -> unassign(request, id, courseId);
+                default -> methodNotAllowed(request);
+            };
+        }
+        throw HttpError.notFound("No such resource");
+    }
+
+    private int createTeacher(Request request) throws IOException {
+        Map<String, Object> body = readBody(request);
+        Teacher teacher = new Teacher(requireString(body, "fullName"), requireInt(body, "age"));
+        if (system.saveTeacher(teacher) <= 0) {
+            return sendError(request.exchange, 500, "Could not save teacher");
+        }
+        request.exchange.getResponseHeaders().set("Location", "/teachers/" + teacher.getId());
+        return sendJson(request.exchange, 201, teacherJson(teacher, null));
+    }
+
+    private int createCourse(Request request) throws IOException {
+        Map<String, Object> body = readBody(request);
+        Course course = new Course(requireString(body, "name"), requireInt(body, "hours"));
+        if (system.saveCourse(course) <= 0) {
+            return sendError(request.exchange, 500, "Could not save course");
+        }
+        request.exchange.getResponseHeaders().set("Location", "/courses/" + course.getId());
+        return sendJson(request.exchange, 201, courseJson(course));
+    }
+
+    private int getTeacher(Request request, int id) throws IOException, HttpError {
+        Teacher teacher = requireTeacher(id);
+        return sendJson(request.exchange, 200, teacherJson(teacher, system.loadTeacherCourses(teacher)));
+    }
+
+    private int getCourse(Request request, int id) throws IOException, HttpError {
+        return sendJson(request.exchange, 200, courseJson(requireCourse(id)));
+    }
+
+    private int updateTeacher(Request request, int id) throws IOException, HttpError {
+        Map<String, Object> body = readBody(request);
+        Teacher teacher = new Teacher(requireString(body, "fullName"), requireInt(body, "age"));
+        teacher.setId(id);
+        if (!system.updateTeacher(teacher)) {
+            throw HttpError.notFound("Teacher " + id + " not found");
+        }
+        return sendJson(request.exchange, 200, teacherJson(teacher, null));
+    }
+
+    private int updateCourse(Request request, int id) throws IOException, HttpError {
+        Map<String, Object> body = readBody(request);
+        Course course = new Course(requireString(body, "name"), requireInt(body, "hours"));
+        course.setId(id);
+        if (!system.updateCourse(course)) {
+            throw HttpError.notFound("Course " + id + " not found");
+        }
+        return sendJson(request.exchange, 200, courseJson(course));
+    }
+
+    private int deleteTeacher(Request request, int id) throws IOException, HttpError {
+        Teacher teacher = new Teacher(null, 0);
+        teacher.setId(id);
+        if (!system.removeTeacher(teacher)) {
+            throw HttpError.notFound("Teacher " + id + " not found");
+        }
+        return sendEmpty(request.exchange, 204);
+    }
+
+    private int deleteCourse(Request request, int id) throws IOException, HttpError {
+        Course course = new Course(null, 0);
+        course.setId(id);
+        if (!system.removeCourse(course)) {
+            throw HttpError.notFound("Course " + id + " not found");
+        }
+        return sendEmpty(request.exchange, 204);
+    }
+
+    private int assign(Request request, int teacherId, int courseId) throws IOException, HttpError {
+        if (!system.saveTeacherCourse(teacherId, courseId)) {
+            requireTeacher(teacherId);
+            requireCourse(courseId);
+            // Both exist and assigning twice succeeds, so the write itself failed.
+            return sendError(request.exchange, 500, "Could not assign course");
+        }
+        return sendEmpty(request.exchange, 204);
+    }
+
+    private int unassign(Request request, int teacherId, int courseId) throws IOException, HttpError {
+        Teacher teacher = new Teacher(null, 0);
+        teacher.setId(teacherId);
+        Course course = new Course(null, 0);
+        course.setId(courseId);
+        if (!system.removeTeacherCourse(teacher, course)) {
+            throw HttpError.notFound("Teacher " + teacherId + " does not teach course " + courseId);
+        }
+        return sendEmpty(request.exchange, 204);
+    }
+
+    private int search(Request request, boolean teachers) throws IOException {
+        String text = request.query.getOrDefault("q", "");
+        int limit = request.intParameter("limit", NameSearch.DEFAULT_LIMIT);
+        if (limit <= 0 || limit > STREAM_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + STREAM_PAGE_SIZE);
+        }
+        if (teachers) {
+            StringBuilder json = new StringBuilder("[");
+            for (Teacher teacher : system.getStorage().searchTeachers(text, limit)) {
+                if (json.length() > 1) {
+                    json.append(',');
+                }
+                json.append(teacherJson(teacher, null));
+            }
+            return sendJson(request.exchange, 200, json.append(']').toString());
+        }
+        return sendJson(request.exchange, 200, courseArray(system.getStorage().searchCourses(text, limit)));
+    }
+
+    /**
+     * Writes the listing as keyset pages of at most {@link #STREAM_PAGE_SIZE} rows, flushing each
+     * page to the client before the next is read. Errors after the headers have gone out can only
+     * abort the response, which leaves the client with truncated JSON.
+     */
+    private int streamListing(Request request, PageQuery query, List<String> fields) throws IOException, SQLException {
+        String sort = request.query.get("sort");
+        boolean descending = Boolean.parseBoolean(request.query.get("desc"));
+        int sortColumn = sort == null ? 0 : fields.indexOf(sort);
+        if (sortColumn < 0) {
+            throw new IllegalArgumentException("Cannot sort by " + sort);
+        }
+        query = query.withSort(sortColumn, descending).withNamePrefix(request.query.get("prefix"));
+        int limit = request.intParameter("limit", DEFAULT_PAGE_LIMIT);
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit must not be negative");
+        }
+        Object[] after = null;
+        if (request.query.containsKey("afterId")) {
+            int afterId = request.intParameter("afterId", 0);
+            String afterValue = request.query.get("after");
+            if (sortColumn == 0) {
+                after = new Object[]{afterId, afterId};
+            } else if (Boolean.parseBoolean(request.query.get("afterNull"))) {
+                after = new Object[]{null, afterId};
+            } else if (afterValue == null) {
+                throw new IllegalArgumentException("after or afterNull=true is required with afterId when sorting by " + sort);
+            } else {
+                after = new Object[]{sortColumn == 1 ? afterValue : Integer.parseInt(afterValue), afterId};
+            }
+        }
+
+        request.exchange.getResponseHeaders().set("Content-Type", JSON);
+        request.exchange.sendResponseHeaders(200, 0);
+        OutputStream body = request.exchange.getResponseBody();
+        Writer out = new BufferedWriter(new OutputStreamWriter(body, StandardCharsets.UTF_8), 1 << 16);
+        out.write("{\"items\":[");
+        long written = 0;
+        boolean more = true;
+        StringBuilder row = new StringBuilder(128);
+        while (more) {
+            int pageSize = limit == 0 ? STREAM_PAGE_SIZE : (int) Math.min(STREAM_PAGE_SIZE, limit - written);
+            List<Object[]> rows = system.getStorage().loadPage(query, after, pageSize);
+            for (Object[] cells : rows) {
+                row.setLength(0);
+                if (written > 0) {
+                    row.append(',');
+                }
+                appendRow(row, fields, cells);
+                out.append(row);
+                written++;
+            }
+            if (!rows.isEmpty()) {
+                after = query.keyOf(rows.get(rows.size() - 1));
+            }
+            more = rows.size() == pageSize && (limit == 0 || written < limit);
+            out.flush();
+            if (rows.size() < pageSize) {
+                after = null;
+            }
+        }
+        row.setLength(0);
+        row.append("],\"next\":");
+        if (after == null) {
+            row.append("null");
+        } else {
+            // A NULL sort value gets a flag of its own, since "after=null" would read as the text "null".
+            if (after[0] == null) {
+                row.append("{\"afterNull\":true");
+            } else {
+                row.append("{\"after\":");
+                appendValue(row, after[0]);
+            }
+            row.append(",\"afterId\":").append(after[1]).append('}');
+        }
+        out.append(row.append('}'));
+        out.close();
+        return 200;
+    }
+
+    private Teacher requireTeacher(int id) throws HttpError {
+        Teacher teacher = system.findTeacherById(id);
+        if (teacher == null) {
+            throw HttpError.notFound("Teacher " + id + " not found");
+        }
+        return teacher;
+    }
+
+    private Course requireCourse(int id) throws HttpError {
+        Course course = system.findCourseById(id);
+        if (course == null) {
+            throw HttpError.notFound("Course " + id + " not found");
+        }
+        return course;
+    }
+
+    private static int methodNotAllowed(Request request) throws HttpError {
+        throw new HttpError(405, "Method " + request.method + " not allowed");
+    }
+
+    private static void requireMethod(Request request, String method) throws HttpError {
+        if (!request.method.equals(method)) {
+            methodNotAllowed(request);
+        }
+    }
+
+    private static int parseId(String segment) throws HttpError {
+        try {
+            return Integer.parseInt(segment);
+        } catch (NumberFormatException e) {
+            throw HttpError.notFound("No such resource");
+        }
+    }
+
+    private static Map<String, Object> readBody(Request request) throws IOException {
+        try (InputStream in = request.exchange.getRequestBody()) {
+            return Json.parseObject(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static String requireString(Map<String, Object> body, String field) {
+        Object value = body.get(field);
+        if (!(value instanceof String text) || text.isBlank()) {
+            throw new IllegalArgumentException(field + " must be a non-empty string");
+        }
+        return text;
+    }
+
+    private static int requireInt(Map<String, Object> body, String field) {
+        Object value = body.get(field);
+        if (!(value instanceof Long number) || number < Integer.MIN_VALUE || number > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(field + " must be an integer");
+        }
+        return number.intValue();
+    }
+
+    private static String teacherJson(Teacher teacher, List<Course> courses) {
+        StringBuilder json = new StringBuilder("{\"id\":").append(teacher.getId()).append(",\"fullName\":");
+        Json.appendQuoted(json, teacher.getFullName());
+        json.append(",\"age\":").append(teacher.getAge());
+        if (courses != null) {
+            json.append(",\"courses\":").append(courseArray(courses));
+        }
+        return json.append('}').toString();
+    }
+
+    private static String courseJson(Course course) {
+        StringBuilder json = new StringBuilder("{\"id\":").append(course.getId()).append(",\"name\":");
+        Json.appendQuoted(json, course.getName());
+        return json.append(",\"hours\":").append(course.getHours()).append('}').toString();
+    }
+
+    private static String courseArray(List<Course> courses) {
+        StringBuilder json = new StringBuilder("[");
+        for (Course course : courses) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append(courseJson(course));
+        }
+        return json.append(']').toString();
+    }
+
+    private static void appendRow(StringBuilder json, List<String> fields, Object[] cells) {
+        json.append('{');
+        for (int i = 0; i < fields.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append('"').append(fields.get(i)).append("\":");
+            appendValue(json, cells[i]);
+        }
+        json.append('}');
+    }
+
+    private static void appendValue(StringBuilder json, Object value) {
+        if (value == null || value instanceof Number) {
+            json.append(value);
+        } else {
+            Json.appendQuoted(json, value.toString());
+        }
+    }
+
+    private static int sendJson(HttpExchange exchange, int status, String body) throws IOException {
+        return send(exchange, status, JSON, body);
+    }
+
+    private static int sendEmpty(HttpExchange exchange, int status) throws IOException {
+        exchange.sendResponseHeaders(status, -1);
+        return status;
+    }
+
+    private static int send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+        return status;
+    }
+
+    /**
+     * Sends a JSON error body unless the response has already started, in which case the exchange
+     * is simply closed by the caller.
+     */
+    private static int sendError(HttpExchange exchange, int status, String message) {
+        if (exchange.getResponseCode() != -1) {
+            return exchange.getResponseCode();
+        }
+        try {
+            return sendJson(exchange, status, "{\"error\":" + Json.quote(message) + "}");
+        } catch (IOException e) {
+            return status;
+        }
+    }
+}
@@ -1,15 +1,36 @@
 package org.teacher_and_course;
 
 import javax.swing.*;
+import java.awt.BorderLayout;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 public class SchoolManagementGUI {
     private final SchoolManagementSystem system;
-    private final JTextArea textArea;
+    private final SchoolService service;
+    private final JTable table;
+    private final JTextField filterField;
+    private final JLabel statusLabel = new JLabel(" ");
+    private final JProgressBar progressBar = new JProgressBar();
+    private final JButton cancelButton = new JButton("Cancel");
+    private PagedTableModel tableModel;
 
     public SchoolManagementGUI() {
-        this.system = new SchoolManagementSystem();
-        this.textArea = new JTextArea(10, 30);
+        this(new SchoolManagementSystem());
+    }
+
+    public SchoolManagementGUI(SchoolManagementSystem system) {
+        this.system = system;
+        this.service = new SchoolService(system);
+        this.table = new JTable();
+        this.filterField = new JTextField(20);
     }
 
     public void showMainFrame() {
@@ -21,7 +42,7 @@ public class SchoolManagementGUI {
     private void initComponents() {
         JFrame frame = new JFrame("School Management System");
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        frame.setSize(1000, 300);
+        frame.setSize(1000, 600);
 
         JButton showAllButton = new JButton("Show All Teachers");
         showAllButton.addActionListener(e -> showAllTeachers());
@@ -41,6 +62,18 @@ public class SchoolManagementGUI {
         JButton showCoursesButton = new JButton("Show All Courses");
         showCoursesButton.addActionListener(e -> showAllCourses());
 
+        JButton loadButton = new JButton("Teaching Load");
+        loadButton.addActionListener(e -> new TeachingLoadView(table, service,
+                error -> showError("Could not load report: " + error.getMessage())).show());
+        JButton exportButton = new JButton("Export...");
+        exportButton.addActionListener(e -> exportData());
+        if (system.getStorage() != StorageEngine.sqlite()) {
+            loadButton.setEnabled(false);
+            loadButton.setToolTipText("The teaching load report needs the SQLite storage engine.");
+            exportButton.setEnabled(false);
+            exportButton.setToolTipText("Export needs the SQLite storage engine.");
+        }
+
         JPanel panel = new JPanel();
         panel.add(showAllButton);
         panel.add(addButton);
@@ -48,28 +81,109 @@ public class SchoolManagementGUI {
         panel.add(removeButton);
         panel.add(editButton);
         panel.add(showCoursesButton);
+        panel.add(loadButton);
+        panel.add(exportButton);
+
+        filterField.addActionListener(e -> applyFilter());
+        JButton filterButton = new JButton("Filter");
+        filterButton.addActionListener(e -> applyFilter());
+        JPanel filterPanel = new JPanel();
+        filterPanel.add(new JLabel("Name starts with:"));
+        filterPanel.add(filterField);
+        filterPanel.add(filterButton);
+
+        progressBar.setIndeterminate(true);
+        progressBar.setStringPainted(true);
+        progressBar.setString("Loading...");
+        progressBar.setVisible(false);
+        cancelButton.setVisible(false);
+        cancelButton.addActionListener(e -> cancelLoad());
+        filterPanel.add(progressBar);
+        filterPanel.add(cancelButton);
+
+        table.setAutoCreateRowSorter(false);
+        table.getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int column = table.columnAtPoint(e.getPoint());
+                if (tableModel != null && column >= 0) {
+                    tableModel.sortBy(table.convertColumnIndexToModel(column));
+                }
+            }
+        });
 
-        JScrollPane scrollPane = new JScrollPane(textArea);
-        JPanel mainPanel = new JPanel();
-        mainPanel.add(panel);
-        mainPanel.add(scrollPane);
+        JPanel topPanel = new JPanel(new BorderLayout());
+        topPanel.add(panel, BorderLayout.NORTH);
+        topPanel.add(filterPanel, BorderLayout.SOUTH);
+
+        JPanel mainPanel = new JPanel(new BorderLayout());
+        mainPanel.add(topPanel, BorderLayout.NORTH);
+        mainPanel.add(new JScrollPane(table), BorderLayout.CENTER);
+        statusLabel.setBorder(BorderFactory.createEmptyBorder(2, 6, 2, 6));
+        mainPanel.add(statusLabel, BorderLayout.SOUTH);
+        DatabaseManager.setFailureListener((operation, error) -> {
+            FailureListener.STDERR.onFailure(operation, error);
+            SwingUtilities.invokeLater(() -> statusLabel.setText("Database operation failed in " + operation + ": " + error.getMessage()));
+        });
 
         frame.add(mainPanel);
         frame.setVisible(true);
     }
 
     private void showAllTeachers() {
-        List<Teacher> teachers = DatabaseManager.loadAllTeachers();
-        StringBuilder output = new StringBuilder("Teachers:\n");
-        for (Teacher teacher : teachers) {
-            output.append("Name: ").append(teacher.getFullName()).append(", Age: ").append(teacher.getAge()).append("\n");
-            output.append("Courses:\n");
-            for (Course course : DatabaseManager.loadTeacherCourses(teacher)) {
-                output.append(" - ").append(course.getName()).append(" (").append(course.getHours()).append(" hours)\n");
-            }
-            output.append("\n");
+        showTable(PageQuery.teachers());
+    }
+
+    private void showAllCourses() {
+        showTable(PageQuery.courses());
+    }
+
+    private void showTable(PageQuery query) {
+        String prefix = filterField.getText().trim();
+        if (tableModel != null) {
+            tableModel.cancel();
+            ChangeFeed.unsubscribe(tableModel);
+        }
+        tableModel = new PagedTableModel(service, query.withNamePrefix(prefix),
+                error -> showError("Could not load data: " + error.getMessage()));
+        tableModel.setLoadingListener(this::showLoading);
+        table.setModel(tableModel);
+        ChangeFeed.subscribe(tableModel);
+    }
+
+    private void applyFilter() {
+        if (tableModel != null) {
+            tableModel.filterByName(filterField.getText().trim());
+        }
+    }
+
+    private void showLoading(boolean loading) {
+        progressBar.setVisible(loading);
+        cancelButton.setVisible(loading);
+    }
+
+    private void cancelLoad() {
+        if (tableModel != null) {
+            tableModel.cancel();
         }
-        textArea.setText(output.toString());
+    }
+
+    private void exportData() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Export to .csv, .jsonl or .json (add .gz to compress)");
+        chooser.setSelectedFile(new File("school.csv"));
+        if (chooser.showSaveDialog(table) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        Path path = chooser.getSelectedFile().toPath();
+        statusLabel.setText("Exporting to " + path + "...");
+        BulkExporter exporter = new BulkExporter(1000,
+                report -> SwingUtilities.invokeLater(() -> statusLabel.setText(report + " to " + path)));
+        whenDone(service.submit(() -> exporter.exportFile(path)), report -> statusLabel.setText(report + " to " + path));
+    }
+
+    private <T> void whenDone(CompletableFuture<T> future, Consumer<T> onSuccess) {
+        SchoolService.onEdt(future, onSuccess, error -> showError("Database error: " + error.getMessage()));
     }
 
     private void addTeacher() {
@@ -94,20 +208,50 @@ public class SchoolManagementGUI {
         }
 
         Teacher newTeacher = new Teacher(fullName, age);
-        int teacherId = DatabaseManager.saveTeacher(newTeacher);
-        newTeacher.setId(teacherId);
-
-        showMessage("Teacher added successfully.");
+        whenDone(service.saveTeacher(newTeacher), teacherId -> {
+            if (teacherId > 0) {
+                showMessage("Teacher added successfully.");
+            } else {
+                showError("Could not save teacher.");
+            }
+        });
     }
 
-    private void addCourseToTeacher() {
-        String teacherName = JOptionPane.showInputDialog("Enter teacher's full name:");
-        Teacher selectedTeacher = DatabaseManager.findTeacherByName(teacherName);
-        if (selectedTeacher == null) {
-            showError("Teacher not found.");
+    private void findTeacher(Consumer<Teacher> action) {
+        String teacherName = TypeAheadDialog.prompt(table, "Find Teacher", "Enter teacher's full name:",
+                service::suggestTeacherNames);
+        if (teacherName == null) {
             return;
         }
+        whenDone(service.findTeacherByName(teacherName), selectedTeacher -> {
+            if (selectedTeacher == null) {
+                showError("Teacher not found.");
+                return;
+            }
+            action.accept(selectedTeacher);
+        });
+    }
 
+    private String promptTeacherCourse(Teacher teacher, String message) {
+        return TypeAheadDialog.prompt(table, teacher.getFullName(), message,
+                text -> service.loadTeacherCourses(teacher).thenApply(courses -> {
+                    String needle = text.toLowerCase(Locale.ROOT);
+                    List<String> names = new ArrayList<>();
+                    for (Course course : courses) {
+                        String name = course.getName();
+                        if (name != null && name.toLowerCase(Locale.ROOT).contains(needle)) {
+                            names.add(name);
+                        }
+                    }
+                    return names;
+                }));
+    }
+
+    private void addCourseToTeacher() {
+        findTeacher(this::addCourseToTeacher);
+    }
+
+    private void addCourseToTeacher(Teacher selectedTeacher) {
         String courseName = JOptionPane.showInputDialog("Enter course name:");
         if (courseName == null || courseName.trim().isEmpty()) {
             showError("Invalid input. Course name cannot be empty.");
@@ -129,51 +273,57 @@ public class SchoolManagementGUI {
         }
 
         Course newCourse = new Course(courseName, hours);
-        int courseId = DatabaseManager.saveCourse(newCourse);
-        newCourse.setId(courseId);
-
-        //System.out.println("Course saved: " + newCourse);
-
-        DatabaseManager.saveTeacherCourse(selectedTeacher.getId(), courseId);
-
-        showMessage("Course added to teacher successfully.");
+        whenDone(service.addCourseToTeacher(selectedTeacher, newCourse), added -> {
+            if (added) {
+                showMessage("Course added to teacher successfully.");
+            } else {
+                showError("Could not add course to teacher.");
+            }
+        });
     }
 
 
     private void removeTeacherOrCourse() {
-        String teacherName = JOptionPane.showInputDialog("Enter teacher's full name:");
-        Teacher selectedTeacher = DatabaseManager.findTeacherByName(teacherName);
-        if (selectedTeacher == null) {
-            showError("Teacher not found.");
-            return;
-        }
+        findTeacher(this::removeTeacherOrCourse);
+    }
 
+    private void removeTeacherOrCourse(Teacher selectedTeacher) {
         String[] options = {"Remove Teacher", "Remove Course"};
         int choice = JOptionPane.showOptionDialog(null, "Choose action:", "Remove Teacher/Course", JOptionPane.DEFAULT_OPTION, JOptionPane.PLAIN_MESSAGE, null, options, options[0]);
 
         if (choice == 0) {
-            DatabaseManager.removeTeacher(selectedTeacher);
-            showMessage("Teacher removed successfully.");
+            whenDone(service.removeTeacher(selectedTeacher), removed -> {
+                if (removed) {
+                    showMessage("Teacher removed successfully.");
+                } else {
+                    showError("Could not remove teacher.");
+                }
+            });
         } else if (choice == 1) {
-            String courseName = JOptionPane.showInputDialog("Enter course name to remove:");
-            Course courseToRemove = DatabaseManager.findCourseByName(selectedTeacher, courseName);
-            if (courseToRemove != null) {
-                DatabaseManager.removeTeacherCourse(selectedTeacher, courseToRemove);
-                showMessage("Course removed from teacher successfully.");
-            } else {
-                showError("Course not found.");
+            String courseName = promptTeacherCourse(selectedTeacher, "Enter course name to remove:");
+            if (courseName == null) {
+                return;
             }
+            whenDone(service.findCourseByName(selectedTeacher, courseName).thenCompose(courseToRemove -> {
+                if (courseToRemove == null) {
+                    return CompletableFuture.completedFuture(false);
+                }
+                return service.removeTeacherCourse(selectedTeacher, courseToRemove);
+            }), removed -> {
+                if (removed) {
+                    showMessage("Course removed from teacher successfully.");
+                } else {
+                    showError("Course not found.");
+                }
+            });
         }
     }
 
     private void editTeacherOrCourse() {
-        String teacherName = JOptionPane.showInputDialog("Enter teacher's full name:");
-        Teacher selectedTeacher = DatabaseManager.findTeacherByName(teacherName);
-        if (selectedTeacher == null) {
-            showError("Teacher not found.");
-            return;
-        }
+        findTeacher(this::editTeacherOrCourse);
+    }
 
+    private void editTeacherOrCourse(Teacher selectedTeacher) {
         String[] options = {"Edit Teacher", "Edit Course"};
         int choice = JOptionPane.showOptionDialog(null, "Choose action:", "Edit Teacher/Course", JOptionPane.DEFAULT_OPTION, JOptionPane.PLAIN_MESSAGE, null, options, options[0]);
 
@@ -208,19 +358,30 @@ public class SchoolManagementGUI {
         teacher.setFullName(fullName);
         teacher.setAge(age);
 
-        DatabaseManager.updateTeacher(teacher);
-
-        showMessage("Teacher edited successfully.");
+        whenDone(service.updateTeacher(teacher), updated -> {
+            if (updated) {
+                showMessage("Teacher edited successfully.");
+            } else {
+                showError("Could not edit teacher.");
+            }
+        });
     }
 
     private void editCourse(Teacher teacher) {
-        String courseName = JOptionPane.showInputDialog("Enter course name to edit:");
-        Course selectedCourse = DatabaseManager.findCourseByName(teacher, courseName);
-        if (selectedCourse == null) {
-            showError("Course not found.");
+        String courseName = promptTeacherCourse(teacher, "Enter course name to edit:");
+        if (courseName == null) {
             return;
         }
+        whenDone(service.findCourseByName(teacher, courseName), selectedCourse -> {
+            if (selectedCourse == null) {
+                showError("Course not found.");
+                return;
+            }
+            editCourse(teacher, selectedCourse);
+        });
+    }
 
+    private void editCourse(Teacher teacher, Course selectedCourse) {
         String newCourseName = JOptionPane.showInputDialog("Enter new course name:");
         if (newCourseName == null || newCourseName.trim().isEmpty()) {
             showError("Invalid input. Course name cannot be empty.");
@@ -241,21 +402,15 @@ public class SchoolManagementGUI {
             return;
         }
 
-        selectedCourse.setName(newCourseName);
-        selectedCourse.setHours(newHours);
-
-        DatabaseManager.updateCourse(selectedCourse);
-
-        showMessage("Course edited successfully.");
-    }
-
-    private void showAllCourses() {
-        List<Course> courses = DatabaseManager.loadAllCourses();
-        StringBuilder output = new StringBuilder("Courses:\n");
-        for (Course course : courses) {
-            output.append("Name: ").append(course.getName()).append(", Hours: ").append(course.getHours()).append("\n");
-        }
-        textArea.setText(output.toString());
+        // Courses are shared through the catalog, so only this teacher is moved to the edited course.
+        Course editedCourse = new Course(newCourseName, newHours);
+        whenDone(service.replaceTeacherCourse(teacher, selectedCourse, editedCourse), replaced -> {
+            if (replaced) {
+                showMessage("Course edited successfully.");
+            } else {
+                showError("Could not edit course.");
+            }
+        });
     }
 
     private void showError(String message) {
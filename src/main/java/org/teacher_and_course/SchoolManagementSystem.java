@@ -1,25 +1,945 @@
 package org.teacher_and_course;
 
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
-public class SchoolManagementSystem {
-    private final List<Teacher> teachers;
+/**
+ * In-memory view of the school data in front of a {@link StorageEngine}, by default the SQLite
+ * database of {@link DatabaseManager}. Reads are served from memory when possible; writes go to
+ * the engine first and are applied to the cache only once they succeed. Teachers and courses are
+ * kept in size-bounded LRU maps, and callers always receive copies so that editing a returned
+ * object never changes the cached state.
+ */
+public class SchoolManagementSystem implements ChangeEventListener {
+    private static final int DEFAULT_MAX_ENTRIES = Integer.getInteger("school.cache.maxEntries", 100_000);
+    private static final int[] NO_IDS = new int[0];
+
+    private final int maxTeachers;
+    private final int maxCourses;
+    private final StorageEngine storage;
+    private final WriteBehindQueue writeBehind;
+    private final Map<Integer, Teacher> teachers;
+    private final Map<Integer, Course> courses;
+    // Sorted ids of the cached rows with each name, replaced rather than changed in place.
+    private final Map<String, int[]> teacherIdsByName = new HashMap<>();
+    private final Map<String, int[]> courseIdsByName = new HashMap<>();
+    // Names whose lowest id, which is what a lookup by name answers, is known to be cached even
+    // though the cache is not complete: they were loaded by name and nothing has hidden it since.
+    private final Set<String> resolvedTeacherNames = new HashSet<>();
+    private final Set<String> resolvedCourseNames = new HashSet<>();
+    // Sorted id arrays, replaced rather than changed in place; an empty array means no courses.
+    private final Map<Integer, int[]> courseIdsByTeacher = new HashMap<>();
+    private final Map<Integer, int[]> teacherIdsByCourse = new HashMap<>();
+    private final AssignmentGraph assignments = new AssignmentGraph();
+
+    private boolean complete;
+    private long version;
+    private long hits;
+    private long misses;
+    private long evictions;
 
     public SchoolManagementSystem() {
-        this.teachers = new ArrayList<>();
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_ENTRIES);
     }
 
-    public void addTeacher(Teacher teacher) {
-        teachers.add(teacher);
+    public SchoolManagementSystem(WriteBehindQueue writeBehind) {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_ENTRIES, writeBehind);
+    }
+
+    public SchoolManagementSystem(int maxTeachers, int maxCourses) {
+        this(maxTeachers, maxCourses, null);
+    }
+
+    /**
+     * With a {@code writeBehind} queue, writes are group-committed by its writer thread; each call
+     * still returns only once its own write is durable.
+     */
+    public SchoolManagementSystem(int maxTeachers, int maxCourses, WriteBehindQueue writeBehind) {
+        this(StorageEngine.sqlite(), maxTeachers, maxCourses, writeBehind);
+    }
+
+    public SchoolManagementSystem(StorageEngine storage) {
+        this(storage, DEFAULT_MAX_ENTRIES, DEFAULT_MAX_ENTRIES, null);
+    }
+
+    /**
+     * The write-behind queue writes to the SQLite database, so it can only be used with that engine.
+     */
+    public SchoolManagementSystem(StorageEngine storage, int maxTeachers, int maxCourses, WriteBehindQueue writeBehind) {
+        if (writeBehind != null && storage != StorageEngine.sqlite()) {
+            throw new IllegalArgumentException("Write-behind needs the SQLite storage engine");
+        }
+        this.storage = storage;
+        this.maxTeachers = maxTeachers;
+        this.maxCourses = maxCourses;
+        this.writeBehind = writeBehind;
+        this.teachers = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Teacher> eldest) {
+                if (size() > SchoolManagementSystem.this.maxTeachers) {
+                    evictTeacherIndexes(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.courses = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Course> eldest) {
+                if (size() > SchoolManagementSystem.this.maxCourses) {
+                    evictCourseIndexes(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * How a warm-up ended: with everything cached, with part of a dataset too large for the
+     * configured bounds, without data because reading it failed (the {@link FailureListener} has
+     * been told), or with what was read set aside because the cache changed meanwhile. Unless it
+     * completed, reads the cache cannot answer go to the storage engine.
+     */
+    public enum WarmUpResult {
+        COMPLETE, TOO_LARGE, LOAD_FAILED, CHANGED
+    }
+
+    /**
+     * Loads every teacher, course and assignment into memory. The assignment graph is loaded in
+     * full unless the data could not be read; see {@link WarmUpResult} for the other outcomes.
+     */
+    public WarmUpResult warmUp() {
+        long loadVersion = currentVersion();
+        Roster roster = storage.loadRoster();
+        if (roster == null) {
+            return WarmUpResult.LOAD_FAILED;
+        }
+        assignments.load(roster);
+        return fill(loadVersion, roster);
+    }
+
+    /**
+     * Like {@link #warmUp()}, but reads everything from a snapshot instead of the database. The
+     * snapshot must reflect the current database; see {@link Snapshot#matchesDatabase()}.
+     */
+    public WarmUpResult warmUp(Snapshot snapshot) {
+        long loadVersion = currentVersion();
+        List<Course> loadedCourses = new ArrayList<>(snapshot.getCourseCount());
+        Map<Integer, Course> coursesById = new HashMap<>();
+        for (int i = 0; i < snapshot.getCourseCount(); i++) {
+            Course course = snapshot.getCourse(i);
+            loadedCourses.add(course);
+            coursesById.put(course.getId(), course);
+        }
+        List<Teacher> loadedTeachers = new ArrayList<>(snapshot.getTeacherCount());
+        int assignment = 0;
+        for (int i = 0; i < snapshot.getTeacherCount(); i++) {
+            Teacher teacher = snapshot.getTeacher(i);
+            // Teachers and assignments are both sorted by teacher id, so one forward walk pairs them.
+            while (assignment < snapshot.getAssignmentCount() && snapshot.getAssignmentTeacherId(assignment) <= teacher.getId()) {
+                if (snapshot.getAssignmentTeacherId(assignment) == teacher.getId()) {
+                    Course course = coursesById.get(snapshot.getAssignmentCourseId(assignment));
+                    if (course != null) {
+                        teacher.addCourse(course);
+                    }
+                }
+                assignment++;
+            }
+            loadedTeachers.add(teacher);
+        }
+        assignments.load(snapshot);
+        return fill(loadVersion, loadedTeachers, loadedCourses);
+    }
+
+    private synchronized WarmUpResult fill(long loadVersion, Roster roster) {
+        if (version != loadVersion) {
+            return WarmUpResult.CHANGED;
+        }
+        clearEntries();
+        boolean fits = roster.getTeacherCount() <= maxTeachers && roster.getCourseCount() <= maxCourses;
+        for (int i = 0; i < roster.getCourseCount(); i++) {
+            putCourse(roster.getCourse(i));
+        }
+        for (int i = 0; i < roster.getTeacherCount(); i++) {
+            putTeacher(roster.getTeacher(i));
+            int[] courseIds = new int[roster.getTeacherCourseCount(i)];
+            for (int n = 0; n < courseIds.length; n++) {
+                courseIds[n] = roster.getCourseId(roster.getTeacherCourse(i, n));
+            }
+            courseIdsByTeacher.put(roster.getTeacherId(i), courseIds);
+        }
+        // Teachers come in id order, so each course's teachers are appended already sorted. Those
+        // evicted while filling have had their adjacency dropped and are left out.
+        int[] teacherCounts = new int[roster.getCourseCount()];
+        for (int i = 0; i < roster.getTeacherCount(); i++) {
+            if (courseIdsByTeacher.containsKey(roster.getTeacherId(i))) {
+                for (int n = 0; n < roster.getTeacherCourseCount(i); n++) {
+                    teacherCounts[roster.getTeacherCourse(i, n)]++;
+                }
+            }
+        }
+        int[][] teacherIds = new int[roster.getCourseCount()][];
+        for (int i = 0; i < roster.getTeacherCount(); i++) {
+            if (courseIdsByTeacher.containsKey(roster.getTeacherId(i))) {
+                for (int n = 0; n < roster.getTeacherCourseCount(i); n++) {
+                    int course = roster.getTeacherCourse(i, n);
+                    if (teacherIds[course] == null) {
+                        teacherIds[course] = new int[teacherCounts[course]];
+                        teacherCounts[course] = 0;
+                    }
+                    teacherIds[course][teacherCounts[course]++] = roster.getTeacherId(i);
+                }
+            }
+        }
+        for (int course = 0; course < teacherIds.length; course++) {
+            if (teacherIds[course] != null) {
+                teacherIdsByCourse.put(roster.getCourseId(course), teacherIds[course]);
+            }
+        }
+        complete = fits;
+        return fits ? WarmUpResult.COMPLETE : WarmUpResult.TOO_LARGE;
+    }
+
+    private synchronized WarmUpResult fill(long loadVersion, List<Teacher> loadedTeachers, List<Course> loadedCourses) {
+        if (version != loadVersion) {
+            return WarmUpResult.CHANGED;
+        }
+        clearEntries();
+        boolean fits = loadedTeachers.size() <= maxTeachers && loadedCourses.size() <= maxCourses;
+        for (Course course : loadedCourses) {
+            putCourse(course);
+        }
+        for (Teacher teacher : loadedTeachers) {
+            putTeacher(teacher);
+            putAdjacency(teacher.getId(), teacher.getCourses());
+        }
+        complete = fits;
+        return fits ? WarmUpResult.COMPLETE : WarmUpResult.TOO_LARGE;
+    }
+
+    public StorageEngine getStorage() {
+        return storage;
+    }
+
+    /**
+     * The teacher-course assignment graph, kept current by this system's writes and the
+     * {@link ChangeFeed} once it has been loaded by one of the {@code warmUp} methods or by
+     * {@link AssignmentGraph#load()}.
+     */
+    public AssignmentGraph getAssignments() {
+        return assignments;
+    }
+
+    public synchronized boolean isComplete() {
+        return complete;
+    }
+
+    public synchronized void clear() {
+        clearEntries();
+        assignments.clear();
+        complete = false;
+        version++;
+    }
+
+    /**
+     * Drops everything cached and, if the cache had been warmed up, warms it up again.
+     */
+    public void reload() {
+        boolean warm;
+        synchronized (this) {
+            warm = complete || assignments.isLoaded();
+        }
+        clear();
+        if (warm) {
+            warmUp();
+        }
     }
 
-    public void removeTeacher(Teacher teacher) {
-        teachers.remove(teacher);
+    /**
+     * Applies the rows changed in the {@link ChangeFeed}, including writes that reached the engine
+     * without going through this system, such as those of the write-behind queue or of another
+     * system over the same engine. Changes this system made itself are already applied, and
+     * applying them again leaves the cache as it is. {@link ChangeEvent.Type#RELOADED} means a bulk
+     * load or another process changed the database, and the cache is reloaded on a thread of its
+     * own.
+     */
+    @Override
+    public void onChanges(List<ChangeEvent> changes) {
+        for (ChangeEvent change : changes) {
+            if (change.getType() == ChangeEvent.Type.RELOADED) {
+                Thread.ofVirtual().name("cache-reload").start(this::reload);
+                return;
+            }
+        }
+        synchronized (this) {
+            version++;
+            for (ChangeEvent change : changes) {
+                apply(change);
+            }
+        }
     }
 
+    private void apply(ChangeEvent change) {
+        switch (change.getType()) {
+            case TEACHER_ADDED, TEACHER_UPDATED -> {
+                Teacher teacher = change.getTeacher();
+                Teacher previous = teachers.get(teacher.getId());
+                if (previous != null) {
+                    unindexTeacher(previous.getFullName(), previous.getId());
+                }
+                // Updates to teachers that are not cached are left to the next miss, though one
+                // may now be the lowest id with its new name.
+                if (previous != null || complete || change.getType() == ChangeEvent.Type.TEACHER_ADDED) {
+                    putTeacher(teacher);
+                    if (complete) {
+                        courseIdsByTeacher.putIfAbsent(teacher.getId(), NO_IDS);
+                    }
+                } else {
+                    resolvedTeacherNames.remove(teacher.getFullName());
+                }
+            }
+            case TEACHER_REMOVED -> {
+                assignments.removeTeacher(change.getTeacherId());
+                Teacher previous = teachers.remove(change.getTeacherId());
+                if (previous != null) {
+                    forgetTeacher(previous);
+                }
+            }
+            case COURSE_ADDED, COURSE_UPDATED -> {
+                Course course = change.getCourse();
+                Course previous = courses.get(course.getId());
+                if (previous != null) {
+                    unindexCourse(previous.getName(), previous.getId());
+                }
+                if (previous != null || complete || change.getType() == ChangeEvent.Type.COURSE_ADDED) {
+                    putCourse(course);
+                } else {
+                    resolvedCourseNames.remove(course.getName());
+                }
+            }
+            case COURSE_REMOVED -> {
+                assignments.removeCourse(change.getCourseId());
+                Course previous = courses.remove(change.getCourseId());
+                forgetCourse(change.getCourseId(), previous == null ? null : previous.getName());
+            }
+            case ASSIGNMENT_ADDED -> {
+                assignments.assign(change.getTeacherId(), change.getCourseId());
+                cacheAssignment(change.getTeacherId(), change.getCourseId());
+            }
+            case ASSIGNMENT_REMOVED -> {
+                assignments.unassign(change.getTeacherId(), change.getCourseId());
+                uncacheAssignment(change.getTeacherId(), change.getCourseId());
+            }
+            default -> {
+            }
+        }
+    }
+
+    public void addTeacher(Teacher teacher) {
+        saveTeacher(teacher);
+    }
 
     public List<Teacher> getTeachers() {
-        return teachers;
+        return loadAllTeachers();
+    }
+
+    public int saveTeacher(Teacher teacher) {
+        int id = writeBehind == null ? storage.saveTeacher(teacher) : await(writeBehind.saveTeacher(teacher), -1);
+        if (id > 0) {
+            synchronized (this) {
+                version++;
+                putTeacher(teacher);
+                if (complete) {
+                    courseIdsByTeacher.put(id, NO_IDS);
+                }
+            }
+        }
+        return id;
+    }
+
+    public int saveCourse(Course course) {
+        int id = writeBehind == null ? storage.saveCourse(course) : await(writeBehind.saveCourse(course), -1);
+        if (id > 0) {
+            synchronized (this) {
+                version++;
+                putCourse(course);
+            }
+        }
+        return id;
+    }
+
+    public boolean saveTeacherCourse(int teacherId, int courseId) {
+        boolean saved = writeBehind == null
+                ? storage.saveTeacherCourse(teacherId, courseId)
+                : await(writeBehind.saveTeacherCourse(teacherId, courseId), false);
+        if (saved) {
+            assignments.assign(teacherId, courseId);
+            synchronized (this) {
+                version++;
+                cacheAssignment(teacherId, courseId);
+            }
+        }
+        return saved;
+    }
+
+    /**
+     * Applies a {@link LoadBalancer} plan as one change; see {@link StorageEngine#applyReassignments(List)}.
+     */
+    public boolean applyReassignments(LoadBalancer.Plan plan) {
+        boolean applied = storage.applyReassignments(plan.getMoves());
+        if (applied) {
+            for (LoadBalancer.Move move : plan.getMoves()) {
+                assignments.unassign(move.getFromTeacherId(), move.getCourseId());
+            }
+            for (LoadBalancer.Move move : plan.getMoves()) {
+                assignments.assign(move.getToTeacherId(), move.getCourseId());
+            }
+            synchronized (this) {
+                version++;
+                for (LoadBalancer.Move move : plan.getMoves()) {
+                    uncacheAssignment(move.getFromTeacherId(), move.getCourseId());
+                }
+                for (LoadBalancer.Move move : plan.getMoves()) {
+                    cacheAssignment(move.getToTeacherId(), move.getCourseId());
+                }
+            }
+        }
+        return applied;
+    }
+
+    private void cacheAssignment(int teacherId, int courseId) {
+        int[] courseIds = courseIdsByTeacher.get(teacherId);
+        if (courseIds != null && courses.containsKey(courseId)) {
+            courseIdsByTeacher.put(teacherId, AssignmentGraph.with(courseIds, courseId));
+            teacherIdsByCourse.put(courseId, AssignmentGraph.with(teacherIdsByCourse.get(courseId), teacherId));
+        } else if (courseIds != null) {
+            dropAdjacency(teacherId);
+        }
+    }
+
+    private void uncacheAssignment(int teacherId, int courseId) {
+        courseIdsByTeacher.computeIfPresent(teacherId, (id, courseIds) -> withoutId(courseIds, courseId));
+        teacherIdsByCourse.computeIfPresent(courseId, (id, teacherIds) -> AssignmentGraph.without(teacherIds, teacherId));
+    }
+
+    private static int[] withoutId(int[] ids, int id) {
+        int[] remaining = AssignmentGraph.without(ids, id);
+        return remaining == null ? NO_IDS : remaining;
+    }
+
+    public boolean updateTeacher(Teacher teacher) {
+        boolean updated = writeBehind == null
+                ? storage.updateTeacher(teacher)
+                : await(writeBehind.updateTeacher(teacher), false);
+        if (updated) {
+            synchronized (this) {
+                version++;
+                Teacher previous = teachers.get(teacher.getId());
+                if (previous != null) {
+                    unindexTeacher(previous.getFullName(), previous.getId());
+                }
+                putTeacher(teacher);
+            }
+        }
+        return updated;
+    }
+
+    public boolean updateCourse(Course course) {
+        boolean updated = writeBehind == null
+                ? storage.updateCourse(course)
+                : await(writeBehind.updateCourse(course), false);
+        if (updated) {
+            synchronized (this) {
+                version++;
+                Course previous = courses.get(course.getId());
+                if (previous != null) {
+                    unindexCourse(previous.getName(), previous.getId());
+                }
+                putCourse(course);
+            }
+        }
+        return updated;
+    }
+
+    public boolean removeTeacher(Teacher teacher) {
+        boolean removed = writeBehind == null
+                ? storage.removeTeacher(teacher)
+                : await(writeBehind.removeTeacher(teacher), false);
+        if (removed) {
+            assignments.removeTeacher(teacher.getId());
+            synchronized (this) {
+                version++;
+                Teacher previous = teachers.remove(teacher.getId());
+                if (previous != null) {
+                    forgetTeacher(previous);
+                }
+            }
+        }
+        return removed;
+    }
+
+    public boolean removeCourse(Course course) {
+        boolean removed = writeBehind == null
+                ? storage.removeCourse(course)
+                : await(writeBehind.removeCourse(course), false);
+        if (removed) {
+            assignments.removeCourse(course.getId());
+            synchronized (this) {
+                version++;
+                Course previous = courses.remove(course.getId());
+                forgetCourse(course.getId(), previous == null ? null : previous.getName());
+            }
+        }
+        return removed;
+    }
+
+    public boolean removeTeacherCourse(Teacher teacher, Course course) {
+        boolean removed = writeBehind == null
+                ? storage.removeTeacherCourse(teacher, course)
+                : await(writeBehind.removeTeacherCourse(teacher.getId(), course.getId()), false);
+        if (removed) {
+            assignments.unassign(teacher.getId(), course.getId());
+            synchronized (this) {
+                version++;
+                uncacheAssignment(teacher.getId(), course.getId());
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Moves {@code teacher} from {@code current} to the catalog course {@code replacement} as one
+     * change; see {@link StorageEngine#replaceTeacherCourse}. It bypasses the write-behind queue,
+     * which has no such operation.
+     */
+    public boolean replaceTeacherCourse(Teacher teacher, Course current, Course replacement) {
+        boolean replaced = storage.replaceTeacherCourse(teacher, current, replacement);
+        if (replaced) {
+            boolean moved = replacement.getId() != current.getId();
+            assignments.assign(teacher.getId(), replacement.getId());
+            if (moved) {
+                assignments.unassign(teacher.getId(), current.getId());
+            }
+            synchronized (this) {
+                version++;
+                putCourse(replacement);
+                cacheAssignment(teacher.getId(), replacement.getId());
+                if (moved) {
+                    uncacheAssignment(teacher.getId(), current.getId());
+                }
+            }
+        }
+        return replaced;
+    }
+
+    public Teacher findTeacherByName(String name) {
+        if (name == null) {
+            return null;
+        }
+        long loadVersion;
+        synchronized (this) {
+            int[] ids = teacherIdsByName.get(name);
+            if (ids != null && (complete || resolvedTeacherNames.contains(name))) {
+                hits++;
+                return copyOf(teachers.get(ids[0]));
+            }
+            if (complete) {
+                hits++;
+                return null;
+            }
+            misses++;
+            loadVersion = version;
+        }
+        Teacher loaded = storage.findTeacherByName(name);
+        if (loaded != null) {
+            synchronized (this) {
+                if (version == loadVersion) {
+                    putTeacher(loaded);
+                    resolvedTeacherNames.add(name);
+                }
+            }
+        }
+        return loaded;
+    }
+
+    public Teacher findTeacherById(int id) {
+        long loadVersion;
+        synchronized (this) {
+            Teacher cached = teachers.get(id);
+            if (cached != null) {
+                hits++;
+                return copyOf(cached);
+            }
+            if (complete) {
+                hits++;
+                return null;
+            }
+            misses++;
+            loadVersion = version;
+        }
+        Teacher loaded = storage.findTeacherById(id);
+        if (loaded != null) {
+            synchronized (this) {
+                if (version == loadVersion) {
+                    putTeacher(loaded);
+                }
+            }
+        }
+        return loaded;
+    }
+
+    public Course findCourseById(int id) {
+        long loadVersion;
+        synchronized (this) {
+            Course cached = courses.get(id);
+            if (cached != null) {
+                hits++;
+                return copyOf(cached);
+            }
+            if (complete) {
+                hits++;
+                return null;
+            }
+            misses++;
+            loadVersion = version;
+        }
+        Course loaded = storage.findCourseById(id);
+        if (loaded != null) {
+            synchronized (this) {
+                if (version == loadVersion) {
+                    putCourse(loaded);
+                }
+            }
+        }
+        return loaded;
+    }
+
+    public Course findCourseByName(String name) {
+        if (name == null) {
+            return null;
+        }
+        long loadVersion;
+        synchronized (this) {
+            int[] ids = courseIdsByName.get(name);
+            if (ids != null && (complete || resolvedCourseNames.contains(name))) {
+                hits++;
+                return copyOf(courses.get(ids[0]));
+            }
+            if (complete) {
+                hits++;
+                return null;
+            }
+            misses++;
+            loadVersion = version;
+        }
+        Course loaded = storage.findCourseByName(name);
+        if (loaded != null) {
+            synchronized (this) {
+                if (version == loadVersion) {
+                    putCourse(loaded);
+                    resolvedCourseNames.add(name);
+                }
+            }
+        }
+        return loaded;
+    }
+
+    public Course findCourseByName(Teacher teacher, String name) {
+        if (name == null) {
+            return null;
+        }
+        for (Course course : loadTeacherCourses(teacher)) {
+            if (name.equals(course.getName())) {
+                return course;
+            }
+        }
+        return null;
+    }
+
+    public List<Course> loadTeacherCourses(Teacher teacher) {
+        long loadVersion;
+        synchronized (this) {
+            List<Course> cached = cachedCourses(teacher.getId());
+            if (cached != null) {
+                hits++;
+                return cached;
+            }
+            misses++;
+            loadVersion = version;
+        }
+        List<Course> loaded = storage.loadTeacherCourses(teacher);
+        synchronized (this) {
+            if (version == loadVersion && teachers.containsKey(teacher.getId())) {
+                for (Course course : loaded) {
+                    putCourse(course);
+                }
+                putAdjacency(teacher.getId(), loaded);
+            }
+        }
+        return loaded;
+    }
+
+    public List<Teacher> loadAllTeachers() {
+        synchronized (this) {
+            if (complete) {
+                hits++;
+                List<Teacher> result = new ArrayList<>(teachers.size());
+                for (int id : new TreeSet<>(teachers.keySet())) {
+                    result.add(copyOf(teachers.get(id)));
+                }
+                return result;
+            }
+            misses++;
+        }
+        return storage.loadAllTeachers();
+    }
+
+    public List<Teacher> loadAllTeachersWithCourses() {
+        return loadAllTeachersWithCourses(ProgressListener.NONE);
+    }
+
+    public List<Teacher> loadAllTeachersWithCourses(ProgressListener progress) {
+        synchronized (this) {
+            if (complete) {
+                hits++;
+                Map<Integer, Course> shared = new HashMap<>();
+                List<Teacher> result = new ArrayList<>(teachers.size());
+                for (int id : new TreeSet<>(teachers.keySet())) {
+                    Teacher teacher = copyOf(teachers.get(id));
+                    for (int courseId : courseIdsByTeacher.getOrDefault(id, NO_IDS)) {
+                        teacher.addCourse(shared.computeIfAbsent(courseId, key -> copyOf(courses.get(key))));
+                    }
+                    result.add(teacher);
+                }
+                return result;
+            }
+            misses++;
+        }
+        return storage.loadAllTeachersWithCourses(progress);
+    }
+
+    public List<Course> loadAllCourses() {
+        synchronized (this) {
+            if (complete) {
+                hits++;
+                List<Course> result = new ArrayList<>(courses.size());
+                for (int id : new TreeSet<>(courses.keySet())) {
+                    result.add(copyOf(courses.get(id)));
+                }
+                return result;
+            }
+            misses++;
+        }
+        return storage.loadAllCourses();
+    }
+
+    public synchronized CacheStats getStats() {
+        return new CacheStats(teachers.size(), courses.size(), courseIdsByTeacher.size(), hits, misses, evictions, complete);
+    }
+
+    private synchronized long currentVersion() {
+        return version;
+    }
+
+    private void clearEntries() {
+        teachers.clear();
+        courses.clear();
+        teacherIdsByName.clear();
+        courseIdsByName.clear();
+        resolvedTeacherNames.clear();
+        resolvedCourseNames.clear();
+        courseIdsByTeacher.clear();
+        teacherIdsByCourse.clear();
+    }
+
+    private List<Course> cachedCourses(int teacherId) {
+        int[] courseIds = courseIdsByTeacher.get(teacherId);
+        if (courseIds == null) {
+            return null;
+        }
+        List<Course> result = new ArrayList<>(courseIds.length);
+        for (int courseId : courseIds) {
+            Course course = courses.get(courseId);
+            if (course == null) {
+                return null;
+            }
+            result.add(copyOf(course));
+        }
+        return result;
+    }
+
+    private void putTeacher(Teacher teacher) {
+        teachers.put(teacher.getId(), copyOf(teacher));
+        String name = teacher.getFullName();
+        if (name != null) {
+            teacherIdsByName.put(name, AssignmentGraph.with(teacherIdsByName.get(name), teacher.getId()));
+        }
+    }
+
+    private void putCourse(Course course) {
+        courses.put(course.getId(), copyOf(course));
+        String name = course.getName();
+        if (name != null) {
+            courseIdsByName.put(name, AssignmentGraph.with(courseIdsByName.get(name), course.getId()));
+        }
+    }
+
+    // Once the lowest id of a name is gone, the next may belong to a teacher that is not cached.
+    private void unindexTeacher(String name, int id) {
+        int[] ids = teacherIdsByName.get(name);
+        if (ids != null && ids[0] == id) {
+            resolvedTeacherNames.remove(name);
+        }
+        teacherIdsByName.computeIfPresent(name, (key, named) -> AssignmentGraph.without(named, id));
+    }
+
+    private void unindexCourse(String name, int id) {
+        int[] ids = courseIdsByName.get(name);
+        if (ids != null && ids[0] == id) {
+            resolvedCourseNames.remove(name);
+        }
+        courseIdsByName.computeIfPresent(name, (key, named) -> AssignmentGraph.without(named, id));
+    }
+
+    private void putAdjacency(int teacherId, List<Course> teacherCourses) {
+        dropAdjacency(teacherId);
+        int[] courseIds = NO_IDS;
+        for (Course course : teacherCourses) {
+            courseIds = AssignmentGraph.with(courseIds, course.getId());
+            teacherIdsByCourse.put(course.getId(), AssignmentGraph.with(teacherIdsByCourse.get(course.getId()), teacherId));
+        }
+        courseIdsByTeacher.put(teacherId, courseIds);
+    }
+
+    private void dropAdjacency(int teacherId) {
+        int[] courseIds = courseIdsByTeacher.remove(teacherId);
+        if (courseIds == null) {
+            return;
+        }
+        for (int courseId : courseIds) {
+            teacherIdsByCourse.computeIfPresent(courseId, (id, teacherIds) -> AssignmentGraph.without(teacherIds, teacherId));
+        }
+    }
+
+    private void evictTeacherIndexes(Teacher teacher) {
+        evictions++;
+        complete = false;
+        forgetTeacher(teacher);
+    }
+
+    private void evictCourseIndexes(Course course) {
+        evictions++;
+        complete = false;
+        forgetCourse(course.getId(), course.getName());
+    }
+
+    private void forgetTeacher(Teacher teacher) {
+        unindexTeacher(teacher.getFullName(), teacher.getId());
+        dropAdjacency(teacher.getId());
+    }
+
+    private void forgetCourse(int courseId, String name) {
+        if (name != null) {
+            unindexCourse(name, courseId);
+        }
+        int[] teacherIds = teacherIdsByCourse.remove(courseId);
+        if (teacherIds != null) {
+            for (int teacherId : teacherIds) {
+                courseIdsByTeacher.computeIfPresent(teacherId, (id, courseIds) -> withoutId(courseIds, courseId));
+            }
+        }
+    }
+
+    // Database errors were reported by the queue when its batch failed; anything else, such as a
+    // write refused by a closed queue, is reported here.
+    private static <T> T await(CompletableFuture<T> write, T failed) {
+        try {
+            return write.join();
+        } catch (CompletionException e) {
+            if (!(e.getCause() instanceof SQLException)) {
+                DatabaseManager.reportFailure("writeBehind", e.getCause() instanceof Exception cause ? cause : e);
+            }
+            return failed;
+        } catch (CancellationException e) {
+            DatabaseManager.reportFailure("writeBehind", e);
+            return failed;
+        }
+    }
+
+    private static Teacher copyOf(Teacher teacher) {
+        Teacher copy = new Teacher(teacher.getFullName(), teacher.getAge());
+        copy.setId(teacher.getId());
+        return copy;
+    }
+
+    private static Course copyOf(Course course) {
+        Course copy = new Course(course.getName(), course.getHours());
+        copy.setId(course.getId());
+        return copy;
+    }
+
+    public static class CacheStats {
+        private final int teachers;
+        private final int courses;
+        private final int adjacencyLists;
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final boolean complete;
+
+        CacheStats(int teachers, int courses, int adjacencyLists, long hits, long misses, long evictions, boolean complete) {
+            this.teachers = teachers;
+            this.courses = courses;
+            this.adjacencyLists = adjacencyLists;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.complete = complete;
+        }
+
+        public int getTeachers() {
+            return teachers;
+        }
+
+        public int getCourses() {
+            return courses;
+        }
+
+        public int getAdjacencyLists() {
+            return adjacencyLists;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public boolean isComplete() {
+            return complete;
+        }
+
+        @Override
+        public String toString() {
+            return "Cache: teachers=" + teachers + ", courses=" + courses + ", adjacencyLists=" + adjacencyLists +
+                    ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + ", complete=" + complete;
+        }
     }
 }
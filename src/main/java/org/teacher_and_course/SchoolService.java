@@ -0,0 +1,165 @@
+package org.teacher_and_course;
+
+import javax.swing.SwingUtilities;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Asynchronous facade over {@link SchoolManagementSystem}. Every operation runs on its own virtual
+ * thread and returns a {@link CompletableFuture}; cancelling the future interrupts the worker, which
+ * long loads check between batches of rows.
+ */
+public class SchoolService implements AutoCloseable {
+    public static final Executor EDT = SwingUtilities::invokeLater;
+
+    private final SchoolManagementSystem system;
+    private final ExecutorService executor;
+
+    public SchoolService(SchoolManagementSystem system) {
+        this(system, Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    public SchoolService(SchoolManagementSystem system, ExecutorService executor) {
+        this.system = system;
+        this.executor = executor;
+    }
+
+    public SchoolManagementSystem getSystem() {
+        return system;
+    }
+
+    public CompletableFuture<Integer> saveTeacher(Teacher teacher) {
+        return submit(() -> system.saveTeacher(teacher));
+    }
+
+    public CompletableFuture<Integer> saveCourse(Course course) {
+        return submit(() -> system.saveCourse(course));
+    }
+
+    public CompletableFuture<Boolean> saveTeacherCourse(int teacherId, int courseId) {
+        return submit(() -> system.saveTeacherCourse(teacherId, courseId));
+    }
+
+    public CompletableFuture<List<Teacher>> loadAllTeachers() {
+        return submit(system::loadAllTeachers);
+    }
+
+    public CompletableFuture<List<Teacher>> loadAllTeachersWithCourses(ProgressListener progress) {
+        return submit(() -> system.loadAllTeachersWithCourses(progress));
+    }
+
+    public CompletableFuture<List<Course>> loadAllCourses() {
+        return submit(system::loadAllCourses);
+    }
+
+    public CompletableFuture<Teacher> findTeacherByName(String name) {
+        return submit(() -> system.findTeacherByName(name));
+    }
+
+    public CompletableFuture<Course> findCourseByName(Teacher teacher, String name) {
+        return submit(() -> system.findCourseByName(teacher, name));
+    }
+
+    public CompletableFuture<List<Teacher>> searchTeachers(String query, int limit) {
+        return submit(() -> system.getStorage().searchTeachers(query, limit));
+    }
+
+    public CompletableFuture<List<Course>> searchCourses(String query, int limit) {
+        return submit(() -> system.getStorage().searchCourses(query, limit));
+    }
+
+    public CompletableFuture<List<String>> suggestTeacherNames(String query) {
+        return submit(() -> system.getStorage().suggestTeacherNames(query, NameSearch.DEFAULT_LIMIT));
+    }
+
+    public CompletableFuture<List<String>> suggestCourseNames(String query) {
+        return submit(() -> system.getStorage().suggestCourseNames(query, NameSearch.DEFAULT_LIMIT));
+    }
+
+    public CompletableFuture<List<Course>> loadTeacherCourses(Teacher teacher) {
+        return submit(() -> system.loadTeacherCourses(teacher));
+    }
+
+    public CompletableFuture<Boolean> removeTeacher(Teacher teacher) {
+        return submit(() -> system.removeTeacher(teacher));
+    }
+
+    public CompletableFuture<Boolean> removeCourse(Course course) {
+        return submit(() -> system.removeCourse(course));
+    }
+
+    public CompletableFuture<Boolean> updateTeacher(Teacher teacher) {
+        return submit(() -> system.updateTeacher(teacher));
+    }
+
+    public CompletableFuture<Boolean> updateCourse(Course course) {
+        return submit(() -> system.updateCourse(course));
+    }
+
+    public CompletableFuture<Boolean> removeTeacherCourse(Teacher teacher, Course course) {
+        return submit(() -> system.removeTeacherCourse(teacher, course));
+    }
+
+    public CompletableFuture<Boolean> addCourseToTeacher(Teacher teacher, Course course) {
+        return submit(() -> system.saveCourse(course) > 0 && system.saveTeacherCourse(teacher.getId(), course.getId()));
+    }
+
+    /**
+     * Moves {@code teacher} from {@code current} to the catalog course {@code replacement} in one
+     * change. Other teachers of {@code current} keep it unchanged.
+     */
+    public CompletableFuture<Boolean> replaceTeacherCourse(Teacher teacher, Course current, Course replacement) {
+        return submit(() -> system.replaceTeacherCourse(teacher, current, replacement));
+    }
+
+    public <T> CompletableFuture<T> submit(Callable<T> work) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Future<?> task = executor.submit(() -> {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                future.complete(work.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        future.whenComplete((result, error) -> {
+            if (future.isCancelled()) {
+                task.cancel(true);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Delivers the outcome of {@code future} on the event dispatch thread. Cancelled futures, and
+     * futures derived from cancelled ones, call neither consumer.
+     */
+    public static <T> void onEdt(CompletableFuture<T> future, Consumer<T> onSuccess, Consumer<Throwable> onError) {
+        future.whenCompleteAsync((result, error) -> {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (future.isCancelled() || cause instanceof CancellationException) {
+                return;
+            }
+            if (cause != null) {
+                onError.accept(cause);
+            } else {
+                onSuccess.accept(result);
+            }
+        }, EDT);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
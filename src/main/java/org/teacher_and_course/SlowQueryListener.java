@@ -0,0 +1,11 @@
+package org.teacher_and_course;
+
+/**
+ * Told about every statement that took at least the {@link QueryLog} threshold. Called on the
+ * thread that ran the statement, while it still holds the connection, so it should return quickly.
+ */
+public interface SlowQueryListener {
+    SlowQueryListener STDERR = query -> System.err.print(query);
+
+    void onSlowQuery(QueryLog.SlowQuery query);
+}
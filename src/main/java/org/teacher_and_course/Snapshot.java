@@ -0,0 +1,577 @@
+package org.teacher_and_course;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Read-only, memory-mapped binary copy of the whole dataset: teachers, courses and assignments.
+ * <p>
+ * The file is little-endian: a fixed header, then length-prefixed sections, then a CRC32 of
+ * everything before it. Each section is columnar (one {@code int[]} per field) and names are
+ * indexes into a shared string table, so a snapshot opens without parsing and rows are read in
+ * place. Assignments are sorted by teacher id, then course id; rows left pointing at a missing
+ * teacher or course (written with foreign keys off) are not exported.
+ *
+ * <pre>
+ * header:   magic "SCHS", version, teacher count, course count, assignment count, string count, created millis
+ * section:  tag, byte length, payload (padded to 4 bytes)
+ *   STRINGS      offsets[string count + 1], UTF-8 bytes
+ *   TEACHERS     ids[], name indexes[] (-1 for null), ages[], null-age bitmap
+ *   COURSES      ids[], name indexes[] (-1 for null), hours[], null-hours bitmap
+ *   ASSIGNMENTS  teacher ids[], course ids[]
+ * trailer:  CRC32
+ * </pre>
+ * A bitmap has one bit per row, low bit first, in {@code int}s; a set bit means the value is NULL
+ * and the stored value is 0. Version 1 files have no bitmaps and are read as having no NULLs.
+ */
+public class Snapshot {
+    public static final int FORMAT_VERSION = 2;
+
+    private static final int MAGIC = 0x53484353;
+    private static final int HEADER_BYTES = 32;
+    private static final int SECTION_HEADER_BYTES = 8;
+    private static final int TRAILER_BYTES = 4;
+    private static final int TAG_STRINGS = 1;
+    private static final int TAG_TEACHERS = 2;
+    private static final int TAG_COURSES = 3;
+    private static final int TAG_ASSIGNMENTS = 4;
+    private static final int NO_STRING = -1;
+    private static final int RESTORE_BATCH_SIZE = 10_000;
+
+    private static final OperationMetrics EXPORT_METRICS = PersistenceMetrics.operation("exportSnapshot");
+    private static final OperationMetrics RESTORE_METRICS = PersistenceMetrics.operation("restoreSnapshot");
+
+    private final Path path;
+    private final long createdMillis;
+    private final IntBuffer stringOffsets;
+    private final ByteBuffer stringBytes;
+    private final IntBuffer teacherIds;
+    private final IntBuffer teacherNames;
+    private final IntBuffer teacherAges;
+    private final IntBuffer teacherNullAges;
+    private final IntBuffer courseIds;
+    private final IntBuffer courseNames;
+    private final IntBuffer courseHours;
+    private final IntBuffer courseNullHours;
+    private final IntBuffer assignmentTeacherIds;
+    private final IntBuffer assignmentCourseIds;
+
+    private Snapshot(Path path, ByteBuffer buffer) throws IOException {
+        this.path = path;
+        if (buffer.limit() < HEADER_BYTES + TRAILER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException(path + " is not a snapshot file");
+        }
+        int version = buffer.getInt(4);
+        if (version < 1 || version > FORMAT_VERSION) {
+            throw new IOException(path + " has snapshot format " + version + ", expected at most " + FORMAT_VERSION);
+        }
+        int end = buffer.limit() - TRAILER_BYTES;
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(0, end));
+        if ((int) crc.getValue() != buffer.getInt(end)) {
+            throw new IOException(path + " is corrupt: checksum mismatch");
+        }
+        int teacherCount = buffer.getInt(8);
+        int courseCount = buffer.getInt(12);
+        int assignmentCount = buffer.getInt(16);
+        int stringCount = buffer.getInt(20);
+        this.createdMillis = buffer.getLong(24);
+
+        Map<Integer, ByteBuffer> sections = new HashMap<>();
+        int position = HEADER_BYTES;
+        while (position < end) {
+            int tag = buffer.getInt(position);
+            int length = buffer.getInt(position + 4);
+            if (length < 0 || position + SECTION_HEADER_BYTES + length > end) {
+                throw new IOException(path + " is corrupt: section " + tag + " overruns the file");
+            }
+            sections.put(tag, buffer.slice(position + SECTION_HEADER_BYTES, length).order(ByteOrder.LITTLE_ENDIAN));
+            position += SECTION_HEADER_BYTES + padded(length);
+        }
+
+        ByteBuffer strings = section(sections, TAG_STRINGS);
+        this.stringOffsets = ints(strings, 0, stringCount + 1);
+        this.stringBytes = strings.slice(4 * (stringCount + 1), strings.limit() - 4 * (stringCount + 1));
+        ByteBuffer teachers = section(sections, TAG_TEACHERS);
+        this.teacherIds = ints(teachers, 0, teacherCount);
+        this.teacherNames = ints(teachers, 1, teacherCount);
+        this.teacherAges = ints(teachers, 2, teacherCount);
+        this.teacherNullAges = version >= 2 ? nullBitmap(teachers, teacherCount) : null;
+        ByteBuffer courses = section(sections, TAG_COURSES);
+        this.courseIds = ints(courses, 0, courseCount);
+        this.courseNames = ints(courses, 1, courseCount);
+        this.courseHours = ints(courses, 2, courseCount);
+        this.courseNullHours = version >= 2 ? nullBitmap(courses, courseCount) : null;
+        ByteBuffer assignments = section(sections, TAG_ASSIGNMENTS);
+        this.assignmentTeacherIds = ints(assignments, 0, assignmentCount);
+        this.assignmentCourseIds = ints(assignments, 1, assignmentCount);
+    }
+
+    /**
+     * Maps and verifies a snapshot file. The mapping stays valid after this returns, so the
+     * snapshot can be read for as long as it is reachable.
+     */
+    public static Snapshot open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new Snapshot(path, buffer.order(ByteOrder.LITTLE_ENDIAN));
+        }
+    }
+
+    /**
+     * Writes the current database to {@code path}, replacing it atomically. Returns false, after
+     * telling the {@link FailureListener}, if the database could not be read or the file could not
+     * be written.
+     */
+    public static boolean export(Path path) {
+        long start = System.nanoTime();
+        try {
+            Columns teachers = new Columns();
+            Columns courses = new Columns();
+            int[][] assignments = {new int[1024], new int[1024]};
+            int assignmentCount = 0;
+            StringTable strings = new StringTable();
+            try (PooledConnection connection = DatabaseManager.acquire()) {
+                // One read transaction, so the three tables are copied as of the same moment.
+                connection.getConnection().setAutoCommit(false);
+                try {
+                    readRows(connection, "SELECT id, full_name, age FROM teachers ORDER BY id", teachers, strings);
+                    readRows(connection, "SELECT id, name, hours FROM courses ORDER BY id", courses, strings);
+                    PreparedStatement statement = connection.prepare(
+                            "SELECT teacher_id, course_id FROM teacher_course " +
+                                    "WHERE EXISTS (SELECT 1 FROM teachers WHERE teachers.id = teacher_id) " +
+                                    "AND EXISTS (SELECT 1 FROM courses WHERE courses.id = course_id) " +
+                                    "ORDER BY teacher_id, course_id");
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            if (assignmentCount == assignments[0].length) {
+                                assignments[0] = Arrays.copyOf(assignments[0], assignmentCount * 2);
+                                assignments[1] = Arrays.copyOf(assignments[1], assignmentCount * 2);
+                            }
+                            assignments[0][assignmentCount] = resultSet.getInt(1);
+                            assignments[1][assignmentCount] = resultSet.getInt(2);
+                            assignmentCount++;
+                        }
+                    }
+                } finally {
+                    connection.getConnection().commit();
+                    connection.getConnection().setAutoCommit(true);
+                }
+            }
+            EXPORT_METRICS.addRowsRead(teachers.size + courses.size + assignmentCount);
+            write(path, teachers, courses, assignments, assignmentCount, strings);
+            return true;
+        } catch (SQLException e) {
+            EXPORT_METRICS.recordError();
+            DatabaseManager.reportFailure(EXPORT_METRICS.getOperation(), e);
+            return false;
+        } catch (IOException e) {
+            EXPORT_METRICS.recordError();
+            DatabaseManager.reportFailure(EXPORT_METRICS.getOperation(), new IOException("Could not write snapshot " + path + ": " + e, e));
+            return false;
+        } finally {
+            EXPORT_METRICS.record(start);
+        }
+    }
+
+    /**
+     * Replaces the contents of the current database with this snapshot in one transaction.
+     * Secondary indexes and triggers are dropped for the load and recreated afterwards, and the
+     * tables they maintain are rebuilt in set-based passes, which is much faster than inserting
+     * row by row through them. Returns false, leaving the database unchanged, on failure.
+     */
+    public boolean restore() {
+        long start = System.nanoTime();
+        try {
+            DatabaseManager.write(connection -> {
+                try (Statement statement = connection.getConnection().createStatement()) {
+                    List<String> droppedIndexes = new ArrayList<>();
+                    List<String> droppedTriggers = new ArrayList<>();
+                    List<String> drops = new ArrayList<>();
+                    connection.getConnection().setAutoCommit(false);
+                    try {
+                        try (ResultSet resultSet = statement.executeQuery(
+                                "SELECT type, name, sql FROM sqlite_master WHERE sql IS NOT NULL AND " +
+                                        "(type = 'trigger' OR (type = 'index' AND tbl_name IN ('teachers', 'courses', 'teacher_course')))")) {
+                            while (resultSet.next()) {
+                                boolean index = resultSet.getString(1).equals("index");
+                                drops.add((index ? "DROP INDEX \"" : "DROP TRIGGER \"") + resultSet.getString(2) + "\"");
+                                (index ? droppedIndexes : droppedTriggers).add(resultSet.getString(3));
+                            }
+                        }
+                        for (String drop : drops) {
+                            statement.executeUpdate(drop);
+                        }
+                        statement.executeUpdate("DELETE FROM teacher_course");
+                        statement.executeUpdate("DELETE FROM teachers");
+                        statement.executeUpdate("DELETE FROM courses");
+
+                        insertRows(connection, "INSERT INTO teachers (id, full_name, age) VALUES (?, ?, ?)",
+                                teacherIds, teacherNames, teacherAges, teacherNullAges);
+                        insertRows(connection, "INSERT INTO courses (id, name, hours) VALUES (?, ?, ?)",
+                                courseIds, courseNames, courseHours, courseNullHours);
+                        PreparedStatement insert = connection.prepare("INSERT INTO teacher_course (teacher_id, course_id) VALUES (?, ?)");
+                        for (int i = 0; i < getAssignmentCount(); i++) {
+                            insert.setInt(1, assignmentTeacherIds.get(i));
+                            insert.setInt(2, assignmentCourseIds.get(i));
+                            insert.addBatch();
+                            if ((i + 1) % RESTORE_BATCH_SIZE == 0) {
+                                insert.executeBatch();
+                            }
+                        }
+                        insert.executeBatch();
+
+                        for (String sql : droppedIndexes) {
+                            statement.executeUpdate(sql);
+                        }
+                        SchemaMigrator.rebuildDerivedData(statement);
+                        for (String sql : droppedTriggers) {
+                            statement.executeUpdate(sql);
+                        }
+                        connection.getConnection().commit();
+                    } catch (SQLException e) {
+                        connection.getConnection().rollback();
+                        throw e;
+                    } finally {
+                        connection.getConnection().setAutoCommit(true);
+                    }
+                }
+                return null;
+            });
+            RESTORE_METRICS.addRowsWritten(getTeacherCount() + getCourseCount() + getAssignmentCount());
+            ChangeFeed.publish(ChangeEvent.reloaded());
+            return true;
+        } catch (SQLException e) {
+            RESTORE_METRICS.recordError();
+            DatabaseManager.reportFailure(RESTORE_METRICS.getOperation(), e);
+            return false;
+        } finally {
+            RESTORE_METRICS.record(start);
+        }
+    }
+
+    /**
+     * Cheap staleness check: true if the database holds as many teachers, courses and assignments,
+     * with the same largest ids, as this snapshot. Edits that keep those unchanged go unnoticed.
+     */
+    public boolean matchesDatabase() {
+        try (PooledConnection connection = DatabaseManager.acquire()) {
+            PreparedStatement statement = connection.prepare(
+                    "SELECT (SELECT COUNT(*) FROM teachers), (SELECT COALESCE(MAX(id), 0) FROM teachers), " +
+                            "(SELECT COUNT(*) FROM courses), (SELECT COALESCE(MAX(id), 0) FROM courses), " +
+                            "(SELECT COUNT(*) FROM teacher_course)");
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next()
+                        && resultSet.getInt(1) == getTeacherCount()
+                        && resultSet.getInt(2) == (getTeacherCount() == 0 ? 0 : getTeacherId(getTeacherCount() - 1))
+                        && resultSet.getInt(3) == getCourseCount()
+                        && resultSet.getInt(4) == (getCourseCount() == 0 ? 0 : getCourseId(getCourseCount() - 1))
+                        && resultSet.getInt(5) == getAssignmentCount();
+            }
+        } catch (SQLException e) {
+            DatabaseManager.reportFailure("matchesSnapshot", e);
+            return false;
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public long getCreatedMillis() {
+        return createdMillis;
+    }
+
+    public int getTeacherCount() {
+        return teacherIds.limit();
+    }
+
+    public int getTeacherId(int index) {
+        return teacherIds.get(index);
+    }
+
+    public String getTeacherName(int index) {
+        return string(teacherNames.get(index));
+    }
+
+    public int getTeacherAge(int index) {
+        return teacherAges.get(index);
+    }
+
+    /**
+     * Whether the teacher's age is NULL in the database, which {@link #getTeacherAge} reads as 0.
+     */
+    public boolean isTeacherAgeNull(int index) {
+        return isSet(teacherNullAges, index);
+    }
+
+    public Teacher getTeacher(int index) {
+        Teacher teacher = new Teacher(getTeacherName(index), getTeacherAge(index));
+        teacher.setId(getTeacherId(index));
+        return teacher;
+    }
+
+    public int getCourseCount() {
+        return courseIds.limit();
+    }
+
+    public int getCourseId(int index) {
+        return courseIds.get(index);
+    }
+
+    public String getCourseName(int index) {
+        return string(courseNames.get(index));
+    }
+
+    public int getCourseHours(int index) {
+        return courseHours.get(index);
+    }
+
+    /**
+     * Whether the course's hours are NULL in the database, which {@link #getCourseHours} reads as 0.
+     */
+    public boolean isCourseHoursNull(int index) {
+        return isSet(courseNullHours, index);
+    }
+
+    public Course getCourse(int index) {
+        Course course = new Course(getCourseName(index), getCourseHours(index));
+        course.setId(getCourseId(index));
+        return course;
+    }
+
+    public int getAssignmentCount() {
+        return assignmentTeacherIds.limit();
+    }
+
+    public int getAssignmentTeacherId(int index) {
+        return assignmentTeacherIds.get(index);
+    }
+
+    public int getAssignmentCourseId(int index) {
+        return assignmentCourseIds.get(index);
+    }
+
+    @Override
+    public String toString() {
+        return "Snapshot " + path + ": teachers=" + getTeacherCount() + ", courses=" + getCourseCount() +
+                ", assignments=" + getAssignmentCount();
+    }
+
+    private String string(int index) {
+        if (index == NO_STRING) {
+            return null;
+        }
+        int from = stringOffsets.get(index);
+        byte[] bytes = new byte[stringOffsets.get(index + 1) - from];
+        stringBytes.get(from, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void insertRows(PooledConnection connection, String sql, IntBuffer ids, IntBuffer names, IntBuffer values,
+                            IntBuffer nullValues) throws SQLException {
+        PreparedStatement insert = connection.prepare(sql);
+        for (int i = 0; i < ids.limit(); i++) {
+            insert.setInt(1, ids.get(i));
+            insert.setString(2, string(names.get(i)));
+            if (isSet(nullValues, i)) {
+                insert.setNull(3, Types.INTEGER);
+            } else {
+                insert.setInt(3, values.get(i));
+            }
+            insert.addBatch();
+            if ((i + 1) % RESTORE_BATCH_SIZE == 0) {
+                insert.executeBatch();
+            }
+        }
+        insert.executeBatch();
+    }
+
+    private static ByteBuffer section(Map<Integer, ByteBuffer> sections, int tag) throws IOException {
+        ByteBuffer section = sections.get(tag);
+        if (section == null) {
+            throw new IOException("Snapshot is missing section " + tag);
+        }
+        return section;
+    }
+
+    private static IntBuffer ints(ByteBuffer section, int column, int count) throws IOException {
+        int from = 4 * column * count;
+        if (from + 4 * count > section.limit()) {
+            throw new IOException("Snapshot section is shorter than its row count");
+        }
+        return section.slice(from, 4 * count).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    }
+
+    private static IntBuffer nullBitmap(ByteBuffer section, int count) throws IOException {
+        int from = 12 * count;
+        if (from + 4 * bitmapWords(count) > section.limit()) {
+            throw new IOException("Snapshot section is shorter than its row count");
+        }
+        return section.slice(from, 4 * bitmapWords(count)).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    }
+
+    private static boolean isSet(IntBuffer bitmap, int index) {
+        return bitmap != null && (bitmap.get(index >>> 5) & (1 << (index & 31))) != 0;
+    }
+
+    private static int bitmapWords(int count) {
+        return (count + 31) >>> 5;
+    }
+
+    private static int padded(int length) {
+        return (length + 3) & ~3;
+    }
+
+    private static void readRows(PooledConnection connection, String sql, Columns columns, StringTable strings)
+            throws SQLException {
+        PreparedStatement statement = connection.prepare(sql);
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                int id = resultSet.getInt(1);
+                int name = strings.indexOf(resultSet.getString(2));
+                int value = resultSet.getInt(3);
+                columns.add(id, name, value, resultSet.wasNull());
+            }
+        }
+    }
+
+    private static void write(Path path, Columns teachers, Columns courses, int[][] assignments, int assignmentCount,
+                              StringTable strings) throws IOException {
+        int stringsLength = 4 * (strings.size() + 1) + strings.byteLength;
+        long size = HEADER_BYTES
+                + SECTION_HEADER_BYTES + padded(stringsLength)
+                + SECTION_HEADER_BYTES + columnBytes(teachers.size)
+                + SECTION_HEADER_BYTES + columnBytes(courses.size)
+                + SECTION_HEADER_BYTES + 8L * assignmentCount
+                + TRAILER_BYTES;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Dataset is too large for a single mapped snapshot (" + size + " bytes)");
+        }
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(FORMAT_VERSION)
+                    .putInt(teachers.size).putInt(courses.size).putInt(assignmentCount).putInt(strings.size())
+                    .putLong(System.currentTimeMillis());
+
+            buffer.putInt(TAG_STRINGS).putInt(stringsLength);
+            int offset = 0;
+            for (byte[] bytes : strings.values) {
+                buffer.putInt(offset);
+                offset += bytes.length;
+            }
+            buffer.putInt(offset);
+            for (byte[] bytes : strings.values) {
+                buffer.put(bytes);
+            }
+            buffer.position(buffer.position() + padded(stringsLength) - stringsLength);
+
+            writeColumns(buffer, TAG_TEACHERS, teachers);
+            writeColumns(buffer, TAG_COURSES, courses);
+            buffer.putInt(TAG_ASSIGNMENTS).putInt(8 * assignmentCount);
+            buffer.asIntBuffer().put(assignments[0], 0, assignmentCount);
+            buffer.position(buffer.position() + 4 * assignmentCount);
+            buffer.asIntBuffer().put(assignments[1], 0, assignmentCount);
+            buffer.position(buffer.position() + 4 * assignmentCount);
+
+            CRC32 crc = new CRC32();
+            crc.update(buffer.slice(0, buffer.position()));
+            buffer.putInt((int) crc.getValue());
+            buffer.force();
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeColumns(ByteBuffer buffer, int tag, Columns columns) {
+        buffer.putInt(tag).putInt((int) columnBytes(columns.size));
+        for (int[] column : new int[][]{columns.ids, columns.names, columns.values}) {
+            buffer.asIntBuffer().put(column, 0, columns.size);
+            buffer.position(buffer.position() + 4 * columns.size);
+        }
+        int words = bitmapWords(columns.size);
+        buffer.asIntBuffer().put(Arrays.copyOf(columns.nulls, words), 0, words);
+        buffer.position(buffer.position() + 4 * words);
+    }
+
+    private static long columnBytes(int count) {
+        return 12L * count + 4L * bitmapWords(count);
+    }
+
+    /**
+     * Growable id, name-index and value columns for teachers or courses, with the null-value bitmap.
+     */
+    private static final class Columns {
+        private int[] ids = new int[1024];
+        private int[] names = new int[1024];
+        private int[] values = new int[1024];
+        private int[] nulls = new int[32];
+        private int size;
+
+        void add(int id, int name, int value, boolean valueNull) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                names = Arrays.copyOf(names, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+                nulls = Arrays.copyOf(nulls, bitmapWords(size * 2));
+            }
+            ids[size] = id;
+            names[size] = name;
+            values[size] = value;
+            if (valueNull) {
+                nulls[size >>> 5] |= 1 << (size & 31);
+            }
+            size++;
+        }
+    }
+
+    /**
+     * Interns names so that each distinct string is stored once.
+     */
+    private static final class StringTable {
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private final List<byte[]> values = new ArrayList<>();
+        private int byteLength;
+
+        int indexOf(String value) {
+            if (value == null) {
+                return NO_STRING;
+            }
+            Integer index = indexes.get(value);
+            if (index == null) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                index = values.size();
+                indexes.put(value, index);
+                values.add(bytes);
+                byteLength += bytes.length;
+            }
+            return index;
+        }
+
+        int size() {
+            return values.size();
+        }
+    }
+}
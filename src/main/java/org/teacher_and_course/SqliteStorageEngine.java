@@ -0,0 +1,186 @@
+package org.teacher_and_course;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * {@link StorageEngine} over the SQLite database managed by {@link DatabaseManager}. The bulk
+ * import, snapshots, write-behind queue, maintenance and teaching-load reports work on that
+ * database directly and are only available with this engine.
+ */
+public final class SqliteStorageEngine implements StorageEngine {
+    static final SqliteStorageEngine INSTANCE = new SqliteStorageEngine();
+
+    private SqliteStorageEngine() {
+    }
+
+    @Override
+    public void createTables() {
+        DatabaseManager.createTables();
+    }
+
+    @Override
+    public int saveTeacher(Teacher teacher) {
+        return DatabaseManager.saveTeacher(teacher);
+    }
+
+    @Override
+    public int saveCourse(Course course) {
+        return DatabaseManager.saveCourse(course);
+    }
+
+    @Override
+    public boolean saveTeacherCourse(int teacherId, int courseId) {
+        return DatabaseManager.saveTeacherCourse(teacherId, courseId);
+    }
+
+    @Override
+    public boolean updateTeacher(Teacher teacher) {
+        return DatabaseManager.updateTeacher(teacher);
+    }
+
+    @Override
+    public boolean updateCourse(Course course) {
+        return DatabaseManager.updateCourse(course);
+    }
+
+    @Override
+    public boolean removeTeacher(Teacher teacher) {
+        return DatabaseManager.removeTeacher(teacher);
+    }
+
+    @Override
+    public boolean removeCourse(Course course) {
+        return DatabaseManager.removeCourse(course);
+    }
+
+    @Override
+    public boolean removeTeacherCourse(Teacher teacher, Course course) {
+        return DatabaseManager.removeTeacherCourse(teacher, course);
+    }
+
+    @Override
+    public boolean replaceTeacherCourse(Teacher teacher, Course current, Course replacement) {
+        return DatabaseManager.replaceTeacherCourse(teacher, current, replacement);
+    }
+
+    @Override
+    public boolean applyReassignments(List<LoadBalancer.Move> moves) {
+        return DatabaseManager.applyReassignments(moves);
+    }
+
+    @Override
+    public Teacher findTeacherByName(String name) {
+        return DatabaseManager.findTeacherByName(name);
+    }
+
+    @Override
+    public Teacher findTeacherById(int id) {
+        return DatabaseManager.findTeacherById(id);
+    }
+
+    @Override
+    public Course findCourseById(int id) {
+        return DatabaseManager.findCourseById(id);
+    }
+
+    @Override
+    public Course findCourseByName(String name) {
+        return DatabaseManager.findCourseByName(name);
+    }
+
+    @Override
+    public Course findCourseByName(Teacher teacher, String name) {
+        return DatabaseManager.findCourseByName(teacher, name);
+    }
+
+    @Override
+    public List<Course> loadTeacherCourses(Teacher teacher) {
+        return DatabaseManager.loadTeacherCourses(teacher);
+    }
+
+    @Override
+    public List<Teacher> loadAllTeachers() {
+        return DatabaseManager.loadAllTeachers();
+    }
+
+    @Override
+    public List<Teacher> loadAllTeachersWithCourses(ProgressListener progress) {
+        return DatabaseManager.loadAllTeachersWithCourses(progress);
+    }
+
+    @Override
+    public List<Course> loadAllCourses() {
+        return DatabaseManager.loadAllCourses();
+    }
+
+    @Override
+    public int countTeachers() {
+        return DatabaseManager.countTeachers();
+    }
+
+    @Override
+    public List<Teacher> loadTeachersAfter(int afterId, int limit) {
+        return DatabaseManager.loadTeachersAfter(afterId, limit);
+    }
+
+    @Override
+    public List<Course> loadCoursesAfter(int afterId, int limit) {
+        return DatabaseManager.loadCoursesAfter(afterId, limit);
+    }
+
+    @Override
+    public long[] loadAssignments() {
+        return DatabaseManager.loadAssignments();
+    }
+
+    @Override
+    public Roster loadRoster() {
+        return DatabaseManager.loadRoster();
+    }
+
+    @Override
+    public int countPage(PageQuery query) throws SQLException {
+        return DatabaseManager.countPage(query);
+    }
+
+    @Override
+    public List<Object[]> loadPage(PageQuery query, Object[] afterKey, int limit) throws SQLException {
+        return DatabaseManager.loadPage(query, afterKey, limit);
+    }
+
+    @Override
+    public Object[] pageKeyAt(PageQuery query, int offset) throws SQLException {
+        return DatabaseManager.pageKeyAt(query, offset);
+    }
+
+    @Override
+    public List<Teacher> searchTeachers(String query, int limit) {
+        return NameSearch.searchTeachers(query, limit);
+    }
+
+    @Override
+    public List<Course> searchCourses(String query, int limit) {
+        return NameSearch.searchCourses(query, limit);
+    }
+
+    @Override
+    public List<String> suggestTeacherNames(String query, int limit) {
+        return NameSearch.suggestTeacherNames(query, limit);
+    }
+
+    @Override
+    public List<String> suggestCourseNames(String query, int limit) {
+        return NameSearch.suggestCourseNames(query, limit);
+    }
+
+    @Override
+    public void close() {
+        DatabaseManager.close();
+    }
+
+    @Override
+    public String toString() {
+        return "sqlite";
+    }
+}
@@ -0,0 +1,141 @@
+package org.teacher_and_course;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * The operations {@link SchoolManagementSystem} and the table views need from a backend, with the
+ * return conventions of {@link DatabaseManager}: saves return the new id or -1, mutations return
+ * whether they changed anything, lookups return null when nothing matches, and loads return an
+ * empty list when they fail. Every successful mutation is published on the {@link ChangeFeed}.
+ *
+ * <p>{@link #configured()} picks the engine named by {@code school.storage.engine}: {@code sqlite}
+ * (the default) or {@code memory}, which journals to {@code school.storage.journal} when it is set.
+ */
+public interface StorageEngine extends AutoCloseable {
+
+    static StorageEngine configured() {
+        String engine = System.getProperty("school.storage.engine", "sqlite");
+        switch (engine) {
+            case "sqlite":
+                return sqlite();
+            case "memory":
+                String journal = System.getProperty("school.storage.journal");
+                return new InMemoryStorageEngine(journal == null ? null : Path.of(journal),
+                        Boolean.getBoolean("school.storage.journalSync"));
+            default:
+                throw new IllegalArgumentException("Unknown storage engine " + engine + "; expected sqlite or memory");
+        }
+    }
+
+    /**
+     * The SQLite database behind {@link DatabaseManager}.
+     */
+    static StorageEngine sqlite() {
+        return SqliteStorageEngine.INSTANCE;
+    }
+
+    /**
+     * Creates or upgrades whatever the engine keeps its data in.
+     */
+    void createTables();
+
+    int saveTeacher(Teacher teacher);
+
+    /**
+     * Saves a course to the catalog; a course with the same name and hours is reused.
+     */
+    int saveCourse(Course course);
+
+    /**
+     * Assigns a course to a teacher. Returns true if the assignment exists afterwards, false if
+     * the teacher or the course does not.
+     */
+    boolean saveTeacherCourse(int teacherId, int courseId);
+
+    boolean updateTeacher(Teacher teacher);
+
+    boolean updateCourse(Course course);
+
+    boolean removeTeacher(Teacher teacher);
+
+    boolean removeCourse(Course course);
+
+    boolean removeTeacherCourse(Teacher teacher, Course course);
+
+    /**
+     * Moves {@code teacher} from {@code current} to the catalog course {@code replacement}, saving
+     * it first if needed, as one change. Returns false, changing nothing, if the teacher does not
+     * exist or does not have {@code current}.
+     */
+    boolean replaceTeacherCourse(Teacher teacher, Course current, Course replacement);
+
+    /**
+     * Moves each assignment in {@code moves} to its new teacher as one change, all removals before
+     * any addition. Returns false, changing nothing, if an old assignment is gone or a new one
+     * already exists or has no teacher.
+     */
+    boolean applyReassignments(List<LoadBalancer.Move> moves);
+
+    Teacher findTeacherByName(String name);
+
+    Teacher findTeacherById(int id);
+
+    Course findCourseById(int id);
+
+    Course findCourseByName(String name);
+
+    Course findCourseByName(Teacher teacher, String name);
+
+    List<Course> loadTeacherCourses(Teacher teacher);
+
+    List<Teacher> loadAllTeachers();
+
+    /**
+     * Every teacher with their courses, or null if the calling thread was interrupted first.
+     */
+    List<Teacher> loadAllTeachersWithCourses(ProgressListener progress);
+
+    List<Course> loadAllCourses();
+
+    int countTeachers();
+
+    List<Teacher> loadTeachersAfter(int afterId, int limit);
+
+    List<Course> loadCoursesAfter(int afterId, int limit);
+
+    /**
+     * Every assignment as {@code teacherId << 32 | courseId}, in ascending order, or null if they
+     * could not be read.
+     */
+    long[] loadAssignments();
+
+    /**
+     * Every teacher, course and assignment in columnar form, or null if they could not be read.
+     */
+    Roster loadRoster();
+
+    int countPage(PageQuery query) throws SQLException;
+
+    List<Object[]> loadPage(PageQuery query, Object[] afterKey, int limit) throws SQLException;
+
+    Object[] pageKeyAt(PageQuery query, int offset) throws SQLException;
+
+    /**
+     * Teachers ranked by how well their name matches the query, as {@link NameSearch} ranks them.
+     */
+    List<Teacher> searchTeachers(String query, int limit);
+
+    List<Course> searchCourses(String query, int limit);
+
+    /**
+     * Distinct teacher names for type-ahead, best match first.
+     */
+    List<String> suggestTeacherNames(String query, int limit);
+
+    List<String> suggestCourseNames(String query, int limit);
+
+    @Override
+    void close();
+}
@@ -1,18 +1,19 @@
 package org.teacher_and_course;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class Teacher {
     private int id;
     private String fullName;
     private int age;
+    // Created on the first addCourse: most teachers are loaded without their courses.
     private List<Course> courses;
 
     public Teacher(String fullName, int age) {
         this.fullName = fullName;
         this.age = age;
-        this.courses = new ArrayList<>();
     }
 
     public int getId() {
@@ -32,15 +33,20 @@ public class Teacher {
     }
 
     public List<Course> getCourses() {
-        return courses;
+        return courses == null ? Collections.emptyList() : courses;
     }
 
     public void addCourse(Course course) {
+        if (courses == null) {
+            courses = new ArrayList<>(4);
+        }
         courses.add(course);
     }
 
     public void removeCourse(Course course) {
-        courses.remove(course);
+        if (courses != null) {
+            courses.remove(course);
+        }
     }
 
     public void setFullName(String fullName) {
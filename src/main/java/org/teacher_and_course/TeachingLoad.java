@@ -0,0 +1,205 @@
+package org.teacher_and_course;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Teaching-load reports read from the summary tables of schema migration 6. Triggers on
+ * {@code teachers}, {@code courses} and {@code teacher_course} keep {@code teacher_load},
+ * {@code course_load} and {@code load_histogram} current on every write, so top-N and threshold
+ * queries are index range scans and the histogram is read as stored.
+ */
+public class TeachingLoad {
+    public static final int BUCKET_HOURS = 10;
+
+    private static final OperationMetrics TOP_TEACHERS_METRICS = PersistenceMetrics.operation("topTeachersByHours");
+    private static final OperationMetrics TEACHERS_OVER_METRICS = PersistenceMetrics.operation("teachersOverHours");
+    private static final OperationMetrics TEACHER_LOAD_METRICS = PersistenceMetrics.operation("teacherLoad");
+    private static final OperationMetrics HISTOGRAM_METRICS = PersistenceMetrics.operation("hoursHistogram");
+    private static final OperationMetrics TOP_COURSES_METRICS = PersistenceMetrics.operation("topCoursesByTeachers");
+
+    private static final String TEACHER_LOAD_SELECT =
+            "SELECT teacher_load.teacher_id, teachers.full_name, teacher_load.total_hours, teacher_load.course_count " +
+                    "FROM teacher_load JOIN teachers ON teachers.id = teacher_load.teacher_id ";
+
+    private TeachingLoad() {
+    }
+
+    public static class TeacherLoad {
+        private final int teacherId;
+        private final String fullName;
+        private final int totalHours;
+        private final int courseCount;
+
+        TeacherLoad(int teacherId, String fullName, int totalHours, int courseCount) {
+            this.teacherId = teacherId;
+            this.fullName = fullName;
+            this.totalHours = totalHours;
+            this.courseCount = courseCount;
+        }
+
+        public int getTeacherId() {
+            return teacherId;
+        }
+
+        public String getFullName() {
+            return fullName;
+        }
+
+        public int getTotalHours() {
+            return totalHours;
+        }
+
+        public int getCourseCount() {
+            return courseCount;
+        }
+    }
+
+    public static class CourseLoad {
+        private final int courseId;
+        private final String name;
+        private final int hours;
+        private final int teacherCount;
+
+        CourseLoad(int courseId, String name, int hours, int teacherCount) {
+            this.courseId = courseId;
+            this.name = name;
+            this.hours = hours;
+            this.teacherCount = teacherCount;
+        }
+
+        public int getCourseId() {
+            return courseId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getHours() {
+            return hours;
+        }
+
+        public int getTeacherCount() {
+            return teacherCount;
+        }
+    }
+
+    /**
+     * Number of teachers whose total hours fall in {@code [fromHours, fromHours + BUCKET_HOURS)}.
+     */
+    public static class HistogramBucket {
+        private final int fromHours;
+        private final int teachers;
+
+        HistogramBucket(int fromHours, int teachers) {
+            this.fromHours = fromHours;
+            this.teachers = teachers;
+        }
+
+        public int getFromHours() {
+            return fromHours;
+        }
+
+        public int getToHours() {
+            return fromHours + BUCKET_HOURS;
+        }
+
+        public int getTeachers() {
+            return teachers;
+        }
+    }
+
+    public static List<TeacherLoad> topTeachersByHours(int limit) {
+        return loadTeachers(TOP_TEACHERS_METRICS,
+                TEACHER_LOAD_SELECT + "ORDER BY teacher_load.total_hours DESC, teacher_load.teacher_id DESC LIMIT ?", limit);
+    }
+
+    /**
+     * Teachers with more than {@code hours} total hours, heaviest first.
+     */
+    public static List<TeacherLoad> teachersOverHours(int hours, int limit) {
+        return loadTeachers(TEACHERS_OVER_METRICS,
+                TEACHER_LOAD_SELECT + "WHERE teacher_load.total_hours > ? " +
+                        "ORDER BY teacher_load.total_hours DESC, teacher_load.teacher_id DESC LIMIT ?", hours, limit);
+    }
+
+    public static TeacherLoad teacherLoad(int teacherId) {
+        List<TeacherLoad> loads = loadTeachers(TEACHER_LOAD_METRICS,
+                TEACHER_LOAD_SELECT + "WHERE teacher_load.teacher_id = ?", teacherId);
+        return loads.isEmpty() ? null : loads.get(0);
+    }
+
+    public static List<HistogramBucket> hoursHistogram() {
+        long start = System.nanoTime();
+        List<HistogramBucket> buckets = new ArrayList<>();
+        try (PooledConnection connection = DatabaseManager.acquire()) {
+            PreparedStatement statement = connection.prepare(
+                    "SELECT bucket, teachers FROM load_histogram WHERE teachers > 0 ORDER BY bucket");
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    buckets.add(new HistogramBucket(resultSet.getInt(1) * BUCKET_HOURS, resultSet.getInt(2)));
+                }
+            }
+            HISTOGRAM_METRICS.addRowsRead(buckets.size());
+        } catch (SQLException e) {
+            HISTOGRAM_METRICS.recordError();
+            DatabaseManager.reportFailure(HISTOGRAM_METRICS.getOperation(), e);
+        } finally {
+            HISTOGRAM_METRICS.record(start);
+        }
+        return buckets;
+    }
+
+    public static List<CourseLoad> topCoursesByTeachers(int limit) {
+        long start = System.nanoTime();
+        List<CourseLoad> loads = new ArrayList<>();
+        try (PooledConnection connection = DatabaseManager.acquire()) {
+            PreparedStatement statement = connection.prepare(
+                    "SELECT course_load.course_id, courses.name, course_load.hours, course_load.teacher_count " +
+                            "FROM course_load JOIN courses ON courses.id = course_load.course_id " +
+                            "ORDER BY course_load.teacher_count DESC, course_load.course_id DESC LIMIT ?");
+            statement.setInt(1, limit);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    loads.add(new CourseLoad(resultSet.getInt(1), resultSet.getString(2),
+                            resultSet.getInt(3), resultSet.getInt(4)));
+                }
+            }
+            TOP_COURSES_METRICS.addRowsRead(loads.size());
+        } catch (SQLException e) {
+            TOP_COURSES_METRICS.recordError();
+            DatabaseManager.reportFailure(TOP_COURSES_METRICS.getOperation(), e);
+        } finally {
+            TOP_COURSES_METRICS.record(start);
+        }
+        return loads;
+    }
+
+    private static List<TeacherLoad> loadTeachers(OperationMetrics metrics, String sql, int... parameters) {
+        long start = System.nanoTime();
+        List<TeacherLoad> loads = new ArrayList<>();
+        try (PooledConnection connection = DatabaseManager.acquire()) {
+            PreparedStatement statement = connection.prepare(sql);
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setInt(i + 1, parameters[i]);
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    loads.add(new TeacherLoad(resultSet.getInt(1), resultSet.getString(2),
+                            resultSet.getInt(3), resultSet.getInt(4)));
+                }
+            }
+            metrics.addRowsRead(loads.size());
+        } catch (SQLException e) {
+            metrics.recordError();
+            DatabaseManager.reportFailure(metrics.getOperation(), e);
+        } finally {
+            metrics.record(start);
+        }
+        return loads;
+    }
+}
@@ -0,0 +1,147 @@
+package org.teacher_and_course;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+
+/**
+ * Report window over {@link TeachingLoad}: heaviest teachers, teachers above an hours threshold,
+ * the distribution of total hours and the most widely taught courses. Every tab is read from the
+ * summary tables off the event dispatch thread when it is refreshed, and every tab is refreshed
+ * after each batch of changes from the {@link ChangeFeed} while the window is open.
+ */
+public class TeachingLoadView {
+    private static final int HISTOGRAM_BAR_WIDTH = 40;
+    private static final int OVERLOADED_LIMIT = 1000;
+
+    private final SchoolService service;
+    private final Consumer<Throwable> errorHandler;
+    private final JDialog dialog;
+    private final JSpinner topCount = new JSpinner(new SpinnerNumberModel(20, 1, 1000, 5));
+    private final JSpinner courseCount = new JSpinner(new SpinnerNumberModel(20, 1, 1000, 5));
+    private final JSpinner thresholdHours = new JSpinner(new SpinnerNumberModel(40, 0, 100_000, 5));
+    private final DefaultTableModel topTeachers = readOnlyModel("ID", "Teacher", "Total Hours", "Courses");
+    private final DefaultTableModel overloaded = readOnlyModel("ID", "Teacher", "Total Hours", "Courses");
+    private final DefaultTableModel histogram = readOnlyModel("Total Hours", "Teachers", "");
+    private final DefaultTableModel topCourses = readOnlyModel("ID", "Course", "Hours", "Teachers");
+    private final ChangeEventListener changeListener = changes -> refreshAll();
+
+    public TeachingLoadView(Component parent, SchoolService service, Consumer<Throwable> errorHandler) {
+        this.service = service;
+        this.errorHandler = errorHandler;
+        this.dialog = new JDialog(SwingUtilities.getWindowAncestor(parent), "Teaching Load", JDialog.ModalityType.MODELESS);
+
+        JTabbedPane tabs = new JTabbedPane();
+        tabs.addTab("Heaviest Teachers", tab(topTeachers, this::refreshTopTeachers, new JLabel("Show top:"), topCount));
+        tabs.addTab("Over Threshold", tab(overloaded, this::refreshOverloaded, new JLabel("More than hours:"), thresholdHours));
+        tabs.addTab("Hours Histogram", tab(histogram, this::refreshHistogram));
+        tabs.addTab("Courses by Teachers", tab(topCourses, this::refreshTopCourses, new JLabel("Show top:"), courseCount));
+
+        dialog.setContentPane(tabs);
+        dialog.setSize(700, 450);
+        dialog.setLocationRelativeTo(parent);
+        dialog.setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
+        dialog.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                ChangeFeed.unsubscribe(changeListener);
+            }
+        });
+    }
+
+    public void show() {
+        refreshAll();
+        ChangeFeed.subscribe(changeListener);
+        dialog.setVisible(true);
+    }
+
+    private void refreshAll() {
+        refreshTopTeachers();
+        refreshOverloaded();
+        refreshHistogram();
+        refreshTopCourses();
+    }
+
+    private JPanel tab(DefaultTableModel model, Runnable refresh, JComponent... controls) {
+        JPanel controlPanel = new JPanel();
+        for (JComponent control : controls) {
+            controlPanel.add(control);
+        }
+        JButton refreshButton = new JButton("Refresh");
+        refreshButton.addActionListener(e -> refresh.run());
+        controlPanel.add(refreshButton);
+
+        JTable table = new JTable(model);
+        table.setAutoCreateRowSorter(true);
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.add(controlPanel, BorderLayout.NORTH);
+        panel.add(new JScrollPane(table), BorderLayout.CENTER);
+        return panel;
+    }
+
+    private void refreshTopTeachers() {
+        int limit = (Integer) topCount.getValue();
+        load(() -> TeachingLoad.topTeachersByHours(limit), loads -> fillTeachers(topTeachers, loads));
+    }
+
+    private void refreshOverloaded() {
+        int hours = (Integer) thresholdHours.getValue();
+        load(() -> TeachingLoad.teachersOverHours(hours, OVERLOADED_LIMIT), loads -> fillTeachers(overloaded, loads));
+    }
+
+    private void refreshHistogram() {
+        load(TeachingLoad::hoursHistogram, buckets -> {
+            int largest = 1;
+            for (TeachingLoad.HistogramBucket bucket : buckets) {
+                largest = Math.max(largest, bucket.getTeachers());
+            }
+            histogram.setRowCount(0);
+            for (TeachingLoad.HistogramBucket bucket : buckets) {
+                int width = (int) Math.ceil((double) bucket.getTeachers() * HISTOGRAM_BAR_WIDTH / largest);
+                histogram.addRow(new Object[]{bucket.getFromHours() + "–" + (bucket.getToHours() - 1),
+                        bucket.getTeachers(), "█".repeat(width)});
+            }
+        });
+    }
+
+    private void refreshTopCourses() {
+        int limit = (Integer) courseCount.getValue();
+        load(() -> TeachingLoad.topCoursesByTeachers(limit), loads -> {
+            topCourses.setRowCount(0);
+            for (TeachingLoad.CourseLoad load : loads) {
+                topCourses.addRow(new Object[]{load.getCourseId(), load.getName(), load.getHours(), load.getTeacherCount()});
+            }
+        });
+    }
+
+    private static void fillTeachers(DefaultTableModel model, List<TeachingLoad.TeacherLoad> loads) {
+        model.setRowCount(0);
+        for (TeachingLoad.TeacherLoad load : loads) {
+            model.addRow(new Object[]{load.getTeacherId(), load.getFullName(), load.getTotalHours(), load.getCourseCount()});
+        }
+    }
+
+    private <T> void load(Callable<T> query, Consumer<T> onSuccess) {
+        SchoolService.onEdt(service.submit(query), onSuccess, errorHandler);
+    }
+
+    private static DefaultTableModel readOnlyModel(String... columns) {
+        return new DefaultTableModel(columns, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+
+            @Override
+            public Class<?> getColumnClass(int column) {
+                return getRowCount() > 0 && getValueAt(0, column) != null ? getValueAt(0, column).getClass() : Object.class;
+            }
+        };
+    }
+}
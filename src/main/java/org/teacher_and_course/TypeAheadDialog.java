@@ -0,0 +1,161 @@
+package org.teacher_and_course;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Modal name prompt that lists matching names while the user types. Suggestions are requested once
+ * typing pauses, off the event dispatch thread, and answers for text that has since changed are
+ * dropped.
+ */
+public class TypeAheadDialog {
+    private static final int DEBOUNCE_MILLIS = 150;
+    private static final int VISIBLE_SUGGESTIONS = 8;
+
+    private final JDialog dialog;
+    private final JTextField field = new JTextField(30);
+    private final DefaultListModel<String> suggestions = new DefaultListModel<>();
+    private final JList<String> list = new JList<>(suggestions);
+    private final Function<String, CompletableFuture<List<String>>> suggester;
+    private final Timer timer;
+    private CompletableFuture<List<String>> pending;
+    private String result;
+
+    private TypeAheadDialog(Component parent, String title, String message,
+                            Function<String, CompletableFuture<List<String>>> suggester) {
+        this.suggester = suggester;
+        this.dialog = new JDialog(SwingUtilities.getWindowAncestor(parent), title, JDialog.ModalityType.APPLICATION_MODAL);
+        this.timer = new Timer(DEBOUNCE_MILLIS, e -> requestSuggestions());
+        timer.setRepeats(false);
+
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        list.setVisibleRowCount(VISIBLE_SUGGESTIONS);
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2 && list.getSelectedValue() != null) {
+                    accept(list.getSelectedValue());
+                }
+            }
+        });
+        field.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                textChanged();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                textChanged();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                textChanged();
+            }
+        });
+        bind(field, KeyEvent.VK_DOWN, () -> moveSelection(1));
+        bind(field, KeyEvent.VK_UP, () -> moveSelection(-1));
+        field.addActionListener(e -> accept(list.getSelectedValue() != null ? list.getSelectedValue() : field.getText()));
+
+        JButton okButton = new JButton("OK");
+        okButton.addActionListener(e -> accept(list.getSelectedValue() != null ? list.getSelectedValue() : field.getText()));
+        JButton cancelButton = new JButton("Cancel");
+        cancelButton.addActionListener(e -> dialog.dispose());
+        dialog.getRootPane().registerKeyboardAction(e -> dialog.dispose(),
+                KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0), JComponent.WHEN_IN_FOCUSED_WINDOW);
+
+        JPanel top = new JPanel(new BorderLayout(0, 4));
+        top.add(new JLabel(message), BorderLayout.NORTH);
+        top.add(field, BorderLayout.CENTER);
+        JPanel buttons = new JPanel();
+        buttons.add(okButton);
+        buttons.add(cancelButton);
+        JPanel content = new JPanel(new BorderLayout(0, 4));
+        content.setBorder(BorderFactory.createEmptyBorder(8, 8, 8, 8));
+        content.add(top, BorderLayout.NORTH);
+        content.add(new JScrollPane(list), BorderLayout.CENTER);
+        content.add(buttons, BorderLayout.SOUTH);
+        dialog.setContentPane(content);
+        dialog.pack();
+        dialog.setLocationRelativeTo(parent);
+    }
+
+    /**
+     * Shows the prompt and returns the chosen or typed name, or {@code null} if it was cancelled.
+     */
+    public static String prompt(Component parent, String title, String message,
+                                Function<String, CompletableFuture<List<String>>> suggester) {
+        TypeAheadDialog typeAhead = new TypeAheadDialog(parent, title, message, suggester);
+        typeAhead.dialog.setVisible(true);
+        typeAhead.timer.stop();
+        if (typeAhead.pending != null) {
+            typeAhead.pending.cancel(true);
+        }
+        return typeAhead.result;
+    }
+
+    private void textChanged() {
+        list.clearSelection();
+        timer.restart();
+    }
+
+    private void requestSuggestions() {
+        if (pending != null) {
+            pending.cancel(true);
+        }
+        String text = field.getText().trim();
+        if (text.isEmpty()) {
+            suggestions.clear();
+            return;
+        }
+        CompletableFuture<List<String>> request = suggester.apply(text);
+        pending = request;
+        SchoolService.onEdt(request, names -> {
+            if (request != pending || !text.equals(field.getText().trim())) {
+                return;
+            }
+            suggestions.clear();
+            suggestions.addAll(names);
+        }, error -> suggestions.clear());
+    }
+
+    private void moveSelection(int delta) {
+        if (suggestions.isEmpty()) {
+            return;
+        }
+        int index = Math.max(-1, Math.min(suggestions.size() - 1, list.getSelectedIndex() + delta));
+        if (index < 0) {
+            list.clearSelection();
+        } else {
+            list.setSelectedIndex(index);
+            list.ensureIndexIsVisible(index);
+        }
+    }
+
+    private void accept(String value) {
+        result = value;
+        dialog.dispose();
+    }
+
+    private static void bind(JComponent component, int keyCode, Runnable action) {
+        String name = "typeAhead" + keyCode;
+        component.getInputMap().put(KeyStroke.getKeyStroke(keyCode, 0), name);
+        component.getActionMap().put(name, new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                action.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,452 @@
+package org.teacher_and_course;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind front for the mutating {@link DatabaseManager} operations. Writes are queued in a
+ * bounded buffer and a single writer thread applies them in batches of up to {@code maxBatchSize},
+ * one transaction per batch. Each call returns a future that completes after the batch holding the
+ * write has committed, with the same result the synchronous method would have returned.
+ *
+ * <p>An update of a row that already has an update queued replaces the queued values instead of
+ * adding a write, and a repeated assign or unassign of the same teacher and course folds into the
+ * queued one; all callers then see the result of the write that was applied. A different kind of
+ * write to the same key, or removing any teacher or course, ends folding into what is already
+ * queued, so no write can move ahead of one that was submitted before it.
+ *
+ * <p>The writer takes whatever is queued when it becomes free, so concurrent callers share a
+ * commit without waiting; {@code maxDelayMillis} optionally lingers for a fuller batch.
+ */
+public class WriteBehindQueue implements AutoCloseable {
+    private static final OperationMetrics BATCH_METRICS = PersistenceMetrics.operation("writeBehindBatch");
+
+    private final int capacity;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final ArrayDeque<Slot> queue = new ArrayDeque<>();
+    private final Map<String, Slot> coalescable = new HashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Thread writer;
+    private boolean closed;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder applied = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+
+    public WriteBehindQueue(int capacity, int maxBatchSize, long maxDelayMillis) {
+        if (capacity < 1 || maxBatchSize < 1) {
+            throw new IllegalArgumentException("Capacity and batch size must be at least 1");
+        }
+        this.capacity = capacity;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.writer = new Thread(this::drain, "write-behind-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * A queue position; coalescing swaps the write it holds without moving it.
+     */
+    private static final class Slot {
+        private final String key;
+        private Write<?> write;
+
+        private Slot(String key, Write<?> write) {
+            this.key = key;
+            this.write = write;
+        }
+    }
+
+    private abstract static class Write<T> {
+        private final List<CompletableFuture<T>> waiters = new ArrayList<>(1);
+        private T result;
+        /**
+         * Published once the batch commits; set by {@link #apply} when the write changed a row.
+         */
+        ChangeEvent change;
+
+        abstract T apply(PooledConnection connection) throws SQLException;
+
+        /**
+         * Result reported when this write fails on its own while the rest of the batch commits.
+         */
+        abstract T failed();
+
+        boolean sameKind(Write<?> other) {
+            return getClass() == other.getClass();
+        }
+    }
+
+    public CompletableFuture<Integer> saveTeacher(Teacher teacher) {
+        return submit(false, null, new Write<Integer>() {
+            @Override
+            Integer apply(PooledConnection connection) throws SQLException {
+                PreparedStatement statement = connection.prepare("INSERT INTO teachers (full_name, age) VALUES (?, ?)");
+                statement.setString(1, teacher.getFullName());
+                statement.setInt(2, teacher.getAge());
+                statement.executeUpdate();
+                int id = lastInsertId(connection);
+                teacher.setId(id);
+                change = ChangeEvent.teacherAdded(teacher);
+                return id;
+            }
+
+            @Override
+            Integer failed() {
+                return -1;
+            }
+        });
+    }
+
+    public CompletableFuture<Integer> saveCourse(Course course) {
+        return submit(false, null, new Write<Integer>() {
+            @Override
+            Integer apply(PooledConnection connection) throws SQLException {
+                if (DatabaseManager.internCourse(connection, course)) {
+                    change = ChangeEvent.courseAdded(course);
+                }
+                return course.getId();
+            }
+
+            @Override
+            Integer failed() {
+                return -1;
+            }
+        });
+    }
+
+    public CompletableFuture<Boolean> saveTeacherCourse(int teacherId, int courseId) {
+        return submit(false, "assignment:" + teacherId + ":" + courseId, new BooleanWrite(
+                "INSERT OR IGNORE INTO teacher_course (teacher_id, course_id) " +
+                        "SELECT ?, ? WHERE EXISTS (SELECT 1 FROM teachers WHERE id = ?) " +
+                        "AND EXISTS (SELECT 1 FROM courses WHERE id = ?)",
+                true, ChangeEvent.assignmentAdded(teacherId, courseId), teacherId, courseId, teacherId, courseId));
+    }
+
+    public CompletableFuture<Boolean> removeTeacherCourse(int teacherId, int courseId) {
+        return submit(false, "assignment:" + teacherId + ":" + courseId, new BooleanWrite(
+                "DELETE FROM teacher_course WHERE teacher_id = ? AND course_id = ?",
+                false, ChangeEvent.assignmentRemoved(teacherId, courseId), teacherId, courseId));
+    }
+
+    public CompletableFuture<Boolean> updateTeacher(Teacher teacher) {
+        return submit(false, "teacher:" + teacher.getId(), new BooleanWrite(
+                "UPDATE teachers SET full_name = ?, age = ? WHERE id = ?",
+                false, ChangeEvent.teacherUpdated(teacher), teacher.getFullName(), teacher.getAge(), teacher.getId()));
+    }
+
+    public CompletableFuture<Boolean> updateCourse(Course course) {
+        return submit(false, "course:" + course.getId(), new BooleanWrite(
+                "UPDATE courses SET name = ?, hours = ? WHERE id = ?",
+                false, ChangeEvent.courseUpdated(course), course.getName(), course.getHours(), course.getId()));
+    }
+
+    public CompletableFuture<Boolean> removeTeacher(Teacher teacher) {
+        return submit(true, null, new BooleanWrite("DELETE FROM teachers WHERE id = ?", false,
+                ChangeEvent.teacherRemoved(teacher.getId()), teacher.getId()));
+    }
+
+    public CompletableFuture<Boolean> removeCourse(Course course) {
+        return submit(true, null, new BooleanWrite("DELETE FROM courses WHERE id = ?", false,
+                ChangeEvent.courseRemoved(course.getId()), course.getId()));
+    }
+
+    /**
+     * A single statement whose result is whether it changed a row, publishing {@code onChange} if it
+     * did. An assignment that already exists counts as saved when {@code existingRowIsSuccess} is
+     * set, matching {@link DatabaseManager#saveTeacherCourse(int, int)}.
+     */
+    private static final class BooleanWrite extends Write<Boolean> {
+        private final String sql;
+        private final boolean existingRowIsSuccess;
+        private final ChangeEvent onChange;
+        private final Object[] parameters;
+
+        private BooleanWrite(String sql, boolean existingRowIsSuccess, ChangeEvent onChange, Object... parameters) {
+            this.sql = sql;
+            this.existingRowIsSuccess = existingRowIsSuccess;
+            this.onChange = onChange;
+            this.parameters = parameters;
+        }
+
+        @Override
+        Boolean apply(PooledConnection connection) throws SQLException {
+            PreparedStatement statement = connection.prepare(sql);
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setObject(i + 1, parameters[i]);
+            }
+            if (statement.executeUpdate() > 0) {
+                change = onChange;
+                return true;
+            }
+            return existingRowIsSuccess && assignmentExists(connection, (Integer) parameters[0], (Integer) parameters[1]);
+        }
+
+        @Override
+        Boolean failed() {
+            return false;
+        }
+
+        @Override
+        boolean sameKind(Write<?> other) {
+            return other instanceof BooleanWrite write && write.sql.equals(sql);
+        }
+    }
+
+    /**
+     * Queues {@code write}, folding it into a queued write with the same {@code key} if there is one.
+     * A {@code fence} write is never folded into and stops earlier writes from being folded into.
+     */
+    private <T> CompletableFuture<T> submit(boolean fence, String key, Write<T> write) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        lock.lock();
+        try {
+            while (queue.size() >= capacity && !closed) {
+                notFull.awaitUninterruptibly();
+            }
+            if (closed) {
+                future.completeExceptionally(new IllegalStateException("Write-behind queue is closed"));
+                return future;
+            }
+            submitted.increment();
+            if (fence) {
+                coalescable.clear();
+            } else if (key != null) {
+                Slot slot = coalescable.get(key);
+                if (slot != null && slot.write.sameKind(write)) {
+                    @SuppressWarnings("unchecked")
+                    Write<T> pending = (Write<T>) slot.write;
+                    coalesced.increment();
+                    write.waiters.addAll(pending.waiters);
+                    write.waiters.add(future);
+                    slot.write = write;
+                    return future;
+                }
+            }
+            write.waiters.add(future);
+            Slot slot = new Slot(key, write);
+            queue.addLast(slot);
+            if (key != null) {
+                coalescable.put(key, slot);
+            }
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        return future;
+    }
+
+    private void drain() {
+        List<Write<?>> batch = new ArrayList<>(maxBatchSize);
+        while (true) {
+            lock.lock();
+            try {
+                while (queue.isEmpty() && !closed) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                if (queue.isEmpty()) {
+                    return;
+                }
+                long deadline = System.nanoTime() + maxDelayNanos;
+                long remaining;
+                while (queue.size() < maxBatchSize && !closed && (remaining = deadline - System.nanoTime()) > 0) {
+                    try {
+                        notEmpty.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                }
+                while (!queue.isEmpty() && batch.size() < maxBatchSize) {
+                    Slot slot = queue.pollFirst();
+                    if (slot.key != null) {
+                        coalescable.remove(slot.key, slot);
+                    }
+                    batch.add(slot.write);
+                }
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            applyBatch(batch);
+            batch.clear();
+        }
+    }
+
+    private void applyBatch(List<Write<?>> batch) {
+        long start = System.nanoTime();
+        try {
+            // A busy database fails the whole transaction, so the batch is retried as a unit.
+            DatabaseManager.write(connection -> {
+                Connection jdbc = connection.getConnection();
+                jdbc.setAutoCommit(false);
+                for (Write<?> write : batch) {
+                    applyOne(connection, write);
+                }
+                jdbc.commit();
+                jdbc.setAutoCommit(true);
+                return null;
+            });
+            batches.increment();
+            applied.add(batch.size());
+            BATCH_METRICS.addRowsWritten(batch.size());
+            List<ChangeEvent> changes = new ArrayList<>();
+            for (Write<?> write : batch) {
+                if (write.change != null) {
+                    changes.add(write.change);
+                }
+                complete(write);
+            }
+            ChangeFeed.publish(changes);
+        } catch (SQLException e) {
+            failedBatches.increment();
+            BATCH_METRICS.recordError();
+            DatabaseManager.reportFailure(BATCH_METRICS.getOperation(), e);
+            for (Write<?> write : batch) {
+                for (CompletableFuture<?> waiter : write.waiters) {
+                    waiter.completeExceptionally(e);
+                }
+            }
+        } finally {
+            BATCH_METRICS.record(start);
+        }
+    }
+
+    private static <T> void applyOne(PooledConnection connection, Write<T> write) throws SQLException {
+        write.change = null;
+        try {
+            write.result = write.apply(connection);
+        } catch (SQLException e) {
+            if (BusyRetry.isBusy(e)) {
+                throw e;
+            }
+            DatabaseManager.reportFailure(BATCH_METRICS.getOperation(), e);
+            write.result = write.failed();
+        }
+    }
+
+    private static <T> void complete(Write<T> write) {
+        for (CompletableFuture<T> waiter : write.waiters) {
+            waiter.complete(write.result);
+        }
+    }
+
+    private static int lastInsertId(PooledConnection connection) throws SQLException {
+        try (ResultSet resultSet = connection.prepare("SELECT last_insert_rowid()").executeQuery()) {
+            if (!resultSet.next()) {
+                throw new SQLException("No ID obtained");
+            }
+            return resultSet.getInt(1);
+        }
+    }
+
+    private static boolean assignmentExists(PooledConnection connection, int teacherId, int courseId) throws SQLException {
+        PreparedStatement statement = connection.prepare(
+                "SELECT 1 FROM teacher_course WHERE teacher_id = ? AND course_id = ?");
+        statement.setInt(1, teacherId);
+        statement.setInt(2, courseId);
+        try (ResultSet resultSet = statement.executeQuery()) {
+            return resultSet.next();
+        }
+    }
+
+    /**
+     * Stops accepting writes, lets the writer commit everything already queued and waits for it.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public Stats getStats() {
+        int depth;
+        lock.lock();
+        try {
+            depth = queue.size();
+        } finally {
+            lock.unlock();
+        }
+        return new Stats(depth, submitted.sum(), coalesced.sum(), applied.sum(), batches.sum(), failedBatches.sum());
+    }
+
+    public static class Stats {
+        private final int queued;
+        private final long submitted;
+        private final long coalesced;
+        private final long applied;
+        private final long batches;
+        private final long failedBatches;
+
+        Stats(int queued, long submitted, long coalesced, long applied, long batches, long failedBatches) {
+            this.queued = queued;
+            this.submitted = submitted;
+            this.coalesced = coalesced;
+            this.applied = applied;
+            this.batches = batches;
+            this.failedBatches = failedBatches;
+        }
+
+        public int getQueued() {
+            return queued;
+        }
+
+        public long getSubmitted() {
+            return submitted;
+        }
+
+        public long getCoalesced() {
+            return coalesced;
+        }
+
+        public long getApplied() {
+            return applied;
+        }
+
+        public long getBatches() {
+            return batches;
+        }
+
+        public long getFailedBatches() {
+            return failedBatches;
+        }
+
+        public double getAverageBatchSize() {
+            return batches == 0 ? 0 : (double) applied / batches;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("queued=%d submitted=%d coalesced=%d applied=%d batches=%d failedBatches=%d avgBatch=%.1f",
+                    queued, submitted, coalesced, applied, batches, failedBatches, getAverageBatchSize());
+        }
+    }
+}